@@ -0,0 +1,95 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks.flow;
+
+import java.util.concurrent.TimeUnit;
+import org.geoserver.flow.controller.ConcurrentPriorityThreadBlocker;
+import org.geoserver.flow.controller.PriorityProvider;
+import org.geoserver.flow.controller.PriorityThreadBlocker;
+import org.geoserver.flow.controller.SemaphoreThreadBlocker;
+import org.geoserver.flow.controller.SimpleThreadBlocker;
+import org.geoserver.flow.controller.ThreadBlocker;
+import org.geoserver.ows.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the throughput of the control flow thread blockers with many more threads than permits,
+ * the existing lock based blockers ("simple", "priority") against the lock free ones ("semaphore",
+ * "concurrentPriority"). Each invocation is a request going through the blocker and burning a bit
+ * of CPU while holding the permit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(1024)
+public class ThreadBlockerBenchmark {
+
+    /** Spreads the requests over three priority levels */
+    static final PriorityProvider PRIORITIES = r -> Math.floorMod(System.identityHashCode(r), 3);
+
+    @Param({"simple", "semaphore", "priority", "concurrentPriority"})
+    String blocker;
+
+    @Param({"16", "64"})
+    int permits;
+
+    /** CPU work done while holding the permit, in Blackhole.consumeCPU tokens */
+    @Param({"100"})
+    int work;
+
+    ThreadBlocker threadBlocker;
+
+    @Setup
+    public void setup() {
+        switch (blocker) {
+            case "simple":
+                threadBlocker = new SimpleThreadBlocker(permits);
+                break;
+            case "semaphore":
+                threadBlocker = new SemaphoreThreadBlocker(permits);
+                break;
+            case "priority":
+                threadBlocker = new PriorityThreadBlocker(permits, PRIORITIES);
+                break;
+            case "concurrentPriority":
+                threadBlocker = new ConcurrentPriorityThreadBlocker(permits, PRIORITIES);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown blocker " + blocker);
+        }
+    }
+
+    /** The request issued by each benchmark thread, reused across invocations */
+    @State(Scope.Thread)
+    public static class ThreadRequest {
+        Request request = new Request();
+    }
+
+    @Benchmark
+    public void request(ThreadRequest state) throws InterruptedException {
+        if (threadBlocker.requestIncoming(state.request, -1)) {
+            try {
+                Blackhole.consumeCPU(work);
+            } finally {
+                threadBlocker.requestComplete(state.request);
+            }
+        }
+    }
+}
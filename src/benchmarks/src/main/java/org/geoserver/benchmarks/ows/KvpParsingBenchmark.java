@@ -0,0 +1,149 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks.ows;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.geoserver.ows.KvpParser;
+import org.geoserver.ows.kvp.BooleanKvpParser;
+import org.geoserver.ows.kvp.DoubleKvpParser;
+import org.geoserver.ows.kvp.IntegerKvpParser;
+import org.geoserver.ows.util.KvpParserTable;
+import org.geoserver.ows.util.KvpUtils;
+import org.geotools.util.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the KVP parsing throughput of the precomputed {@link KvpParserTable} against the
+ * previous approach, that copied and purged the whole parser list for every request, and then
+ * scanned it for every key. The parsers mimic a real setup: a set of generic parsers, plus service,
+ * version and request specific overrides for some of the keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class KvpParsingBenchmark {
+
+    static final String[] SERVICES = {"WMS", "WFS", "WCS", "WMTS"};
+
+    static final String[] VERSIONS = {"1.3.0", "2.0.0", "2.0.1", "1.0.0"};
+
+    static final String[] REQUESTS = {"GetMap", "GetFeature", "GetCoverage", "GetCapabilities"};
+
+    /** Number of distinct keys with a generic parser */
+    @Param({"100"})
+    int keys;
+
+    /** Number of parameters in each request */
+    @Param({"20"})
+    int parameters;
+
+    List<KvpParser> parsers;
+
+    KvpParserTable table;
+
+    @Setup
+    public void setup() {
+        parsers = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            String key = "param" + i;
+            parsers.add(generic(key, i));
+            // a third of the keys have service specific parsers, some down to the request
+            if (i % 3 == 0) {
+                for (int s = 0; s < SERVICES.length; s++) {
+                    parsers.add(specific(key, i, SERVICES[s], null, null));
+                    parsers.add(specific(key, i, SERVICES[s], VERSIONS[s], null));
+                    parsers.add(specific(key, i, SERVICES[s], VERSIONS[s], REQUESTS[s]));
+                }
+            }
+        }
+        table = new KvpParserTable(parsers);
+    }
+
+    private KvpParser generic(String key, int i) {
+        switch (i % 3) {
+            case 0:
+                return new IntegerKvpParser(key);
+            case 1:
+                return new DoubleKvpParser(key);
+            default:
+                return new BooleanKvpParser(key);
+        }
+    }
+
+    private KvpParser specific(String key, int i, String service, String version, String request) {
+        KvpParser parser = generic(key, i);
+        parser.setService(service);
+        if (version != null) {
+            parser.setVersion(new Version(version));
+        }
+        parser.setRequest(request);
+        return parser;
+    }
+
+    /** A fresh GetMap like request, parsing replaces the values in place */
+    private Map<String, Object> request() {
+        Map<String, Object> kvp = new LinkedHashMap<>();
+        kvp.put("service", "WMS");
+        kvp.put("version", "1.3.0");
+        kvp.put("request", "GetMap");
+        for (int i = 0; i < parameters - 3; i++) {
+            // spread the parameters over the key space, with a few unknown ones
+            int k = i * 7 % (keys + keys / 10);
+            String value = k % 3 == 0 ? "256" : k % 3 == 1 ? "0.5" : "true";
+            kvp.put("param" + k, value);
+        }
+        return kvp;
+    }
+
+    @Benchmark
+    public Map<String, Object> table() {
+        Map<String, Object> kvp = request();
+        KvpUtils.parse(kvp, table);
+        return kvp;
+    }
+
+    @Benchmark
+    public Map<String, Object> parserList() {
+        Map<String, Object> kvp = request();
+        String service = KvpUtils.getSingleValue(kvp, "service");
+        String version = KvpUtils.getSingleValue(kvp, "version");
+        String request = KvpUtils.getSingleValue(kvp, "request");
+        // the extension lookup used to return a fresh list, that was then purged
+        List<KvpParser> purged = new ArrayList<>(parsers);
+        KvpUtils.purgeParsers(purged, service, version, request);
+        for (Map.Entry<String, Object> entry : kvp.entrySet()) {
+            KvpParser parser =
+                    KvpUtils.findParser(entry.getKey(), service, request, version, purged);
+            if (parser != null) {
+                try {
+                    Object parsed = parser.parse((String) entry.getValue());
+                    if (parsed != null) {
+                        entry.setValue(parsed);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        return kvp;
+    }
+}
@@ -0,0 +1,94 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks.vectortiles;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import no.ecc.vectortile.VectorTileEncoder;
+import no.ecc.vectortile.VectorTileEncoderNoClip;
+import org.geoserver.wms.mapbox.StreamingVectorTileEncoder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link StreamingVectorTileEncoder} with the java-vector-tile encoder it replaces, on
+ * tiles made of lines and polygons with a few attributes each. Run with "-prof gc" to compare the
+ * memory allocated per tile as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class VectorTileEncodingBenchmark {
+
+    static final int EXTENT = 4096;
+
+    static final int BUFFER = EXTENT / 32;
+
+    @Param({"1000", "10000"})
+    int features;
+
+    List<Geometry> geometries;
+
+    List<Map<String, Object>> attributes;
+
+    @Setup
+    public void setup() {
+        geometries = new ArrayList<>();
+        attributes = new ArrayList<>();
+        Random random = new Random(0);
+        GeometryFactory gf = new GeometryFactory();
+        for (int i = 0; i < features; i++) {
+            Coordinate[] coords = new Coordinate[20];
+            for (int j = 0; j < coords.length - 1; j++) {
+                coords[j] = new Coordinate(random.nextInt(EXTENT), random.nextInt(EXTENT));
+            }
+            coords[coords.length - 1] = coords[0];
+            geometries.add(
+                    i % 2 == 0 ? gf.createLineString(coords) : gf.createPolygon(coords).buffer(0));
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", i);
+            map.put("class", "class" + (i % 10));
+            map.put("value", random.nextDouble());
+            attributes.add(map);
+        }
+    }
+
+    @Benchmark
+    public byte[] streaming() {
+        StreamingVectorTileEncoder encoder = new StreamingVectorTileEncoder(EXTENT, BUFFER);
+        for (int i = 0; i < geometries.size(); i++) {
+            encoder.addFeature("layer", attributes.get(i), geometries.get(i), i);
+        }
+        return encoder.encode();
+    }
+
+    @Benchmark
+    public byte[] javaVectorTile() {
+        VectorTileEncoder encoder = new VectorTileEncoderNoClip(EXTENT, BUFFER, false);
+        for (int i = 0; i < geometries.size(); i++) {
+            encoder.addFeature("layer", attributes.get(i), geometries.get(i), i);
+        }
+        return encoder.encode();
+    }
+}
@@ -0,0 +1,155 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks.wfs;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.sf.json.util.JSONBuilder;
+import org.geoserver.wfs.json.GeoJSONBuilder;
+import org.geoserver.wfs.json.RoundingUtil;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the GeoJSONBuilder geometry encoding, streaming the coordinates to the writer, against
+ * the generic JSONBuilder value encoding it used before, boxing and converting each ordinate. Both
+ * encode the same features, a mix of polygons and lines, and discard the output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GeoJSONEncodingBenchmark {
+
+    @Param({"1000"})
+    int features;
+
+    @Param({"100"})
+    int vertices;
+
+    @Param({"6"})
+    int numDecimals;
+
+    List<Geometry> geometries;
+
+    @Setup
+    public void setup() {
+        GeometryFactory gf = new GeometryFactory();
+        Random random = new Random(0);
+        geometries = new ArrayList<>();
+        for (int i = 0; i < features; i++) {
+            Coordinate[] coordinates = new Coordinate[vertices];
+            double cx = random.nextDouble() * 360 - 180;
+            double cy = random.nextDouble() * 180 - 90;
+            for (int j = 0; j < vertices; j++) {
+                coordinates[j] = new Coordinate(cx + random.nextDouble(), cy + random.nextDouble());
+            }
+            if (i % 2 == 0) {
+                coordinates[vertices - 1] = coordinates[0];
+                geometries.add(gf.createPolygon(coordinates));
+            } else {
+                geometries.add(gf.createLineString(coordinates));
+            }
+        }
+    }
+
+    @Benchmark
+    public long streaming() {
+        DiscardingWriter writer = new DiscardingWriter();
+        GeoJSONBuilder builder = new GeoJSONBuilder(writer);
+        builder.setNumberOfDecimals(numDecimals);
+        builder.array();
+        for (Geometry geometry : geometries) {
+            builder.object().key("type").value("Feature").key("geometry");
+            builder.writeGeom(geometry);
+            builder.endObject();
+        }
+        builder.endArray();
+        return writer.count;
+    }
+
+    @Benchmark
+    public long jsonBuilder() {
+        DiscardingWriter writer = new DiscardingWriter();
+        JSONBuilder builder = new JSONBuilder(writer);
+        builder.array();
+        for (Geometry geometry : geometries) {
+            builder.object().key("type").value("Feature").key("geometry");
+            builder.object().key("type").value(geometry.getGeometryType()).key("coordinates");
+            if (geometry instanceof Polygon) {
+                Polygon polygon = (Polygon) geometry;
+                builder.array();
+                writeCoordinates(builder, polygon.getExteriorRing().getCoordinateSequence());
+                for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                    writeCoordinates(builder, polygon.getInteriorRingN(i).getCoordinateSequence());
+                }
+                builder.endArray();
+            } else {
+                writeCoordinates(builder, ((LineString) geometry).getCoordinateSequence());
+            }
+            builder.endObject();
+            builder.endObject();
+        }
+        builder.endArray();
+        return writer.count;
+    }
+
+    private void writeCoordinates(JSONBuilder builder, CoordinateSequence coordinates) {
+        builder.array();
+        for (int i = 0; i < coordinates.size(); i++) {
+            builder.array();
+            builder.value(RoundingUtil.round(coordinates.getX(i), numDecimals));
+            builder.value(RoundingUtil.round(coordinates.getY(i), numDecimals));
+            builder.endArray();
+        }
+        builder.endArray();
+    }
+
+    /** Counts the output chars and throws them away */
+    static class DiscardingWriter extends Writer {
+        long count;
+
+        @Override
+        public void write(int c) {
+            count++;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,131 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks.wms;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.geoserver.wms.map.png.PNGJWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the single threaded PNGJ encoding of large maps against the parallel band compression,
+ * on palette and RGBA images, at the default PNG quality
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(
+        value = 1,
+        jvmArgs = {"-Xmx2g", "-Djava.awt.headless=true"})
+public class PNGEncodingBenchmark {
+
+    /** Matches the default PNG compression of 25% */
+    static final float QUALITY = 0.75f;
+
+    @Param({"palette", "rgba"})
+    String type;
+
+    @Param({"4096"})
+    int size;
+
+    BufferedImage image;
+
+    PNGJWriter writer = new PNGJWriter();
+
+    @Setup
+    public void setup() {
+        if ("palette".equals(type)) {
+            image = paint(paletteImage(size, size));
+        } else {
+            image = paint(new BufferedImage(size, size, BufferedImage.TYPE_4BYTE_ABGR));
+        }
+    }
+
+    @Benchmark
+    public long pngj() {
+        CountingOutputStream out = new CountingOutputStream();
+        writer.writePNG(image, out, QUALITY, null, false);
+        return out.count;
+    }
+
+    @Benchmark
+    public long parallel() {
+        CountingOutputStream out = new CountingOutputStream();
+        writer.writePNG(image, out, QUALITY, null, true);
+        return out.count;
+    }
+
+    private BufferedImage paletteImage(int width, int height) {
+        byte[] r = new byte[256];
+        byte[] g = new byte[256];
+        byte[] b = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            r[i] = (byte) i;
+            g[i] = (byte) (255 - i);
+            b[i] = (byte) (i * 37);
+        }
+        // first entry transparent
+        IndexColorModel icm = new IndexColorModel(8, 256, r, g, b, 0);
+        return new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, icm);
+    }
+
+    private BufferedImage paint(BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(
+                RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        Random random = new Random(0);
+        for (int i = 0; i < 50; i++) {
+            graphics.setColor(
+                    new Color(
+                            random.nextInt(256),
+                            random.nextInt(256),
+                            random.nextInt(256),
+                            random.nextInt(256)));
+            double diameter = random.nextDouble() * image.getWidth() / 2;
+            graphics.fill(
+                    new Ellipse2D.Double(
+                            random.nextDouble() * image.getWidth(),
+                            random.nextDouble() * image.getHeight(),
+                            diameter,
+                            diameter));
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    /** Counts the encoded bytes and throws them away */
+    static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
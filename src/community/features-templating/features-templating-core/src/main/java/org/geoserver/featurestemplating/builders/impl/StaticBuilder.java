@@ -4,11 +4,13 @@
  */
 package org.geoserver.featurestemplating.builders.impl;
 
+import com.fasterxml.jackson.core.SerializableString;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.io.IOException;
 import java.util.Objects;
 import org.geoserver.featurestemplating.builders.AbstractTemplateBuilder;
 import org.geoserver.featurestemplating.builders.visitors.TemplateVisitor;
+import org.geoserver.featurestemplating.writers.CommonJSONWriter;
 import org.geoserver.featurestemplating.writers.TemplateOutputWriter;
 import org.xml.sax.helpers.NamespaceSupport;
 
@@ -18,6 +20,11 @@ public class StaticBuilder extends AbstractTemplateBuilder {
     protected JsonNode staticValue;
     protected String strValue;
 
+    /** The key and the value serialized upfront, set when the template gets compiled */
+    protected SerializableString serializedKey;
+
+    protected SerializableString serializedValue;
+
     public StaticBuilder(String key, JsonNode value, NamespaceSupport namespaces) {
         super(key, namespaces);
         this.staticValue = value;
@@ -32,6 +39,8 @@ public StaticBuilder(StaticBuilder original, boolean includeChildren) {
         super(original, includeChildren);
         this.strValue = original.getStrValue();
         this.staticValue = original.getStaticValue();
+        this.serializedKey = original.serializedKey;
+        this.serializedValue = original.serializedValue;
     }
 
     @Override
@@ -44,6 +53,12 @@ public void evaluate(TemplateOutputWriter writer, TemplateBuilderContext context
 
     protected void evaluateInternal(TemplateOutputWriter writer, TemplateBuilderContext context)
             throws IOException {
+        if (serializedValue != null
+                && writer instanceof CommonJSONWriter
+                && ((CommonJSONWriter) writer).canWriteSerializedContent()) {
+            ((CommonJSONWriter) writer).writeSerializedContent(serializedKey, serializedValue);
+            return;
+        }
         addChildrenEvaluationToEncodingHints(writer, context);
         String key = getKey(context);
         if (strValue != null) writer.writeStaticContent(key, strValue, getEncodingHints());
@@ -63,6 +78,22 @@ public String getStrValue() {
         return strValue;
     }
 
+    /**
+     * Set the key and the value serialized upfront, to be copied as is to JSON outputs
+     *
+     * @param serializedKey the serialized key.
+     * @param serializedValue the serialized value.
+     */
+    public void setSerializedContent(
+            SerializableString serializedKey, SerializableString serializedValue) {
+        this.serializedKey = serializedKey;
+        this.serializedValue = serializedValue;
+    }
+
+    public SerializableString getSerializedValue() {
+        return serializedValue;
+    }
+
     @Override
     public Object accept(TemplateVisitor visitor, Object value) {
         return visitor.visit(this, value);
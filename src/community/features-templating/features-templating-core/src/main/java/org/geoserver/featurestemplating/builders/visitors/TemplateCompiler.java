@@ -0,0 +1,205 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.featurestemplating.builders.visitors;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.geoserver.featurestemplating.builders.AbstractTemplateBuilder;
+import org.geoserver.featurestemplating.builders.SourceBuilder;
+import org.geoserver.featurestemplating.builders.flat.FlatBuilder;
+import org.geoserver.featurestemplating.builders.impl.CompositeBuilder;
+import org.geoserver.featurestemplating.builders.impl.DynamicJsonBuilder;
+import org.geoserver.featurestemplating.builders.impl.DynamicValueBuilder;
+import org.geoserver.featurestemplating.builders.impl.IteratingBuilder;
+import org.geoserver.featurestemplating.builders.impl.StaticBuilder;
+import org.geoserver.featurestemplating.expressions.IndexedPropertyName;
+import org.geoserver.featurestemplating.expressions.PropertyPathFunction;
+import org.geoserver.featurestemplating.expressions.XpathFunction;
+import org.geoserver.featurestemplating.writers.GeoJSONWriter;
+import org.geotools.filter.AttributeExpressionImpl;
+import org.geotools.filter.FilterAttributeExtractor;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Function;
+import org.opengis.filter.expression.Literal;
+
+/**
+ * Compiles a builder tree against the feature type it is going to be evaluated on. The visitor
+ * replaces plain attribute references with {@link IndexedPropertyName}, serializes upfront the
+ * static content that does not depend on the features, and collects the properties read by the
+ * template. When the properties cannot be determined, e.g. because the template uses sources,
+ * relative paths or the feature type is complex, {@link #getPropertyNames()} returns null.
+ */
+public class TemplateCompiler extends DefaultTemplateVisitor {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final String FEATURE_ID = "@id";
+
+    private SimpleFeatureType simpleType;
+
+    private Set<String> properties = new HashSet<>();
+
+    private boolean allProperties;
+
+    public TemplateCompiler(FeatureType type) {
+        if (type instanceof SimpleFeatureType) this.simpleType = (SimpleFeatureType) type;
+        else this.allProperties = true;
+    }
+
+    @Override
+    public Object visit(SourceBuilder sourceBuilder, Object extradata) {
+        if (sourceBuilder.getSource() != null) allProperties = true;
+        collectProperties(sourceBuilder);
+        return super.visit(sourceBuilder, extradata);
+    }
+
+    @Override
+    public Object visit(IteratingBuilder iteratingBuilder, Object extradata) {
+        return visit((SourceBuilder) iteratingBuilder, extradata);
+    }
+
+    @Override
+    public Object visit(CompositeBuilder compositeBuilder, Object extradata) {
+        return visit((SourceBuilder) compositeBuilder, extradata);
+    }
+
+    @Override
+    public Object visit(DynamicValueBuilder dynamicBuilder, Object extradata) {
+        collectProperties(dynamicBuilder);
+        // json builders expand their content at evaluation time, can't tell what they read
+        if (dynamicBuilder instanceof DynamicJsonBuilder || dynamicBuilder.getContextPos() > 0) {
+            allProperties = true;
+        } else {
+            AttributeExpressionImpl xpath = dynamicBuilder.getXpath();
+            if (xpath != null) {
+                String name = xpath.getPropertyName();
+                addProperty(name);
+                if (simpleType != null
+                        && xpath.getClass().equals(AttributeExpressionImpl.class)
+                        && IndexedPropertyName.canIndex(name)
+                        && simpleType.getDescriptor(name) != null) {
+                    dynamicBuilder.setXpath(
+                            new IndexedPropertyName(name, xpath.getNamespaceContext()));
+                }
+            }
+            collectProperties(dynamicBuilder.getCql());
+        }
+        return super.visit(dynamicBuilder, extradata);
+    }
+
+    @Override
+    public Object visit(StaticBuilder staticBuilder, Object extradata) {
+        collectProperties(staticBuilder);
+        if (!(staticBuilder instanceof FlatBuilder)
+                && staticBuilder.getChildren().isEmpty()
+                && staticBuilder.getKey() instanceof Literal) {
+            String key = staticBuilder.getKey().evaluate(null, String.class);
+            if (key != null && !key.isEmpty()) serialize(staticBuilder, key);
+        }
+        return super.visit(staticBuilder, extradata);
+    }
+
+    @Override
+    public Object visit(AbstractTemplateBuilder abstractTemplateBuilder, Object extradata) {
+        collectProperties(abstractTemplateBuilder);
+        return super.visit(abstractTemplateBuilder, extradata);
+    }
+
+    /**
+     * Returns the properties read by the template, in feature type order. The default geometry is
+     * always included, as the output encoders rely on it.
+     *
+     * @return the property names, or null if all the properties are needed.
+     */
+    public List<String> getPropertyNames() {
+        if (allProperties) return null;
+        GeometryDescriptor geometry = simpleType.getGeometryDescriptor();
+        List<String> result = new ArrayList<>();
+        for (AttributeDescriptor ad : simpleType.getAttributeDescriptors()) {
+            String name = ad.getLocalName();
+            if (properties.contains(name) || ad.equals(geometry)) result.add(name);
+        }
+        return result;
+    }
+
+    private void serialize(StaticBuilder staticBuilder, String key) {
+        if (staticBuilder.getStrValue() == null && staticBuilder.getStaticValue() == null) return;
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            // use the same code as the evaluation, to get the very same output
+            if (staticBuilder.getStrValue() != null)
+                generator.writeString(staticBuilder.getStrValue());
+            else
+                new GeoJSONWriter(generator)
+                        .writeStaticContent(null, staticBuilder.getStaticValue(), null);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        String value = out.toString();
+        if (!value.isEmpty())
+            staticBuilder.setSerializedContent(
+                    new SerializedString(key), new SerializedString(value));
+    }
+
+    private void collectProperties(AbstractTemplateBuilder builder) {
+        if (!(builder.getKey() instanceof Literal)) collectProperties(builder.getKey());
+        Filter filter = builder.getFilter();
+        if (filter != null) {
+            if (builder.getFilterContextPos() > 0) allProperties = true;
+            PropertyExtractor extractor = new PropertyExtractor();
+            filter.accept(extractor, null);
+            addProperties(extractor);
+        }
+    }
+
+    private void collectProperties(Expression expression) {
+        if (expression != null) {
+            PropertyExtractor extractor = new PropertyExtractor();
+            expression.accept(extractor, null);
+            addProperties(extractor);
+        }
+    }
+
+    private void addProperties(PropertyExtractor extractor) {
+        if (extractor.dynamicPath) allProperties = true;
+        extractor.getAttributeNameSet().forEach(n -> addProperty(n));
+    }
+
+    private void addProperty(String name) {
+        if (allProperties || FEATURE_ID.equals(name)) return;
+        if (simpleType.getDescriptor(name) != null) properties.add(name);
+        // a path, a prefixed name, or something that is not a simple feature attribute
+        else allProperties = true;
+    }
+
+    /**
+     * Extracts the property names, taking note of functions resolving the properties at evaluation
+     * time
+     */
+    private static class PropertyExtractor extends FilterAttributeExtractor {
+
+        boolean dynamicPath;
+
+        @Override
+        public Object visit(Function expression, Object data) {
+            if (expression instanceof XpathFunction
+                    || expression instanceof PropertyPathFunction
+                    || "property".equals(expression.getName())) dynamicPath = true;
+            return super.visit(expression, data);
+        }
+    }
+}
@@ -23,6 +23,7 @@ public class Template {
     private Resource templateFile;
     private FileWatcher<RootBuilder> watcher;
     private RootBuilder builderTree;
+    private volatile TemplatePlan plan;
 
     private static final Logger LOGGER = Logging.getLogger(Template.class);
 
@@ -48,6 +49,7 @@ public boolean checkTemplate() {
                     try {
                         RootBuilder root = watcher.read();
                         this.builderTree = root;
+                        this.plan = null;
                         return true;
                     } catch (IOException ioe) {
                         throw new RuntimeException(ioe);
@@ -69,6 +71,7 @@ public void reloadTemplate() {
                 try {
                     RootBuilder root = watcher.read();
                     this.builderTree = root;
+                    this.plan = null;
                 } catch (IOException ioe) {
                     throw new RuntimeException(ioe);
                 }
@@ -84,4 +87,17 @@ public void reloadTemplate() {
     public RootBuilder getRootBuilder() {
         return builderTree;
     }
+
+    /**
+     * Provides the plan obtained compiling the builder tree against the feature type, if any
+     *
+     * @return the TemplatePlan, or null if the builder tree has not been compiled yet
+     */
+    public TemplatePlan getPlan() {
+        return plan;
+    }
+
+    public void setPlan(TemplatePlan plan) {
+        this.plan = plan;
+    }
 }
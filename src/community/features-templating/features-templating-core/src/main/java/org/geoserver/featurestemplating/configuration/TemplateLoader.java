@@ -21,6 +21,7 @@
 import org.geoserver.config.GeoServerDataDirectory;
 import org.geoserver.featurestemplating.builders.impl.RootBuilder;
 import org.geoserver.featurestemplating.builders.visitors.SimplifiedPropertyReplacer;
+import org.geoserver.featurestemplating.builders.visitors.TemplateCompiler;
 import org.geoserver.featurestemplating.readers.TemplateReaderConfiguration;
 import org.geoserver.featurestemplating.validation.TemplateValidator;
 import org.geoserver.ows.Dispatcher;
@@ -64,13 +65,8 @@ public TemplateLoader(GeoServerDataDirectory dd) {
      */
     public RootBuilder getTemplate(FeatureTypeInfo typeInfo, String outputFormat, Request request)
             throws ExecutionException {
-        String templateIdentifier =
-                request == null
-                        ? evaluatesTemplateRule(typeInfo)
-                        : evaluatesTemplateRule(typeInfo, request);
-        if (templateIdentifier == null)
-            templateIdentifier = TemplateIdentifier.fromOutputFormat(outputFormat).getFilename();
-        return getTemplateByIdentifier(typeInfo, templateIdentifier);
+        TemplatePlan plan = getTemplatePlan(typeInfo, outputFormat, request);
+        return plan != null ? plan.getRootBuilder() : null;
     }
 
     /**
@@ -88,7 +84,43 @@ public RootBuilder getTemplate(FeatureTypeInfo typeInfo, String outputFormat)
         return getTemplate(typeInfo, outputFormat, null);
     }
 
-    private RootBuilder getTemplateByIdentifier(FeatureTypeInfo typeInfo, String templateIdentifier)
+    /**
+     * Get the template related to the featureType, compiled against it. The template is looked up
+     * as in {@link #getTemplate(FeatureTypeInfo, String, Request)}.
+     *
+     * @param typeInfo the FeatureTypeInfo for which retrieve the template.
+     * @param outputFormat the output format for which retrieve the template.
+     * @param request the ows request can be null.
+     * @return the TemplatePlan, or null if no template was found.
+     * @throws ExecutionException
+     */
+    public TemplatePlan getTemplatePlan(
+            FeatureTypeInfo typeInfo, String outputFormat, Request request)
+            throws ExecutionException {
+        String templateIdentifier =
+                request == null
+                        ? evaluatesTemplateRule(typeInfo)
+                        : evaluatesTemplateRule(typeInfo, request);
+        if (templateIdentifier == null)
+            templateIdentifier = TemplateIdentifier.fromOutputFormat(outputFormat).getFilename();
+        return getPlanByIdentifier(typeInfo, templateIdentifier);
+    }
+
+    /**
+     * Get the template related to the featureType, compiled against it. The template is looked up
+     * as in {@link #getTemplate(FeatureTypeInfo, String)}.
+     *
+     * @param typeInfo the FeatureTypeInfo for which retrieve the template.
+     * @param outputFormat the output format for which retrieve the template.
+     * @return the TemplatePlan, or null if no template was found.
+     * @throws ExecutionException
+     */
+    public TemplatePlan getTemplatePlan(FeatureTypeInfo typeInfo, String outputFormat)
+            throws ExecutionException {
+        return getTemplatePlan(typeInfo, outputFormat, null);
+    }
+
+    private TemplatePlan getPlanByIdentifier(FeatureTypeInfo typeInfo, String templateIdentifier)
             throws ExecutionException {
         CacheKey key = new CacheKey(typeInfo, templateIdentifier);
         Template template = templateCache.get(key);
@@ -99,6 +131,7 @@ private RootBuilder getTemplateByIdentifier(FeatureTypeInfo typeInfo, String tem
 
         if (updateCache) {
             replaceSimplifiedPropertiesIfNeeded(key.getResource(), template.getRootBuilder());
+            compileTemplate(key.getResource(), template);
             templateCache.put(key, template);
         }
 
@@ -113,7 +146,35 @@ private RootBuilder getTemplateByIdentifier(FeatureTypeInfo typeInfo, String tem
                                 + URI.decode(validator.getFailingAttribute()));
             }
         }
-        return root;
+        return compileTemplate(key.getResource(), template);
+    }
+
+    /**
+     * Compiles the template builder tree against the feature type, unless already done for the
+     * current feature type, and stores the resulting plan in the template. The cache key only
+     * matches the feature type name, so the plan is compiled again when the schema changes.
+     */
+    private TemplatePlan compileTemplate(FeatureTypeInfo featureTypeInfo, Template template) {
+        RootBuilder root = template.getRootBuilder();
+        if (root == null) return null;
+        FeatureType featureType;
+        try {
+            featureType = featureTypeInfo.getFeatureType();
+        } catch (IOException e) {
+            throw new RuntimeException(
+                    "Error retrieving FeatureType "
+                            + featureTypeInfo.getName()
+                            + "Exception is: "
+                            + e.getMessage());
+        }
+        TemplatePlan plan = template.getPlan();
+        if (plan == null || plan.getRootBuilder() != root || plan.getFeatureType() != featureType) {
+            TemplateCompiler compiler = new TemplateCompiler(featureType);
+            root.accept(compiler, null);
+            plan = new TemplatePlan(root, compiler.getPropertyNames(), featureType);
+            template.setPlan(plan);
+        }
+        return plan;
     }
 
     /**
@@ -279,6 +340,7 @@ public Template load(CacheKey key) {
             RootBuilder builder = template.getRootBuilder();
             if (builder != null) {
                 replaceSimplifiedPropertiesIfNeeded(key.getResource(), builder);
+                compileTemplate(key.getResource(), template);
             }
             return template;
         }
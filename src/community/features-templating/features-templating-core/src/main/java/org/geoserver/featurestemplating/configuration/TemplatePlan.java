@@ -0,0 +1,61 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.featurestemplating.configuration;
+
+import java.util.List;
+import org.geoserver.featurestemplating.builders.impl.RootBuilder;
+import org.geoserver.featurestemplating.builders.visitors.TemplateCompiler;
+import org.opengis.feature.type.FeatureType;
+
+/**
+ * The result of compiling a template against the feature type it is applied to, by means of a
+ * {@link TemplateCompiler}: the optimized builder tree and the properties it reads from the
+ * features.
+ */
+public class TemplatePlan {
+
+    private final RootBuilder rootBuilder;
+
+    private final List<String> propertyNames;
+
+    private final FeatureType featureType;
+
+    public TemplatePlan(
+            RootBuilder rootBuilder, List<String> propertyNames, FeatureType featureType) {
+        this.rootBuilder = rootBuilder;
+        this.propertyNames = propertyNames;
+        this.featureType = featureType;
+    }
+
+    /**
+     * Provides the compiled builder tree
+     *
+     * @return the builder tree as a RootBuilder
+     */
+    public RootBuilder getRootBuilder() {
+        return rootBuilder;
+    }
+
+    /**
+     * Provides the properties the template needs to be evaluated, that can be used to restrict the
+     * query fetching the features
+     *
+     * @return the property names, or null if they cannot be determined and all properties are
+     *     needed
+     */
+    public List<String> getPropertyNames() {
+        return propertyNames;
+    }
+
+    /**
+     * Provides the feature type the template was compiled against. The plan is stale if the feature
+     * type of the layer is not this very instance anymore, e.g. after a schema change
+     *
+     * @return the feature type
+     */
+    public FeatureType getFeatureType() {
+        return featureType;
+    }
+}
@@ -0,0 +1,81 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.featurestemplating.expressions;
+
+import org.geotools.filter.AttributeExpressionImpl;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.xml.sax.helpers.NamespaceSupport;
+
+/**
+ * A property name referencing a top level attribute of a simple feature by name, that resolves the
+ * attribute index once per feature type and then reads the value by index, skipping the property
+ * accessor lookup. Any other evaluation is delegated to the {@link AttributeExpressionImpl} logic.
+ */
+public class IndexedPropertyName extends AttributeExpressionImpl {
+
+    private volatile TypeIndex typeIndex;
+
+    public IndexedPropertyName(String name, NamespaceSupport namespaces) {
+        super(name, namespaces);
+    }
+
+    /**
+     * Checks if the property name can be evaluated by index, that is, if it is a plain attribute
+     * name, without namespace prefix, xpath steps, predicates or attribute references.
+     *
+     * @param name the property name.
+     * @return true if the name can be evaluated by index.
+     */
+    public static boolean canIndex(String name) {
+        if (name == null || name.isEmpty() || name.equals(".")) return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '/' || c == '@' || c == '[' || c == ':') return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Object evaluate(Object obj) {
+        int index = getIndex(obj);
+        if (index >= 0) return ((SimpleFeature) obj).getAttribute(index);
+        return super.evaluate(obj);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T evaluate(Object obj, Class<T> target) {
+        if (target == null) {
+            int index = getIndex(obj);
+            if (index >= 0) return (T) ((SimpleFeature) obj).getAttribute(index);
+        }
+        return super.evaluate(obj, target);
+    }
+
+    private int getIndex(Object obj) {
+        if (!(obj instanceof SimpleFeature)) return -1;
+        SimpleFeatureType type = ((SimpleFeature) obj).getFeatureType();
+        TypeIndex current = typeIndex;
+        // features can be retyped, e.g., when the query selects a subset of the properties
+        if (current == null || current.type != type) {
+            current = new TypeIndex(type, type.indexOf(getPropertyName()));
+            typeIndex = current;
+        }
+        return current.index;
+    }
+
+    /** The attribute index for a given feature type */
+    private static final class TypeIndex {
+        final SimpleFeatureType type;
+
+        final int index;
+
+        TypeIndex(SimpleFeatureType type, int index) {
+            this.type = type;
+            this.index = index;
+        }
+    }
+}
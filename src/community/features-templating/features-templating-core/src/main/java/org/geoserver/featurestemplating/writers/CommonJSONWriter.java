@@ -8,6 +8,7 @@
 import static org.geoserver.featurestemplating.builders.EncodingHints.isSingleFeatureRequest;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.SerializableString;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
@@ -61,6 +62,32 @@ public void writeStaticContent(String key, Object staticContent, EncodingHints e
             else writeValueNode(key, jsonNode);
         }
     }
+
+    /**
+     * Checks if content serialized upfront can be copied to the output as is, that is, if the
+     * generator is neither indenting the output nor escaping characters in a custom way
+     *
+     * @return true if {@link #writeSerializedContent(SerializableString, SerializableString)} can
+     *     be used
+     */
+    public boolean canWriteSerializedContent() {
+        return generator.getPrettyPrinter() == null
+                && generator.getCharacterEscapes() == null
+                && generator.getHighestEscapedChar() == 0;
+    }
+
+    /**
+     * Write a field whose value has been serialized upfront. Used with {@link StaticBuilder} to
+     * write constant content without walking the json tree for every feature
+     *
+     * @param key the field name.
+     * @param value the serialized field value.
+     */
+    public void writeSerializedContent(SerializableString key, SerializableString value)
+            throws IOException {
+        generator.writeFieldName(key);
+        generator.writeRawValue(value);
+    }
     /**
      * Write contents from a Json Object. Used with {@link StaticBuilder} to write content as it is
      * from the json-ld template to the json-ld output
@@ -0,0 +1,153 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.featurestemplating.builders.visitors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.geoserver.featurestemplating.builders.TemplateBuilder;
+import org.geoserver.featurestemplating.builders.impl.CompositeBuilder;
+import org.geoserver.featurestemplating.builders.impl.DynamicValueBuilder;
+import org.geoserver.featurestemplating.builders.impl.RootBuilder;
+import org.geoserver.featurestemplating.builders.impl.StaticBuilder;
+import org.geoserver.featurestemplating.builders.impl.TemplateBuilderContext;
+import org.geoserver.featurestemplating.expressions.IndexedPropertyName;
+import org.geoserver.featurestemplating.writers.GeoJSONWriter;
+import org.geotools.data.DataTestCase;
+import org.geotools.data.DataUtilities;
+import org.geotools.filter.AttributeExpressionImpl;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.xml.sax.helpers.NamespaceSupport;
+
+public class TemplateCompilerTest extends DataTestCase {
+
+    @Test
+    public void testPropertyNames() throws Exception {
+        NamespaceSupport ns = new NamespaceSupport();
+        DynamicValueBuilder name = new DynamicValueBuilder("name", "${name}", ns);
+        RootBuilder root = buildRoot(name);
+
+        TemplateCompiler compiler = new TemplateCompiler(roadType);
+        root.accept(compiler, null);
+
+        // the default geometry is always there
+        assertEquals(Arrays.asList("geom", "name"), compiler.getPropertyNames());
+        assertTrue(name.getXpath() instanceof IndexedPropertyName);
+    }
+
+    @Test
+    public void testPropertyNamesFromExpressionAndFilter() throws Exception {
+        NamespaceSupport ns = new NamespaceSupport();
+        DynamicValueBuilder name = new DynamicValueBuilder("name", "$${strToUpperCase(name)}", ns);
+        name.setFilter("id > 0");
+        RootBuilder root = buildRoot(name);
+
+        TemplateCompiler compiler = new TemplateCompiler(roadType);
+        root.accept(compiler, null);
+
+        assertEquals(Arrays.asList("id", "geom", "name"), compiler.getPropertyNames());
+    }
+
+    @Test
+    public void testAllPropertiesWithSource() throws Exception {
+        NamespaceSupport ns = new NamespaceSupport();
+        CompositeBuilder composite = new CompositeBuilder("composite", ns, false);
+        composite.setSource("name");
+        composite.addChild(new DynamicValueBuilder("name", "${name}", ns));
+        RootBuilder root = buildRoot(composite);
+
+        TemplateCompiler compiler = new TemplateCompiler(roadType);
+        root.accept(compiler, null);
+
+        assertNull(compiler.getPropertyNames());
+    }
+
+    @Test
+    public void testAllPropertiesWithCurrentContext() throws Exception {
+        NamespaceSupport ns = new NamespaceSupport();
+        RootBuilder root = buildRoot(new DynamicValueBuilder("self", "${.}", ns));
+
+        TemplateCompiler compiler = new TemplateCompiler(roadType);
+        root.accept(compiler, null);
+
+        assertNull(compiler.getPropertyNames());
+    }
+
+    @Test
+    public void testAllPropertiesWithUnknownAttribute() throws Exception {
+        NamespaceSupport ns = new NamespaceSupport();
+        DynamicValueBuilder notThere = new DynamicValueBuilder("k1", "${notThere}", ns);
+        RootBuilder root = buildRoot(notThere);
+
+        TemplateCompiler compiler = new TemplateCompiler(roadType);
+        root.accept(compiler, null);
+
+        assertNull(compiler.getPropertyNames());
+        // not indexed either
+        assertEquals(AttributeExpressionImpl.class, notThere.getXpath().getClass());
+    }
+
+    @Test
+    public void testCompiledOutput() throws Exception {
+        NamespaceSupport ns = new NamespaceSupport();
+        StaticBuilder type = new StaticBuilder("type", "Feature", ns);
+        StaticBuilder object =
+                new StaticBuilder(
+                        "object",
+                        new ObjectMapper()
+                                .readTree(
+                                        "{\"a\":[1,2.5,true,null,\"x\\u00e8\"],\"b\":{\"c\":\"d\"}}"),
+                        ns);
+        DynamicValueBuilder name = new DynamicValueBuilder("name", "${name}", ns);
+        RootBuilder root = buildRoot(type, object, name);
+
+        byte[] expected = evaluate(root, roadFeatures[0]);
+        root.accept(new TemplateCompiler(roadType), null);
+
+        assertNotNull(type.getSerializedValue());
+        assertNotNull(object.getSerializedValue());
+        assertArrayEquals(expected, evaluate(root, roadFeatures[0]));
+    }
+
+    @Test
+    public void testIndexedPropertyNameRetyped() throws Exception {
+        IndexedPropertyName name = new IndexedPropertyName("name", null);
+        assertEquals("r1", name.evaluate(roadFeatures[0]));
+
+        SimpleFeatureType subType = DataUtilities.createSubType(roadType, new String[] {"name"});
+        SimpleFeature retyped = DataUtilities.reType(subType, roadFeatures[1]);
+        assertEquals("r2", name.evaluate(retyped));
+        assertEquals("r2", name.evaluate(retyped, String.class));
+        assertEquals("r1", name.evaluate(roadFeatures[0]));
+    }
+
+    private RootBuilder buildRoot(TemplateBuilder... children) {
+        RootBuilder root = new RootBuilder();
+        for (TemplateBuilder child : children) root.addChild(child);
+        return root;
+    }
+
+    private byte[] evaluate(RootBuilder root, SimpleFeature feature) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        GeoJSONWriter writer =
+                new GeoJSONWriter(new JsonFactory().createGenerator(baos, JsonEncoding.UTF8));
+        writer.writeStartObject();
+        root.evaluate(writer, new TemplateBuilderContext(feature));
+        writer.writeEndObject();
+        writer.close();
+        return baos.toByteArray();
+    }
+}
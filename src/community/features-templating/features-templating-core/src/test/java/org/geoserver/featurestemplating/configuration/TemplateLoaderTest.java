@@ -0,0 +1,77 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.featurestemplating.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.geoserver.catalog.AttributeTypeInfo;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.config.GeoServerDataDirectory;
+import org.geoserver.data.test.MockData;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.junit.After;
+import org.junit.Test;
+
+public class TemplateLoaderTest extends GeoServerSystemTestSupport {
+
+    private static final String TEMPLATE =
+            "{\"features\":[{\"id\":\"${FID}\",\"geometry\":\"${the_geom}\"}]}";
+
+    @After
+    public void cleanup() throws Exception {
+        Catalog catalog = getCatalog();
+        FeatureTypeInfo typeInfo = catalog.getFeatureTypeByName(getLayerId(MockData.NAMED_PLACES));
+        template(typeInfo).delete();
+        typeInfo.getAttributes().clear();
+        catalog.save(typeInfo);
+        TemplateLoader.get().reset();
+    }
+
+    private Resource template(FeatureTypeInfo typeInfo) {
+        GeoServerDataDirectory dd = getDataDirectory();
+        return dd.get(typeInfo, TemplateIdentifier.GEOJSON.getFilename());
+    }
+
+    @Test
+    public void testRecompileOnSchemaChange() throws Exception {
+        Catalog catalog = getCatalog();
+        FeatureTypeInfo typeInfo = catalog.getFeatureTypeByName(getLayerId(MockData.NAMED_PLACES));
+        template(typeInfo).setContents(TEMPLATE.getBytes(StandardCharsets.UTF_8));
+
+        TemplateLoader loader = TemplateLoader.get();
+        String outputFormat = TemplateIdentifier.GEOJSON.getOutputFormat();
+        TemplatePlan plan = loader.getTemplatePlan(typeInfo, outputFormat);
+        assertEquals(Arrays.asList("the_geom", "FID", "NAME"), attributes(plan));
+        assertEquals(Arrays.asList("the_geom", "FID"), plan.getPropertyNames());
+        assertSame(plan, loader.getTemplatePlan(typeInfo, outputFormat));
+
+        // drop an attribute the template does not use, the schema changes
+        List<AttributeTypeInfo> attributes = catalog.getResourcePool().loadAttributes(typeInfo);
+        attributes.removeIf(a -> a.getName().equals("NAME"));
+        typeInfo.getAttributes().addAll(attributes);
+        catalog.save(typeInfo);
+        typeInfo = catalog.getFeatureTypeByName(getLayerId(MockData.NAMED_PLACES));
+
+        TemplatePlan recompiled = loader.getTemplatePlan(typeInfo, outputFormat);
+        assertNotSame(plan, recompiled);
+        assertSame(typeInfo.getFeatureType(), recompiled.getFeatureType());
+        assertEquals(Arrays.asList("the_geom", "FID"), attributes(recompiled));
+        assertEquals(Arrays.asList("the_geom", "FID"), recompiled.getPropertyNames());
+    }
+
+    private List<String> attributes(TemplatePlan plan) {
+        return plan.getFeatureType().getDescriptors().stream()
+                .map(d -> d.getName().getLocalPart())
+                .collect(Collectors.toList());
+    }
+}
@@ -4,6 +4,7 @@
  */
 package org.geoserver.featurestemplating.ows;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -15,6 +16,7 @@
 import org.geoserver.featurestemplating.builders.impl.RootBuilder;
 import org.geoserver.featurestemplating.configuration.TemplateIdentifier;
 import org.geoserver.featurestemplating.configuration.TemplateLoader;
+import org.geoserver.featurestemplating.configuration.TemplatePlan;
 import org.geoserver.featurestemplating.request.TemplatePathVisitor;
 import org.geoserver.ows.AbstractDispatcherCallback;
 import org.geoserver.ows.Dispatcher;
@@ -31,6 +33,7 @@
 import org.geotools.feature.NameImpl;
 import org.geotools.filter.text.ecql.ECQL;
 import org.geotools.util.logging.Logging;
+import org.opengis.feature.type.FeatureType;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
 
@@ -78,7 +81,7 @@ public Operation operationDispatched(Request request, Operation operation) {
 
     // iterate over queries to eventually handle a templates query paths
     private void handleTemplateFilters(List<Query> queries, String outputFormat)
-            throws ExecutionException {
+            throws ExecutionException, IOException {
         for (Query q : queries) {
             List<FeatureTypeInfo> featureTypeInfos = getFeatureTypeInfoFromQuery(q);
             List<RootBuilder> rootBuilders =
@@ -89,10 +92,39 @@ private void handleTemplateFilters(List<Query> queries, String outputFormat)
                     RootBuilder root = rootBuilders.get(i);
                     replaceTemplatePath(q, fti, root);
                 }
+                selectTemplateProperties(q, featureTypeInfos, outputFormat);
             }
         }
     }
 
+    // restricts the query to the properties read by the template, when the template
+    // compilation was able to determine them and the request did not select any property
+    private void selectTemplateProperties(
+            Query q, List<FeatureTypeInfo> featureTypeInfos, String outputFormat)
+            throws ExecutionException, IOException {
+        List<String> requested = q.getPropertyNames();
+        if (featureTypeInfos.size() != 1 || (requested != null && !requested.isEmpty())) return;
+        FeatureTypeInfo typeInfo = featureTypeInfos.get(0);
+        TemplateIdentifier identifier = TemplateIdentifier.fromOutputFormat(outputFormat);
+        TemplatePlan plan = configuration.getTemplatePlan(typeInfo, identifier.getOutputFormat());
+        if (plan != null && plan.getPropertyNames() != null) {
+            // the schema might have changed since the plan was compiled, in doubt read everything
+            FeatureType schema = typeInfo.getFeatureType();
+            for (String name : plan.getPropertyNames()) {
+                if (schema.getDescriptor(name) == null) {
+                    LOGGER.fine(
+                            "Property "
+                                    + name
+                                    + " not found in "
+                                    + typeInfo.getName()
+                                    + ", not restricting the query properties");
+                    return;
+                }
+            }
+            q.setPropertyNames(new ArrayList<>(plan.getPropertyNames()));
+        }
+    }
+
     // get the FeatureTypeInfo from the query
     private List<FeatureTypeInfo> getFeatureTypeInfoFromQuery(Query q) {
         List<FeatureTypeInfo> typeInfos = new ArrayList<>();
@@ -18,7 +18,9 @@
 import org.geoserver.config.GeoServerPluginConfigurator;
 import org.geoserver.flow.ControlFlowConfigurator;
 import org.geoserver.flow.FlowController;
+import org.geoserver.flow.controller.AdaptiveThreadBlocker;
 import org.geoserver.flow.controller.BasicOWSController;
+import org.geoserver.flow.controller.ConcurrentPriorityThreadBlocker;
 import org.geoserver.flow.controller.CookieKeyGenerator;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.HttpHeaderPriorityProvider;
@@ -29,9 +31,11 @@
 import org.geoserver.flow.controller.PriorityProvider;
 import org.geoserver.flow.controller.PriorityThreadBlocker;
 import org.geoserver.flow.controller.RateFlowController;
+import org.geoserver.flow.controller.SemaphoreThreadBlocker;
 import org.geoserver.flow.controller.SimpleThreadBlocker;
 import org.geoserver.flow.controller.SingleIpFlowController;
 import org.geoserver.flow.controller.ThreadBlocker;
+import org.geoserver.flow.controller.TokenBucketFlowController;
 import org.geoserver.flow.controller.UserConcurrentFlowController;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.GeoServerResourceLoader;
@@ -50,11 +54,19 @@
  */
 public class DefaultControlFlowConfigurator
         implements ControlFlowConfigurator, GeoServerPluginConfigurator {
-    static final Pattern RATE_PATTERN = Pattern.compile("(\\d+)/([smhd])(;(\\d+)s)?");
+    static final Pattern RATE_PATTERN =
+            Pattern.compile("(\\d+)/([smhd])(;(\\d+)s)?(;burst=(\\d+))?");
+
+    static final Pattern ADAPTIVE_PATTERN =
+            Pattern.compile(
+                    "adaptive\\(\\s*(\\d+)\\s*,\\s*(\\d+)\\s*(,\\s*(\\d+(\\.\\d+)?)\\s*)?\\)");
 
     static final Logger LOGGER = Logging.getLogger(DefaultControlFlowConfigurator.class);
     static final String PROPERTYFILENAME = "controlflow.properties";
 
+    /** Key selecting the {@link ThreadBlocker} implementation, either "default" or "concurrent" */
+    static final String BLOCKER_KEY = "ows.blocker";
+
     /**
      * Factors out the code to build a rate flow controller
      *
@@ -65,7 +77,7 @@ public FlowController build(String[] keys, String value) {
             Matcher matcher = RATE_PATTERN.matcher(value);
             if (!matcher.matches()) {
                 LOGGER.severe(
-                        "Rate limiting rule values should be expressed as <rate</<unit>[;<delay>s], "
+                        "Rate limiting rule values should be expressed as <rate</<unit>[;<delay>s][;burst=<size>], "
                                 + "where unit can be s, m, h or d. This one is invalid: "
                                 + value);
                 return null;
@@ -83,6 +95,16 @@ public FlowController build(String[] keys, String value) {
             String format = keys.length >= 5 ? keys[4] : null;
             OWSRequestMatcher requestMatcher = new OWSRequestMatcher(service, request, format);
             KeyGenerator keyGenerator = buildKeyGenerator(keys, value);
+            String burst = matcher.group(6);
+            if (burst != null) {
+                return new TokenBucketFlowController(
+                        requestMatcher,
+                        rate,
+                        interval,
+                        Integer.parseInt(burst),
+                        delay,
+                        keyGenerator);
+            }
             return new RateFlowController(requestMatcher, rate, interval, delay, keyGenerator);
         }
 
@@ -112,6 +134,7 @@ public List<FlowController> buildFlowControllers() throws Exception {
         Properties p = configFile.getProperties();
         List<FlowController> newControllers = new ArrayList<>();
         PriorityProvider priorityProvider = getPriorityProvider(p);
+        boolean concurrentBlockers = isConcurrentBlockers(p);
 
         for (Object okey : p.keySet()) {
             String key = ((String) okey).trim();
@@ -120,13 +143,21 @@ public List<FlowController> buildFlowControllers() throws Exception {
             String[] keys = key.split("\\s*\\.\\s*");
 
             int queueSize = 0;
+            ThreadBlocker adaptiveBlocker = null;
             StringTokenizer tokenizer = new StringTokenizer(value, ",");
             try {
                 // some properties are not integers
                 if ("ip.blacklist".equals(key)
                         || "ip.whitelist".equals(key)
-                        || "ows.priority.http".equals(key)) {
+                        || "ows.priority.http".equals(key)
+                        || BLOCKER_KEY.equals(key)) {
                     continue;
+                } else if ("ows".equals(keys[0]) && value.trim().startsWith("adaptive")) {
+                    adaptiveBlocker = buildAdaptiveBlocker(value.trim());
+                    if (adaptiveBlocker == null) {
+                        continue;
+                    }
+                    queueSize = ((AdaptiveThreadBlocker) adaptiveBlocker).getMaxLimit();
                 } else {
                     if (!key.startsWith("user.ows") && !key.startsWith("ip.ows")) {
                         if (tokenizer.countTokens() == 1) {
@@ -151,12 +182,17 @@ public List<FlowController> buildFlowControllers() throws Exception {
                 continue;
             }
             if ("ows.global".equalsIgnoreCase(key)) {
-                controller =
-                        new GlobalFlowController(
-                                queueSize, buildBlocker(queueSize, priorityProvider));
+                ThreadBlocker threadBlocker =
+                        adaptiveBlocker != null
+                                ? adaptiveBlocker
+                                : buildBlocker(queueSize, priorityProvider, concurrentBlockers);
+                controller = new GlobalFlowController(queueSize, threadBlocker);
             } else if ("ows".equals(keys[0])) {
                 // todo: check, if possible, if the service, method and output format actually exist
-                ThreadBlocker threadBlocker = buildBlocker(queueSize, priorityProvider);
+                ThreadBlocker threadBlocker =
+                        adaptiveBlocker != null
+                                ? adaptiveBlocker
+                                : buildBlocker(queueSize, priorityProvider, concurrentBlockers);
                 if (keys.length >= 4) {
                     controller =
                             new BasicOWSController(
@@ -250,19 +286,75 @@ private PriorityProvider getPriorityProvider(Properties p) {
         return null;
     }
 
+    /**
+     * Checks if the lock free blockers have been selected
+     *
+     * @param p the configuration properties
+     * @return true if the "ows.blocker" key is set to "concurrent"
+     */
+    private boolean isConcurrentBlockers(Properties p) {
+        String value = p.getProperty(BLOCKER_KEY);
+        if (value == null || "default".equalsIgnoreCase(value.trim())) {
+            return false;
+        } else if ("concurrent".equalsIgnoreCase(value.trim())) {
+            return true;
+        }
+        LOGGER.severe(
+                "Unexpected blocker specification found '"
+                        + value
+                        + "', valid values are default and concurrent");
+        return false;
+    }
+
     /**
      * Builds a {@link ThreadBlocker} based on a queue size and a prority provider
      *
      * @param queueSize The count of concurrent requests allowed to run
      * @param priorityProvider The priority provider (if not null, a {@link
      *     org.geoserver.flow.controller.PriorityThreadBlocker} will be built
+     * @param concurrent If true, the lock free blocker implementations will be used
      * @return a {@link ThreadBlocker}
      */
-    private ThreadBlocker buildBlocker(int queueSize, PriorityProvider priorityProvider) {
+    private ThreadBlocker buildBlocker(
+            int queueSize, PriorityProvider priorityProvider, boolean concurrent) {
         if (priorityProvider != null) {
-            return new PriorityThreadBlocker(queueSize, priorityProvider);
+            return concurrent
+                    ? new ConcurrentPriorityThreadBlocker(queueSize, priorityProvider)
+                    : new PriorityThreadBlocker(queueSize, priorityProvider);
         } else {
-            return new SimpleThreadBlocker(queueSize);
+            return concurrent
+                    ? new SemaphoreThreadBlocker(queueSize)
+                    : new SimpleThreadBlocker(queueSize);
+        }
+    }
+
+    /**
+     * Builds an {@link AdaptiveThreadBlocker} out of a <code>adaptive(min,max[,tolerance])</code>
+     * specification
+     *
+     * @param value The rule value
+     * @return The blocker, or null if the specification is invalid
+     */
+    private ThreadBlocker buildAdaptiveBlocker(String value) {
+        Matcher matcher = ADAPTIVE_PATTERN.matcher(value);
+        if (!matcher.matches()) {
+            LOGGER.severe(
+                    "Adaptive rule values should be expressed as adaptive(<min>,<max>[,<tolerance>]), "
+                            + "this one is invalid: "
+                            + value);
+            return null;
+        }
+        int min = Integer.parseInt(matcher.group(1));
+        int max = Integer.parseInt(matcher.group(2));
+        double tolerance =
+                matcher.group(4) != null
+                        ? Double.parseDouble(matcher.group(4))
+                        : AdaptiveThreadBlocker.DEFAULT_TOLERANCE;
+        try {
+            return new AdaptiveThreadBlocker(min, max, tolerance);
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe("Invalid adaptive rule " + value + ": " + e.getMessage());
+            return null;
         }
     }
 
@@ -0,0 +1,182 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.flow.ControlFlowCallback;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Blocker whose concurrency limit adapts to the observed request latency, following an additive
+ * increase, multiplicative decrease scheme: the limit grows by one request each time a full window
+ * of requests completes with a latency close to the baseline one, and it's cut by a constant factor
+ * when the latency grows past <code>tolerance</code> times the baseline, a sign the server is
+ * running past its throughput knee and requests are just queuing up for resources.
+ *
+ * <p>The baseline latency is the minimum observed one, slowly drifting towards the current latency
+ * to follow changes in the data and configuration. The limit is kept between the configured minimum
+ * and maximum.
+ */
+public class AdaptiveThreadBlocker implements ThreadBlocker {
+
+    static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
+
+    /** The default latency tolerance, as a multiple of the baseline latency */
+    public static final double DEFAULT_TOLERANCE = 2;
+
+    /** How much the limit is reduced when latency grows past the tolerance */
+    static final double BACKOFF_RATIO = 0.9;
+
+    /** Weight of a new sample in the smoothed latency */
+    static final double SMOOTHING = 0.1;
+
+    /** Weight of a new sample in the baseline latency, when larger than it */
+    static final double BASELINE_DRIFT = 0.001;
+
+    int minLimit;
+
+    int maxLimit;
+
+    double tolerance;
+
+    /** The current limit, fractional to allow for gradual additive increases */
+    double limit;
+
+    int running;
+
+    /** Smoothed latency, in nanoseconds */
+    double latency = -1;
+
+    /** Baseline latency, in nanoseconds */
+    double baseline = -1;
+
+    long lastDecrease;
+
+    /** Start time of the running requests */
+    Map<Request, Long> startTimes = new ConcurrentHashMap<>();
+
+    public AdaptiveThreadBlocker(int minLimit, int maxLimit) {
+        this(minLimit, maxLimit, DEFAULT_TOLERANCE);
+    }
+
+    public AdaptiveThreadBlocker(int minLimit, int maxLimit, double tolerance) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException(
+                    "Invalid limits, expected 1 <= min <= max, got min "
+                            + minLimit
+                            + " and max "
+                            + maxLimit);
+        }
+        if (tolerance <= 1) {
+            throw new IllegalArgumentException(
+                    "Latency tolerance should be greater than 1, got " + tolerance);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = maxLimit;
+    }
+
+    @Override
+    public boolean requestIncoming(Request request, long timeout) throws InterruptedException {
+        synchronized (this) {
+            if (timeout > 0) {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+                while (running >= getLimit()) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, wait);
+                }
+            } else {
+                while (running >= getLimit()) {
+                    wait();
+                }
+            }
+            running++;
+        }
+        startTimes.put(request, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void requestComplete(Request request) {
+        // requests that timed out never got a start time
+        Long start = startTimes.remove(request);
+        if (start == null) {
+            return;
+        }
+        long sample = System.nanoTime() - start;
+        synchronized (this) {
+            running--;
+            update(sample);
+            notifyAll();
+        }
+    }
+
+    /** Updates the latency estimates and the limit with a new latency sample */
+    void update(long sample) {
+        if (baseline < 0 || sample < baseline) {
+            baseline = sample;
+        } else {
+            baseline += (sample - baseline) * BASELINE_DRIFT;
+        }
+        latency = latency < 0 ? sample : latency + (sample - latency) * SMOOTHING;
+
+        long now = System.nanoTime();
+        if (latency > baseline * tolerance) {
+            // back off at most once per round trip, to give the decrease time to take effect
+            if (now - lastDecrease > latency) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                lastDecrease = now;
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine(this + ", latency increased, lowering the limit");
+                }
+            }
+        } else if (running + 1 >= getLimit() / 2) {
+            // only grow if the limit is actually being used
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    /** Returns the current concurrency limit */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public synchronized int getRunningRequestsCount() {
+        return running;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveThreadBlocker(min="
+                + minLimit
+                + ",max="
+                + maxLimit
+                + ",tolerance="
+                + tolerance
+                + ")";
+    }
+}
@@ -0,0 +1,230 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Alternative to {@link PriorityThreadBlocker} built on lock free data structures: the running
+ * requests are counted with an atomic permit counter, the waiting ones are kept sorted by priority
+ * (highest first, then arrival order) in a concurrent skip list. A completing request hands its
+ * permit directly to the highest priority waiting one, so requests never contend on a single lock.
+ */
+public class ConcurrentPriorityThreadBlocker implements ThreadBlocker {
+
+    static final Logger LOGGER = Logging.getLogger(ConcurrentPriorityThreadBlocker.class);
+
+    static final int WAITING = 0;
+
+    static final int GRANTED = 1;
+
+    static final int CANCELLED = 2;
+
+    private final PriorityProvider priorityProvider;
+
+    private final int maxRunningRequests;
+
+    /** Number of requests that can still start without waiting */
+    final AtomicInteger permits;
+
+    /** The requests waiting for a permit, highest priority first */
+    final ConcurrentSkipListSet<WaitToken> queue = new ConcurrentSkipListSet<>();
+
+    /**
+     * The requests that acquired a permit. Flow controllers might not all be called if one fails,
+     * but all get a "requestComplete" for cleanup, so we need to know if the request got a permit
+     * before releasing it
+     */
+    final Set<Request> running = ConcurrentHashMap.newKeySet();
+
+    final AtomicLong sequence = new AtomicLong();
+
+    final WaitTimeHistogram waitTimes = new WaitTimeHistogram();
+
+    public ConcurrentPriorityThreadBlocker(int queueSize, PriorityProvider priorityProvider) {
+        this.maxRunningRequests = queueSize;
+        this.priorityProvider = priorityProvider;
+        this.permits = new AtomicInteger(queueSize);
+    }
+
+    @Override
+    public boolean requestIncoming(Request request, long timeout) throws InterruptedException {
+        long start = System.nanoTime();
+        boolean acquired = waitForPermit(request, timeout);
+        waitTimes.record(System.nanoTime() - start);
+        if (acquired) {
+            running.add(request);
+        }
+        return acquired;
+    }
+
+    private boolean waitForPermit(Request request, long timeout) throws InterruptedException {
+        // fast path, do not overtake requests already waiting
+        if (queue.isEmpty() && tryAcquire()) {
+            return true;
+        }
+
+        int priority = priorityProvider.getPriority(request);
+        WaitToken token = new WaitToken(priority, sequence.getAndIncrement());
+        queue.add(token);
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.log(Level.FINER, "Queuing request with priority " + priority);
+        }
+
+        // a permit might have been released before the token got in the queue
+        if (tryAcquire()) {
+            if (token.state.compareAndSet(WAITING, CANCELLED)) {
+                queue.remove(token);
+            } else {
+                // the token got a permit in the meantime, we're holding two now
+                release();
+            }
+            return true;
+        }
+
+        boolean granted;
+        try {
+            if (timeout > 0) {
+                granted = token.latch.await(timeout, TimeUnit.MILLISECONDS);
+            } else {
+                token.latch.await();
+                granted = true;
+            }
+        } catch (InterruptedException e) {
+            // the permit might have been granted while the thread was being interrupted, since
+            // the request won't run, pass it on
+            if (!cancel(token)) {
+                release();
+            }
+            throw e;
+        }
+
+        if (!granted) {
+            granted = !cancel(token);
+            if (!granted && LOGGER.isLoggable(Level.FINER)) {
+                LOGGER.log(Level.FINER, "Request with priority " + priority + " timed out");
+            }
+        }
+        return granted;
+    }
+
+    /**
+     * Cancels a waiting token, if the token got a permit in the meantime the permit is kept
+     *
+     * @return true if the token was cancelled, false if it got a permit
+     */
+    private boolean cancel(WaitToken token) {
+        if (token.state.compareAndSet(WAITING, CANCELLED)) {
+            queue.remove(token);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean tryAcquire() {
+        int available;
+        do {
+            available = permits.get();
+            if (available <= 0) {
+                return false;
+            }
+        } while (!permits.compareAndSet(available, available - 1));
+        return true;
+    }
+
+    /** Hands the permit to the highest priority waiting request, or gives it back */
+    private void release() {
+        while (true) {
+            WaitToken token = queue.pollFirst();
+            if (token == null) {
+                permits.incrementAndGet();
+                // a request might have queued up after the poll, if so, try to take the permit
+                // back and hand it over, otherwise we are done
+                if (queue.isEmpty() || !tryAcquire()) {
+                    return;
+                }
+            } else if (token.state.compareAndSet(WAITING, GRANTED)) {
+                if (LOGGER.isLoggable(Level.FINER)) {
+                    LOGGER.log(Level.FINER, "Releasing request with priority " + token.priority);
+                }
+                grant(token);
+                return;
+            }
+            // the token was cancelled, try the next one
+        }
+    }
+
+    /** Wakes up the thread waiting on a token that got a permit */
+    void grant(WaitToken token) {
+        token.latch.countDown();
+    }
+
+    @Override
+    public void requestComplete(Request request) {
+        if (running.remove(request)) {
+            release();
+        }
+    }
+
+    @Override
+    public int getRunningRequestsCount() {
+        return running.size();
+    }
+
+    /** Returns the number of requests currently waiting for execution */
+    public int getQueuedRequestsCount() {
+        return queue.size();
+    }
+
+    /** Returns the histogram of the time spent by requests waiting for execution */
+    public WaitTimeHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    /** Returns the priority provider, issuing a priority for each request to be put in queue */
+    public PriorityProvider getPriorityProvider() {
+        return priorityProvider;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentPriorityThreadBlocker(" + maxRunningRequests + ")";
+    }
+
+    /**
+     * Token for the priority queue, sorts on priority, higher to lower, then arrival order, and
+     * holds the latch blocking the thread
+     */
+    static class WaitToken implements Comparable<WaitToken> {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger state = new AtomicInteger(WAITING);
+        final int priority;
+        final long sequence;
+
+        WaitToken(int priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(WaitToken o) {
+            int diff = Integer.compare(o.priority, this.priority);
+            if (diff != 0) {
+                return diff;
+            }
+            return Long.compare(this.sequence, o.sequence);
+        }
+    }
+}
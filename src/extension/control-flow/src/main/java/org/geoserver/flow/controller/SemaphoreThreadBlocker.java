@@ -0,0 +1,87 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.geoserver.ows.Request;
+
+/**
+ * Alternative to {@link SimpleThreadBlocker} based on a fair {@link Semaphore}: a request gets
+ * blocked if there are already <code>queueSize</code> requests running, blocked requests are
+ * released in arrival order. Permits are acquired and released with atomic operations, and the
+ * running requests are tracked in a concurrent set, so requests do not contend on a single lock
+ * unless they actually have to wait.
+ */
+public class SemaphoreThreadBlocker implements ThreadBlocker {
+
+    final int queueSize;
+
+    final Semaphore semaphore;
+
+    /**
+     * The requests that acquired a permit. Flow controllers might not all be called if one fails,
+     * but all get a "requestComplete" for cleanup, so we need to know if the request got a permit
+     * before releasing it
+     */
+    final Set<Request> running = ConcurrentHashMap.newKeySet();
+
+    final WaitTimeHistogram waitTimes = new WaitTimeHistogram();
+
+    public SemaphoreThreadBlocker(int queueSize) {
+        this.queueSize = queueSize;
+        this.semaphore = new Semaphore(queueSize, true);
+    }
+
+    @Override
+    public boolean requestIncoming(Request request, long timeout) throws InterruptedException {
+        // tryAcquire() would barge in front of the waiting requests, use a zero timeout instead
+        long start = System.nanoTime();
+        boolean acquired = semaphore.tryAcquire(0, TimeUnit.MILLISECONDS);
+        if (!acquired) {
+            if (timeout > 0) {
+                acquired = semaphore.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+            } else {
+                semaphore.acquire();
+                acquired = true;
+            }
+        }
+        waitTimes.record(System.nanoTime() - start);
+
+        if (acquired) {
+            running.add(request);
+        }
+        return acquired;
+    }
+
+    @Override
+    public void requestComplete(Request request) {
+        if (running.remove(request)) {
+            semaphore.release();
+        }
+    }
+
+    @Override
+    public int getRunningRequestsCount() {
+        return running.size();
+    }
+
+    /** Returns the number of requests currently waiting for execution */
+    public int getQueuedRequestsCount() {
+        return semaphore.getQueueLength();
+    }
+
+    /** Returns the histogram of the time spent by requests waiting for execution */
+    public WaitTimeHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    @Override
+    public String toString() {
+        return "SemaphoreThreadBlocker(" + queueSize + ")";
+    }
+}
@@ -0,0 +1,244 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import static org.geoserver.flow.controller.RateFlowController.X_RATE_LIMIT_CONTEXT;
+import static org.geoserver.flow.controller.RateFlowController.X_RATE_LIMIT_LIMIT;
+import static org.geoserver.flow.controller.RateFlowController.X_RATE_LIMIT_REMAINING;
+
+import com.google.common.base.Predicate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpServletResponse;
+import org.geoserver.flow.ControlFlowCallback;
+import org.geoserver.flow.FlowController;
+import org.geoserver.ows.HttpErrorCodeException;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Limits the rate of requests using a token bucket: each user gets a bucket holding up to <code>
+ * burst</code> tokens, refilled continuously at <code>maxRequests</code> tokens per time interval.
+ * Each request consumes a token, unlike {@link RateFlowController} requests are not counted in
+ * fixed time slots, so short bursts are allowed up to the bucket size while the long term rate is
+ * kept at the configured one.
+ *
+ * <p>When the bucket is empty the request is delayed until a token becomes available, provided the
+ * wait is shorter than the configured delay, otherwise a HTTP 429 is thrown.
+ */
+public class TokenBucketFlowController implements FlowController {
+
+    static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
+
+    /** A single user bucket */
+    static final class Bucket {
+        double tokens;
+
+        long lastRefill;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+
+        /**
+         * Refills the bucket and takes a token from it, the token count goes negative if the bucket
+         * was empty, meaning the token has been reserved in advance
+         *
+         * @return the number of tokens left in the bucket
+         */
+        synchronized double take(long now, double tokensPerMs, int burst) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerMs);
+            lastRefill = now;
+            tokens--;
+            return tokens;
+        }
+
+        /** Returns a token reserved with {@link #take(long, double, int)} */
+        synchronized void giveBack() {
+            tokens++;
+        }
+
+        synchronized long getLastRefill() {
+            return lastRefill;
+        }
+    }
+
+    /** Generates a unique key identifying the user making the request */
+    KeyGenerator keyGenerator;
+
+    /** Checks if we should apply this request rate limit to the request */
+    Predicate<Request> matcher;
+
+    /** Contains all active buckets */
+    Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    int maxRequests;
+
+    long timeInterval;
+
+    int burst;
+
+    long delay;
+
+    double tokensPerMs;
+
+    String action;
+
+    /** Last time we've performed a bucket cleanup */
+    volatile long lastCleanup = System.currentTimeMillis();
+
+    /**
+     * Builds a new token bucket flow controller
+     *
+     * @param matcher Selects the requests this controller applies to
+     * @param maxRequests The number of requests allowed in each time interval
+     * @param timeInterval The time interval, in milliseconds
+     * @param burst The bucket size, that is, the maximum number of requests that can be executed
+     *     back to back
+     * @param delay The maximum time a request is delayed waiting for a token
+     * @param keyGenerator Generates the user keys
+     */
+    public TokenBucketFlowController(
+            Predicate<Request> matcher,
+            int maxRequests,
+            long timeInterval,
+            int burst,
+            long delay,
+            KeyGenerator keyGenerator) {
+        this.matcher = matcher;
+        this.maxRequests = maxRequests;
+        this.timeInterval = timeInterval;
+        this.burst = Math.max(1, burst);
+        this.delay = delay;
+        this.keyGenerator = keyGenerator;
+        this.tokensPerMs = maxRequests / (double) timeInterval;
+
+        if (delay > 0) {
+            this.action = "Delay excess requests up to " + delay + "ms";
+        } else {
+            this.action = "Reject excess requests";
+        }
+    }
+
+    @Override
+    public void requestComplete(Request request) {
+        // nothing to do
+    }
+
+    @Override
+    public boolean requestIncoming(Request request, long timeout) {
+        if (!matcher.apply(request)) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        String userKey = keyGenerator.getUserKey(request);
+        Bucket bucket = buckets.computeIfAbsent(userKey, k -> new Bucket(burst, now));
+        double tokens = bucket.take(now, tokensPerMs, burst);
+
+        HttpServletResponse response = request.getHttpResponse();
+        response.addHeader(X_RATE_LIMIT_CONTEXT, matcher.toString());
+        response.addIntHeader(X_RATE_LIMIT_LIMIT, burst);
+        response.addIntHeader(X_RATE_LIMIT_REMAINING, (int) Math.max(Math.floor(tokens), 0));
+        response.addHeader("X-Rate-Limit-Action", action);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(this + ", tokens left in bucket " + tokens);
+        }
+
+        if (tokens < 0) {
+            long wait = (long) Math.ceil(-tokens / tokensPerMs);
+            if (wait > delay) {
+                bucket.giveBack();
+                throw new HttpErrorCodeException(
+                        429,
+                        "Too many requests requests in the current time period, check X-Rate-Limit HTTP response headers");
+            } else if (timeout > 0 && wait > timeout) {
+                // no point in waiting
+                bucket.giveBack();
+                return false;
+            }
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(this + ", delaying current request " + wait + "ms");
+            }
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                LOGGER.log(Level.WARNING, this + ", the delay was abruptly interrupted", e);
+            }
+        }
+
+        cleanup(now);
+
+        return true;
+    }
+
+    /** Removes the buckets that have been idle long enough to be full again */
+    void cleanup(long now) {
+        long elapsed = now - lastCleanup;
+        if (buckets.size() > RateFlowController.COUNTERS_CLEANUP_THRESHOLD
+                && elapsed > RateFlowController.COUNTERS_CLEANUP_INTERVAL) {
+            synchronized (this) {
+                long refillTime = (long) Math.ceil(burst / tokensPerMs);
+                int cleanupCount = 0;
+                for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+                    if (now - entry.getValue().getLastRefill() > refillTime) {
+                        buckets.remove(entry.getKey());
+                        cleanupCount++;
+                    }
+                }
+                lastCleanup = now;
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine(this + ", purged " + cleanupCount + " full buckets");
+                }
+            }
+        }
+    }
+
+    public KeyGenerator getKeyGenerator() {
+        return keyGenerator;
+    }
+
+    public Predicate<Request> getMatcher() {
+        return matcher;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public long getTimeInterval() {
+        return timeInterval;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    @Override
+    public int getPriority() {
+        // same as the rate flow controller, go through the rate limiters before the concurrency
+        // ones
+        return Integer.MIN_VALUE + maxRequests * (int) (86400 / timeInterval);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()
+                + " ["
+                + matcher
+                + ", burst="
+                + burst
+                + ", action="
+                + action
+                + "]";
+    }
+}
@@ -0,0 +1,98 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of the time requests spent waiting in a {@link ThreadBlocker}. Buckets have
+ * exponentially growing bounds, the first one counts the requests that did not wait at all, bucket
+ * <code>i</code> counts the requests that waited less than <code>2^(i-1)</code> milliseconds, the
+ * last one counts all the requests that waited longer. Recording is lock free, so it can be done by
+ * any number of threads without contention.
+ */
+public class WaitTimeHistogram {
+
+    /** Number of buckets, the last one collects wait times above 2 minutes */
+    static final int BUCKETS = 20;
+
+    final LongAdder[] counts = new LongAdder[BUCKETS];
+
+    final LongAdder totalWait = new LongAdder();
+
+    public WaitTimeHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /** Records a wait time, in nanoseconds */
+    public void record(long waitNanos) {
+        long millis = waitNanos / 1_000_000;
+        int bucket;
+        if (waitNanos <= 0) {
+            bucket = 0;
+        } else {
+            // 64 - numberOfLeadingZeros is the number of bits needed to represent millis
+            bucket = Math.min(BUCKETS - 1, 1 + (64 - Long.numberOfLeadingZeros(millis)));
+        }
+        counts[bucket].increment();
+        totalWait.add(Math.max(0, waitNanos));
+    }
+
+    /**
+     * Returns the upper bound of each bucket in milliseconds, the first bucket has a zero bound,
+     * the last one is unbounded and reported as {@link Long#MAX_VALUE}
+     */
+    public long[] getBucketBounds() {
+        long[] bounds = new long[BUCKETS];
+        for (int i = 1; i < BUCKETS - 1; i++) {
+            bounds[i] = 1L << (i - 1);
+        }
+        bounds[BUCKETS - 1] = Long.MAX_VALUE;
+        return bounds;
+    }
+
+    /** Returns the number of requests in each bucket */
+    public long[] getCounts() {
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = counts[i].sum();
+        }
+        return result;
+    }
+
+    /** Returns the total number of requests recorded */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder adder : counts) {
+            count += adder.sum();
+        }
+        return count;
+    }
+
+    /** Returns the average wait time in milliseconds */
+    public double getAverageWait() {
+        long count = getCount();
+        return count == 0 ? 0 : totalWait.sum() / 1_000_000d / count;
+    }
+
+    @Override
+    public String toString() {
+        long[] bounds = getBucketBounds();
+        long[] values = getCounts();
+        StringBuilder sb = new StringBuilder("WaitTimeHistogram[");
+        for (int i = 0; i < BUCKETS; i++) {
+            if (values[i] > 0) {
+                if (sb.charAt(sb.length() - 1) != '[') {
+                    sb.append(", ");
+                }
+                sb.append(i == 0 ? "none" : i == BUCKETS - 1 ? "more" : "<" + bounds[i] + "ms");
+                sb.append('=').append(values[i]);
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
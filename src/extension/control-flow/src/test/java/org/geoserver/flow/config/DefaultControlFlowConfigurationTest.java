@@ -17,15 +17,19 @@
 import java.util.Properties;
 import org.geoserver.flow.ControllerPriorityComparator;
 import org.geoserver.flow.FlowController;
+import org.geoserver.flow.controller.AdaptiveThreadBlocker;
 import org.geoserver.flow.controller.BasicOWSController;
+import org.geoserver.flow.controller.ConcurrentPriorityThreadBlocker;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.HttpHeaderPriorityProvider;
 import org.geoserver.flow.controller.IpFlowController;
 import org.geoserver.flow.controller.IpRequestMatcher;
 import org.geoserver.flow.controller.PriorityThreadBlocker;
 import org.geoserver.flow.controller.RateFlowController;
+import org.geoserver.flow.controller.SemaphoreThreadBlocker;
 import org.geoserver.flow.controller.SingleIpFlowController;
 import org.geoserver.flow.controller.ThreadBlocker;
+import org.geoserver.flow.controller.TokenBucketFlowController;
 import org.geoserver.flow.controller.UserConcurrentFlowController;
 import org.geoserver.platform.GeoServerResourceLoader;
 import org.geoserver.platform.resource.Files;
@@ -161,6 +165,79 @@ public void testParsingPriorityWithSpaces() throws Exception {
         checkPriorityParsing(p);
     }
 
+    @Test
+    public void testParsingConcurrentBlockers() throws Exception {
+        Properties p = new Properties();
+        p.put("ows.blocker", "concurrent");
+        p.put("ows.global", "100");
+        p.put("ows.wms", "6");
+
+        DefaultControlFlowConfigurator configurator =
+                new DefaultControlFlowConfigurator(new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+        Collections.sort(controllers, new ControllerPriorityComparator());
+        assertEquals(2, controllers.size());
+        BasicOWSController wmsController = (BasicOWSController) controllers.get(0);
+        assertThat(
+                wmsController.getBlocker(), CoreMatchers.instanceOf(SemaphoreThreadBlocker.class));
+        GlobalFlowController gc = (GlobalFlowController) controllers.get(1);
+        assertThat(gc.getBlocker(), CoreMatchers.instanceOf(SemaphoreThreadBlocker.class));
+
+        // with priorities
+        p.put("ows.priority.http", "gs-priority,3");
+        configurator = new DefaultControlFlowConfigurator(new FixedWatcher(p));
+        controllers = configurator.buildFlowControllers();
+        Collections.sort(controllers, new ControllerPriorityComparator());
+        assertEquals(2, controllers.size());
+        wmsController = (BasicOWSController) controllers.get(0);
+        assertThat(
+                wmsController.getBlocker(),
+                CoreMatchers.instanceOf(ConcurrentPriorityThreadBlocker.class));
+    }
+
+    @Test
+    public void testParsingAdaptiveAndTokenBucket() throws Exception {
+        Properties p = new Properties();
+        p.put("ows.global", "adaptive(10, 100)");
+        p.put("ows.wms.getmap", "adaptive(2,16,1.5)");
+        p.put("ows.wfs", "adaptive(16)");
+        p.put("ip.ows.wms", "10/s;2s;burst=50");
+
+        DefaultControlFlowConfigurator configurator =
+                new DefaultControlFlowConfigurator(new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+        Collections.sort(controllers, new ControllerPriorityComparator());
+
+        // the invalid adaptive rule is skipped
+        assertEquals(3, controllers.size());
+
+        assertThat(controllers.get(0), CoreMatchers.instanceOf(TokenBucketFlowController.class));
+        TokenBucketFlowController tbc = (TokenBucketFlowController) controllers.get(0);
+        assertEquals("wms", tbc.getMatcher().toString());
+        assertEquals(10, tbc.getMaxRequests());
+        assertEquals(Intervals.s.getDuration(), tbc.getTimeInterval());
+        assertEquals(50, tbc.getBurst());
+        assertEquals(2000, tbc.getDelay());
+
+        assertThat(controllers.get(1), CoreMatchers.instanceOf(BasicOWSController.class));
+        BasicOWSController oc = (BasicOWSController) controllers.get(1);
+        assertEquals(16, oc.getPriority());
+        assertEquals("wms.getmap", oc.getMatcher().toString());
+        assertThat(oc.getBlocker(), CoreMatchers.instanceOf(AdaptiveThreadBlocker.class));
+        AdaptiveThreadBlocker blocker = (AdaptiveThreadBlocker) oc.getBlocker();
+        assertEquals(2, blocker.getMinLimit());
+        assertEquals(16, blocker.getMaxLimit());
+        assertEquals(1.5, blocker.getTolerance(), 0d);
+
+        assertThat(controllers.get(2), CoreMatchers.instanceOf(GlobalFlowController.class));
+        GlobalFlowController gc = (GlobalFlowController) controllers.get(2);
+        assertEquals(100, gc.getPriority());
+        blocker = (AdaptiveThreadBlocker) gc.getBlocker();
+        assertEquals(10, blocker.getMinLimit());
+        assertEquals(100, blocker.getMaxLimit());
+        assertEquals(AdaptiveThreadBlocker.DEFAULT_TOLERANCE, blocker.getTolerance(), 0d);
+    }
+
     private void checkPriorityParsing(Properties p) throws Exception {
         DefaultControlFlowConfigurator configurator =
                 new DefaultControlFlowConfigurator(new FixedWatcher(p));
@@ -0,0 +1,88 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.geoserver.ows.Request;
+import org.junit.Test;
+
+public class AdaptiveThreadBlockerTest extends AbstractFlowControllerTest {
+
+    static final long FAST = 10_000;
+
+    static final long SLOW = 1_000_000;
+
+    @Test
+    public void testBlocking() throws Exception {
+        AdaptiveThreadBlocker blocker = new AdaptiveThreadBlocker(1, 2);
+        Request r1 = buildCookieRequest(null);
+        Request r2 = buildCookieRequest(null);
+        Request r3 = buildCookieRequest(null);
+        assertTrue(blocker.requestIncoming(r1, 100));
+        assertTrue(blocker.requestIncoming(r2, 100));
+        assertEquals(2, blocker.getRunningRequestsCount());
+
+        // limit reached
+        assertFalse(blocker.requestIncoming(r3, 100));
+        // timed out requests are released anyways, should not count
+        blocker.requestComplete(r3);
+        assertEquals(2, blocker.getRunningRequestsCount());
+
+        blocker.requestComplete(r1);
+        assertEquals(1, blocker.getRunningRequestsCount());
+        assertTrue(blocker.requestIncoming(r3, 100));
+    }
+
+    @Test
+    public void testReleaseWaiting() throws Exception {
+        SingleQueueFlowController controller =
+                new GlobalFlowController(1, new AdaptiveThreadBlocker(1, 1));
+        Request r1 = buildCookieRequest(null);
+        assertTrue(controller.requestIncoming(r1, -1));
+
+        FlowControllerTestingThread t =
+                new FlowControllerTestingThread(buildCookieRequest(null), 0, 0, controller);
+        t.start();
+        waitBlocked(t, MAX_WAIT);
+
+        controller.requestComplete(r1);
+        waitTerminated(t, MAX_WAIT);
+        assertEquals(FlowControllerTestingThread.ThreadState.COMPLETE, t.state);
+    }
+
+    @Test
+    public void testAdaptLimit() throws Exception {
+        AdaptiveThreadBlocker blocker = new AdaptiveThreadBlocker(2, 10);
+        assertEquals(10, blocker.getLimit());
+
+        // establish the baseline
+        update(blocker, FAST);
+        assertEquals(10, blocker.getLimit());
+
+        // latency goes up, the limit goes down
+        for (int i = 0; i < 50; i++) {
+            update(blocker, SLOW);
+            Thread.sleep(2);
+        }
+        assertEquals(2, blocker.getLimit());
+
+        // latency goes back to normal, the limit grows again
+        for (int i = 0; i < 500; i++) {
+            update(blocker, FAST);
+        }
+        assertEquals(10, blocker.getLimit());
+    }
+
+    private void update(AdaptiveThreadBlocker blocker, long sample) {
+        synchronized (blocker) {
+            // simulate the limit being in use
+            blocker.running = blocker.getLimit();
+            blocker.update(sample);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.geoserver.flow.controller.FlowControllerTestingThread.ThreadState;
+import org.geoserver.ows.Request;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class ConcurrentThreadBlockersTest extends AbstractFlowControllerTest {
+
+    static final String PRIORITY_HEADER_NAME = "priorityHeader";
+
+    @Test
+    public void testSemaphoreTimeout() throws Exception {
+        SemaphoreThreadBlocker blocker = new SemaphoreThreadBlocker(1);
+        checkTimeout(blocker);
+        assertEquals(3, blocker.getWaitTimes().getCount());
+    }
+
+    @Test
+    public void testPriorityTimeout() throws Exception {
+        ConcurrentPriorityThreadBlocker blocker =
+                new ConcurrentPriorityThreadBlocker(
+                        1, new HttpHeaderPriorityProvider(PRIORITY_HEADER_NAME, 0));
+        checkTimeout(blocker);
+        assertEquals(0, blocker.getQueuedRequestsCount());
+        assertEquals(3, blocker.getWaitTimes().getCount());
+    }
+
+    private void checkTimeout(ThreadBlocker blocker) throws Exception {
+        Request r1 = buildRequest(0);
+        Request r2 = buildRequest(0);
+        assertTrue(blocker.requestIncoming(r1, 100));
+        assertFalse(blocker.requestIncoming(r2, 100));
+        // the timed out request gets a complete call too, it should not release anything
+        blocker.requestComplete(r2);
+        assertEquals(1, blocker.getRunningRequestsCount());
+
+        blocker.requestComplete(r1);
+        assertEquals(0, blocker.getRunningRequestsCount());
+        assertTrue(blocker.requestIncoming(r2, 100));
+    }
+
+    @Test
+    public void testInterruptWhileGranted() throws Exception {
+        AtomicReference<Thread> waiter = new AtomicReference<>();
+        ConcurrentPriorityThreadBlocker blocker =
+                new ConcurrentPriorityThreadBlocker(
+                        1, new HttpHeaderPriorityProvider(PRIORITY_HEADER_NAME, 0)) {
+                    @Override
+                    void grant(WaitToken token) {
+                        // the permit is granted, but the waiter is interrupted before waking up
+                        waiter.get().interrupt();
+                        super.grant(token);
+                    }
+                };
+        Request r1 = buildRequest(0);
+        Request r2 = buildRequest(0);
+        assertTrue(blocker.requestIncoming(r1, 100));
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread t2 =
+                new Thread(
+                        () -> {
+                            try {
+                                blocker.requestIncoming(r2, -1);
+                            } catch (Throwable t) {
+                                failure.set(t);
+                            }
+                        });
+        waiter.set(t2);
+        t2.start();
+        long deadline = System.currentTimeMillis() + MAX_WAIT;
+        while (blocker.getQueuedRequestsCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, blocker.getQueuedRequestsCount());
+
+        blocker.requestComplete(r1);
+        t2.join(MAX_WAIT);
+        assertFalse(t2.isAlive());
+        assertTrue(failure.get() instanceof InterruptedException);
+        // the interrupted request did not run, nor kept the permit
+        blocker.requestComplete(r2);
+        assertEquals(0, blocker.getRunningRequestsCount());
+        assertEquals(1, blocker.permits.get());
+        assertTrue(blocker.requestIncoming(buildRequest(0), 100));
+    }
+
+    @Test
+    public void testPriorityOrder() throws Exception {
+        ConcurrentPriorityThreadBlocker blocker =
+                new ConcurrentPriorityThreadBlocker(
+                        1, new HttpHeaderPriorityProvider(PRIORITY_HEADER_NAME, 0));
+        GlobalFlowController controller = new GlobalFlowController(1, blocker);
+
+        FlowControllerTestingThread t1 =
+                new FlowControllerTestingThread(buildRequest(1), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t2 =
+                new FlowControllerTestingThread(buildRequest(2), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t3 =
+                new FlowControllerTestingThread(buildRequest(3), 0, Long.MAX_VALUE, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+            t3.start();
+            waitBlocked(t3, MAX_WAIT);
+
+            assertEquals(ThreadState.PROCESSING, t1.state);
+            assertEquals(ThreadState.STARTED, t2.state);
+            assertEquals(ThreadState.STARTED, t3.state);
+            assertEquals(2, blocker.getQueuedRequestsCount());
+
+            // t3 has higher priority, goes first
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            waitState(ThreadState.PROCESSING, t3, MAX_WAIT);
+            assertEquals(ThreadState.STARTED, t2.state);
+
+            t3.interrupt();
+            waitTerminated(t3, MAX_WAIT);
+            waitState(ThreadState.PROCESSING, t2, MAX_WAIT);
+
+            t2.interrupt();
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+            waitAndKill(t3, MAX_WAIT);
+        }
+    }
+
+    @Test
+    public void testSemaphoreConcurrency() throws Exception {
+        checkConcurrency(new SemaphoreThreadBlocker(4));
+    }
+
+    @Test
+    public void testPriorityConcurrency() throws Exception {
+        checkConcurrency(
+                new ConcurrentPriorityThreadBlocker(
+                        4, new HttpHeaderPriorityProvider(PRIORITY_HEADER_NAME, 0)));
+    }
+
+    /** Runs many requests in parallel, checking the limit is never exceeded and nothing is lost */
+    private void checkConcurrency(ThreadBlocker blocker) throws Exception {
+        int threads = 64;
+        int requestsPerThread = 200;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int priority = i % 3;
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    start.await();
+                                    for (int j = 0; j < requestsPerThread; j++) {
+                                        Request request = buildRequest(priority);
+                                        // alternate blocking and timed waits
+                                        long timeout = j % 2 == 0 ? -1 : MAX_WAIT;
+                                        assertTrue(blocker.requestIncoming(request, timeout));
+                                        int current = running.incrementAndGet();
+                                        maxRunning.accumulateAndGet(current, Math::max);
+                                        running.decrementAndGet();
+                                        blocker.requestComplete(request);
+                                        completed.incrementAndGet();
+                                    }
+                                    return null;
+                                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(MAX_WAIT * 3, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads * requestsPerThread, completed.get());
+        assertTrue("Max running was " + maxRunning.get(), maxRunning.get() <= 4);
+        assertEquals(0, blocker.getRunningRequestsCount());
+    }
+
+    @Test
+    public void testHistogram() {
+        WaitTimeHistogram histogram = new WaitTimeHistogram();
+        histogram.record(0);
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(500));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.record(TimeUnit.HOURS.toNanos(1));
+
+        long[] counts = histogram.getCounts();
+        long[] bounds = histogram.getBucketBounds();
+        assertEquals(1, counts[0]);
+        // less than a millisecond
+        assertEquals(1, counts[1]);
+        assertEquals(1, bounds[1]);
+        // between 2 and 4 milliseconds
+        assertEquals(1, counts[3]);
+        assertEquals(4, bounds[3]);
+        // overflow
+        assertEquals(1, counts[counts.length - 1]);
+        assertEquals(4, histogram.getCount());
+    }
+
+    private Request buildRequest(Integer priority) {
+        Request request = new Request();
+        MockHttpServletRequest hr = new MockHttpServletRequest();
+        if (priority != null) {
+            hr.addHeader(PRIORITY_HEADER_NAME, String.valueOf(priority));
+        }
+        request.setHttpRequest(hr);
+
+        return request;
+    }
+}
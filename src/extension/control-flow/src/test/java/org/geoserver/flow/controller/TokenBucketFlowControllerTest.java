@@ -0,0 +1,81 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.geoserver.ows.HttpErrorCodeException;
+import org.geoserver.ows.Request;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+@SuppressWarnings("PMD.AvoidUsingHardCodedIP")
+public class TokenBucketFlowControllerTest extends AbstractFlowControllerTest {
+
+    @Test
+    public void testBurstThenDelay() {
+        // one request per second, bursts of 3
+        TokenBucketFlowController controller =
+                new TokenBucketFlowController(
+                        new OWSRequestMatcher(), 1, 1000, 3, 2000, new IpKeyGenerator());
+
+        // the burst goes through without delay
+        for (int i = 0; i < 3; i++) {
+            Request request = buildIpRequest("127.0.0.1", "");
+            long start = System.currentTimeMillis();
+            assertTrue(controller.requestIncoming(request, Integer.MAX_VALUE));
+            assertTrue(System.currentTimeMillis() - start < 500);
+            checkHeaders(request, 3, 2 - i);
+        }
+
+        // the next one waits for a token to be refilled
+        Request request = buildIpRequest("127.0.0.1", "");
+        long start = System.currentTimeMillis();
+        assertTrue(controller.requestIncoming(request, Integer.MAX_VALUE));
+        long delay = System.currentTimeMillis() - start;
+        assertTrue("Request was not delayed enough: " + delay, delay >= 500);
+
+        // this one would have to wait about a second, not enough time given
+        assertFalse(controller.requestIncoming(buildIpRequest("127.0.0.1", ""), 100));
+
+        // other users have their own bucket
+        start = System.currentTimeMillis();
+        assertTrue(controller.requestIncoming(buildIpRequest("127.0.0.2", ""), 100));
+        assertTrue(System.currentTimeMillis() - start < 500);
+    }
+
+    @Test
+    public void test429() {
+        TokenBucketFlowController controller =
+                new TokenBucketFlowController(
+                        new OWSRequestMatcher(), 1, 60000, 2, 0, new IpKeyGenerator());
+
+        Request request = buildIpRequest("127.0.0.1", "");
+        assertTrue(controller.requestIncoming(request, Integer.MAX_VALUE));
+        assertTrue(controller.requestIncoming(request, Integer.MAX_VALUE));
+
+        // bucket empty, no delay allowed
+        try {
+            controller.requestIncoming(request, Integer.MAX_VALUE);
+            fail("Should have failed with a 429");
+        } catch (HttpErrorCodeException e) {
+            assertEquals(429, e.getErrorCode());
+        }
+        // the rejected request did not consume tokens
+        assertEquals(0, controller.buckets.get("127.0.0.1").tokens, 0.01);
+    }
+
+    private void checkHeaders(Request request, int limit, int remaining) {
+        MockHttpServletResponse response = (MockHttpServletResponse) request.getHttpResponse();
+        assertEquals(
+                String.valueOf(limit), response.getHeader(RateFlowController.X_RATE_LIMIT_LIMIT));
+        assertEquals(
+                String.valueOf(remaining),
+                response.getHeader(RateFlowController.X_RATE_LIMIT_REMAINING));
+    }
+}
@@ -0,0 +1,35 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link MonitorDAO} maintaining pre-computed request counters, allowing summaries to be built
+ * without visiting the single requests.
+ */
+public interface AggregatingMonitorDAO extends MonitorDAO {
+
+    /**
+     * Visits the number of requests started in each minute of the given time range, minutes without
+     * requests are skipped
+     *
+     * @param from The start of the range, inclusive
+     * @param to The end of the range, inclusive
+     * @param visitor Receives the start of each minute, and the number of requests in it
+     */
+    void getRequestCounts(Date from, Date to, BiConsumer<Date, Long> visitor);
+
+    /** Returns the number of requests by OWS service */
+    Map<String, Long> getServiceCounts();
+
+    /** Returns the number of requests by operation (lower case) for the given OWS service */
+    Map<String, Long> getOperationCounts(String service);
+
+    /** Returns the number of requests by layer */
+    Map<String, Long> getLayerCounts();
+}
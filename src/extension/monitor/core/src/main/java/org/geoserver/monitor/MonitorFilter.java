@@ -12,8 +12,6 @@
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -45,7 +43,7 @@ public class MonitorFilter implements GeoServerFilter {
     Monitor monitor;
     MonitorRequestFilter requestFilter;
 
-    ExecutorService postProcessExecutor;
+    PostProcessQueue postProcessQueue;
 
     BiConsumer<RequestData, Authentication> executionAudit;
 
@@ -53,7 +51,7 @@ public MonitorFilter(Monitor monitor, MonitorRequestFilter requestFilter) {
         this.monitor = monitor;
         this.requestFilter = requestFilter;
 
-        postProcessExecutor = Executors.newFixedThreadPool(2);
+        postProcessQueue = new PostProcessQueue(monitor.getConfig());
 
         if (monitor.isEnabled()) {
             LOGGER.info("Monitor extension enabled");
@@ -201,7 +199,7 @@ public void doFilter(ServletRequest request, ServletResponse response, FilterCha
                         SecurityContextHolder.getContext().getAuthentication());
         // Execution Audit
         task.setExecutionAudit(executionAudit);
-        postProcessExecutor.execute(task);
+        postProcessQueue.submit(task);
 
         if (error != null) {
             if (error instanceof RuntimeException) {
@@ -212,9 +210,14 @@ public void doFilter(ServletRequest request, ServletResponse response, FilterCha
         }
     }
 
+    /** Returns the queue handing off completed requests to the post processors */
+    public PostProcessQueue getPostProcessQueue() {
+        return postProcessQueue;
+    }
+
     @Override
     public void destroy() {
-        postProcessExecutor.shutdown();
+        postProcessQueue.shutdown();
         monitor.dispose();
     }
 
@@ -290,13 +293,16 @@ static class PostProcessTask implements Runnable {
 
         @Override
         public void run() {
+            List<RequestPostProcessor> pp = new ArrayList<>();
+            pp.add(new ReverseDNSPostProcessor());
+            pp.addAll(GeoServerExtensions.extensions(RequestPostProcessor.class));
+            run(pp, monitor.getConfig().getIgnorePostProcessors());
+        }
+
+        /** Runs the given post processors, skipping the ones in the ignore list */
+        void run(List<RequestPostProcessor> pp, Set<String> ignoreList) {
             try {
                 SecurityContextHolder.getContext().setAuthentication(propagatedAuth);
-                List<RequestPostProcessor> pp = new ArrayList<>();
-                pp.add(new ReverseDNSPostProcessor());
-                pp.addAll(GeoServerExtensions.extensions(RequestPostProcessor.class));
-                Set<String> ignoreList = this.monitor.getConfig().getIgnorePostProcessors();
-
                 for (RequestPostProcessor p : pp) {
                     try {
                         if (!ignoreList.contains(p.getName())) p.run(data, request, response);
@@ -319,6 +325,23 @@ public void run() {
             }
         }
 
+        /**
+         * Completes the request without running the post processors, notifying the listeners and
+         * the execution audit. Used when the request cannot be queued for post processing, does not
+         * alter the security context of the calling thread.
+         */
+        void runWithoutPostProcessors() {
+            try {
+                monitor.postProcessed(data);
+            } finally {
+                if (executionAudit != null) executionAudit.accept(data, propagatedAuth);
+                monitor = null;
+                data = null;
+                request = null;
+                response = null;
+            }
+        }
+
         /**
          * Audit consumer function. Will receive post processed {@link
          * org.geoserver.monitor.RequestData} and run time {@link Authentication}.
@@ -0,0 +1,217 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.monitor.MonitorFilter.PostProcessTask;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Bounded queue handing off completed requests to the post processors. A fixed number of consumer
+ * threads drain the queue in batches, looking up the post processors once per batch.
+ *
+ * <p>The queue is configured by the following monitor.properties keys:
+ *
+ * <ul>
+ *   <li>postProcess.queueSize: the maximum number of requests waiting for post processing
+ *   <li>postProcess.threads: the number of consumer threads
+ *   <li>postProcess.batchSize: the maximum number of requests handled in a single batch
+ *   <li>postProcess.flushInterval: how long, in milliseconds, a consumer waits for a batch to fill
+ *       up before processing it, 0 (the default) means the batch contains whatever is queued
+ *   <li>postProcess.overflow: what to do when the queue is full, either "block" (the default), to
+ *       wait for space in the queue, or "drop", to skip the post processors for the request
+ *   <li>postProcess.sampling: with the "drop" policy, one out of the given number of requests
+ *       finding the queue full still waits for space in it, 1 (the default) drops all of them
+ * </ul>
+ *
+ * <p>Dropping a request only skips the {@link RequestPostProcessor} chain (reverse DNS, GeoIP and
+ * the like): the {@link RequestDataListener#requestPostProcessed(RequestData)} listeners and the
+ * execution audit are still run, on the calling thread, so that no request goes unrecorded.
+ */
+public class PostProcessQueue {
+
+    static final Logger LOGGER = Logging.getLogger("org.geoserver.monitor");
+
+    static final String PREFIX = "postProcess";
+
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    public static final int DEFAULT_THREADS = 2;
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** What to do with requests that do not fit in the queue */
+    public enum Overflow {
+        BLOCK,
+        DROP
+    }
+
+    final BlockingQueue<PostProcessTask> queue;
+
+    final int batchSize;
+
+    final long flushInterval;
+
+    final Overflow overflow;
+
+    final int sampling;
+
+    final MonitorConfig config;
+
+    final List<Thread> consumers = new ArrayList<>();
+
+    volatile boolean running = true;
+
+    final LongAdder processed = new LongAdder();
+
+    final AtomicLong dropped = new AtomicLong();
+
+    final AtomicLong overflowed = new AtomicLong();
+
+    final LongAdder batches = new LongAdder();
+
+    public PostProcessQueue(MonitorConfig config) {
+        this.config = config;
+        this.queue = new ArrayBlockingQueue<>(getProperty("queueSize", DEFAULT_QUEUE_SIZE));
+        this.batchSize = getProperty("batchSize", DEFAULT_BATCH_SIZE);
+        this.flushInterval = getProperty("flushInterval", 0);
+        String overflow = config.getProperty(PREFIX, "overflow", String.class);
+        this.overflow =
+                overflow == null ? Overflow.BLOCK : Overflow.valueOf(overflow.toUpperCase());
+        this.sampling = Math.max(1, getProperty("sampling", 1));
+
+        int threads = getProperty("threads", DEFAULT_THREADS);
+        for (int i = 0; i < threads; i++) {
+            Thread consumer = new Thread(this::consume, "MonitorPostProcessor-" + i);
+            consumer.setDaemon(true);
+            consumer.start();
+            consumers.add(consumer);
+        }
+    }
+
+    private int getProperty(String name, int defaultValue) {
+        Integer value = config.getProperty(PREFIX, name, Integer.class);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Queues the task for post processing. If the queue is full the call blocks, or the task is
+     * dropped, according to the overflow policy and sampling. A dropped task skips the post
+     * processors, but is still completed and audited on the calling thread.
+     *
+     * @return true if the task was queued, false if it was dropped
+     */
+    public boolean submit(PostProcessTask task) {
+        if (queue.offer(task)) {
+            return true;
+        }
+        if (overflow == Overflow.BLOCK
+                || (sampling > 1 && overflowed.incrementAndGet() % sampling == 0)) {
+            try {
+                queue.put(task);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drop(task);
+        return false;
+    }
+
+    private void drop(PostProcessTask task) {
+        long count = dropped.incrementAndGet();
+        if (count == 1 || count % 1000 == 0) {
+            LOGGER.warning(
+                    "Post processing queue full, "
+                            + count
+                            + " requests have not been post processed so far");
+        } else if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Post processing queue full, dropping request " + task.data.getId());
+        }
+        task.runWithoutPostProcessors();
+    }
+
+    void consume() {
+        List<PostProcessTask> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PostProcessTask first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                if (flushInterval > 0) {
+                    long deadline = System.currentTimeMillis() + flushInterval;
+                    long wait;
+                    while (batch.size() < batchSize
+                            && (wait = deadline - System.currentTimeMillis()) > 0) {
+                        PostProcessTask task = queue.poll(wait, TimeUnit.MILLISECONDS);
+                        if (task == null) {
+                            break;
+                        }
+                        batch.add(task);
+                        queue.drainTo(batch, batchSize - batch.size());
+                    }
+                }
+                process(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to post process requests", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    void process(List<PostProcessTask> batch) {
+        List<RequestPostProcessor> postProcessors = new ArrayList<>();
+        postProcessors.add(new ReverseDNSPostProcessor());
+        postProcessors.addAll(GeoServerExtensions.extensions(RequestPostProcessor.class));
+        Set<String> ignoreList = config.getIgnorePostProcessors();
+
+        for (PostProcessTask task : batch) {
+            task.run(postProcessors, ignoreList);
+            processed.increment();
+        }
+        batches.increment();
+    }
+
+    /** Stops the consumers, once the requests already queued have been processed */
+    public void shutdown() {
+        running = false;
+    }
+
+    /** Number of requests waiting for post processing */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /** Number of requests post processed so far */
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    /** Number of requests whose post processors were skipped because the queue was full */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /** Number of batches processed so far */
+    public long getBatches() {
+        return batches.sum();
+    }
+}
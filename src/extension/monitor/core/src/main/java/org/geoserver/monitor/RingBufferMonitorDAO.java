@@ -0,0 +1,229 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * In memory {@link MonitorDAO} keeping the most recent requests in a fixed size ring buffer, along
+ * with request counters by minute, service, operation and layer. The counters are updated as
+ * requests complete and are not limited by the buffer size, so summaries based on them take the
+ * same time regardless of how many requests have been recorded.
+ *
+ * <p>The buffer size is controlled by the {@link #CAPACITY_KEY} property in monitor.properties.
+ */
+public class RingBufferMonitorDAO extends MemoryMonitorDAO implements AggregatingMonitorDAO {
+
+    public static final String NAME = "ringbuffer";
+
+    /** The monitor.properties key for the number of completed requests retained */
+    public static final String CAPACITY_KEY = "ringbuffer.capacity";
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /** Number of minutes covered by the per minute counters (31 days) */
+    static final int MINUTES = 31 * 24 * 60;
+
+    static final long MINUTE = 60 * 1000;
+
+    Map<Long, RequestData> running = new ConcurrentHashMap<>();
+
+    AtomicReferenceArray<RequestData> buffer;
+
+    AtomicLong position = new AtomicLong();
+
+    MinuteCounts minuteCounts = new MinuteCounts(MINUTES);
+
+    Map<String, LongAdder> serviceCounts = new ConcurrentHashMap<>();
+
+    Map<String, Map<String, LongAdder>> operationCounts = new ConcurrentHashMap<>();
+
+    Map<String, LongAdder> layerCounts = new ConcurrentHashMap<>();
+
+    public RingBufferMonitorDAO() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RingBufferMonitorDAO(int capacity) {
+        this.buffer = new AtomicReferenceArray<>(capacity);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void init(MonitorConfig config) {
+        String capacity = config.getProperties().getProperty(CAPACITY_KEY);
+        if (capacity != null) {
+            buffer = new AtomicReferenceArray<>(Integer.parseInt(capacity.trim()));
+            position.set(0);
+        }
+    }
+
+    /** Returns the maximum number of completed requests retained */
+    public int getCapacity() {
+        return buffer.length();
+    }
+
+    @Override
+    public void add(RequestData data) {
+        running.put(data.getId(), data);
+    }
+
+    @Override
+    public void save(RequestData data) {
+        running.remove(data.getId());
+        long p = position.getAndIncrement();
+        buffer.set((int) (p % buffer.length()), data);
+        aggregate(data);
+    }
+
+    void aggregate(RequestData data) {
+        if (data.getStartTime() != null) {
+            minuteCounts.increment(data.getStartTime().getTime() / MINUTE);
+        }
+        String service = data.getService();
+        if (service != null) {
+            serviceCounts.computeIfAbsent(service, k -> new LongAdder()).increment();
+            String operation = data.getOperation();
+            if (operation != null) {
+                operationCounts
+                        .computeIfAbsent(service, k -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(operation.toLowerCase(), k -> new LongAdder())
+                        .increment();
+            }
+        }
+        if (data.getResources() != null) {
+            for (String layer : data.getResources()) {
+                layerCounts.computeIfAbsent(layer, k -> new LongAdder()).increment();
+            }
+        }
+    }
+
+    @Override
+    public RequestData getRequest(long id) {
+        RequestData data = running.get(id);
+        if (data != null) {
+            return data;
+        }
+        return super.getRequest(id);
+    }
+
+    @Override
+    public List<RequestData> getRequests() {
+        List<RequestData> requests = new LinkedList<>(running.values());
+        int capacity = buffer.length();
+        long end = position.get();
+        for (long p = Math.max(0, end - capacity); p < end; p++) {
+            RequestData data = buffer.get((int) (p % capacity));
+            if (data != null) {
+                requests.add(data);
+            }
+        }
+        return requests;
+    }
+
+    @Override
+    public void getRequestCounts(Date from, Date to, BiConsumer<Date, Long> visitor) {
+        minuteCounts.visit(from.getTime() / MINUTE, to.getTime() / MINUTE, visitor);
+    }
+
+    @Override
+    public Map<String, Long> getServiceCounts() {
+        return toCounts(serviceCounts);
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts(String service) {
+        Map<String, LongAdder> counts = operationCounts.get(service);
+        return counts == null ? new HashMap<>() : toCounts(counts);
+    }
+
+    @Override
+    public Map<String, Long> getLayerCounts() {
+        return toCounts(layerCounts);
+    }
+
+    private Map<String, Long> toCounts(Map<String, LongAdder> counters) {
+        Map<String, Long> result = new HashMap<>();
+        counters.forEach((k, v) -> result.put(k, v.sum()));
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        running.clear();
+        for (int i = 0; i < buffer.length(); i++) {
+            buffer.set(i, null);
+        }
+        position.set(0);
+        minuteCounts.clear();
+        serviceCounts.clear();
+        operationCounts.clear();
+        layerCounts.clear();
+    }
+
+    @Override
+    public void dispose() {
+        clear();
+        REQUEST_ID_GEN = new AtomicLong(1);
+    }
+
+    /**
+     * Request counts for a sliding window of minutes, each slot is reused when a request from a
+     * more recent minute mapping to the same slot is recorded
+     */
+    static class MinuteCounts {
+
+        final long[] minutes;
+
+        final long[] counts;
+
+        MinuteCounts(int size) {
+            minutes = new long[size];
+            counts = new long[size];
+            clear();
+        }
+
+        synchronized void increment(long minute) {
+            int i = (int) Math.floorMod(minute, (long) minutes.length);
+            if (minutes[i] != minute) {
+                if (minutes[i] > minute) {
+                    // older than the window covered by the counts
+                    return;
+                }
+                minutes[i] = minute;
+                counts[i] = 0;
+            }
+            counts[i]++;
+        }
+
+        synchronized void visit(long from, long to, BiConsumer<Date, Long> visitor) {
+            for (long m = Math.max(from, to - minutes.length + 1); m <= to; m++) {
+                int i = (int) Math.floorMod(m, (long) minutes.length);
+                if (minutes[i] == m && counts[i] > 0) {
+                    visitor.accept(new Date(m * MINUTE), counts[i]);
+                }
+            }
+        }
+
+        synchronized void clear() {
+            Arrays.fill(minutes, Long.MIN_VALUE);
+            Arrays.fill(counts, 0);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.geoserver.monitor.MonitorFilter;
+import org.geoserver.monitor.PostProcessQueue;
+import org.geoserver.rest.RestBaseController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+
+/** Reports the state of the queue handing off completed requests to the post processors */
+@RestController
+@RequestMapping(path = RestBaseController.ROOT_PATH + "/monitor/postprocess")
+public class PostProcessQueueController extends RestBaseController {
+
+    MonitorFilter filter;
+
+    @Autowired
+    public PostProcessQueueController(MonitorFilter filter) {
+        this.filter = filter;
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public Map<String, Object> getStatistics() {
+        PostProcessQueue queue = filter.getPostProcessQueue();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("queueSize", queue.getQueueSize());
+        result.put("processed", queue.getProcessed());
+        result.put("dropped", queue.getDropped());
+        result.put("batches", queue.getBatches());
+        return result;
+    }
+}
@@ -18,6 +18,7 @@
 import org.apache.wicket.markup.html.image.resource.BufferedDynamicImageResource;
 import org.apache.wicket.markup.html.panel.Panel;
 import org.apache.wicket.model.PropertyModel;
+import org.geoserver.monitor.AggregatingMonitorDAO;
 import org.geoserver.monitor.Monitor;
 import org.geoserver.monitor.Query;
 import org.geoserver.monitor.RequestData;
@@ -96,11 +97,16 @@ protected void onSubmit(AjaxRequestTarget target, Form<?> form) {
     }
 
     BufferedDynamicImageResource queryAndRenderChart(Monitor monitor, Date[] range) {
-        Query q = new Query();
-        q.properties("startTime").between(range[0], range[1]);
-
         DataGatherer gatherer = new DataGatherer();
-        monitor.query(q, gatherer);
+        if (monitor.getDAO() instanceof AggregatingMonitorDAO) {
+            // use the pre-computed per minute counts
+            ((AggregatingMonitorDAO) monitor.getDAO())
+                    .getRequestCounts(range[0], range[1], gatherer::add);
+        } else {
+            Query q = new Query();
+            q.properties("startTime").between(range[0], range[1]);
+            monitor.query(q, gatherer);
+        }
 
         HashMap<RegularTimePeriod, Integer> data = gatherer.getData();
 
@@ -157,13 +163,17 @@ class DataGatherer implements RequestDataVisitor {
 
         @Override
         public void visit(RequestData r, Object... aggregates) {
-            RegularTimePeriod period = getTimePeriod(r.getStartTime());
+            add(r.getStartTime(), 1L);
+        }
+
+        void add(Date time, Long requests) {
+            RegularTimePeriod period = getTimePeriod(time);
             Integer count = data.get(period);
 
             if (count == null) {
-                count = Integer.valueOf(1);
+                count = Integer.valueOf(requests.intValue());
             } else {
-                count = Integer.valueOf(count.intValue() + 1);
+                count = Integer.valueOf(count.intValue() + requests.intValue());
             }
 
             data.put(period, count);
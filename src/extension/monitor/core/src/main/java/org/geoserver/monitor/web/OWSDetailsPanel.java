@@ -7,6 +7,7 @@
 
 import java.util.HashMap;
 import java.util.Map;
+import org.geoserver.monitor.AggregatingMonitorDAO;
 import org.geoserver.monitor.Monitor;
 import org.geoserver.monitor.Query;
 import org.geoserver.monitor.Query.Comparison;
@@ -28,6 +29,10 @@ protected String getChartTitle() {
 
     @Override
     protected Map<String, Integer> gatherData(Monitor monitor) {
+        if (monitor.getDAO() instanceof AggregatingMonitorDAO) {
+            return toIntegers(
+                    ((AggregatingMonitorDAO) monitor.getDAO()).getOperationCounts(owsService));
+        }
         DataGatherer g = new DataGatherer();
         monitor.query(
                 new Query().properties("operation").filter("service", owsService, Comparison.EQ),
@@ -6,6 +6,7 @@
 package org.geoserver.monitor.web;
 
 import java.awt.Color;
+import java.util.HashMap;
 import java.util.Map;
 import org.apache.wicket.markup.html.image.NonCachingImage;
 import org.apache.wicket.markup.html.image.resource.BufferedDynamicImageResource;
@@ -43,5 +44,12 @@ public OWSSummaryChartBasePanel(String id, Monitor monitor, String owsService) {
 
     protected abstract Map<String, Integer> gatherData(Monitor monitor);
 
+    /** Converts pre-computed request counts to the chart data */
+    protected Map<String, Integer> toIntegers(Map<String, Long> counts) {
+        Map<String, Integer> data = new HashMap<>();
+        counts.forEach((k, v) -> data.put(k, v.intValue()));
+        return data;
+    }
+
     protected abstract String getChartTitle();
 }
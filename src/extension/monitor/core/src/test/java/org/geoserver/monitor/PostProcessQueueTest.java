@@ -0,0 +1,192 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.geoserver.monitor.MonitorFilter.PostProcessTask;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PostProcessQueueTest {
+
+    Monitor monitor;
+
+    List<RequestData> processed;
+
+    @Before
+    public void setUp() throws Exception {
+        monitor = new Monitor(new MemoryMonitorDAO());
+        monitor.config.props.put("ignorePostProcessors", "reverseDNS");
+        processed = new CopyOnWriteArrayList<>();
+    }
+
+    PostProcessTask task(long id) {
+        RequestData data = new RequestData();
+        data.setId(id);
+        PostProcessTask task = new PostProcessTask(monitor, data, null, null, null);
+        task.setExecutionAudit((rd, auth) -> processed.add(rd));
+        return task;
+    }
+
+    @Test
+    public void testDropOnOverflow() throws Exception {
+        // no consumers, the queue just fills up
+        monitor.config.props.put("postProcess.threads", "0");
+        monitor.config.props.put("postProcess.queueSize", "2");
+        monitor.config.props.put("postProcess.overflow", "drop");
+        PostProcessQueue queue = new PostProcessQueue(monitor.getConfig());
+
+        assertTrue(queue.submit(task(1)));
+        assertTrue(queue.submit(task(2)));
+        assertFalse(queue.submit(task(3)));
+        assertEquals(2, queue.getQueueSize());
+        assertEquals(1, queue.getDropped());
+        // the dropped request skipped the post processors, but got audited right away
+        assertEquals(1, processed.size());
+        assertEquals(3, processed.get(0).getId());
+
+        // drain what's left on shutdown
+        queue.shutdown();
+        queue.consume();
+        assertEquals(0, queue.getQueueSize());
+        assertEquals(2, queue.getProcessed());
+        assertEquals(3, processed.size());
+        assertEquals(1, processed.get(1).getId());
+        assertEquals(2, processed.get(2).getId());
+    }
+
+    @Test
+    public void testDropStillNotifiesListeners() throws Exception {
+        List<RequestData> postProcessed = new CopyOnWriteArrayList<>();
+        monitor.listeners.add(
+                new RequestDataListener() {
+                    @Override
+                    public void requestStarted(RequestData data) {}
+
+                    @Override
+                    public void requestUpdated(RequestData data) {}
+
+                    @Override
+                    public void requestCompleted(RequestData data) {}
+
+                    @Override
+                    public void requestPostProcessed(RequestData data) {
+                        postProcessed.add(data);
+                    }
+                });
+        monitor.config.props.put("postProcess.threads", "0");
+        monitor.config.props.put("postProcess.queueSize", "1");
+        monitor.config.props.put("postProcess.overflow", "drop");
+        PostProcessQueue queue = new PostProcessQueue(monitor.getConfig());
+
+        assertTrue(queue.submit(task(1)));
+        assertFalse(queue.submit(task(2)));
+        assertEquals(1, postProcessed.size());
+        assertEquals(2, postProcessed.get(0).getId());
+    }
+
+    @Test
+    public void testBlockByDefault() throws Exception {
+        monitor.config.props.put("postProcess.threads", "0");
+        monitor.config.props.put("postProcess.queueSize", "1");
+        PostProcessQueue queue = new PostProcessQueue(monitor.getConfig());
+        assertEquals(PostProcessQueue.Overflow.BLOCK, queue.overflow);
+
+        assertTrue(queue.submit(task(1)));
+        Thread submitter = new Thread(() -> queue.submit(task(2)));
+        submitter.start();
+        submitter.join(200);
+        assertTrue(submitter.isAlive());
+
+        // making room lets the blocked request in
+        assertEquals(1, queue.queue.take().data.getId());
+        submitter.join(10000);
+        assertFalse(submitter.isAlive());
+        assertEquals(2, queue.queue.take().data.getId());
+        assertEquals(0, queue.getDropped());
+    }
+
+    @Test
+    public void testSamplingWhenFull() throws Exception {
+        monitor.config.props.put("postProcess.threads", "0");
+        monitor.config.props.put("postProcess.queueSize", "1");
+        monitor.config.props.put("postProcess.overflow", "drop");
+        monitor.config.props.put("postProcess.sampling", "3");
+        PostProcessQueue queue = new PostProcessQueue(monitor.getConfig());
+
+        // sampling does not kick in while there is room in the queue
+        assertTrue(queue.submit(task(1)));
+        assertEquals(0, queue.getDropped());
+
+        // two out of three overflowing requests are dropped
+        assertFalse(queue.submit(task(2)));
+        assertFalse(queue.submit(task(3)));
+        assertEquals(2, queue.getDropped());
+
+        // the third waits for room in the queue
+        Thread submitter = new Thread(() -> queue.submit(task(4)));
+        submitter.start();
+        submitter.join(200);
+        assertTrue(submitter.isAlive());
+        assertEquals(1, queue.queue.take().data.getId());
+        submitter.join(10000);
+        assertFalse(submitter.isAlive());
+        assertEquals(4, queue.queue.take().data.getId());
+        assertEquals(2, queue.getDropped());
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        monitor.config.props.put("postProcess.threads", "0");
+        monitor.config.props.put("postProcess.batchSize", "3");
+        PostProcessQueue queue = new PostProcessQueue(monitor.getConfig());
+        for (int i = 0; i < 7; i++) {
+            queue.submit(task(i));
+        }
+
+        queue.shutdown();
+        queue.consume();
+        assertEquals(7, queue.getProcessed());
+        assertEquals(3, queue.getBatches());
+        assertEquals(7, processed.size());
+    }
+
+    @Test
+    public void testConsumers() throws Exception {
+        CountDownLatch latch = new CountDownLatch(10);
+        monitor.listeners.add(
+                new RequestDataListener() {
+                    @Override
+                    public void requestStarted(RequestData data) {}
+
+                    @Override
+                    public void requestUpdated(RequestData data) {}
+
+                    @Override
+                    public void requestCompleted(RequestData data) {}
+
+                    @Override
+                    public void requestPostProcessed(RequestData data) {
+                        latch.countDown();
+                    }
+                });
+        PostProcessQueue queue = new PostProcessQueue(monitor.getConfig());
+        try {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(queue.submit(task(i)));
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            queue.shutdown();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import static org.geoserver.monitor.MonitorTestData.toDate;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class RingBufferMonitorDAOTest extends MonitorDAOTestSupport {
+
+    @BeforeClass
+    public static void createDAO() throws Exception {
+        dao = new RingBufferMonitorDAO();
+        setUpData();
+    }
+
+    RequestData request(
+            RingBufferMonitorDAO dao, String start, String service, String op, String... layers)
+            throws Exception {
+        RequestData data = dao.init(new RequestData());
+        data.setStartTime(toDate(start));
+        data.setService(service);
+        data.setOperation(op);
+        data.setResources(Arrays.asList(layers));
+        return data;
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        RingBufferMonitorDAO dao = new RingBufferMonitorDAO(3);
+        for (int i = 0; i < 5; i++) {
+            dao.save(request(dao, "2010-07-23T15:26:4" + i, "WMS", "GetMap", "topp:states"));
+        }
+        List<RequestData> requests = dao.getRequests();
+        assertEquals(3, requests.size());
+        assertEquals(3, requests.get(0).getId());
+        assertEquals(5, requests.get(2).getId());
+        assertNull(dao.getRequest(1));
+
+        // running requests are returned as well, until completed
+        RequestData running = request(dao, "2010-07-23T15:27:00", "WFS", "GetFeature");
+        dao.add(running);
+        assertEquals(4, dao.getRequests().size());
+        assertSame(running, dao.getRequest(running.getId()));
+        dao.save(running);
+        assertEquals(3, dao.getRequests().size());
+        assertSame(running, dao.getRequest(running.getId()));
+
+        // the counters are not limited by the capacity
+        assertEquals(Long.valueOf(5), dao.getServiceCounts().get("WMS"));
+        assertEquals(Long.valueOf(5), dao.getLayerCounts().get("topp:states"));
+    }
+
+    @Test
+    public void testCounts() throws Exception {
+        RingBufferMonitorDAO dao = new RingBufferMonitorDAO(10);
+        dao.save(request(dao, "2010-07-23T15:26:10", "WMS", "GetMap", "topp:states"));
+        dao.save(request(dao, "2010-07-23T15:26:50", "WMS", "GetMap", "topp:states", "sf:roads"));
+        dao.save(request(dao, "2010-07-23T15:28:00", "WMS", "GetFeatureInfo", "sf:roads"));
+        dao.save(request(dao, "2010-07-23T16:00:00", "WFS", "GetFeature", "sf:roads"));
+
+        assertEquals(Long.valueOf(3), dao.getServiceCounts().get("WMS"));
+        assertEquals(Long.valueOf(1), dao.getServiceCounts().get("WFS"));
+        Map<String, Long> operations = dao.getOperationCounts("WMS");
+        assertEquals(2, operations.size());
+        assertEquals(Long.valueOf(2), operations.get("getmap"));
+        assertEquals(Long.valueOf(1), operations.get("getfeatureinfo"));
+        assertEquals(0, dao.getOperationCounts("WCS").size());
+        assertEquals(Long.valueOf(2), dao.getLayerCounts().get("topp:states"));
+        assertEquals(Long.valueOf(3), dao.getLayerCounts().get("sf:roads"));
+
+        Map<Date, Long> minutes = new LinkedHashMap<>();
+        dao.getRequestCounts(
+                toDate("2010-07-23T15:00:00"), toDate("2010-07-23T15:59:00"), minutes::put);
+        assertEquals(2, minutes.size());
+        assertEquals(Long.valueOf(2), minutes.get(toDate("2010-07-23T15:26:00")));
+        assertEquals(Long.valueOf(1), minutes.get(toDate("2010-07-23T15:28:00")));
+
+        dao.clear();
+        assertEquals(0, dao.getRequests().size());
+        assertEquals(0, dao.getServiceCounts().size());
+        minutes.clear();
+        dao.getRequestCounts(
+                toDate("2010-07-23T15:00:00"), toDate("2010-07-23T16:00:00"), minutes::put);
+        assertEquals(0, minutes.size());
+    }
+}
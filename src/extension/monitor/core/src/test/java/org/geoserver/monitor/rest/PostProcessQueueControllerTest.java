@@ -0,0 +1,39 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.sf.json.JSONObject;
+import org.geoserver.data.test.SystemTestData;
+import org.geoserver.monitor.MonitorFilter;
+import org.geoserver.monitor.PostProcessQueue;
+import org.geoserver.rest.RestBaseController;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.junit.Test;
+
+public class PostProcessQueueControllerTest extends GeoServerSystemTestSupport {
+
+    @Override
+    protected void setUpTestData(SystemTestData testData) throws Exception {
+        // no test data
+    }
+
+    @Test
+    public void testGetStatistics() throws Exception {
+        PostProcessQueue queue =
+                applicationContext.getBean(MonitorFilter.class).getPostProcessQueue();
+
+        JSONObject json =
+                (JSONObject) getAsJSON(RestBaseController.ROOT_PATH + "/monitor/postprocess.json");
+        assertEquals(queue.getDropped(), json.getLong("dropped"));
+        // the other counters move as the requests, including this one, are post processed
+        assertEquals(4, json.size());
+        assertTrue(json.has("queueSize"));
+        assertTrue(json.has("processed"));
+        assertTrue(json.has("batches"));
+    }
+}
@@ -0,0 +1,88 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.mapbox;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long keys to non negative int values, avoiding the boxing of keys
+ * and values of a {@code HashMap<Long, Integer>}
+ */
+class LongIntHashMap {
+
+    static final int MISSING = -1;
+
+    private long[] keys;
+
+    private int[] values;
+
+    private int size;
+
+    LongIntHashMap() {
+        keys = new long[16];
+        values = new int[16];
+        Arrays.fill(values, MISSING);
+    }
+
+    /** Returns the value associated to the key, or {@link #MISSING} */
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (values[i] == MISSING) {
+                return MISSING;
+            }
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+    }
+
+    /** Associates the value to the key, the value must not be negative */
+    void put(long key, int value) {
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        if (insert(keys, values, key, value)) {
+            size++;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static boolean insert(long[] keys, int[] values, long key, int value) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (values[i] == MISSING) {
+                keys[i] = key;
+                values[i] = value;
+                return true;
+            }
+            if (keys[i] == key) {
+                values[i] = value;
+                return false;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] newKeys = new long[capacity];
+        int[] newValues = new int[capacity];
+        Arrays.fill(newValues, MISSING);
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != MISSING) {
+                insert(newKeys, newValues, keys[i], values[i]);
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+}
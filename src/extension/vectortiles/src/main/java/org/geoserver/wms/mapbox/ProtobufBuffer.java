@@ -0,0 +1,143 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.mapbox;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** A growable byte buffer with the primitives needed to write protocol buffers messages */
+class ProtobufBuffer {
+
+    static final int WIRETYPE_VARINT = 0;
+
+    static final int WIRETYPE_FIXED64 = 1;
+
+    static final int WIRETYPE_LENGTH_DELIMITED = 2;
+
+    static final int WIRETYPE_FIXED32 = 5;
+
+    byte[] bytes;
+
+    int size;
+
+    ProtobufBuffer(int capacity) {
+        this.bytes = new byte[capacity];
+    }
+
+    /** Number of bytes written so far */
+    int size() {
+        return size;
+    }
+
+    /** Empties the buffer, keeping its capacity */
+    void reset() {
+        size = 0;
+    }
+
+    /** Returns the bytes written so far, without copying them if the buffer is full */
+    byte[] toByteArray() {
+        return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+    }
+
+    /** Current capacity, in bytes */
+    int capacity() {
+        return bytes.length;
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = size + extra;
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+        }
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) value;
+    }
+
+    void writeTag(int field, int wireType) {
+        writeVarint32((field << 3) | wireType);
+    }
+
+    /** Writes the value as an unsigned 32 bits varint */
+    void writeVarint32(int value) {
+        ensureCapacity(varint32Size(value));
+        while ((value & ~0x7F) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    /** Writes the value as an unsigned 64 bits varint */
+    void writeVarint64(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    void writeFixed32(int value) {
+        ensureCapacity(4);
+        bytes[size++] = (byte) value;
+        bytes[size++] = (byte) (value >> 8);
+        bytes[size++] = (byte) (value >> 16);
+        bytes[size++] = (byte) (value >> 24);
+    }
+
+    void writeFixed64(long value) {
+        writeFixed32((int) value);
+        writeFixed32((int) (value >> 32));
+    }
+
+    void writeBytes(byte[] source, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+    }
+
+    /** Writes a length delimited field with the contents of the other buffer */
+    void writeMessage(int field, ProtobufBuffer message) {
+        writeTag(field, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(message.size);
+        writeBytes(message.bytes, 0, message.size);
+    }
+
+    /** Writes a string field, UTF-8 encoded */
+    void writeString(int field, String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeTag(field, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(utf8.length);
+        writeBytes(utf8, 0, utf8.length);
+    }
+
+    /** Writes a packed repeated uint32 field, nothing if there are no values */
+    void writePacked(int field, int[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            length += varint32Size(values[i]);
+        }
+        writeTag(field, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(length);
+        for (int i = 0; i < count; i++) {
+            writeVarint32(values[i]);
+        }
+    }
+
+    /** Returns the number of bytes used by the value encoded as an unsigned 32 bits varint */
+    static int varint32Size(int value) {
+        if ((value & (~0 << 7)) == 0) return 1;
+        if ((value & (~0 << 14)) == 0) return 2;
+        if ((value & (~0 << 21)) == 0) return 3;
+        if ((value & (~0 << 28)) == 0) return 4;
+        return 5;
+    }
+}
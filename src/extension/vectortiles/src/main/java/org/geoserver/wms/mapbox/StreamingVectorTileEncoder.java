@@ -0,0 +1,584 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.mapbox;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.impl.CoordinateArraySequence;
+
+/**
+ * Mapbox Vector Tile encoder writing each feature to the protocol buffers output as soon as it's
+ * added, instead of keeping the whole tile object model in memory until the end.
+ *
+ * <p>The output is the same as the one of {@link no.ecc.vectortile.VectorTileEncoderNoClip} with
+ * auto scale disabled: geometries are not clipped, polygons and lines smaller than a pixel are
+ * skipped, as well as points outside of the tile plus its buffer. Tag keys and values are interned
+ * per layer, numeric values without boxing. Buffers are reused across tiles encoded by the same
+ * thread.
+ *
+ * <p>Instances are not thread safe, and {@link #encode()} can be called only once.
+ */
+public class StreamingVectorTileEncoder {
+
+    /**
+     * Maximum total capacity of the buffers each thread keeps for reuse, to avoid holding memory
+     * after big tiles, in every thread that ever encoded one
+     */
+    static final int MAX_RETAINED_BYTES = 1024 * 1024;
+
+    static final int INITIAL_CAPACITY = 4096;
+
+    // vector_tile.proto fields
+    static final int TILE_LAYERS = 3;
+
+    static final int LAYER_NAME = 1;
+    static final int LAYER_FEATURES = 2;
+    static final int LAYER_KEYS = 3;
+    static final int LAYER_VALUES = 4;
+    static final int LAYER_EXTENT = 5;
+    static final int LAYER_VERSION = 15;
+
+    static final int FEATURE_ID = 1;
+    static final int FEATURE_TAGS = 2;
+    static final int FEATURE_TYPE = 3;
+    static final int FEATURE_GEOMETRY = 4;
+
+    static final int VALUE_STRING = 1;
+    static final int VALUE_FLOAT = 2;
+    static final int VALUE_DOUBLE = 3;
+    static final int VALUE_SINT = 6;
+    static final int VALUE_BOOL = 7;
+
+    static final int GEOM_UNKNOWN = 0;
+    static final int GEOM_POINT = 1;
+    static final int GEOM_LINESTRING = 2;
+    static final int GEOM_POLYGON = 3;
+
+    static final int MOVE_TO = 1;
+    static final int LINE_TO = 2;
+    static final int CLOSE_PATH = 7;
+
+    static final int VERSION = 2;
+
+    private static final ThreadLocal<BufferPool> POOLS = ThreadLocal.withInitial(BufferPool::new);
+
+    private final int extent;
+
+    private final Envelope clipEnvelope;
+
+    private final Map<String, Layer> layers = new LinkedHashMap<>();
+
+    private final BufferPool pool;
+
+    private final ProtobufBuffer feature;
+
+    private final ProtobufBuffer value;
+
+    private final IntArray tags = new IntArray();
+
+    private final IntArray commands = new IntArray();
+
+    private int x;
+
+    private int y;
+
+    private boolean encoded;
+
+    /**
+     * @param extent the extent of the tile, in pixels
+     * @param clipBuffer points farther than this from the tile are skipped
+     */
+    public StreamingVectorTileEncoder(int extent, int clipBuffer) {
+        this.extent = extent;
+        this.clipEnvelope =
+                new Envelope(-clipBuffer, extent + clipBuffer, -clipBuffer, extent + clipBuffer);
+        this.pool = BufferPool.acquire(this);
+        this.feature = pool.borrow();
+        this.value = pool.borrow();
+    }
+
+    /**
+     * Adds a feature to the tile
+     *
+     * @param layerName the layer name
+     * @param attributes the feature attributes, null values are skipped
+     * @param geometry the geometry, in pixel coordinates
+     * @param id the feature id, or a negative number if not available
+     */
+    public void addFeature(
+            String layerName, Map<String, ?> attributes, Geometry geometry, long id) {
+        if (encoded) {
+            throw new IllegalStateException("The tile has already been encoded");
+        }
+        // skip small Polygon/LineString
+        if (geometry instanceof Polygon && geometry.getArea() < 1.0d) {
+            return;
+        }
+        if (geometry instanceof LineString && geometry.getLength() < 1.0d) {
+            return;
+        }
+
+        // plain geometry collections are split, keeping the id
+        if (geometry.getClass().equals(GeometryCollection.class)) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                addFeature(layerName, attributes, geometry.getGeometryN(i), id);
+            }
+            return;
+        }
+
+        if (geometry.isEmpty()) {
+            return;
+        }
+        // lines and polygons are clipped upstream, points outside of the buffer are skipped
+        if (geometry instanceof Point && !clipEnvelope.covers(geometry.getCoordinate())) {
+            return;
+        }
+
+        Layer layer = layers.get(layerName);
+        if (layer == null) {
+            layer = new Layer(layerName, pool);
+            layers.put(layerName, layer);
+        }
+
+        tags.clear();
+        for (Map.Entry<String, ?> e : attributes.entrySet()) {
+            // skip attribute without value
+            if (e.getValue() == null) {
+                continue;
+            }
+            tags.add(layer.key(e.getKey()));
+            tags.add(layer.value(e.getValue(), value));
+        }
+
+        x = 0;
+        y = 0;
+        commands.clear();
+        commands(geometry);
+        // skip features with no geometry commands
+        if (commands.size == 0) {
+            return;
+        }
+
+        feature.reset();
+        if (id >= 0) {
+            feature.writeTag(FEATURE_ID, ProtobufBuffer.WIRETYPE_VARINT);
+            feature.writeVarint64(id);
+        }
+        feature.writePacked(FEATURE_TAGS, tags.values, tags.size);
+        feature.writeTag(FEATURE_TYPE, ProtobufBuffer.WIRETYPE_VARINT);
+        feature.writeVarint32(toGeomType(geometry));
+        feature.writePacked(FEATURE_GEOMETRY, commands.values, commands.size);
+        layer.features.writeMessage(LAYER_FEATURES, feature);
+    }
+
+    /**
+     * Returns the encoded tile, and releases the buffers for reuse by the next tile encoded in this
+     * thread
+     */
+    public byte[] encode() {
+        if (encoded) {
+            throw new IllegalStateException("The tile has already been encoded");
+        }
+        encoded = true;
+        try {
+            int size = 0;
+            for (Layer layer : layers.values()) {
+                int layerSize = layer.size(extent);
+                size += 1 + ProtobufBuffer.varint32Size(layerSize) + layerSize;
+            }
+            ProtobufBuffer tile = new ProtobufBuffer(size);
+            for (Layer layer : layers.values()) {
+                tile.writeTag(TILE_LAYERS, ProtobufBuffer.WIRETYPE_LENGTH_DELIMITED);
+                tile.writeVarint32(layer.size(extent));
+                layer.writeTo(tile, extent);
+            }
+            return tile.toByteArray();
+        } finally {
+            release();
+        }
+    }
+
+    private void release() {
+        for (Layer layer : layers.values()) {
+            layer.release(pool);
+        }
+        layers.clear();
+        pool.release(feature);
+        pool.release(value);
+        pool.release(this);
+    }
+
+    private static int toGeomType(Geometry geometry) {
+        if (geometry instanceof Point || geometry instanceof MultiPoint) {
+            return GEOM_POINT;
+        }
+        if (geometry instanceof LineString || geometry instanceof MultiLineString) {
+            return GEOM_LINESTRING;
+        }
+        if (geometry instanceof Polygon || geometry instanceof MultiPolygon) {
+            return GEOM_POLYGON;
+        }
+        return GEOM_UNKNOWN;
+    }
+
+    private void commands(Geometry geometry) {
+        if (geometry instanceof MultiLineString) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                LineString line = (LineString) geometry.getGeometryN(i);
+                commands(line.getCoordinateSequence(), false, false, false);
+            }
+        } else if (geometry instanceof Polygon) {
+            commands((Polygon) geometry);
+        } else if (geometry instanceof MultiPolygon) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                commands((Polygon) geometry.getGeometryN(i));
+            }
+        } else {
+            boolean closePath = geometry instanceof LinearRing;
+            boolean multiPoint = geometry instanceof MultiPoint;
+            CoordinateSequence cs =
+                    geometry instanceof LineString
+                            ? ((LineString) geometry).getCoordinateSequence()
+                            : new CoordinateArraySequence(geometry.getCoordinates());
+            commands(cs, false, closePath, multiPoint);
+        }
+    }
+
+    /**
+     * The exterior ring is written in counter-clockwise order, and the interior rings in clockwise
+     * order, as the Y axis points down in the tile coordinate system
+     */
+    private void commands(Polygon polygon) {
+        LinearRing exterior = polygon.getExteriorRing();
+        boolean reverse = !Orientation.isCCW(exterior.getCoordinates());
+        commands(exterior.getCoordinateSequence(), reverse, true, false);
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            LinearRing interior = polygon.getInteriorRingN(i);
+            reverse = Orientation.isCCW(interior.getCoordinates());
+            commands(interior.getCoordinateSequence(), reverse, true, false);
+        }
+    }
+
+    private void commands(
+            CoordinateSequence cs, boolean reverse, boolean closePathAtEnd, boolean multiPoint) {
+        int n = cs.size();
+        if (n == 0) {
+            throw new IllegalArgumentException("empty geometry");
+        }
+        int lineToIndex = -1;
+        int lineToLength = 0;
+        double firstX = 0;
+        double firstY = 0;
+        for (int i = 0; i < n; i++) {
+            int j = reverse ? n - 1 - i : i;
+            double cx = cs.getX(j);
+            double cy = cs.getY(j);
+            if (i == 0) {
+                commands.add(commandAndLength(MOVE_TO, multiPoint ? n : 1));
+                firstX = cx;
+                firstY = cy;
+            }
+
+            int _x = (int) Math.round(cx);
+            int _y = (int) Math.round(cy);
+
+            // prevent point equal to the previous
+            if (i > 0 && _x == x && _y == y) {
+                lineToLength--;
+                continue;
+            }
+
+            // prevent double closing
+            if (closePathAtEnd && n > 1 && i == n - 1 && firstX == cx && firstY == cy) {
+                lineToLength--;
+                continue;
+            }
+
+            // delta, then zigzag
+            commands.add(zigZagEncode(_x - x));
+            commands.add(zigZagEncode(_y - y));
+
+            x = _x;
+            y = _y;
+
+            if (i == 0 && n > 1 && !multiPoint) {
+                lineToIndex = commands.size;
+                lineToLength = n - 1;
+                commands.add(commandAndLength(LINE_TO, lineToLength));
+            }
+        }
+
+        // update LineTo length
+        if (lineToIndex >= 0) {
+            if (lineToLength == 0) {
+                commands.remove(lineToIndex);
+            } else {
+                commands.set(lineToIndex, commandAndLength(LINE_TO, lineToLength));
+            }
+        }
+
+        if (closePathAtEnd) {
+            commands.add(commandAndLength(CLOSE_PATH, 1));
+        }
+    }
+
+    static int commandAndLength(int command, int repeat) {
+        return repeat << 3 | command;
+    }
+
+    static int zigZagEncode(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    /** Interned keys and values, and encoded features, of a layer */
+    private static final class Layer {
+
+        final byte[] name;
+
+        final ProtobufBuffer features;
+
+        final ProtobufBuffer keys;
+
+        final ProtobufBuffer values;
+
+        final Map<String, Integer> keyIndexes = new HashMap<>();
+
+        final Map<String, Integer> stringIndexes = new HashMap<>();
+
+        final Map<Object, Integer> objectIndexes = new HashMap<>();
+
+        final LongIntHashMap intIndexes = new LongIntHashMap();
+
+        final LongIntHashMap longIndexes = new LongIntHashMap();
+
+        final LongIntHashMap floatIndexes = new LongIntHashMap();
+
+        final LongIntHashMap doubleIndexes = new LongIntHashMap();
+
+        int trueIndex = -1;
+
+        int falseIndex = -1;
+
+        int valueCount;
+
+        Layer(String name, BufferPool pool) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.features = pool.borrow();
+            this.keys = pool.borrow();
+            this.values = pool.borrow();
+        }
+
+        int key(String key) {
+            Integer index = keyIndexes.get(key);
+            if (index == null) {
+                index = keyIndexes.size();
+                keyIndexes.put(key, index);
+                keys.writeString(LAYER_KEYS, key);
+            }
+            return index;
+        }
+
+        /** Returns the index of the value, adding it to the dictionary if needed */
+        int value(Object value, ProtobufBuffer scratch) {
+            int index;
+            if (value instanceof String) {
+                Integer i = stringIndexes.get(value);
+                index = i == null ? LongIntHashMap.MISSING : i;
+                if (index < 0) {
+                    index = addValue(value, scratch);
+                    stringIndexes.put((String) value, index);
+                }
+            } else if (value instanceof Integer) {
+                index = getValue(intIndexes, (Integer) value, value, scratch);
+            } else if (value instanceof Long) {
+                index = getValue(longIndexes, (Long) value, value, scratch);
+            } else if (value instanceof Float) {
+                long bits = Float.floatToIntBits((Float) value);
+                index = getValue(floatIndexes, bits, value, scratch);
+            } else if (value instanceof Double) {
+                long bits = Double.doubleToLongBits((Double) value);
+                index = getValue(doubleIndexes, bits, value, scratch);
+            } else if (value instanceof Boolean) {
+                if ((Boolean) value) {
+                    if (trueIndex < 0) trueIndex = addValue(value, scratch);
+                    index = trueIndex;
+                } else {
+                    if (falseIndex < 0) falseIndex = addValue(value, scratch);
+                    index = falseIndex;
+                }
+            } else {
+                Integer i = objectIndexes.get(value);
+                if (i == null) {
+                    i = addValue(value, scratch);
+                    objectIndexes.put(value, i);
+                }
+                index = i;
+            }
+            return index;
+        }
+
+        private int getValue(
+                LongIntHashMap indexes, long key, Object value, ProtobufBuffer scratch) {
+            int index = indexes.get(key);
+            if (index == LongIntHashMap.MISSING) {
+                index = addValue(value, scratch);
+                indexes.put(key, index);
+            }
+            return index;
+        }
+
+        private int addValue(Object value, ProtobufBuffer scratch) {
+            scratch.reset();
+            if (value instanceof String) {
+                scratch.writeString(VALUE_STRING, (String) value);
+            } else if (value instanceof Integer || value instanceof Long) {
+                long l = ((Number) value).longValue();
+                scratch.writeTag(VALUE_SINT, ProtobufBuffer.WIRETYPE_VARINT);
+                scratch.writeVarint64((l << 1) ^ (l >> 63));
+            } else if (value instanceof Float) {
+                scratch.writeTag(VALUE_FLOAT, ProtobufBuffer.WIRETYPE_FIXED32);
+                scratch.writeFixed32(Float.floatToRawIntBits((Float) value));
+            } else if (value instanceof Number) {
+                scratch.writeTag(VALUE_DOUBLE, ProtobufBuffer.WIRETYPE_FIXED64);
+                scratch.writeFixed64(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+            } else if (value instanceof Boolean) {
+                scratch.writeTag(VALUE_BOOL, ProtobufBuffer.WIRETYPE_VARINT);
+                scratch.writeVarint32((Boolean) value ? 1 : 0);
+            } else {
+                scratch.writeString(VALUE_STRING, value.toString());
+            }
+            values.writeMessage(LAYER_VALUES, scratch);
+            return valueCount++;
+        }
+
+        /** Size of the layer message */
+        int size(int extent) {
+            return 1
+                    + ProtobufBuffer.varint32Size(name.length)
+                    + name.length
+                    + features.size()
+                    + keys.size()
+                    + values.size()
+                    + 1
+                    + ProtobufBuffer.varint32Size(extent)
+                    + 1
+                    + ProtobufBuffer.varint32Size(VERSION);
+        }
+
+        /** Writes the layer message, fields in field number order */
+        void writeTo(ProtobufBuffer out, int extent) {
+            out.writeTag(LAYER_NAME, ProtobufBuffer.WIRETYPE_LENGTH_DELIMITED);
+            out.writeVarint32(name.length);
+            out.writeBytes(name, 0, name.length);
+            out.writeBytes(features.bytes, 0, features.size());
+            out.writeBytes(keys.bytes, 0, keys.size());
+            out.writeBytes(values.bytes, 0, values.size());
+            out.writeTag(LAYER_EXTENT, ProtobufBuffer.WIRETYPE_VARINT);
+            out.writeVarint32(extent);
+            out.writeTag(LAYER_VERSION, ProtobufBuffer.WIRETYPE_VARINT);
+            out.writeVarint32(VERSION);
+        }
+
+        void release(BufferPool pool) {
+            pool.release(features);
+            pool.release(keys);
+            pool.release(values);
+        }
+    }
+
+    /** A growable array of primitive ints */
+    static final class IntArray {
+
+        int[] values = new int[64];
+
+        int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        void remove(int index) {
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+        }
+    }
+
+    /**
+     * The buffers of a thread, reused from one tile to the next. If a thread encodes more than one
+     * tile at the same time, the encoders after the first use their own buffers. The buffers kept
+     * between tiles add up to at most {@link #MAX_RETAINED_BYTES}.
+     */
+    static final class BufferPool {
+
+        final Deque<ProtobufBuffer> buffers = new ArrayDeque<>();
+
+        /** Total capacity of the pooled buffers */
+        long retained;
+
+        WeakReference<StreamingVectorTileEncoder> owner;
+
+        static BufferPool acquire(StreamingVectorTileEncoder encoder) {
+            BufferPool pool = POOLS.get();
+            // the previous owner might have been abandoned without encoding
+            if (pool.owner != null && pool.owner.get() != null) {
+                pool = new BufferPool();
+            }
+            pool.owner = new WeakReference<>(encoder);
+            return pool;
+        }
+
+        ProtobufBuffer borrow() {
+            ProtobufBuffer buffer = buffers.poll();
+            if (buffer == null) {
+                return new ProtobufBuffer(INITIAL_CAPACITY);
+            }
+            retained -= buffer.capacity();
+            buffer.reset();
+            return buffer;
+        }
+
+        void release(ProtobufBuffer buffer) {
+            if (retained + buffer.capacity() <= MAX_RETAINED_BYTES) {
+                buffers.push(buffer);
+                retained += buffer.capacity();
+            }
+        }
+
+        void release(StreamingVectorTileEncoder encoder) {
+            if (owner != null && owner.get() == encoder) {
+                owner = null;
+            }
+        }
+    }
+}
@@ -283,6 +283,61 @@ public PipelineBuilder simplify(
             final Set<RenderingHints.Key> fsHints,
             final Hints qHints) {
 
+        addGeometryDistanceHint(fsHints, qHints);
+        double pixelDistance = context.screenSimplificationDistance;
+        double simplificationDistance = context.targetCRSSimplificationDistance;
+
+        double distanceTolerance =
+                isTransformToScreenCoordinates ? pixelDistance : simplificationDistance;
+
+        addLast(new Simplify(distanceTolerance));
+        return this;
+    }
+
+    /**
+     * Transform from source to target CRS and simplify, sharing the simplified geometries among
+     * tiles through the cache. The tolerance is rounded down to a {@link
+     * SimplifiedGeometryCache#getToleranceBand(double) band}, so that all the tiles of a zoom level
+     * compute the same geometries. Replaces {@link #transform(boolean)} and {@link
+     * #simplify(boolean, Set, Hints)}, to be followed by {@link #transformToScreen(boolean)}.
+     *
+     * @param cache The cache for the layer being encoded
+     * @param isTransformToScreenCoordinates Use a tolerance equivalent to the screen coordinate
+     *     space one
+     */
+    PipelineBuilder simplifyCached(
+            SimplifiedGeometryCache.LayerCache cache,
+            boolean isTransformToScreenCoordinates,
+            final Set<RenderingHints.Key> fsHints,
+            final Hints qHints) {
+
+        addGeometryDistanceHint(fsHints, qHints);
+        double tolerance = context.targetCRSSimplificationDistance;
+        if (isTransformToScreenCoordinates) {
+            // the screen simplification distance, expressed in the target CRS
+            tolerance *= PIXEL_BASE_SAMPLE_SIZE;
+        }
+        double band = SimplifiedGeometryCache.getToleranceBand(tolerance);
+
+        Pipeline simplifier = new Transform(context.sourceToTargetCrs);
+        simplifier.setNext(new Simplify(band));
+        addLast(new CachedSimplify(cache, band, simplifier));
+        return this;
+    }
+
+    /**
+     * Transform from target CRS to screen coordinates
+     *
+     * @param transformToScreenCoordinates If false, does nothing
+     */
+    public PipelineBuilder transformToScreen(boolean transformToScreenCoordinates) {
+        if (transformToScreenCoordinates) {
+            addLast(new Transform(context.targetToScreen));
+        }
+        return this;
+    }
+
+    private void addGeometryDistanceHint(Set<RenderingHints.Key> fsHints, Hints qHints) {
         if (fsHints != null && qHints != null) {
             // if possible we let the datastore do the generalizations
 
@@ -296,14 +351,6 @@ public PipelineBuilder simplify(
                 // do not return: we can still perform some in memory generalization ...
             }
         }
-        double pixelDistance = context.screenSimplificationDistance;
-        double simplificationDistance = context.targetCRSSimplificationDistance;
-
-        double distanceTolerance =
-                isTransformToScreenCoordinates ? pixelDistance : simplificationDistance;
-
-        addLast(new Simplify(distanceTolerance));
-        return this;
     }
 
     /**
@@ -373,6 +420,27 @@ protected Geometry _run(Geometry geom) throws Exception {
         }
     }
 
+    private static final class CachedSimplify extends Pipeline {
+
+        private final SimplifiedGeometryCache.LayerCache cache;
+
+        private final double tolerance;
+
+        private final Pipeline simplifier;
+
+        CachedSimplify(
+                SimplifiedGeometryCache.LayerCache cache, double tolerance, Pipeline simplifier) {
+            this.cache = cache;
+            this.tolerance = tolerance;
+            this.simplifier = simplifier;
+        }
+
+        @Override
+        protected Geometry _run(Geometry geom) throws Exception {
+            return cache.simplify(geom, tolerance, simplifier);
+        }
+    }
+
     protected static class Clip extends Pipeline {
 
         private final Envelope clippingEnvelope;
@@ -0,0 +1,458 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.vector;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.namespace.QName;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.security.DataAccessLimits;
+import org.geoserver.security.SecureCatalogImpl;
+import org.geoserver.wfs.TransactionCallback;
+import org.geoserver.wfs.TransactionEvent;
+import org.geoserver.wfs.WFSException;
+import org.geoserver.wfs.request.TransactionRequest;
+import org.geoserver.wfs.request.TransactionResponse;
+import org.geotools.data.Query;
+import org.geotools.feature.NameImpl;
+import org.geotools.util.factory.Hints;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.type.Name;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Caches the geometries simplified by the vector tile pipeline, in the target CRS and before
+ * clipping, so that neighbouring tiles at the same zoom level do not simplify the same geometry
+ * over and over.
+ *
+ * <p>Geometries are keyed on the feature type, the feature id, the target CRS and a simplification
+ * tolerance band: the tolerance is rounded down to a power of {@code 2^(1/4)}, so that all the
+ * tiles of a zoom level share the same simplified geometries. They are invalidated for the whole
+ * store when a WFS transaction modifies one of its feature types, or when the store or one of its
+ * feature types is modified or removed from the catalog. Changes made to the data outside of
+ * GeoServer are not tracked.
+ *
+ * <p>The maximum size of the cache, in megabytes, is controlled by the {@link #SIZE_KEY}
+ * system/environment variable or servlet context parameter, and defaults to zero, which disables
+ * the cache.
+ */
+public class SimplifiedGeometryCache
+        implements TransactionCallback, CatalogListener, GeoServerLifecycleHandler {
+
+    static final Logger LOGGER = Logging.getLogger(SimplifiedGeometryCache.class);
+
+    /** Maximum size of the cached geometries, in megabytes */
+    static final String SIZE_KEY = "GEOSERVER_VECTOR_TILES_GEOMETRY_CACHE_SIZE";
+
+    /** Number of tolerance bands per doubling of the tolerance */
+    static final int BAND_STEPS = 4;
+
+    /** Estimated memory used by a coordinate */
+    static final int COORDINATE_BYTES = 40;
+
+    /** Estimated memory used by a cache entry, regardless of the geometry size */
+    static final int ENTRY_BYTES = 200;
+
+    private final Cache<Key, Geometry> geometries;
+
+    /** Incremented on each invalidation, used to avoid caching geometries read from stale data */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** The stores modified by the transaction running in the current thread */
+    private final ThreadLocal<Set<String>> transactionStores = new ThreadLocal<>();
+
+    private final Catalog catalog;
+
+    private final SecureCatalogImpl secureCatalog;
+
+    public SimplifiedGeometryCache(Catalog catalog, SecureCatalogImpl secureCatalog) {
+        this(catalog, secureCatalog, getConfiguredValue(SIZE_KEY, 0) * 1024L * 1024L);
+    }
+
+    /**
+     * @param catalog the catalog to listen to, used to look up the stores of the feature types
+     * @param secureCatalog the secure catalog, providing the data access limits of the users, can
+     *     be null if security is not in use
+     * @param maxBytes maximum estimated size of the cached geometries, zero disables the cache
+     */
+    SimplifiedGeometryCache(Catalog catalog, SecureCatalogImpl secureCatalog, long maxBytes) {
+        this.catalog = catalog;
+        this.secureCatalog = secureCatalog;
+        if (maxBytes > 0) {
+            this.geometries =
+                    CacheBuilder.newBuilder()
+                            .maximumWeight(maxBytes)
+                            .weigher(SimplifiedGeometryCache::weigh)
+                            .build();
+        } else {
+            this.geometries = null;
+        }
+        if (catalog != null) {
+            catalog.addListener(this);
+        }
+    }
+
+    private static int getConfiguredValue(String key, int defaultValue) {
+        String value = GeoServerExtensions.getProperty(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid " + key + " value: " + value);
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int weigh(Key key, Geometry geometry) {
+        long bytes =
+                ENTRY_BYTES
+                        + 2L * key.featureId.length()
+                        + (long) COORDINATE_BYTES * geometry.getNumPoints();
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    /** Returns true if geometries are cached */
+    boolean isEnabled() {
+        return geometries != null;
+    }
+
+    /**
+     * Rounds the tolerance down to the nearest band, all the tolerances in the same band share the
+     * same cached geometries
+     */
+    static double getToleranceBand(double tolerance) {
+        if (!(tolerance > 0) || Double.isInfinite(tolerance)) {
+            return tolerance;
+        }
+        double step = Math.floor(Math.log(tolerance) / Math.log(2) * BAND_STEPS);
+        return Math.pow(2, step / BAND_STEPS);
+    }
+
+    /**
+     * Returns a view of the cache for the geometries of a feature type in a single tile, or null if
+     * the cache is disabled or the feature type is not known to the catalog
+     *
+     * @param typeName the name of the feature type
+     * @param geometryName the name of the geometry attribute being encoded
+     * @param targetCrs the CRS of the tile
+     * @param query the query used to read the features
+     */
+    LayerCache getLayerCache(
+            Name typeName, String geometryName, CoordinateReferenceSystem targetCrs, Query query) {
+        if (!isEnabled() || catalog == null || typeName == null) {
+            return null;
+        }
+        FeatureTypeInfo info = catalog.getFeatureTypeByName(typeName);
+        if (info == null || info.getStore() == null) {
+            return null;
+        }
+        Map<?, ?> hints = query == null ? null : query.getHints();
+        LayerKey key =
+                new LayerKey(
+                        info.getStore().getId(),
+                        typeName,
+                        geometryName,
+                        targetCrs == null ? null : targetCrs.toWKT(),
+                        hints == null ? null : hints.get(Hints.VIRTUAL_TABLE_PARAMETERS),
+                        getAccessLimits(info));
+        return new LayerCache(key);
+    }
+
+    private DataAccessLimits getAccessLimits(FeatureTypeInfo info) {
+        if (secureCatalog == null) {
+            return null;
+        }
+        return secureCatalog
+                .getResourceAccessManager()
+                .getAccessLimits(SecurityContextHolder.getContext().getAuthentication(), info);
+    }
+
+    /** Drops the geometries of all the feature types in the given store */
+    void invalidateStore(String storeId) {
+        if (geometries == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        geometries.asMap().keySet().removeIf(k -> Objects.equals(k.layer.storeId, storeId));
+    }
+
+    /** Drops all the cached geometries */
+    void clear() {
+        if (geometries == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        geometries.invalidateAll();
+    }
+
+    /** Returns the number of cached geometries */
+    long size() {
+        return geometries == null ? 0 : geometries.size();
+    }
+
+    @Override
+    public TransactionRequest beforeTransaction(TransactionRequest request) throws WFSException {
+        transactionStores.remove();
+        return request;
+    }
+
+    @Override
+    public void beforeCommit(TransactionRequest request) throws WFSException {
+        // nothing to do
+    }
+
+    @Override
+    public void afterTransaction(
+            TransactionRequest request, TransactionResponse result, boolean committed) {
+        // geometries read between the change notifications and the commit would be the old
+        // ones, invalidate again now that the changes are visible
+        Set<String> stores = transactionStores.get();
+        transactionStores.remove();
+        if (stores != null) {
+            stores.forEach(this::invalidateStore);
+        }
+    }
+
+    @Override
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        if (!isEnabled()) {
+            return;
+        }
+        QName name = event.getLayerName();
+        FeatureTypeInfo info =
+                name == null || catalog == null
+                        ? null
+                        : catalog.getFeatureTypeByName(
+                                new NameImpl(name.getNamespaceURI(), name.getLocalPart()));
+        if (info == null || info.getStore() == null) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Could not find the store of " + name + ", clearing all geometries");
+            }
+            clear();
+            return;
+        }
+        String storeId = info.getStore().getId();
+        invalidateStore(storeId);
+        Set<String> stores = transactionStores.get();
+        if (stores == null) {
+            stores = new HashSet<>();
+            transactionStores.set(stores);
+        }
+        stores.add(storeId);
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) {
+        // a new resource has no cached geometries
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) {
+        invalidate(event.getSource());
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) {
+        // wait for the post modify event
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+        invalidate(event.getSource());
+    }
+
+    private void invalidate(CatalogInfo info) {
+        if (size() == 0) {
+            return;
+        }
+        if (info instanceof StoreInfo) {
+            invalidateStore(info.getId());
+        } else if (info instanceof ResourceInfo && ((ResourceInfo) info).getStore() != null) {
+            invalidateStore(((ResourceInfo) info).getStore().getId());
+        }
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
+    }
+
+    @Override
+    public void onReset() {
+        clear();
+    }
+
+    @Override
+    public void onDispose() {
+        clear();
+    }
+
+    @Override
+    public void beforeReload() {
+        // nothing to do
+    }
+
+    @Override
+    public void onReload() {
+        clear();
+    }
+
+    /**
+     * The cached geometries of a feature type, for a given target CRS. Keeps track of the feature
+     * being encoded, so it's meant to be used by a single thread, for a single tile.
+     */
+    class LayerCache {
+
+        final LayerKey layer;
+
+        String featureId;
+
+        Geometry source;
+
+        LayerCache(LayerKey layer) {
+            this.layer = layer;
+        }
+
+        /** Sets the feature being encoded */
+        void setFeature(String featureId, Geometry source) {
+            this.featureId = featureId;
+            this.source = source;
+        }
+
+        /**
+         * Returns the simplified geometry, running the simplifier and caching its result if not
+         * found. The cache is used only if the geometry is the original one of the current feature.
+         *
+         * @param geometry the geometry to simplify
+         * @param tolerance the simplification tolerance band, part of the key
+         * @param simplifier the pipeline computing the simplified geometry
+         */
+        Geometry simplify(Geometry geometry, double tolerance, Pipeline simplifier)
+                throws Exception {
+            if (featureId == null || geometry != source) {
+                return simplifier.execute(geometry);
+            }
+            Key key = new Key(layer, tolerance, featureId);
+            Geometry simplified = geometries.getIfPresent(key);
+            if (simplified != null) {
+                return simplified;
+            }
+            long start = generation.get();
+            simplified = simplifier.execute(geometry);
+            geometries.put(key, simplified);
+            // the data changed while simplifying, the geometry might be stale
+            if (generation.get() != start) {
+                geometries.invalidate(key);
+            }
+            return simplified;
+        }
+    }
+
+    /** The feature type related part of the key, computed once per tile */
+    static final class LayerKey {
+
+        final String storeId;
+
+        final Name typeName;
+
+        final String geometryName;
+
+        final String targetCrs;
+
+        final Object viewParams;
+
+        final DataAccessLimits limits;
+
+        final int hash;
+
+        LayerKey(
+                String storeId,
+                Name typeName,
+                String geometryName,
+                String targetCrs,
+                Object viewParams,
+                DataAccessLimits limits) {
+            this.storeId = storeId;
+            this.typeName = typeName;
+            this.geometryName = geometryName;
+            this.targetCrs = targetCrs;
+            this.viewParams = viewParams;
+            this.limits = limits;
+            this.hash =
+                    Objects.hash(storeId, typeName, geometryName, targetCrs, viewParams, limits);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof LayerKey)) return false;
+            LayerKey other = (LayerKey) o;
+            return hash == other.hash
+                    && Objects.equals(storeId, other.storeId)
+                    && Objects.equals(typeName, other.typeName)
+                    && Objects.equals(geometryName, other.geometryName)
+                    && Objects.equals(targetCrs, other.targetCrs)
+                    && Objects.equals(viewParams, other.viewParams)
+                    && Objects.equals(limits, other.limits);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /** Key of a cached geometry */
+    static final class Key {
+
+        final LayerKey layer;
+
+        final double tolerance;
+
+        final String featureId;
+
+        Key(LayerKey layer, double tolerance, String featureId) {
+            this.layer = layer;
+            this.tolerance = tolerance;
+            this.featureId = featureId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return Double.compare(tolerance, other.tolerance) == 0
+                    && featureId.equals(other.featureId)
+                    && layer.equals(other.layer);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(layer, tolerance, featureId);
+        }
+    }
+}
@@ -55,6 +55,8 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
 
     private boolean transformToScreenCoordinates;
 
+    private SimplifiedGeometryCache geometryCache;
+
     public VectorTileMapOutputFormat(VectorTileBuilderFactory tileBuilderFactory) {
         super(tileBuilderFactory.getMimeType(), tileBuilderFactory.getOutputFormats());
         this.tileBuilderFactory = tileBuilderFactory;
@@ -75,6 +77,11 @@ public void setTransformToScreenCoordinates(boolean useScreenCoords) {
         this.transformToScreenCoordinates = useScreenCoords;
     }
 
+    /** Sets the cache of simplified geometries shared among tiles, can be null */
+    public void setGeometryCache(SimplifiedGeometryCache geometryCache) {
+        this.geometryCache = geometryCache;
+    }
+
     @Override
     public WebMap produceMap(final WMSMapContent mapContent) throws ServiceException, IOException {
         checkNotNull(mapContent);
@@ -128,21 +135,42 @@ public WebMap produceMap(final WMSMapContent mapContent) throws ServiceException
             Query query = getStyleQuery(layer, mapContent);
             Hints hints = query.getHints();
 
-            Pipeline pipeline =
-                    getPipeline(
-                            mapContent,
-                            renderingArea,
-                            paintArea,
-                            sourceCrs,
-                            featureSource.getSupportedHints(),
-                            hints,
-                            buffer);
+            SimplifiedGeometryCache.LayerCache layerCache =
+                    geometryCache == null
+                            ? null
+                            : geometryCache.getLayerCache(
+                                    featureSource.getSchema().getName(),
+                                    geometryDescriptor.getLocalName(),
+                                    renderingArea.getCoordinateReferenceSystem(),
+                                    query);
+            Pipeline pipeline;
+            if (layerCache == null) {
+                pipeline =
+                        getPipeline(
+                                mapContent,
+                                renderingArea,
+                                paintArea,
+                                sourceCrs,
+                                featureSource.getSupportedHints(),
+                                hints,
+                                buffer);
+            } else {
+                pipeline =
+                        getPipeline(
+                                renderingArea,
+                                paintArea,
+                                sourceCrs,
+                                featureSource.getSupportedHints(),
+                                hints,
+                                buffer,
+                                layerCache);
+            }
 
             hints.remove(Hints.SCREENMAP);
 
             FeatureCollection<?, ?> features = featureSource.getFeatures(query);
 
-            run(features, pipeline, geometryDescriptor, vectorTileBuilder, layer);
+            run(features, pipeline, geometryDescriptor, vectorTileBuilder, layer, layerCache);
         }
 
         WebMap map = vectorTileBuilder.build(mapContent);
@@ -177,6 +205,34 @@ protected Pipeline getPipeline(
         return pipeline;
     }
 
+    /**
+     * Builds a pipeline simplifying the geometries before clipping them, so that the simplified
+     * geometries can be shared among tiles through the layer cache
+     */
+    Pipeline getPipeline(
+            final ReferencedEnvelope renderingArea,
+            final Rectangle paintArea,
+            CoordinateReferenceSystem sourceCrs,
+            final Set<RenderingHints.Key> fsHints,
+            final Hints qHints,
+            int buffer,
+            SimplifiedGeometryCache.LayerCache layerCache) {
+        try {
+            final PipelineBuilder builder =
+                    PipelineBuilder.newBuilder(
+                            renderingArea, paintArea, sourceCrs, overSamplingFactor, buffer);
+
+            return builder.preprocess()
+                    .simplifyCached(layerCache, transformToScreenCoordinates, fsHints, qHints)
+                    .transformToScreen(transformToScreenCoordinates)
+                    .clip(clipToMapBounds, transformToScreenCoordinates)
+                    .collapseCollections()
+                    .build();
+        } catch (FactoryException e) {
+            throw new ServiceException(e);
+        }
+    }
+
     private Map<String, Object> getProperties(ComplexAttribute feature) {
         Map<String, Object> props = new TreeMap<>();
         for (Property p : feature.getProperties()) {
@@ -202,7 +258,8 @@ void run(
             Pipeline pipeline,
             GeometryDescriptor geometryDescriptor,
             VectorTileBuilder vectorTileBuilder,
-            Layer layer) {
+            Layer layer,
+            SimplifiedGeometryCache.LayerCache layerCache) {
         Stopwatch sw = Stopwatch.createStarted();
         int count = 0;
         int total = 0;
@@ -215,6 +272,13 @@ void run(
                 Geometry finalGeom;
 
                 Geometry originalGeom = (Geometry) feature.getDefaultGeometryProperty().getValue();
+                if (layerCache != null) {
+                    String id =
+                            feature.getIdentifier() == null
+                                    ? null
+                                    : feature.getIdentifier().getID();
+                    layerCache.setFeature(id, originalGeom);
+                }
                 try {
                     finalGeom = pipeline.execute(originalGeom);
                 } catch (Exception processingException) {
@@ -0,0 +1,221 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.mapbox;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import no.ecc.vectortile.VectorTileDecoder;
+import no.ecc.vectortile.VectorTileEncoder;
+import no.ecc.vectortile.VectorTileEncoderNoClip;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+public class StreamingVectorTileEncoderTest {
+
+    static final int EXTENT = 256;
+
+    static final int BUFFER = EXTENT / 32;
+
+    StreamingVectorTileEncoder streaming = new StreamingVectorTileEncoder(EXTENT, BUFFER);
+
+    VectorTileEncoder reference = new VectorTileEncoderNoClip(EXTENT, BUFFER, false);
+
+    private Geometry geom(String wkt) throws ParseException {
+        return new WKTReader().read(wkt);
+    }
+
+    private void add(String layer, Map<String, ?> attributes, String wkt, long id)
+            throws ParseException {
+        Geometry geometry = geom(wkt);
+        streaming.addFeature(layer, attributes, geometry, id);
+        reference.addFeature(layer, attributes, geometry, id);
+    }
+
+    private void assertSameEncoding() {
+        assertArrayEquals(reference.encode(), streaming.encode());
+    }
+
+    @Test
+    public void testEmpty() {
+        assertSameEncoding();
+    }
+
+    @Test
+    public void testPoints() throws Exception {
+        Map<String, Object> attributes = Collections.singletonMap("name", "point");
+        add("points", attributes, "POINT(1 10)", 1);
+        add("points", attributes, "POINT(-3 260.4)", 2);
+        // outside of the buffer, skipped
+        add("points", attributes, "POINT(-100 10)", 3);
+        add("points", attributes, "MULTIPOINT((1 1), (1 1), (200 3), (-100 -100))", 4);
+        assertSameEncoding();
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        Map<String, Object> attributes = Collections.singletonMap("name", "line");
+        add("lines", attributes, "LINESTRING(-100 -100, 300 300)", 1);
+        add("lines", attributes, "LINESTRING(0 0, 0.2 0.2, 1 1, 1.1 1.1, 2 2, 2 2)", 2);
+        // too short, skipped
+        add("lines", attributes, "LINESTRING(0 0, 0.5 0.5)", 3);
+        add("lines", attributes, "MULTILINESTRING((0 0, 10 10), (10 10, 20 0), (5 5, 5.1 5.1))", 4);
+        add("lines", attributes, "LINEARRING(0 0, 10 0, 10 10, 0 0)", 5);
+        assertSameEncoding();
+    }
+
+    @Test
+    public void testPolygons() throws Exception {
+        Map<String, Object> attributes = Collections.singletonMap("name", "polygon");
+        // clockwise and counter-clockwise shells, holes in both orientations
+        add("polygons", attributes, "POLYGON((0 0, 0 10, 10 10, 10 0, 0 0))", 1);
+        add("polygons", attributes, "POLYGON((0 0, 10 0, 10 10, 0 10, 0 0))", 2);
+        add(
+                "polygons",
+                attributes,
+                "POLYGON((0 0, 100 0, 100 100, 0 100, 0 0), (10 10, 20 10, 20 20, 10 20, 10 10),"
+                        + " (50 50, 50 60, 60 60, 60 50, 50 50))",
+                3);
+        add(
+                "polygons",
+                attributes,
+                "MULTIPOLYGON(((0 0, 10 0, 10 10, 0 10, 0 0)), ((20 20, 20 30.4, 30 30, 30 20, 20 20)),"
+                        + " ((40 40, 40.2 40, 40.2 40.2, 40 40)))",
+                4);
+        // too small, skipped
+        add("polygons", attributes, "POLYGON((0 0, 0.5 0, 0.5 0.5, 0 0.5, 0 0))", 5);
+        assertSameEncoding();
+    }
+
+    @Test
+    public void testGeometryCollection() throws Exception {
+        add(
+                "mixed",
+                Collections.singletonMap("name", "collection"),
+                "GEOMETRYCOLLECTION(POINT(5 5), LINESTRING(0 0, 10 10), "
+                        + "POLYGON((0 0, 10 0, 10 10, 0 10, 0 0)), GEOMETRYCOLLECTION(POINT(1 2)))",
+                7);
+        assertSameEncoding();
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("string", "abc");
+        first.put("unicode", "è中");
+        first.put("int", 12);
+        first.put("negative", -12);
+        first.put("long", 1234567890123L);
+        first.put("float", 1.5f);
+        first.put("double", -2.25d);
+        first.put("short", (short) 3);
+        first.put("boolean", true);
+        first.put("null", null);
+        first.put("date", new java.sql.Date(0));
+        add("attributes", first, "POINT(1 1)", 1);
+
+        // shared values, same number with different types, new values
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("int", 12);
+        second.put("long", 12L);
+        second.put("float", 12f);
+        second.put("double", 12d);
+        second.put("boolean", false);
+        second.put("string", "abc");
+        second.put("other", Double.NaN);
+        second.put("more", 0f);
+        second.put("less", -0f);
+        add("attributes", second, "POINT(2 2)", -1);
+        add("others", second, "POINT(3 3)", Long.MAX_VALUE);
+        assertSameEncoding();
+    }
+
+    @Test
+    public void testManyFeatures() throws Exception {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            attributes.put("id", i);
+            attributes.put("class", "class" + (i % 7));
+            attributes.put("value", i / 3d);
+            add(
+                    "layer" + (i % 3),
+                    attributes,
+                    "LINESTRING(" + (i % 200) + " 0, 10 " + (i % 100) + ", 200 200)",
+                    i);
+        }
+        assertSameEncoding();
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        Map<String, Object> attributes = Collections.singletonMap("name", "line1");
+        Geometry line = geom("LINESTRING(0 0, 1 1, 2 2)");
+        streaming.addFeature("lines", attributes, line, 3);
+
+        VectorTileDecoder decoder = new VectorTileDecoder();
+        decoder.setAutoScale(false);
+        List<VectorTileDecoder.Feature> features = new ArrayList<>();
+        for (VectorTileDecoder.Feature feature : decoder.decode(streaming.encode())) {
+            features.add(feature);
+        }
+        assertEquals(1, features.size());
+        assertEquals("lines", features.get(0).getLayerName());
+        assertEquals(3, features.get(0).getId());
+        assertEquals(line, features.get(0).getGeometry());
+        assertEquals(attributes, features.get(0).getAttributes());
+    }
+
+    @Test
+    public void testBufferReuse() throws Exception {
+        // two encoders in the same thread at the same time, then a third reusing the buffers
+        StreamingVectorTileEncoder other = new StreamingVectorTileEncoder(EXTENT, BUFFER);
+        add("lines", Collections.singletonMap("a", 1), "LINESTRING(0 0, 10 10)", 1);
+        other.addFeature("points", Collections.singletonMap("b", 2), geom("POINT(1 1)"), 2);
+        byte[] expected = reference.encode();
+        byte[] otherBytes = other.encode();
+        assertArrayEquals(expected, streaming.encode());
+
+        StreamingVectorTileEncoder third = new StreamingVectorTileEncoder(EXTENT, BUFFER);
+        third.addFeature("points", Collections.singletonMap("b", 2), geom("POINT(1 1)"), 2);
+        assertArrayEquals(otherBytes, third.encode());
+    }
+
+    @Test
+    public void testRetainedBytes() {
+        StreamingVectorTileEncoder.BufferPool pool = new StreamingVectorTileEncoder.BufferPool();
+        int size = StreamingVectorTileEncoder.MAX_RETAINED_BYTES / 3;
+        for (int i = 0; i < 5; i++) {
+            pool.release(new ProtobufBuffer(size));
+        }
+        // only as many buffers as fit in the limit are kept
+        assertEquals(3, pool.buffers.size());
+        assertEquals(3L * size, pool.retained);
+
+        pool.release(new ProtobufBuffer(StreamingVectorTileEncoder.MAX_RETAINED_BYTES));
+        assertEquals(3, pool.buffers.size());
+
+        // borrowing gives room back
+        pool.borrow();
+        assertEquals(2L * size, pool.retained);
+        pool.release(new ProtobufBuffer(size));
+        assertEquals(3, pool.buffers.size());
+        assertTrue(pool.retained <= StreamingVectorTileEncoder.MAX_RETAINED_BYTES);
+    }
+
+    @Test
+    public void testEncodeOnce() {
+        streaming.encode();
+        assertThrows(IllegalStateException.class, () -> streaming.encode());
+    }
+}
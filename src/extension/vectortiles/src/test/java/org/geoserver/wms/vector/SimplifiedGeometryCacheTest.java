@@ -0,0 +1,143 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.vector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geotools.data.Query;
+import org.geotools.feature.NameImpl;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKTReader;
+import org.opengis.feature.type.Name;
+
+public class SimplifiedGeometryCacheTest {
+
+    static final Name TYPE_NAME = new NameImpl("http://www.geoserver.org", "polygons");
+
+    Catalog catalog;
+
+    FeatureTypeInfo featureType;
+
+    AtomicInteger simplifications;
+
+    Pipeline simplifier;
+
+    @Before
+    public void setUp() {
+        DataStoreInfo store = mock(DataStoreInfo.class);
+        when(store.getId()).thenReturn("store");
+        featureType = mock(FeatureTypeInfo.class);
+        when(featureType.getStore()).thenReturn(store);
+        catalog = mock(Catalog.class);
+        when(catalog.getFeatureTypeByName(any(Name.class))).thenReturn(featureType);
+
+        simplifications = new AtomicInteger();
+        simplifier =
+                new Pipeline() {
+                    @Override
+                    protected Geometry _run(Geometry geom) {
+                        simplifications.incrementAndGet();
+                        return geom.getEnvelope();
+                    }
+                };
+    }
+
+    @Test
+    public void testToleranceBand() {
+        // all the tolerances between two bands map to the lower one
+        assertEquals(1, SimplifiedGeometryCache.getToleranceBand(1), 1e-9);
+        assertEquals(1, SimplifiedGeometryCache.getToleranceBand(1.1), 1e-9);
+        assertEquals(Math.pow(2, 0.25), SimplifiedGeometryCache.getToleranceBand(1.2), 1e-9);
+        assertEquals(0.5, SimplifiedGeometryCache.getToleranceBand(0.55), 1e-9);
+        assertTrue(SimplifiedGeometryCache.getToleranceBand(0.0123) <= 0.0123);
+        assertEquals(0, SimplifiedGeometryCache.getToleranceBand(0), 0);
+    }
+
+    @Test
+    public void testDisabled() {
+        SimplifiedGeometryCache cache = new SimplifiedGeometryCache(catalog, null, 0);
+        assertNull(getLayerCache(cache));
+    }
+
+    @Test
+    public void testSharedAmongTiles() throws Exception {
+        SimplifiedGeometryCache cache = new SimplifiedGeometryCache(catalog, null, 1024 * 1024);
+        Geometry polygon = new WKTReader().read("POLYGON((0 0, 10 0, 10 10, 5 11, 0 10, 0 0))");
+
+        // first tile
+        SimplifiedGeometryCache.LayerCache tile = getLayerCache(cache);
+        tile.setFeature("polygons.1", polygon);
+        Geometry simplified = tile.simplify(polygon, 1, simplifier);
+        assertEquals(1, simplifications.get());
+
+        // neighbouring tile, same zoom level
+        tile = getLayerCache(cache);
+        tile.setFeature("polygons.1", polygon);
+        assertSame(simplified, tile.simplify(polygon, 1, simplifier));
+        assertEquals(1, simplifications.get());
+        assertEquals(1, cache.size());
+
+        // another zoom level
+        assertNotNull(tile.simplify(polygon, 2, simplifier));
+        assertEquals(2, simplifications.get());
+
+        // geometry modified by the pre-processing, not cached
+        Geometry other = (Geometry) polygon.copy();
+        tile.simplify(other, 1, simplifier);
+        assertEquals(3, simplifications.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCatalogChangeInvalidates() throws Exception {
+        SimplifiedGeometryCache cache = new SimplifiedGeometryCache(catalog, null, 1024 * 1024);
+        Geometry polygon = new WKTReader().read("POLYGON((0 0, 10 0, 10 10, 0 10, 0 0))");
+        SimplifiedGeometryCache.LayerCache tile = getLayerCache(cache);
+        tile.setFeature("polygons.1", polygon);
+        tile.simplify(polygon, 1, simplifier);
+        assertEquals(1, cache.size());
+
+        CatalogPostModifyEvent event = mock(CatalogPostModifyEvent.class);
+        when(event.getSource()).thenReturn(featureType);
+        cache.handlePostModifyEvent(event);
+        assertEquals(0, cache.size());
+
+        tile.simplify(polygon, 1, simplifier);
+        assertEquals(2, simplifications.get());
+    }
+
+    @Test
+    public void testSizeBound() throws Exception {
+        // room for a handful of small polygons
+        SimplifiedGeometryCache cache = new SimplifiedGeometryCache(catalog, null, 2000);
+        Geometry polygon = new WKTReader().read("POLYGON((0 0, 10 0, 10 10, 0 10, 0 0))");
+        SimplifiedGeometryCache.LayerCache tile = getLayerCache(cache);
+        for (int i = 0; i < 100; i++) {
+            tile.setFeature("polygons." + i, polygon);
+            tile.simplify(polygon, 1, simplifier);
+        }
+        assertTrue(cache.size() < 10);
+    }
+
+    private SimplifiedGeometryCache.LayerCache getLayerCache(SimplifiedGeometryCache cache) {
+        return cache.getLayerCache(
+                TYPE_NAME, "geom", DefaultGeographicCRS.WGS84, new Query("polygons"));
+    }
+}
@@ -31,7 +31,6 @@
 import org.geotools.geometry.jts.ReferencedEnvelope3D;
 import org.geotools.referencing.CRS;
 import org.geotools.util.logging.Logging;
-import org.geowebcache.GeoWebCacheException;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.TransformException;
@@ -55,11 +54,22 @@ public class GWCTransactionListener implements TransactionCallback {
 
     private final GWC gwc;
 
+    private final GWCTruncationQueue truncationQueue;
+
     static final String GWC_TRANSACTION_INFO_PLACEHOLDER = "GWC_TRANSACTION_INFO_PLACEHOLDER";
 
     /** @param gwc */
     public GWCTransactionListener(final GWC gwc) {
+        this(gwc, new GWCTruncationQueue(gwc, 0));
+    }
+
+    /**
+     * @param gwc the GWC facade
+     * @param truncationQueue the queue performing the truncation of the transaction dirty regions
+     */
+    public GWCTransactionListener(final GWC gwc, final GWCTruncationQueue truncationQueue) {
         this.gwc = gwc;
+        this.truncationQueue = truncationQueue;
     }
 
     /**
@@ -122,15 +132,7 @@ private void afterTransactionInternal(final TransactionRequest transaction, bool
             if (dirtyRegion == null) {
                 continue;
             }
-            try {
-                gwc.truncate(tileLayerName, dirtyRegion);
-            } catch (GeoWebCacheException e) {
-                log.warning(
-                        "Error truncating tile layer "
-                                + tileLayerName
-                                + " for transaction affected bounds "
-                                + dirtyRegion);
-            }
+            truncationQueue.truncate(tileLayerName, dirtyRegion);
         }
     }
 
@@ -0,0 +1,355 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.logging.Logging;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.seed.GWCTask;
+import org.geowebcache.storage.BlobStore;
+import org.geowebcache.storage.BlobStoreListener;
+import org.locationtech.jts.geom.Envelope;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Collects the regions modified by transactions and truncates the affected tiles.
+ *
+ * <p>By default each region is truncated right away. When the {@link #GWC_TRUNCATE_DELAY} property
+ * is set to a positive number of milliseconds, the regions are instead collected per layer for that
+ * amount of time, overlapping regions are merged, and the truncation is performed by a background
+ * thread, so that bursts of small transactions on the same area result in a handful of truncate
+ * operations, without slowing down the transactions themselves.
+ *
+ * <p>The queue also listens to the blob store, counting the tiles deleted from a layer while the
+ * truncate tasks it issued for that layer are running.
+ */
+public class GWCTruncationQueue implements DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(GWCTruncationQueue.class);
+
+    /**
+     * System/environment variable or servlet context parameter holding the time dirty regions are
+     * collected before truncating, in milliseconds
+     */
+    public static final String GWC_TRUNCATE_DELAY = "GWC_TRUNCATE_DELAY";
+
+    private final GWC gwc;
+
+    private final BlobStore blobStore;
+
+    private final long delay;
+
+    /** Regions waiting to be truncated, by tile layer name, guarded by this */
+    private final Map<String, List<ReferencedEnvelope>> pending = new HashMap<>();
+
+    private ScheduledExecutorService executor;
+
+    private final AtomicLong receivedRegions = new AtomicLong();
+
+    private final AtomicLong truncatedRegions = new AtomicLong();
+
+    private final AtomicLong failedRegions = new AtomicLong();
+
+    private final AtomicLong tilesRemoved = new AtomicLong();
+
+    /** Layers the queue issued truncate tasks for, that might still be running */
+    private final Set<String> truncating = ConcurrentHashMap.newKeySet();
+
+    private final BlobStoreListener tilesListener = new TilesRemovedListener();
+
+    public GWCTruncationQueue(GWC gwc, BlobStore blobStore) {
+        this(gwc, blobStore, getConfiguredDelay());
+    }
+
+    /** Builds a queue that does not count the removed tiles */
+    public GWCTruncationQueue(GWC gwc, long delay) {
+        this(gwc, null, delay);
+    }
+
+    /**
+     * @param gwc the GWC facade
+     * @param blobStore the blob store notifying the tile deletions, or null to skip counting them
+     * @param delay time dirty regions are collected before truncating, in milliseconds, or zero (or
+     *     less) to truncate them right away
+     */
+    public GWCTruncationQueue(GWC gwc, BlobStore blobStore, long delay) {
+        this.gwc = gwc;
+        this.blobStore = blobStore;
+        this.delay = delay;
+        if (blobStore != null) {
+            blobStore.addListener(tilesListener);
+        }
+    }
+
+    private static long getConfiguredDelay() {
+        String value = GeoServerExtensions.getProperty(GWC_TRUNCATE_DELAY);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid " + GWC_TRUNCATE_DELAY + " value: " + value);
+            }
+        }
+        return 0;
+    }
+
+    /** Schedules the truncation of the given region for the given layer */
+    public void truncate(String layerName, ReferencedEnvelope bounds) {
+        receivedRegions.incrementAndGet();
+        if (delay <= 0) {
+            truncateRegion(layerName, bounds);
+            return;
+        }
+        synchronized (this) {
+            List<ReferencedEnvelope> regions = pending.get(layerName);
+            if (regions == null) {
+                regions = new ArrayList<>();
+                pending.put(layerName, regions);
+                getExecutor().schedule(() -> flush(layerName), delay, TimeUnit.MILLISECONDS);
+            }
+            regions.add(bounds);
+        }
+    }
+
+    private synchronized ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            CustomizableThreadFactory threadFactory =
+                    new CustomizableThreadFactory("GWCTruncationQueue-");
+            threadFactory.setDaemon(true);
+            ScheduledThreadPoolExecutor stpe = new ScheduledThreadPoolExecutor(1, threadFactory);
+            // pending regions are flushed by destroy(), no need to wait for their delay
+            stpe.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            executor = stpe;
+        }
+        return executor;
+    }
+
+    /** Truncates the pending regions of the given layer */
+    void flush(String layerName) {
+        List<ReferencedEnvelope> regions;
+        synchronized (this) {
+            regions = pending.remove(layerName);
+        }
+        if (regions == null) {
+            return;
+        }
+        List<ReferencedEnvelope> merged;
+        try {
+            merged = merge(regions);
+        } catch (RuntimeException e) {
+            // truncate them one by one rather than losing them
+            LOGGER.log(Level.WARNING, "Failed to merge the regions of layer " + layerName, e);
+            merged = regions;
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(
+                    "Truncating "
+                            + merged.size()
+                            + " regions of layer "
+                            + layerName
+                            + ", merged out of "
+                            + regions.size());
+        }
+        for (ReferencedEnvelope region : merged) {
+            truncateRegion(layerName, region);
+        }
+    }
+
+    /** Truncates all the pending regions */
+    public void flushAll() {
+        List<String> layers;
+        synchronized (this) {
+            layers = new ArrayList<>(pending.keySet());
+        }
+        for (String layer : layers) {
+            flush(layer);
+        }
+    }
+
+    private void truncateRegion(String layerName, ReferencedEnvelope region) {
+        try {
+            gwc.truncate(layerName, region);
+            // the tasks are registered with the breeder by now, track them from here on
+            truncating.add(layerName);
+            truncatedRegions.incrementAndGet();
+        } catch (GeoWebCacheException | RuntimeException e) {
+            failedRegions.incrementAndGet();
+            LOGGER.log(
+                    Level.WARNING,
+                    "Error truncating tile layer "
+                            + layerName
+                            + " for transaction affected bounds "
+                            + region,
+                    e);
+        }
+    }
+
+    /**
+     * Merges the regions that overlap each other, returning a list of non overlapping regions
+     * covering at least the same area. Each merged region is the bounding box of the regions it
+     * replaces, so it can also cover some area none of them did. All regions are expected to be in
+     * the same CRS.
+     */
+    static List<ReferencedEnvelope> merge(List<ReferencedEnvelope> regions) {
+        List<ReferencedEnvelope> result = new ArrayList<>(regions.size());
+        for (ReferencedEnvelope region : regions) {
+            ReferencedEnvelope merged = new ReferencedEnvelope(region);
+            // growing a region might make it overlap regions it was disjoint from, keep merging
+            // until there is nothing left to merge
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int i = 0; i < result.size(); i++) {
+                    ReferencedEnvelope other = result.get(i);
+                    if (merged.intersects((Envelope) other)) {
+                        merged.expandToInclude(other);
+                        result.remove(i);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+            result.add(merged);
+        }
+        return result;
+    }
+
+    /** Returns the number of regions waiting to be truncated */
+    public synchronized int getPendingRegions() {
+        return pending.values().stream().mapToInt(List::size).sum();
+    }
+
+    /** Returns the number of regions submitted for truncation */
+    public long getReceivedRegions() {
+        return receivedRegions.get();
+    }
+
+    /** Returns the number of truncate operations performed, after merging the regions */
+    public long getTruncatedRegions() {
+        return truncatedRegions.get();
+    }
+
+    /** Returns the number of truncate operations that failed */
+    public long getFailedRegions() {
+        return failedRegions.get();
+    }
+
+    /** Returns the number of tiles removed by the truncate operations */
+    public long getTilesRemoved() {
+        return tilesRemoved.get();
+    }
+
+    /** Returns true if the breeder still has truncate tasks running or pending for the layer */
+    private boolean isTruncating(String layerName) {
+        Iterator<GWCTask> tasks = gwc.getRunningAndPendingTasks();
+        while (tasks != null && tasks.hasNext()) {
+            GWCTask task = tasks.next();
+            if (task.getType() == GWCTask.TYPE.TRUNCATE && layerName.equals(task.getLayerName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor != null) {
+            // let a running flush complete, the delayed ones are cancelled and flushed below
+            executor.shutdown();
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.warning("Timed out waiting for the tile truncation to complete");
+                executor.shutdownNow();
+            }
+        }
+        // do not leave stale tiles around
+        flushAll();
+        if (blobStore != null) {
+            blobStore.removeListener(tilesListener);
+        }
+    }
+
+    /** Counts the tiles deleted from the layers the queue is truncating */
+    private class TilesRemovedListener implements BlobStoreListener {
+
+        @Override
+        public void tileDeleted(
+                String layerName,
+                String gridSetId,
+                String blobFormat,
+                String parametersId,
+                long x,
+                long y,
+                int z,
+                long blobSize) {
+            if (truncating.contains(layerName)) {
+                if (isTruncating(layerName)) {
+                    tilesRemoved.incrementAndGet();
+                } else {
+                    // the tasks are over, this deletion comes from somewhere else
+                    truncating.remove(layerName);
+                }
+            }
+        }
+
+        @Override
+        public void tileStored(
+                String layerName,
+                String gridSetId,
+                String blobFormat,
+                String parametersId,
+                long x,
+                long y,
+                int z,
+                long blobSize) {}
+
+        @Override
+        public void tileUpdated(
+                String layerName,
+                String gridSetId,
+                String blobFormat,
+                String parametersId,
+                long x,
+                long y,
+                int z,
+                long blobSize,
+                long oldSize) {}
+
+        @Override
+        public void layerDeleted(String layerName) {
+            truncating.remove(layerName);
+        }
+
+        @Override
+        public void layerRenamed(String oldLayerName, String newLayerName) {
+            truncating.remove(oldLayerName);
+        }
+
+        @Override
+        public void gridSubsetDeleted(String layerName, String gridSetId) {}
+
+        @Override
+        public void parametersDeleted(String layerName, String parametersId) {}
+    }
+}
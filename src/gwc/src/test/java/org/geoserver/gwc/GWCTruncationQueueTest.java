@@ -0,0 +1,167 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import static org.geotools.referencing.crs.DefaultGeographicCRS.WGS84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.seed.GWCTask;
+import org.geowebcache.storage.BlobStore;
+import org.geowebcache.storage.BlobStoreListener;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class GWCTruncationQueueTest {
+
+    GWC gwc = mock(GWC.class);
+
+    BlobStore blobStore = mock(BlobStore.class);
+
+    GWCTruncationQueue queue;
+
+    @After
+    public void destroy() throws Exception {
+        if (queue != null) {
+            queue.destroy();
+        }
+    }
+
+    @Test
+    public void testImmediate() throws Exception {
+        queue = new GWCTruncationQueue(gwc, blobStore, 0);
+        ReferencedEnvelope bounds = new ReferencedEnvelope(0, 10, 0, 10, WGS84);
+
+        queue.truncate("layer", bounds);
+
+        verify(gwc).truncate("layer", bounds);
+        assertEquals(0, queue.getPendingRegions());
+        assertEquals(1, queue.getTruncatedRegions());
+    }
+
+    @Test
+    public void testDelayedMerge() throws Exception {
+        queue = new GWCTruncationQueue(gwc, blobStore, 200);
+        queue.truncate("layer", new ReferencedEnvelope(0, 10, 0, 10, WGS84));
+        queue.truncate("layer", new ReferencedEnvelope(5, 15, 5, 15, WGS84));
+        queue.truncate("layer", new ReferencedEnvelope(50, 60, 50, 60, WGS84));
+        queue.truncate("other", new ReferencedEnvelope(0, 10, 0, 10, WGS84));
+
+        verifyNoInteractions(gwc);
+        assertEquals(4, queue.getPendingRegions());
+
+        verify(gwc, timeout(10000)).truncate("layer", new ReferencedEnvelope(0, 15, 0, 15, WGS84));
+        verify(gwc, timeout(10000))
+                .truncate("layer", new ReferencedEnvelope(50, 60, 50, 60, WGS84));
+        verify(gwc, timeout(10000)).truncate("other", new ReferencedEnvelope(0, 10, 0, 10, WGS84));
+        verify(gwc, times(3)).truncate(anyString(), any(ReferencedEnvelope.class));
+        assertEquals(0, queue.getPendingRegions());
+        assertEquals(4, queue.getReceivedRegions());
+        assertEquals(3, queue.getTruncatedRegions());
+    }
+
+    @Test
+    public void testDestroyFlushes() throws Exception {
+        queue = new GWCTruncationQueue(gwc, blobStore, 60000);
+        ReferencedEnvelope bounds = new ReferencedEnvelope(0, 10, 0, 10, WGS84);
+        queue.truncate("layer", bounds);
+        verifyNoInteractions(gwc);
+
+        queue.destroy();
+        verify(gwc).truncate("layer", bounds);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        queue = new GWCTruncationQueue(gwc, blobStore, 0);
+        ReferencedEnvelope bounds = new ReferencedEnvelope(0, 10, 0, 10, WGS84);
+        doThrow(new GeoWebCacheException("fake")).when(gwc).truncate(eq("layer"), any());
+
+        // does not throw
+        queue.truncate("layer", bounds);
+        assertEquals(1, queue.getFailedRegions());
+        assertEquals(0, queue.getTruncatedRegions());
+    }
+
+    @Test
+    public void testTilesRemoved() throws Exception {
+        queue = new GWCTruncationQueue(gwc, blobStore, 0);
+        ArgumentCaptor<BlobStoreListener> captor = ArgumentCaptor.forClass(BlobStoreListener.class);
+        verify(blobStore).addListener(captor.capture());
+        BlobStoreListener listener = captor.getValue();
+
+        // deletions from layers the queue did not truncate are not counted
+        listener.tileDeleted("layer", "EPSG:4326", "image/png", null, 0, 0, 0, 100);
+        assertEquals(0, queue.getTilesRemoved());
+
+        GWCTask task = mock(GWCTask.class);
+        when(task.getType()).thenReturn(GWCTask.TYPE.TRUNCATE);
+        when(task.getLayerName()).thenReturn("layer");
+        when(gwc.getRunningAndPendingTasks())
+                .thenAnswer(i -> Collections.singletonList(task).iterator());
+        queue.truncate("layer", new ReferencedEnvelope(0, 10, 0, 10, WGS84));
+        listener.tileDeleted("layer", "EPSG:4326", "image/png", null, 0, 0, 0, 100);
+        listener.tileDeleted("layer", "EPSG:4326", "image/png", null, 1, 0, 0, 100);
+        listener.tileDeleted("other", "EPSG:4326", "image/png", null, 0, 0, 0, 100);
+        assertEquals(2, queue.getTilesRemoved());
+
+        // once the tasks are over deletions are no longer counted
+        when(gwc.getRunningAndPendingTasks()).thenAnswer(i -> Collections.emptyIterator());
+        listener.tileDeleted("layer", "EPSG:4326", "image/png", null, 2, 0, 0, 100);
+        assertEquals(2, queue.getTilesRemoved());
+
+        queue.destroy();
+        verify(blobStore).removeListener(listener);
+    }
+
+    @Test
+    public void testDestroyFlushesAfterFailure() throws Exception {
+        queue = new GWCTruncationQueue(gwc, blobStore, 60000);
+        ReferencedEnvelope failing = new ReferencedEnvelope(0, 10, 0, 10, WGS84);
+        ReferencedEnvelope other = new ReferencedEnvelope(50, 60, 50, 60, WGS84);
+        doThrow(new RuntimeException("fake")).when(gwc).truncate("layer", failing);
+        queue.truncate("layer", failing);
+        queue.truncate("layer", other);
+
+        // the failure does not prevent truncating the other region
+        queue.destroy();
+        verify(gwc).truncate("layer", failing);
+        verify(gwc).truncate("layer", other);
+        assertEquals(1, queue.getFailedRegions());
+        assertEquals(1, queue.getTruncatedRegions());
+        assertEquals(0, queue.getPendingRegions());
+    }
+
+    @Test
+    public void testMerge() {
+        // the last one bridges the first two, all three collapse in one
+        List<ReferencedEnvelope> merged =
+                GWCTruncationQueue.merge(
+                        Arrays.asList(
+                                new ReferencedEnvelope(0, 1, 0, 1, WGS84),
+                                new ReferencedEnvelope(2, 3, 0, 1, WGS84),
+                                new ReferencedEnvelope(10, 11, 10, 11, WGS84),
+                                new ReferencedEnvelope(0.5, 2.5, 0, 1, WGS84)));
+        assertEquals(2, merged.size());
+        assertTrue(merged.contains(new ReferencedEnvelope(10, 11, 10, 11, WGS84)));
+        assertTrue(merged.contains(new ReferencedEnvelope(0, 3, 0, 1, WGS84)));
+    }
+}
@@ -6,14 +6,10 @@
 package org.geoserver.kml.regionate;
 
 import java.io.File;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -21,6 +17,7 @@
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.ows.HttpErrorCodeException;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.GeoServerResourceLoader;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.platform.resource.Resource;
@@ -34,9 +31,7 @@
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.operation.projection.ProjectionException;
 import org.geotools.util.CanonicalSet;
-import org.geotools.util.SuppressFBWarnings;
 import org.geotools.util.logging.Logging;
-import org.h2.tools.DeleteDbFiles;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
@@ -54,8 +49,8 @@
  *
  * <ul>
  *   <li>tiling based on the TMS tiling recommendation
- *   <li>caching the assignment of a feature in a specific tile in an H2 database stored in the data
- *       directory
+ *   <li>caching the assignment of a feature in a specific tile in a {@link TileAssignmentStore}
+ *       kept in the data directory
  *   <li>
  *
  * @author Andrea Aime - OpenGeo
@@ -75,14 +70,9 @@ public abstract class CachedHierarchyRegionatingStrategy implements RegionatingS
      */
     static CanonicalSet<String> canonicalizer = CanonicalSet.newInstance(String.class);
 
-    static {
-        try {
-            // make sure, once and for all, that H2 is around
-            Class.forName("org.h2.Driver");
-        } catch (Exception e) {
-            throw new RuntimeException("Could not initialize the class constants", e);
-        }
-    }
+    /** Used when no {@link TileAssignmentStoreFactory} is found in the application context */
+    static final TileAssignmentStoreFactory DEFAULT_STORE_FACTORY =
+            new MappedTileAssignmentStoreFactory();
 
     /** The original area occupied by the data */
     protected ReferencedEnvelope dataEnvelope;
@@ -93,9 +83,12 @@ public abstract class CachedHierarchyRegionatingStrategy implements RegionatingS
     /** The max number of features per tile */
     protected Integer featuresPerTile;
 
-    /** The name of the database that will contain the fid to tile cache */
+    /** The name of the store that will contain the fid to tile cache */
     protected String tableName;
 
+    /** The directory containing the fid to tile cache */
+    protected File cacheDirectory;
+
     /** geoserver configuration */
     protected GeoServer gs;
 
@@ -108,12 +101,11 @@ public Filter getFilter(WMSMapContent context, Layer layer) {
         Catalog catalog = gs.getCatalog();
         Set<String> featuresInTile = Collections.emptySet();
         try {
-            // grab information needed to reach the db and get a hold to a db
-            // connection
+            // grab information needed to reach the tile cache
             FeatureSource featureSource = layer.getFeatureSource();
             featureType = catalog.getFeatureTypeByName(featureSource.getName());
 
-            String dataDir = catalog.getResourceLoader().getBaseDirectory().getCanonicalPath();
+            cacheDirectory = catalog.getResourceLoader().get("geosearch").dir();
             tableName = getDatabaseName(context, layer);
 
             // grab the features per tile, use a default if user did not
@@ -150,7 +142,7 @@ public Filter getFilter(WMSMapContent context, Layer layer) {
                                 + tileEnvelope);
 
             // oki doki, let's compute the fids in the requested tile
-            featuresInTile = getFeaturesForTile(dataDir, tile);
+            featuresInTile = getFeaturesForTile(tile);
             LOGGER.log(
                     Level.FINE,
                     "Found " + featuresInTile.size() + " features in tile " + tile.toString());
@@ -179,14 +171,36 @@ public void clearCache(FeatureTypeInfo cfg) {
             Resource geosearch = loader.get("geosearch");
             if (geosearch.getType() == Type.DIRECTORY) {
                 File directory = geosearch.dir();
-                DeleteDbFiles.execute(
-                        directory.getCanonicalPath(), "h2cache_" + getDatabaseName(cfg), true);
+                getStoreFactory().deleteStore(directory, getDatabaseName(cfg));
+                deleteLegacyCache(directory, "h2cache_" + getDatabaseName(cfg));
             }
         } catch (Exception ioe) {
             LOGGER.severe("Couldn't clear out config dir due to: " + ioe);
         }
     }
 
+    /** Removes the H2 database files used by older versions to cache the tiles */
+    private void deleteLegacyCache(File directory, String name) throws IOException {
+        File[] files = directory.listFiles((dir, n) -> n.startsWith(name + "."));
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    throw new IOException("Could not delete " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the factory of the tile assignment stores, the first one found in the application
+     * context, or a {@link MappedTileAssignmentStoreFactory} if none is available
+     */
+    protected TileAssignmentStoreFactory getStoreFactory() {
+        List<TileAssignmentStoreFactory> factories =
+                GeoServerExtensions.extensions(TileAssignmentStoreFactory.class);
+        return factories.isEmpty() ? DEFAULT_STORE_FACTORY : factories.get(0);
+    }
+
     /**
      * Returns true if the two envelope roughly match, that is, they are about the same size and
      * about the same location. The max difference allowed is {@link #MAX_ERROR}, evaluated as a
@@ -212,49 +226,26 @@ private boolean envelopeMatch(
                 && yRatio < MAX_ERROR;
     }
 
-    /** Open/creates the db and then reads/computes the tile features */
-    @SuppressFBWarnings(
-            "DMI_CONSTANT_DB_PASSWORD") // well spotted, but the db contents are not sensitive
-    private Set<String> getFeaturesForTile(String dataDir, Tile tile) throws Exception {
-
-        // build the synchonization token
+    /** Opens/creates the tile cache and then reads/computes the tile features */
+    private Set<String> getFeaturesForTile(Tile tile) throws Exception {
+        // the store is shared and can be read concurrently, computation of a tile is
+        // synchronized on the tile itself
         canonicalizer.add(tableName);
         tableName = canonicalizer.get(tableName);
-        String synchToken = tableName; // tableName is updatable
-
-        // make sure no two thread in parallel can build the same db
-        synchronized (synchToken) {
-            try (
-            // get a hold to the database that contains the cache (this will
-            // eventually create the db)
-            Connection conn =
-                            DriverManager.getConnection(
-                                    "jdbc:h2:file:" + dataDir + "/geosearch/h2cache_" + tableName,
-                                    "geoserver",
-                                    "geopass");
-                    // try to create the table, if it's already there this will fail
-                    Statement st = conn.createStatement()) {
-                st.execute(
-                        "CREATE TABLE IF NOT EXISTS TILECACHE( " //
-                                + "x BIGINT, " //
-                                + "y BIGINT, " //
-                                + "z INT, " //
-                                + "fid varchar (64))");
-                st.execute("CREATE INDEX IF NOT EXISTS IDX_TILECACHE ON TILECACHE(x, y, z)");
-                return readFeaturesForTile(tile, conn);
-            }
-        }
+        TileAssignmentStore store = getStoreFactory().getStore(cacheDirectory, tableName);
+        return readFeaturesForTile(tile, store);
     }
 
     /**
      * Reads/computes the tile feature set
      *
      * @param tile the Tile whose features we must find
-     * @param conn the H2 connection
+     * @param store the tile assignment store
      */
-    protected Set<String> readFeaturesForTile(Tile tile, Connection conn) throws Exception {
+    protected Set<String> readFeaturesForTile(Tile tile, TileAssignmentStore store)
+            throws Exception {
         // grab the fids and decide whether we have to compute them
-        Set<String> fids = readCachedTileFids(tile, conn);
+        Set<String> fids = store.getFids(tile);
         if (fids != null) {
             return fids;
         } else {
@@ -265,54 +256,27 @@ protected Set<String> readFeaturesForTile(Tile tile, Connection conn) throws Exc
 
             synchronized (tileKey) {
                 // might have been built while we were waiting
-                fids = readCachedTileFids(tile, conn);
+                fids = store.getFids(tile);
                 if (fids != null) return fids;
 
                 // still missing, we need to compute them
-                fids = computeFids(tile, conn);
-                storeFids(tile, fids, conn);
+                fids = computeFids(tile, store);
+                store.putFids(tile, fids);
 
                 // optimization, if we did not manage to fill up this tile,
                 // the ones below it will be empty -> mark them as such right
                 // away
                 if (fids.size() < featuresPerTile)
-                    for (Tile child : tile.getChildren()) storeFids(child, NO_FIDS, conn);
+                    for (Tile child : tile.getChildren()) store.putFids(child, NO_FIDS);
             }
         }
         return fids;
     }
 
-    /** Store the fids inside */
-    private void storeFids(Tile t, Set<String> fids, Connection conn) throws SQLException {
-        try {
-            // we are going to execute this one many times,
-            // let's prepare it so that the db engine does
-            // not have to parse it at every call
-            String stmt = "INSERT INTO TILECACHE VALUES (" + t.x + ", " + t.y + ", " + t.z + ", ?)";
-            try (PreparedStatement ps = conn.prepareStatement(stmt)) {
-                if (fids.isEmpty()) {
-                    // we just have to mark the tile as empty
-                    ps.setString(1, null);
-                    ps.execute();
-                } else {
-                    // store all the fids
-                    conn.setAutoCommit(false);
-                    for (String fid : fids) {
-                        ps.setString(1, fid);
-                        ps.execute();
-                    }
-                    conn.commit();
-                }
-            }
-        } finally {
-            conn.setAutoCommit(true);
-        }
-    }
-
     /** Computes the fids that will be stored in the specified tile */
-    private Set<String> computeFids(Tile tile, Connection conn) throws Exception {
+    private Set<String> computeFids(Tile tile, TileAssignmentStore store) throws Exception {
         Tile parent = tile.getParent();
-        Set<String> parentFids = getUpwardFids(parent, conn);
+        Set<String> parentFids = getUpwardFids(parent, store);
         Set<String> currFids = new HashSet<>();
         // grab the features
         FeatureSource fs = featureType.getFeatureSource(null, null);
@@ -354,8 +318,7 @@ private Set<String> computeFids(Tile tile, Connection conn) throws Exception {
             nativeTileEnvelope = tile.getEnvelope();
         }
 
-        try (FeatureIterator fi =
-                getSortedFeatures(geom, tile.getEnvelope(), nativeTileEnvelope, conn)) {
+        try (FeatureIterator fi = getSortedFeatures(geom, tile.getEnvelope(), nativeTileEnvelope)) {
             // if the crs is not wgs84, we'll need to transform the point
             MathTransform tx = null;
             double[] coords = new double[2];
@@ -395,21 +358,18 @@ private Set<String> computeFids(Tile tile, Connection conn) throws Exception {
      * regionating. The features returned do not have to be the feature type ones, it's sufficient
      * that they have the same FID and a geometry whose centroid is the same as the original feature
      * one.
-     *
-     * @param indexConnection a connection to the feature id cache db
      */
     protected abstract FeatureIterator getSortedFeatures(
             GeometryDescriptor geom,
             ReferencedEnvelope latLongEnvelope,
-            ReferencedEnvelope nativeEnvelope,
-            Connection indexConnection)
+            ReferencedEnvelope nativeEnvelope)
             throws Exception;
 
     /**
      * Returns a set of all the fids in the specified tile and in the parents of it, recursing up to
      * the root tile
      */
-    private Set<String> getUpwardFids(Tile tile, Connection conn) throws Exception {
+    private Set<String> getUpwardFids(Tile tile, TileAssignmentStore store) throws Exception {
         // recursion stop condition
         if (tile == null) {
             return Collections.emptySet();
@@ -417,54 +377,14 @@ private Set<String> getUpwardFids(Tile tile, Connection conn) throws Exception {
 
         // return the curren tile fids, and recurse up to the parent
         Set<String> fids = new HashSet<>();
-        fids.addAll(readFeaturesForTile(tile, conn));
+        fids.addAll(readFeaturesForTile(tile, store));
         Tile parent = tile.getParent();
         if (parent != null) {
-            fids.addAll(getUpwardFids(parent, conn));
+            fids.addAll(getUpwardFids(parent, store));
         }
         return fids;
     }
 
-    /**
-     * Here we have three cases
-     *
-     * <ul>
-     *   <li>the tile was already computed, and it resulted to be empty. We leave a "x,y,z,null"
-     *       marker to know if that happened, and in this case the returned set will be empty
-     *   <li>the tile was already computed, and we have data, the returned sest will be non empty
-     *   <li>the tile is new, the db contains nothing, in this case we return "null"
-     *       <ul>
-     */
-    protected Set<String> readCachedTileFids(Tile tile, Connection conn) throws SQLException {
-        try (Statement st = conn.createStatement();
-                ResultSet rs =
-                        st.executeQuery(
-                                "SELECT fid FROM TILECACHE where x = "
-                                        + tile.x
-                                        + " AND y = "
-                                        + tile.y
-                                        + " and z = "
-                                        + tile.z)) {
-            // decide whether we have to collect the fids or just to
-            // return that the tile was empty
-            Set<String> fids = null;
-            if (rs.next()) {
-                String fid = rs.getString(1);
-                if (fid == null) {
-                    return Collections.emptySet();
-                } else {
-                    fids = new HashSet<>();
-                    fids.add(fid);
-                }
-            }
-            // fill the set with the collected fids
-            while (rs.next()) {
-                fids.add(rs.getString(1));
-            }
-            return fids;
-        }
-    }
-
     /**
      * Returns the name to be used for the database. Should be unique for this specific regionated
      * layer.
@@ -5,26 +5,26 @@
  */
 package org.geoserver.kml.regionate;
 
+import java.io.File;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.platform.ServiceException;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.Resource.Type;
 import org.geoserver.wms.MapLayerInfo;
 import org.geoserver.wms.WMSMapContent;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
-import org.geotools.data.jdbc.JDBCUtils;
 import org.geotools.feature.FeatureIterator;
-import org.geotools.feature.FeatureTypes;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
@@ -47,25 +47,33 @@ public class ExternalSortRegionatingStrategy extends CachedHierarchyRegionatingS
     /** The feature type for the features that we'll return back from the index */
     static final SimpleFeatureType IDX_FEATURE_TYPE;
 
-    /** Java type to H2 type map (covers only types that do not have a size) */
-    static Map<Class<?>, String> CLASS_MAPPINGS = new LinkedHashMap<>();
+    /** The attribute types that can be used for sorting */
+    static final Set<Class<?>> SORTABLE_CLASSES =
+            new HashSet<>(
+                    Arrays.asList(
+                            String.class,
+                            Boolean.class,
+                            Byte.class,
+                            Short.class,
+                            Character.class,
+                            Integer.class,
+                            Long.class,
+                            BigInteger.class,
+                            BigDecimal.class,
+                            Float.class,
+                            Double.class,
+                            java.util.Date.class,
+                            java.sql.Date.class,
+                            java.sql.Time.class,
+                            java.sql.Timestamp.class));
+
+    /** Number of centroids sorted in memory before spilling a sorted run to disk */
+    static final int SORT_RUN_SIZE = 100000;
+
+    /** The open centroid indexes, shared among requests */
+    static final Map<File, PackedQuadtreeIndex> INDEXES = new ConcurrentHashMap<>();
 
     static {
-        CLASS_MAPPINGS.put(Boolean.class, "BOOLEAN");
-        CLASS_MAPPINGS.put(Byte.class, "TINYINT");
-        CLASS_MAPPINGS.put(Short.class, "SMALLINT");
-        CLASS_MAPPINGS.put(Character.class, "CHAR");
-        CLASS_MAPPINGS.put(Integer.class, "INT");
-        CLASS_MAPPINGS.put(Long.class, "BIGINT");
-        CLASS_MAPPINGS.put(BigInteger.class, "BIGINT");
-        CLASS_MAPPINGS.put(BigDecimal.class, "DECIMAL");
-        CLASS_MAPPINGS.put(Float.class, "REAL");
-        CLASS_MAPPINGS.put(Double.class, "DOUBLE");
-        CLASS_MAPPINGS.put(java.util.Date.class, "DATE");
-        CLASS_MAPPINGS.put(java.sql.Date.class, "DATE");
-        CLASS_MAPPINGS.put(java.sql.Time.class, "TIME");
-        CLASS_MAPPINGS.put(java.sql.Timestamp.class, "TIMESTAMP");
-
         SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
         tb.crs(Tile.WGS84);
         tb.add("point", Point.class);
@@ -77,8 +85,6 @@ public class ExternalSortRegionatingStrategy extends CachedHierarchyRegionatingS
 
     FeatureSource fs;
 
-    String h2Type;
-
     public ExternalSortRegionatingStrategy(GeoServer gs) {
         super(gs);
     }
@@ -117,9 +123,8 @@ protected void checkAttribute(WMSMapContent con, SimpleFeatureType ft) {
                             + featureType.getName());
         }
 
-        // Make sure we know how to turn that attribute into a H2 type
-        h2Type = getH2DataType(ad);
-        if (h2Type == null)
+        // Make sure we know how to sort on that attribute
+        if (!SORTABLE_CLASSES.contains(ad.getType().getBinding()))
             throw new ServiceException(
                     "Attribute type "
                             + ad.getType()
@@ -138,117 +143,106 @@ protected String checkAttribute(FeatureTypeInfo cfg) {
     public FeatureIterator getSortedFeatures(
             GeometryDescriptor geom,
             ReferencedEnvelope latLongEnvelope,
-            ReferencedEnvelope nativeEnvelope,
-            Connection cacheConn)
+            ReferencedEnvelope nativeEnvelope)
             throws Exception {
-        // first of all, let's check if the geometry index table is there
-        try (Statement st = cacheConn.createStatement()) {
-            try {
-                st.executeQuery("SELECT * FROM FEATUREIDX LIMIT 1");
-            } catch (SQLException e) {
-                buildIndex(cacheConn);
-            }
-        }
-
-        return new IndexFeatureIterator(cacheConn, latLongEnvelope);
+        PackedQuadtreeIndex index = getIndex();
+        return new IndexFeatureIterator(index.query(latLongEnvelope, featuresPerTile * 4));
     }
 
-    protected String getH2DataType(AttributeDescriptor ad) {
-        if (String.class.equals(ad.getType().getBinding())) {
-            int length = FeatureTypes.getFieldLength(ad);
-            if (length <= 0) length = 255;
-            return "VARCHAR(" + length + ")";
-        } else {
-            return CLASS_MAPPINGS.get(ad.getType().getBinding());
+    @Override
+    public void clearCache(FeatureTypeInfo cfg) {
+        super.clearCache(cfg);
+        try {
+            Resource geosearch = gs.getCatalog().getResourceLoader().get("geosearch");
+            if (geosearch.getType() == Type.DIRECTORY) {
+                File directory = geosearch.dir();
+                String name = getDatabaseName(cfg);
+                PackedQuadtreeIndex index = INDEXES.remove(new File(directory, name));
+                if (index != null) {
+                    index.close();
+                }
+                PackedQuadtreeIndex.delete(directory, name);
+            }
+        } catch (Exception e) {
+            LOGGER.severe("Couldn't clear out the centroid index due to: " + e);
         }
     }
 
-    void buildIndex(Connection conn) throws Exception {
-        try (Statement st = conn.createStatement()) {
-            st.execute(
-                    "CREATE TABLE FEATUREIDX(" //
-                            + "X NUMBER, " //
-                            + "Y NUMBER, " //
-                            + "FID VARCHAR(64), " //
-                            + "ORDER_FIELD "
-                            + h2Type
-                            + ")");
-            st.execute("CREATE INDEX FEATUREIDX_COORDS ON FEATUREIDX(X, Y)");
-            st.execute("CREATE INDEX FEATUREIDX_ORDER_FIELD ON FEATUREIDX(ORDER_FIELD)");
+    /** Returns the centroid index of the layer, building it if missing */
+    PackedQuadtreeIndex getIndex() throws Exception {
+        File key = new File(cacheDirectory, tableName);
+        PackedQuadtreeIndex index = INDEXES.get(key);
+        if (index != null) {
+            return index;
         }
 
-        // prepare this statement so that the sql parser has to deal
-        // with it just once
-        try (PreparedStatement ps =
-                conn.prepareStatement(
-                        "INSERT INTO "
-                                + "FEATUREIDX(X, Y, FID, ORDER_FIELD) VALUES (?, ?, ?, ?)")) {
-
-            // build an optimized query, loading only the necessary attributes
-            GeometryDescriptor geom = fs.getSchema().getGeometryDescriptor();
-            CoordinateReferenceSystem nativeCrs = geom.getCoordinateReferenceSystem();
-            Query q = new Query();
-
-            if (geom.getLocalName().equals(attribute)) {
-                q.setPropertyNames(geom.getLocalName());
-            } else {
-                q.setPropertyNames(attribute, geom.getLocalName());
+        // tableName is canonical, make sure no two threads build the same index
+        synchronized (tableName) {
+            index = INDEXES.get(key);
+            if (index == null) {
+                if (!PackedQuadtreeIndex.exists(cacheDirectory, tableName)) {
+                    buildIndex();
+                }
+                index = new PackedQuadtreeIndex(cacheDirectory, tableName);
+                INDEXES.put(key, index);
             }
+            return index;
+        }
+    }
+
+    void buildIndex() throws Exception {
+        // build an optimized query, loading only the necessary attributes
+        GeometryDescriptor geom = fs.getSchema().getGeometryDescriptor();
+        CoordinateReferenceSystem nativeCrs = geom.getCoordinateReferenceSystem();
+        Query q = new Query();
 
-            // setup the eventual transform
-            MathTransform tx = null;
-            double[] coords = new double[2];
-            if (!CRS.equalsIgnoreMetadata(nativeCrs, Tile.WGS84))
-                tx = CRS.findMathTransform(nativeCrs, Tile.WGS84, true);
-
-            // read all the features and fill the index table
-            // make it so the insertion is a single big transaction, should
-            // be faster,
-            // provided it does not kill H2...
-            conn.setAutoCommit(false);
-            try (FeatureIterator fi = fs.getFeatures(q).features()) {
-                while (fi.hasNext()) {
-                    // grab the centroid and transform it in 4326 if necessary
-                    SimpleFeature f = (SimpleFeature) fi.next();
-                    Geometry g = (Geometry) f.getDefaultGeometry();
-                    if (g.isEmpty()) {
-                        continue;
-                    }
-                    Point centroid = g.getCentroid();
-
-                    // robustness check for bad geometries
-                    if (Double.isNaN(centroid.getX()) || Double.isNaN(centroid.getY())) {
-                        LOGGER.warning(
-                                "Could not calculate centroid for feature "
-                                        + f.getID()
-                                        + "; g =  "
-                                        + g.toText());
-                        continue;
-                    }
-
-                    coords[0] = centroid.getX();
-                    coords[1] = centroid.getY();
-                    if (tx != null) tx.transform(coords, 0, coords, 0, 1);
-
-                    // insert
-                    ps.setDouble(1, coords[0]);
-                    ps.setDouble(2, coords[1]);
-                    ps.setString(3, f.getID());
-                    ps.setObject(4, getSortAttributeValue(f));
-                    ps.execute();
+        if (geom.getLocalName().equals(attribute)) {
+            q.setPropertyNames(geom.getLocalName());
+        } else {
+            q.setPropertyNames(attribute, geom.getLocalName());
+        }
+
+        // setup the eventual transform
+        MathTransform tx = null;
+        double[] coords = new double[2];
+        if (!CRS.equalsIgnoreMetadata(nativeCrs, Tile.WGS84))
+            tx = CRS.findMathTransform(nativeCrs, Tile.WGS84, true);
+
+        // read all the features in a single pass, the builder sorts them
+        // spilling to disk as needed
+        try (PackedQuadtreeIndex.Builder builder =
+                        new PackedQuadtreeIndex.Builder(cacheDirectory, tableName, SORT_RUN_SIZE);
+                FeatureIterator fi = fs.getFeatures(q).features()) {
+            while (fi.hasNext()) {
+                // grab the centroid and transform it in 4326 if necessary
+                SimpleFeature f = (SimpleFeature) fi.next();
+                Geometry g = (Geometry) f.getDefaultGeometry();
+                if (g.isEmpty()) {
+                    continue;
                 }
-            }
-            // todo: commit every 1000 features or so. No transaction is
-            // slower, but too big transaction imposes a big overhead on the db
-            conn.commit();
+                Point centroid = g.getCentroid();
+
+                // robustness check for bad geometries
+                if (Double.isNaN(centroid.getX()) || Double.isNaN(centroid.getY())) {
+                    LOGGER.warning(
+                            "Could not calculate centroid for feature "
+                                    + f.getID()
+                                    + "; g =  "
+                                    + g.toText());
+                    continue;
+                }
+
+                coords[0] = centroid.getX();
+                coords[1] = centroid.getY();
+                if (tx != null) tx.transform(coords, 0, coords, 0, 1);
 
-            // hum, shall we kick H2 so that it updates the statistics?
-        } finally {
-            conn.setAutoCommit(true);
+                builder.add(coords[0], coords[1], f.getID(), getSortAttributeValue(f));
+            }
+            builder.build();
         }
     }
 
-    /** Returns the value that will be inserted into the H2 index as the sorting field */
+    /** Returns the value that will be stored in the centroid index as the sorting field */
     protected Object getSortAttributeValue(SimpleFeature f) {
         return f.getAttribute(attribute);
     }
@@ -258,42 +252,10 @@ public static class IndexFeatureIterator implements FeatureIterator {
 
         GeometryFactory gf;
 
-        Statement st;
-
-        ResultSet rs;
-
-        boolean nextCalled;
-
-        boolean next;
-
-        public IndexFeatureIterator(Connection cacheConn, ReferencedEnvelope envelope)
-                throws Exception {
-            // grab all of the geometries sitting inside the envelope
-
-            try {
-                st = cacheConn.createStatement();
-                String sql =
-                        "SELECT X, Y, FID \n"
-                                + "FROM FEATUREIDX\n" //
-                                + "WHERE X >= "
-                                + envelope.getMinX()
-                                + "\n"
-                                + "AND X <= "
-                                + envelope.getMaxX()
-                                + "\n"
-                                + "AND Y >= "
-                                + envelope.getMinY()
-                                + "\n"
-                                + "AND Y <= "
-                                + envelope.getMaxY()
-                                + "\n"
-                                + "ORDER BY ORDER_FIELD DESC";
-                rs = st.executeQuery(sql);
-                // make sure everything is properly closed in case of
-                // exception
-            } catch (SQLException e) {
-                close();
-            }
+        Iterator<PackedQuadtreeIndex.Entry> entries;
+
+        IndexFeatureIterator(Iterator<PackedQuadtreeIndex.Entry> entries) {
+            this.entries = entries;
 
             // prepare the builders we'll use to create all of the features
             builder = new SimpleFeatureBuilder(IDX_FEATURE_TYPE);
@@ -302,39 +264,19 @@ public IndexFeatureIterator(Connection cacheConn, ReferencedEnvelope envelope)
 
         @Override
         public void close() {
-            JDBCUtils.close(rs);
-            JDBCUtils.close(st);
+            // nothing to do, the index is shared
         }
 
         @Override
         public boolean hasNext() {
-            // the contract of the iterator does not say this will be
-            // called just once, we have to guard against multiple calls
-            if (!nextCalled)
-                try {
-                    next = rs.next();
-                    nextCalled = true;
-                } catch (SQLException e) {
-                    close();
-                    throw new RuntimeException("Error while accessing next db record", e);
-                }
-
-            return next;
+            return entries.hasNext();
         }
 
         @Override
         public Feature next() throws NoSuchElementException {
-            if (!nextCalled) hasNext();
-            nextCalled = false;
-            try {
-                double x = rs.getDouble(1);
-                double y = rs.getDouble(2);
-                builder.add(gf.createPoint(new Coordinate(x, y)));
-                return builder.buildFeature(rs.getString(3));
-            } catch (SQLException e) {
-                close();
-                throw new RuntimeException("Problems reading the geometry index");
-            }
+            PackedQuadtreeIndex.Entry entry = entries.next();
+            builder.add(gf.createPoint(new Coordinate(entry.x, entry.y)));
+            return builder.buildFeature(entry.fid);
         }
     }
 }
@@ -57,9 +57,6 @@ protected void checkAttribute(WMSMapContent con, SimpleFeatureType ft) {
                                 + featureType.getName());
             }
         }
-
-        // geometry size is a double
-        h2Type = "DOUBLE";
     }
 
     @Override
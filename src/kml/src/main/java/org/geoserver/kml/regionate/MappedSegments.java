@@ -0,0 +1,103 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.kml.regionate;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read only, memory mapped view of a file that can grow at the end. The file is mapped in segments,
+ * to support files larger than 2GB, each one overlapping a bit with the next one so that most
+ * records crossing a segment border can still be read from the mapped memory. Reads do not lock,
+ * mapping a segment does.
+ *
+ * <p>As the file grows, the mapping of the last segment would become too small. Remapping it on
+ * every read past its end would pile up mappings, which are only released on garbage collection,
+ * eventually hitting the operating system limits. Instead, the mapped window grows geometrically:
+ * the tail is served with positional reads until the segment can be remapped at least twice as
+ * large as before.
+ */
+class MappedSegments {
+
+    static final int SEGMENT_SIZE = 1 << 30;
+
+    static final int SEGMENT_OVERLAP = 1 << 20;
+
+    /** Segments smaller than this are read with positional reads, mapping is not worth it */
+    static final int MIN_MAPPED_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+
+    private final ConcurrentHashMap<Integer, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+
+    /** Number of mappings created so far, package visible for testing purposes */
+    int mappings;
+
+    MappedSegments(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Returns a buffer positioned on the requested bytes, with a limit at their end. The caller is
+     * free to change the position and limit of the buffer
+     */
+    ByteBuffer read(long offset, int length) throws IOException {
+        int index = (int) (offset / SEGMENT_SIZE);
+        int start = (int) (offset - (long) index * SEGMENT_SIZE);
+        int end = start + length;
+        if (end <= SEGMENT_SIZE + SEGMENT_OVERLAP) {
+            MappedByteBuffer segment = segments.get(index);
+            if (segment == null || segment.capacity() < end) {
+                segment = map(index, end);
+            }
+            if (segment != null) {
+                ByteBuffer buffer = segment.duplicate();
+                buffer.position(start);
+                buffer.limit(end);
+                return buffer.slice();
+            }
+        }
+
+        // tail not worth mapping yet, or large record crossing segments, positional reads are
+        // thread safe too
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file at " + offset);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Maps the segment so that it contains the required bytes, or returns null if the segment
+     * cannot grow enough yet to be worth remapping
+     */
+    private synchronized MappedByteBuffer map(int index, int required) throws IOException {
+        MappedByteBuffer segment = segments.get(index);
+        if (segment != null && segment.capacity() >= required) {
+            return segment;
+        }
+        long start = (long) index * SEGMENT_SIZE;
+        long size = Math.min(channel.size() - start, SEGMENT_SIZE + SEGMENT_OVERLAP);
+        if (size < required) {
+            throw new EOFException("Unexpected end of file at " + (start + size));
+        }
+        long minSize = segment == null ? MIN_MAPPED_SIZE : 2L * segment.capacity();
+        if (size < SEGMENT_SIZE + SEGMENT_OVERLAP && size < minSize) {
+            return null;
+        }
+        segment = channel.map(MapMode.READ_ONLY, start, size);
+        segments.put(index, segment);
+        mappings++;
+        return segment;
+    }
+}
@@ -0,0 +1,208 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.kml.regionate;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A {@link TileAssignmentStore} backed by an append-only file, read through memory mapping. The
+ * position of each tile record is kept in memory, rebuilt scanning the file when the store is
+ * opened. Lookups do not lock, appends are serialized.
+ *
+ * <p>The file contains a header (magic number and version) followed by the tile records, each one
+ * made of the record length, the tile x, y and z, the number of feature ids, and the UTF-8 encoded
+ * feature ids, each preceded by its length. A record for a tile replaces the previous ones, an
+ * incomplete record at the end of the file (e.g., after a crash) is discarded.
+ */
+public class MappedTileAssignmentStore implements TileAssignmentStore, Closeable {
+
+    static final Logger LOGGER = Logging.getLogger(MappedTileAssignmentStore.class);
+
+    static final int MAGIC = 0x47535441;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 8;
+
+    /** Record length, x, y, z and fid count */
+    static final int RECORD_HEADER_SIZE = 4 + 8 + 8 + 4 + 4;
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    private final MappedSegments segments;
+
+    private final ConcurrentHashMap<TileKey, Long> offsets = new ConcurrentHashMap<>();
+
+    /** The end of the last complete record, guarded by this */
+    private long size;
+
+    public MappedTileAssignmentStore(File file) throws IOException {
+        this.file = file;
+        this.channel =
+                FileChannel.open(
+                        file.toPath(),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+        this.segments = new MappedSegments(channel);
+        try {
+            open();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void open() throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            channel.truncate(0);
+            write(header, 0);
+            size = HEADER_SIZE;
+            return;
+        }
+
+        ByteBuffer header = segments.read(0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException(file + " is not a tile assignment store, or has an old format");
+        }
+
+        // rebuild the in memory index
+        long offset = HEADER_SIZE;
+        while (offset + RECORD_HEADER_SIZE <= fileSize) {
+            ByteBuffer record = segments.read(offset, RECORD_HEADER_SIZE);
+            int length = record.getInt();
+            if (length < RECORD_HEADER_SIZE || offset + length > fileSize) {
+                break;
+            }
+            offsets.put(new TileKey(record.getLong(), record.getLong(), record.getInt()), offset);
+            offset += length;
+        }
+        if (offset < fileSize) {
+            LOGGER.warning(
+                    "Discarding incomplete record at the end of "
+                            + file
+                            + ", "
+                            + (fileSize - offset)
+                            + " bytes");
+            channel.truncate(offset);
+        }
+        size = offset;
+    }
+
+    @Override
+    public Set<String> getFids(Tile tile) throws IOException {
+        Long offset = offsets.get(new TileKey(tile.x, tile.y, tile.z));
+        if (offset == null) {
+            return null;
+        }
+        int length = segments.read(offset, 4).getInt();
+        ByteBuffer record = segments.read(offset, length);
+        record.position(RECORD_HEADER_SIZE - 4);
+        int count = record.getInt();
+        if (count == 0) {
+            return Collections.emptySet();
+        }
+        Set<String> fids = new HashSet<>();
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < count; i++) {
+            int fidLength = record.getInt();
+            if (bytes.length < fidLength) {
+                bytes = new byte[fidLength];
+            }
+            record.get(bytes, 0, fidLength);
+            fids.add(new String(bytes, 0, fidLength, StandardCharsets.UTF_8));
+        }
+        return fids;
+    }
+
+    @Override
+    public void putFids(Tile tile, Set<String> fids) throws IOException {
+        int length = RECORD_HEADER_SIZE;
+        byte[][] encoded = new byte[fids.size()][];
+        int i = 0;
+        for (String fid : fids) {
+            encoded[i] = fid.getBytes(StandardCharsets.UTF_8);
+            length += 4 + encoded[i].length;
+            i++;
+        }
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(length).putLong(tile.x).putLong(tile.y).putInt((int) tile.z);
+        record.putInt(encoded.length);
+        for (byte[] fid : encoded) {
+            record.putInt(fid.length).put(fid);
+        }
+        record.flip();
+
+        synchronized (this) {
+            long offset = size;
+            write(record, offset);
+            size += length;
+            // publish only once the record is fully written
+            offsets.put(new TileKey(tile.x, tile.y, tile.z), offset);
+        }
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /** Returns the number of tiles in the store */
+    int size() {
+        return offsets.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** The coordinates of a tile */
+    private static final class TileKey {
+        final long x;
+
+        final long y;
+
+        final long z;
+
+        TileKey(long x, long y, long z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) obj;
+            return x == other.x && y == other.y && z == other.z;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(x) * 31 * 31 + Long.hashCode(y) * 31 + Long.hashCode(z);
+        }
+    }
+}
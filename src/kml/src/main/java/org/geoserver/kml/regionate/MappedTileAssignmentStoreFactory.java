@@ -0,0 +1,71 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.kml.regionate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Default {@link TileAssignmentStoreFactory}, keeps a {@link MappedTileAssignmentStore} open for
+ * each regionated layer
+ */
+public class MappedTileAssignmentStoreFactory
+        implements TileAssignmentStoreFactory, DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(MappedTileAssignmentStoreFactory.class);
+
+    static final String EXTENSION = ".tiles";
+
+    private final ConcurrentHashMap<File, MappedTileAssignmentStore> stores =
+            new ConcurrentHashMap<>();
+
+    @Override
+    public TileAssignmentStore getStore(File directory, String name) throws IOException {
+        File file = new File(directory, name + EXTENSION);
+        try {
+            return stores.computeIfAbsent(
+                    file,
+                    f -> {
+                        try {
+                            return new MappedTileAssignmentStore(f);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void deleteStore(File directory, String name) throws IOException {
+        File file = new File(directory, name + EXTENSION);
+        MappedTileAssignmentStore store = stores.remove(file);
+        if (store != null) {
+            store.close();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (MappedTileAssignmentStore store : stores.values()) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close tile assignment store", e);
+            }
+        }
+        stores.clear();
+    }
+}
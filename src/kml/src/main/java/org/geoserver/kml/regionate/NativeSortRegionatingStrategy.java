@@ -5,7 +5,6 @@
  */
 package org.geoserver.kml.regionate;
 
-import java.sql.Connection;
 import java.util.Map;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.config.GeoServer;
@@ -84,10 +83,7 @@ protected String getDatabaseName(FeatureTypeInfo cfg) throws Exception {
 
     @Override
     public FeatureIterator getSortedFeatures(
-            GeometryDescriptor geom,
-            ReferencedEnvelope latLongEnv,
-            ReferencedEnvelope nativeEnv,
-            Connection cacheConn)
+            GeometryDescriptor geom, ReferencedEnvelope latLongEnv, ReferencedEnvelope nativeEnv)
             throws Exception {
         // build the bbox filter
         FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
@@ -0,0 +1,667 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.kml.regionate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Read only index of the feature centroids of a layer, along with their feature id and regionating
+ * priority. The entries are sorted along a Z-order curve built on the regionating tiles, so that
+ * the centroids falling in any tile are stored next to each other (a packed quadtree): a tile
+ * lookup becomes a binary search over a memory mapped file, and concurrent queries do not need any
+ * lock.
+ *
+ * <p>The index is made of two files, <code>name.qix</code> containing a header and, for each entry,
+ * the Z-order key and the position of the entry record in <code>name.qdat</code>, which contains
+ * the centroid, priority value and feature id of each entry. The index is created by a {@link
+ * Builder} in a single pass over the features, sorting in memory up to a given number of entries,
+ * and merging sorted runs spilled on disk for larger layers.
+ */
+class PackedQuadtreeIndex implements Closeable {
+
+    static final String INDEX_EXTENSION = ".qix";
+
+    static final String DATA_EXTENSION = ".qdat";
+
+    static final int MAGIC = 0x47535149;
+
+    static final int VERSION = 1;
+
+    /** Magic, version and entry count */
+    static final int HEADER_SIZE = 16;
+
+    /** Z-order key and data offset */
+    static final int ENTRY_SIZE = 16;
+
+    /** Depth of the quadtree, the cells at this level are roughly 1cm wide */
+    static final int DEPTH = 31;
+
+    static final double CELL_SIZE = 180d / (1L << DEPTH);
+
+    static final long MAX_CELL_Y = (1L << DEPTH) - 1;
+
+    static final long MAX_CELL_X = (2L << DEPTH) - 1;
+
+    /** Below this number of entries a quadtree node is scanned instead of being split further */
+    static final int LEAF_SIZE = 64;
+
+    /** Number of entries read at once while scanning */
+    static final int SCAN_CHUNK = 1 << 16;
+
+    static final byte NULL = 0;
+
+    static final byte NUMBER = 1;
+
+    static final byte STRING = 2;
+
+    /** Regionating order, higher priority first, then the original order */
+    static final Comparator<Entry> PRIORITY =
+            (a, b) -> {
+                int result = compareValues(b, a);
+                return result != 0 ? result : Long.compare(a.ordinal, b.ordinal);
+            };
+
+    /** Reverse regionating order, used to keep the worst entry on top of a bounded heap */
+    static final Comparator<Entry> REVERSE_PRIORITY = PRIORITY.reversed();
+
+    private final FileChannel indexChannel;
+
+    private final FileChannel dataChannel;
+
+    private final MappedSegments index;
+
+    private final MappedSegments data;
+
+    private final long count;
+
+    private final long dataSize;
+
+    /** Opens an existing index */
+    PackedQuadtreeIndex(File directory, String name) throws IOException {
+        File indexFile = new File(directory, name + INDEX_EXTENSION);
+        File dataFile = new File(directory, name + DATA_EXTENSION);
+        this.indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+        try {
+            this.dataChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            indexChannel.close();
+            throw e;
+        }
+        this.index = new MappedSegments(indexChannel);
+        this.data = new MappedSegments(dataChannel);
+        try {
+            ByteBuffer header = index.read(0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(indexFile + " is not a centroid index, or has an old format");
+            }
+            this.count = header.getLong();
+            this.dataSize = dataChannel.size();
+            if (indexChannel.size() != HEADER_SIZE + count * ENTRY_SIZE) {
+                throw new IOException(indexFile + " is truncated");
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /** Returns true if the index files are available */
+    static boolean exists(File directory, String name) {
+        return new File(directory, name + INDEX_EXTENSION).exists()
+                && new File(directory, name + DATA_EXTENSION).exists();
+    }
+
+    /** Deletes the index files, if present */
+    static void delete(File directory, String name) throws IOException {
+        Files.deleteIfExists(new File(directory, name + INDEX_EXTENSION).toPath());
+        Files.deleteIfExists(new File(directory, name + DATA_EXTENSION).toPath());
+    }
+
+    /** Returns the number of entries in the index */
+    long size() {
+        return count;
+    }
+
+    /**
+     * Returns the entries whose centroid falls in the envelope (borders included), sorted by
+     * decreasing priority. Only the top <code>initialLimit</code> entries are loaded in memory at
+     * first, the iterator transparently scans the index again with a larger limit if the caller
+     * needs more.
+     */
+    Iterator<Entry> query(Envelope envelope, int initialLimit) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        collectRanges(0, 0, 0, envelope, ranges);
+        collectRanges(1, 0, 0, envelope, ranges);
+        return new SortedIterator(envelope, ranges, Math.max(1, initialLimit));
+    }
+
+    /**
+     * Collects the ranges of entries to be scanned for the envelope, descending the quadtree from
+     * the specified node
+     */
+    private void collectRanges(long x, long y, int z, Envelope envelope, List<long[]> ranges)
+            throws IOException {
+        double size = 180d / (1L << z);
+        double minX = -180 + x * size;
+        double minY = -90 + y * size;
+        Envelope node = new Envelope(minX, minX + size, minY, minY + size);
+        if (!envelope.intersects(node)) {
+            return;
+        }
+
+        long first = key(x << (DEPTH - z), y << (DEPTH - z));
+        long last = first + (1L << (2 * (DEPTH - z))) - 1;
+        long from = lowerBound(first);
+        // the last key of the eastern root is Long.MAX_VALUE
+        long to = last == Long.MAX_VALUE ? count : lowerBound(last + 1);
+        if (from == to) {
+            return;
+        }
+        if (z == DEPTH || to - from <= LEAF_SIZE || envelope.contains(node)) {
+            ranges.add(new long[] {from, to});
+            return;
+        }
+        collectRanges(2 * x, 2 * y, z + 1, envelope, ranges);
+        collectRanges(2 * x + 1, 2 * y, z + 1, envelope, ranges);
+        collectRanges(2 * x, 2 * y + 1, z + 1, envelope, ranges);
+        collectRanges(2 * x + 1, 2 * y + 1, z + 1, envelope, ranges);
+    }
+
+    /** Returns the position of the first entry whose key is greater or equal to the one given */
+    private long lowerBound(long key) throws IOException {
+        long low = 0;
+        long high = count;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (index.read(HEADER_SIZE + mid * ENTRY_SIZE, 8).getLong() < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Scans the ranges, returning the top <code>limit</code> entries inside the envelope, sorted by
+     * priority, and the total number of entries inside the envelope
+     */
+    private ScanResult scan(Envelope envelope, List<long[]> ranges, int limit) throws IOException {
+        PriorityQueue<Entry> heap = new PriorityQueue<>(REVERSE_PRIORITY);
+        Entry probe = new Entry();
+        long total = 0;
+        byte[] bytes = new byte[64];
+        for (long[] range : ranges) {
+            for (long start = range[0]; start < range[1]; start += SCAN_CHUNK) {
+                long end = Math.min(range[1], start + SCAN_CHUNK);
+                long dataStart = index.read(HEADER_SIZE + start * ENTRY_SIZE + 8, 8).getLong();
+                long dataEnd =
+                        end < count
+                                ? index.read(HEADER_SIZE + end * ENTRY_SIZE + 8, 8).getLong()
+                                : dataSize;
+                ByteBuffer records = data.read(dataStart, (int) (dataEnd - dataStart));
+                for (long i = start; i < end; i++) {
+                    probe.x = records.getDouble();
+                    probe.y = records.getDouble();
+                    bytes = readValue(records, probe, bytes);
+                    int fidLength = records.getInt();
+                    probe.ordinal = i;
+                    if (!envelope.contains(probe.x, probe.y)) {
+                        records.position(records.position() + fidLength);
+                        continue;
+                    }
+                    total++;
+                    if (heap.size() >= limit && PRIORITY.compare(probe, heap.peek()) >= 0) {
+                        records.position(records.position() + fidLength);
+                        continue;
+                    }
+                    if (bytes.length < fidLength) {
+                        bytes = new byte[fidLength];
+                    }
+                    records.get(bytes, 0, fidLength);
+                    probe.fid = new String(bytes, 0, fidLength, StandardCharsets.UTF_8);
+                    heap.add(probe);
+                    if (heap.size() > limit) {
+                        heap.poll();
+                    }
+                    probe = new Entry();
+                }
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(heap);
+        Collections.sort(entries, PRIORITY);
+        return new ScanResult(entries, total);
+    }
+
+    private static byte[] readValue(ByteBuffer buffer, Entry entry, byte[] bytes) {
+        entry.type = buffer.get();
+        if (entry.type == NUMBER) {
+            entry.number = buffer.getDouble();
+        } else if (entry.type == STRING) {
+            int length = buffer.getInt();
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            buffer.get(bytes, 0, length);
+            entry.string = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            indexChannel.close();
+        } finally {
+            if (dataChannel != null) {
+                dataChannel.close();
+            }
+        }
+    }
+
+    /** Returns the cell containing the specified longitude */
+    static long cellX(double x) {
+        long cell = (long) Math.floor((x + 180) / CELL_SIZE);
+        return Math.max(0, Math.min(MAX_CELL_X, cell));
+    }
+
+    /** Returns the cell containing the specified latitude */
+    static long cellY(double y) {
+        long cell = (long) Math.floor((y + 90) / CELL_SIZE);
+        return Math.max(0, Math.min(MAX_CELL_Y, cell));
+    }
+
+    /**
+     * Returns the Z-order key of a cell. The world is covered by two root tiles, the top bit of the
+     * key tells them apart, the others interleave the cell coordinates inside the root tile
+     */
+    static long key(long cellX, long cellY) {
+        return ((cellX >>> DEPTH) << (2 * DEPTH))
+                | (spread(cellX & MAX_CELL_Y) << 1)
+                | spread(cellY & MAX_CELL_Y);
+    }
+
+    /** Spreads the bits of a 32 bit value over the even bits of a long */
+    static long spread(long value) {
+        value &= 0xFFFFFFFFL;
+        value = (value | (value << 16)) & 0x0000FFFF0000FFFFL;
+        value = (value | (value << 8)) & 0x00FF00FF00FF00FFL;
+        value = (value | (value << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | (value << 2)) & 0x3333333333333333L;
+        value = (value | (value << 1)) & 0x5555555555555555L;
+        return value;
+    }
+
+    static int compareValues(Entry a, Entry b) {
+        if (a.type != b.type) {
+            return Byte.compare(a.type, b.type);
+        } else if (a.type == NUMBER) {
+            return Double.compare(a.number, b.number);
+        } else if (a.type == STRING) {
+            return a.string.compareTo(b.string);
+        }
+        return 0;
+    }
+
+    /** A centroid in the index, along with its feature id and priority */
+    static final class Entry {
+        long key;
+
+        long ordinal;
+
+        double x;
+
+        double y;
+
+        byte type;
+
+        double number;
+
+        String string;
+
+        String fid;
+
+        Entry() {}
+
+        Entry(double x, double y, String fid, Object value) {
+            this.x = x;
+            this.y = y;
+            this.fid = fid;
+            this.key = key(cellX(x), cellY(y));
+            if (value == null) {
+                type = NULL;
+            } else if (value instanceof Number) {
+                type = NUMBER;
+                number = ((Number) value).doubleValue();
+            } else if (value instanceof Date) {
+                type = NUMBER;
+                number = ((Date) value).getTime();
+            } else if (value instanceof Boolean) {
+                type = NUMBER;
+                number = ((Boolean) value) ? 1 : 0;
+            } else {
+                type = STRING;
+                string = value.toString();
+            }
+        }
+
+        /** Writes the entry record, returns the number of bytes written */
+        int write(DataOutputStream out) throws IOException {
+            int size = 17;
+            out.writeDouble(x);
+            out.writeDouble(y);
+            out.writeByte(type);
+            if (type == NUMBER) {
+                out.writeDouble(number);
+                size += 8;
+            } else if (type == STRING) {
+                size += writeString(out, string);
+            }
+            return size + writeString(out, fid);
+        }
+
+        private static int writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            return 4 + bytes.length;
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            Entry entry = new Entry();
+            entry.x = in.readDouble();
+            entry.y = in.readDouble();
+            entry.type = in.readByte();
+            if (entry.type == NUMBER) {
+                entry.number = in.readDouble();
+            } else if (entry.type == STRING) {
+                entry.string = readString(in);
+            }
+            entry.fid = readString(in);
+            return entry;
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class ScanResult {
+        final List<Entry> entries;
+
+        final long total;
+
+        ScanResult(List<Entry> entries, long total) {
+            this.entries = entries;
+            this.total = total;
+        }
+    }
+
+    /**
+     * Returns the entries in priority order, scanning again with a larger limit when the current
+     * top entries have been consumed. The scan order is deterministic, so the new top entries start
+     * with the ones already returned.
+     */
+    private class SortedIterator implements Iterator<Entry> {
+
+        final Envelope envelope;
+
+        final List<long[]> ranges;
+
+        int limit;
+
+        ScanResult current;
+
+        int position;
+
+        SortedIterator(Envelope envelope, List<long[]> ranges, int limit) throws IOException {
+            this.envelope = envelope;
+            this.ranges = ranges;
+            this.limit = limit;
+            this.current = scan(envelope, ranges, limit);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position < current.entries.size()) {
+                return true;
+            }
+            if (current.total <= current.entries.size()) {
+                return false;
+            }
+            limit = (int) Math.min(Integer.MAX_VALUE - 8, Math.min(current.total, limit * 4L));
+            try {
+                current = scan(envelope, ranges, limit);
+            } catch (IOException e) {
+                throw new RuntimeException("Problems reading the centroid index", e);
+            }
+            return position < current.entries.size();
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.entries.get(position++);
+        }
+    }
+
+    /**
+     * Builds an index in a single pass: entries are sorted in memory in runs of the given size, the
+     * runs are spilled to temporary files and merged when the index is built
+     */
+    static class Builder implements Closeable {
+
+        private final File directory;
+
+        private final String name;
+
+        private final int runSize;
+
+        private final List<Entry> buffer = new ArrayList<>();
+
+        private final List<File> runs = new ArrayList<>();
+
+        private long count;
+
+        Builder(File directory, String name, int runSize) {
+            this.directory = directory;
+            this.name = name;
+            this.runSize = runSize;
+        }
+
+        /** Adds a centroid to the index */
+        void add(double x, double y, String fid, Object value) throws IOException {
+            buffer.add(new Entry(x, y, fid, value));
+            count++;
+            if (buffer.size() >= runSize) {
+                spill();
+            }
+        }
+
+        private void spill() throws IOException {
+            sortBuffer();
+            File run = File.createTempFile(name, ".run", directory);
+            runs.add(run);
+            try (DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)))) {
+                for (Entry entry : buffer) {
+                    out.writeLong(entry.key);
+                    entry.write(out);
+                }
+            }
+            buffer.clear();
+        }
+
+        private void sortBuffer() {
+            // stable sort, entries with the same key keep the insertion order
+            Collections.sort(buffer, (a, b) -> Long.compare(a.key, b.key));
+        }
+
+        /** Writes out the index files */
+        void build() throws IOException {
+            if (runs.isEmpty()) {
+                sortBuffer();
+                write(buffer.iterator());
+                buffer.clear();
+                return;
+            }
+
+            if (!buffer.isEmpty()) {
+                spill();
+            }
+            List<RunReader> readers = new ArrayList<>();
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    readers.add(new RunReader(runs.get(i), i));
+                }
+                write(new MergeIterator(readers));
+            } finally {
+                for (RunReader reader : readers) {
+                    reader.close();
+                }
+            }
+        }
+
+        private void write(Iterator<Entry> entries) throws IOException {
+            File indexFile = new File(directory, name + INDEX_EXTENSION);
+            File dataFile = new File(directory, name + DATA_EXTENSION);
+            File indexTemp = new File(directory, name + INDEX_EXTENSION + ".tmp");
+            File dataTemp = new File(directory, name + DATA_EXTENSION + ".tmp");
+            try (DataOutputStream index =
+                            new DataOutputStream(
+                                    new BufferedOutputStream(new FileOutputStream(indexTemp)));
+                    DataOutputStream data =
+                            new DataOutputStream(
+                                    new BufferedOutputStream(new FileOutputStream(dataTemp)))) {
+                index.writeInt(MAGIC);
+                index.writeInt(VERSION);
+                index.writeLong(count);
+                long offset = 0;
+                while (entries.hasNext()) {
+                    Entry entry = entries.next();
+                    index.writeLong(entry.key);
+                    index.writeLong(offset);
+                    offset += entry.write(data);
+                }
+            }
+            // the index file is moved last, its presence marks a complete index
+            Files.move(dataTemp.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(indexTemp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        /** Removes the temporary files */
+        @Override
+        public void close() throws IOException {
+            for (File run : runs) {
+                Files.deleteIfExists(run.toPath());
+            }
+            runs.clear();
+            Files.deleteIfExists(new File(directory, name + INDEX_EXTENSION + ".tmp").toPath());
+            Files.deleteIfExists(new File(directory, name + DATA_EXTENSION + ".tmp").toPath());
+        }
+    }
+
+    /** Reads back a sorted run */
+    private static class RunReader implements Closeable {
+        final DataInputStream in;
+
+        final int index;
+
+        Entry current;
+
+        RunReader(File file, int index) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            this.index = index;
+            advance();
+        }
+
+        void advance() throws IOException {
+            long key;
+            try {
+                key = in.readLong();
+            } catch (EOFException e) {
+                current = null;
+                return;
+            }
+            current = Entry.read(in);
+            current.key = key;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** Merges sorted runs, entries with the same key are returned in run order */
+    private static class MergeIterator implements Iterator<Entry> {
+        final PriorityQueue<RunReader> queue =
+                new PriorityQueue<>(
+                        (a, b) -> {
+                            int result = Long.compare(a.current.key, b.current.key);
+                            return result != 0 ? result : Integer.compare(a.index, b.index);
+                        });
+
+        MergeIterator(List<RunReader> readers) {
+            for (RunReader reader : readers) {
+                if (reader.current != null) {
+                    queue.add(reader);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Entry next() {
+            RunReader reader = queue.poll();
+            if (reader == null) {
+                throw new NoSuchElementException();
+            }
+            Entry result = reader.current;
+            try {
+                reader.advance();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read back sorted centroids", e);
+            }
+            if (reader.current != null) {
+                queue.add(reader);
+            }
+            return result;
+        }
+    }
+}
@@ -5,7 +5,6 @@
  */
 package org.geoserver.kml.regionate;
 
-import java.sql.Connection;
 import org.geoserver.config.GeoServer;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
@@ -33,10 +32,7 @@ public RandomRegionatingStrategy(GeoServer gs) {
 
     @Override
     public FeatureIterator getSortedFeatures(
-            GeometryDescriptor geom,
-            ReferencedEnvelope latLongEnv,
-            ReferencedEnvelope nativeEnv,
-            Connection cacheConn)
+            GeometryDescriptor geom, ReferencedEnvelope latLongEnv, ReferencedEnvelope nativeEnv)
             throws Exception {
         FeatureSource fs = featureType.getFeatureSource(null, null);
 
@@ -35,9 +35,6 @@ public class Tile {
             WGS84 = CRS.decode("EPSG:4326");
             WORLD_BOUNDS = new ReferencedEnvelope(new Envelope(180.0, -180.0, 90.0, -90.0), WGS84);
             MAX_TILE_WIDTH = WORLD_BOUNDS.getWidth() / 2.0;
-
-            // make sure, once and for all, that H2 is around
-            Class.forName("org.h2.Driver");
         } catch (Exception e) {
             throw new RuntimeException("Could not initialize the class constants", e);
         }
@@ -0,0 +1,24 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.kml.regionate;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Persistent assignment of features to regionating tiles, for a single layer. Implementations must
+ * be thread safe, lookups are expected to be frequent and concurrent, writes happen once per tile.
+ */
+public interface TileAssignmentStore {
+
+    /**
+     * Returns the ids of the features assigned to the tile, an empty set if the tile has been
+     * computed and found to be empty, or null if the tile has not been computed yet
+     */
+    Set<String> getFids(Tile tile) throws IOException;
+
+    /** Records the ids of the features assigned to the tile */
+    void putFids(Tile tile, Set<String> fids) throws IOException;
+}
@@ -0,0 +1,28 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.kml.regionate;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Provides the {@link TileAssignmentStore} used by the regionating strategies. The first factory
+ * found in the application context is used, {@link MappedTileAssignmentStoreFactory} is the default
+ * one.
+ */
+public interface TileAssignmentStoreFactory {
+
+    /**
+     * Returns the store with the given name, creating it if missing. Stores are shared among
+     * requests, callers must not close them.
+     *
+     * @param directory the directory holding the regionating caches
+     * @param name the store name, unique for each regionated layer and strategy
+     */
+    TileAssignmentStore getStore(File directory, String name) throws IOException;
+
+    /** Closes and removes the store with the given name, if present */
+    void deleteStore(File directory, String name) throws IOException;
+}
@@ -0,0 +1,166 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.kml.regionate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedTileAssignmentStoreTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPutGet() throws Exception {
+        File file = new File(folder.getRoot(), "test.tiles");
+        try (MappedTileAssignmentStore store = new MappedTileAssignmentStore(file)) {
+            Tile tile = new Tile(1, 0, 0);
+            assertNull(store.getFids(tile));
+
+            store.putFids(tile, fids("a.1", "a.2", "\u00e0\u00e8\u00ec.3"));
+            store.putFids(new Tile(2, 1, 1), Collections.emptySet());
+
+            assertEquals(fids("a.1", "a.2", "\u00e0\u00e8\u00ec.3"), store.getFids(tile));
+            assertTrue(store.getFids(new Tile(2, 1, 1)).isEmpty());
+            assertNull(store.getFids(new Tile(2, 1, 2)));
+        }
+    }
+
+    @Test
+    public void testGrowingFileMappings() throws Exception {
+        File file = new File(folder.getRoot(), "growing.bin");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            MappedSegments segments = new MappedSegments(raf.getChannel());
+            byte[] record = new byte[1024];
+            int count = 1024;
+            for (int i = 0; i < count; i++) {
+                Arrays.fill(record, (byte) i);
+                raf.seek(raf.length());
+                raf.write(record);
+                // read back the record just appended, past the end of the current mapping
+                ByteBuffer buffer = segments.read((long) i * record.length, record.length);
+                assertEquals(record.length, buffer.remaining());
+                assertEquals((byte) i, buffer.get(0));
+                assertEquals((byte) i, buffer.get(record.length - 1));
+            }
+            // the mapped window grows geometrically, instead of being remapped on each read
+            assertTrue(segments.mappings > 0);
+            assertTrue(segments.mappings <= 5);
+        }
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        File file = new File(folder.getRoot(), "test.tiles");
+        try (MappedTileAssignmentStore store = new MappedTileAssignmentStore(file)) {
+            store.putFids(new Tile(0, 0, 0), fids("a.1"));
+            store.putFids(new Tile(1, 0, 0), Collections.emptySet());
+            // the last record wins
+            store.putFids(new Tile(0, 0, 0), fids("a.2"));
+        }
+
+        try (MappedTileAssignmentStore store = new MappedTileAssignmentStore(file)) {
+            assertEquals(2, store.size());
+            assertEquals(fids("a.2"), store.getFids(new Tile(0, 0, 0)));
+            assertTrue(store.getFids(new Tile(1, 0, 0)).isEmpty());
+        }
+    }
+
+    @Test
+    public void testIncompleteRecord() throws Exception {
+        File file = new File(folder.getRoot(), "test.tiles");
+        try (MappedTileAssignmentStore store = new MappedTileAssignmentStore(file)) {
+            store.putFids(new Tile(0, 0, 0), fids("a.1"));
+            store.putFids(new Tile(1, 0, 0), fids("a.2", "a.3"));
+        }
+        // simulate a crash while writing the last record
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        try (MappedTileAssignmentStore store = new MappedTileAssignmentStore(file)) {
+            assertEquals(fids("a.1"), store.getFids(new Tile(0, 0, 0)));
+            assertNull(store.getFids(new Tile(1, 0, 0)));
+            // appends work as usual after the truncation
+            store.putFids(new Tile(1, 0, 0), fids("a.4"));
+        }
+        try (MappedTileAssignmentStore store = new MappedTileAssignmentStore(file)) {
+            assertEquals(fids("a.4"), store.getFids(new Tile(1, 0, 0)));
+        }
+    }
+
+    @Test
+    public void testConcurrentReadWrite() throws Exception {
+        File file = new File(folder.getRoot(), "test.tiles");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (MappedTileAssignmentStore store = new MappedTileAssignmentStore(file)) {
+            Future<?> writer =
+                    executor.submit(
+                            () -> {
+                                for (int i = 0; i < 1000; i++) {
+                                    store.putFids(new Tile(i, 0, 10), fids("f." + i));
+                                }
+                                return null;
+                            });
+            Future<?>[] readers = new Future<?>[3];
+            for (int r = 0; r < readers.length; r++) {
+                readers[r] =
+                        executor.submit(
+                                () -> {
+                                    for (int i = 0; i < 1000; i++) {
+                                        Set<String> fids = store.getFids(new Tile(i, 0, 10));
+                                        // either not there yet, or complete
+                                        assertTrue(fids == null || fids.equals(fids("f." + i)));
+                                    }
+                                    return null;
+                                });
+            }
+            writer.get();
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+            assertEquals(1000, store.size());
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testFactory() throws Exception {
+        MappedTileAssignmentStoreFactory factory = new MappedTileAssignmentStoreFactory();
+        File directory = folder.getRoot();
+        TileAssignmentStore store = factory.getStore(directory, "sf_test");
+        assertSame(store, factory.getStore(directory, "sf_test"));
+        store.putFids(new Tile(0, 0, 0), fids("a.1"));
+        assertTrue(new File(directory, "sf_test.tiles").exists());
+
+        factory.deleteStore(directory, "sf_test");
+        assertFalse(new File(directory, "sf_test.tiles").exists());
+        assertNull(factory.getStore(directory, "sf_test").getFids(new Tile(0, 0, 0)));
+        factory.destroy();
+    }
+
+    private static Set<String> fids(String... fids) {
+        return new HashSet<>(Arrays.asList(fids));
+    }
+}
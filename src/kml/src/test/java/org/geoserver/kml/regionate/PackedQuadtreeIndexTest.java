@@ -0,0 +1,135 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.kml.regionate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.Envelope;
+
+public class PackedQuadtreeIndexTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testKeyRanges() {
+        // the two roots
+        assertEquals(0, PackedQuadtreeIndex.key(0, 0));
+        assertEquals(1L << 62, PackedQuadtreeIndex.key(1L << 31, 0));
+        // world corners are clamped inside the grid
+        assertEquals(0, PackedQuadtreeIndex.cellX(-180));
+        assertEquals(PackedQuadtreeIndex.MAX_CELL_X, PackedQuadtreeIndex.cellX(180));
+        assertEquals(PackedQuadtreeIndex.MAX_CELL_Y, PackedQuadtreeIndex.cellY(90));
+        // the four children of a node are in z-order
+        long sw = PackedQuadtreeIndex.key(0, 0);
+        long se = PackedQuadtreeIndex.key(1L << 30, 0);
+        long nw = PackedQuadtreeIndex.key(0, 1L << 30);
+        long ne = PackedQuadtreeIndex.key(1L << 30, 1L << 30);
+        assertTrue(sw < nw && nw < se && se < ne);
+    }
+
+    @Test
+    public void testInMemoryBuild() throws Exception {
+        checkQueries(1000, 10000);
+    }
+
+    @Test
+    public void testExternalSortBuild() throws Exception {
+        checkQueries(1000, 64);
+        // the sorted runs have been removed
+        File[] files = folder.getRoot().listFiles();
+        assertEquals(2, files.length);
+    }
+
+    private void checkQueries(int count, int runSize) throws Exception {
+        Random random = new Random(42);
+        List<double[]> points = new ArrayList<>();
+        try (PackedQuadtreeIndex.Builder builder =
+                new PackedQuadtreeIndex.Builder(folder.getRoot(), "test", runSize)) {
+            for (int i = 0; i < count; i++) {
+                // cluster half of the points, to get deeper quadtree nodes
+                double x = i % 2 == 0 ? random.nextDouble() * 360 - 180 : random.nextDouble();
+                double y = i % 2 == 0 ? random.nextDouble() * 180 - 90 : random.nextDouble();
+                points.add(new double[] {x, y, i});
+                builder.add(x, y, "f." + i, i);
+            }
+            // a point right on a query border
+            points.add(new double[] {0.5, 0.5, count});
+            builder.add(0.5, 0.5, "f." + count, count);
+            builder.build();
+        }
+
+        try (PackedQuadtreeIndex index = new PackedQuadtreeIndex(folder.getRoot(), "test")) {
+            assertEquals(count + 1, index.size());
+            Envelope[] envelopes = {
+                new Envelope(-180, 180, -90, 90),
+                new Envelope(0, 90, 0, 90),
+                new Envelope(0, 0.5, 0, 0.5),
+                new Envelope(-10, 0.25, -20, 0.75),
+                new Envelope(100, 100.0001, 10, 10.0001)
+            };
+            for (Envelope envelope : envelopes) {
+                List<String> expected =
+                        points.stream()
+                                .filter(p -> envelope.contains(p[0], p[1]))
+                                .sorted((a, b) -> Double.compare(b[2], a[2]))
+                                .map(p -> "f." + (int) p[2])
+                                .collect(Collectors.toList());
+                // a small initial limit forces the iterator to scan again
+                assertEquals(expected, fids(index.query(envelope, 1)));
+                assertEquals(expected, fids(index.query(envelope, count * 2)));
+            }
+        }
+    }
+
+    @Test
+    public void testValueTypes() throws Exception {
+        try (PackedQuadtreeIndex.Builder builder =
+                new PackedQuadtreeIndex.Builder(folder.getRoot(), "test", 2)) {
+            builder.add(10, 10, "null", null);
+            builder.add(11, 11, "b", "b");
+            builder.add(12, 12, "a", "a");
+            builder.add(13, 13, "c", "c");
+            builder.build();
+        }
+        try (PackedQuadtreeIndex index = new PackedQuadtreeIndex(folder.getRoot(), "test")) {
+            Envelope envelope = new Envelope(0, 20, 0, 20);
+            List<String> expected = new ArrayList<>();
+            Collections.addAll(expected, "c", "b", "a", "null");
+            assertEquals(expected, fids(index.query(envelope, 10)));
+        }
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        try (PackedQuadtreeIndex.Builder builder =
+                new PackedQuadtreeIndex.Builder(folder.getRoot(), "test", 10)) {
+            builder.add(10, 10, "a", 1);
+            builder.build();
+        }
+        assertTrue(PackedQuadtreeIndex.exists(folder.getRoot(), "test"));
+        PackedQuadtreeIndex.delete(folder.getRoot(), "test");
+        assertFalse(PackedQuadtreeIndex.exists(folder.getRoot(), "test"));
+    }
+
+    private List<String> fids(Iterator<PackedQuadtreeIndex.Entry> entries) {
+        List<String> result = new ArrayList<>();
+        while (entries.hasNext()) {
+            result.add(entries.next().fid);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,527 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerReinitializer;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.data.DataAccess;
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Manages the lifecycle of the {@link DataAccess} instances cached by the {@link ResourcePool}:
+ *
+ * <ul>
+ *   <li>Warm up: stores are created in parallel at startup and after a reload, instead of on the
+ *       first request using them
+ *   <li>Idle eviction: stores not used for a while, and without connections in use, are disposed,
+ *       releasing their connection pools. They are transparently created again by the next request
+ *       using them
+ *   <li>Validation: the connection pools of JDBC stores are checked in the background, in parallel,
+ *       stores that cannot provide a valid connection are disposed, so that the next request
+ *       recreates them
+ * </ul>
+ *
+ * All the features are disabled by default, and are configured using system properties, environment
+ * variables or servlet context parameters.
+ */
+public class DataStoreLifecycleManager implements GeoServerReinitializer, DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(DataStoreLifecycleManager.class);
+
+    /** Stores to warm up, either "*" for all, or a comma separated list of workspace:store names */
+    public static final String WARMUP_KEY = "GEOSERVER_DATASTORE_WARMUP";
+
+    /** Number of threads used to warm up the stores */
+    public static final String WARMUP_THREADS_KEY = "GEOSERVER_DATASTORE_WARMUP_THREADS";
+
+    /** Number of seconds after which an unused store is disposed */
+    public static final String IDLE_TIMEOUT_KEY = "GEOSERVER_DATASTORE_IDLE_TIMEOUT";
+
+    /** Number of seconds between two validations of the JDBC store connections */
+    public static final String VALIDATION_INTERVAL_KEY = "GEOSERVER_DATASTORE_VALIDATION_INTERVAL";
+
+    static final int DEFAULT_WARMUP_THREADS = 4;
+
+    /** Number of threads validating the stores */
+    static final int VALIDATION_THREADS = 4;
+
+    /** Seconds a connection has to answer the validation */
+    static final int VALIDATION_TIMEOUT = 10;
+
+    /** Warm up state of a store */
+    public enum WarmUpState {
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    Catalog catalog;
+
+    String warmUp;
+
+    int warmUpThreads;
+
+    long idleTimeout;
+
+    long validationInterval;
+
+    ScheduledExecutorService scheduler;
+
+    ExecutorService validationExecutor;
+
+    /** Stores whose validation is queued or running */
+    Set<String> validating = ConcurrentHashMap.newKeySet();
+
+    Map<String, WarmUp> warmUps = new ConcurrentHashMap<>();
+
+    Map<String, Validation> validations = new ConcurrentHashMap<>();
+
+    public DataStoreLifecycleManager(Catalog catalog) {
+        this(
+                catalog,
+                GeoServerExtensions.getProperty(WARMUP_KEY),
+                getIntegerProperty(WARMUP_THREADS_KEY, DEFAULT_WARMUP_THREADS),
+                getIntegerProperty(IDLE_TIMEOUT_KEY, 0) * 1000L,
+                getIntegerProperty(VALIDATION_INTERVAL_KEY, 0) * 1000L);
+    }
+
+    DataStoreLifecycleManager(
+            Catalog catalog,
+            String warmUp,
+            int warmUpThreads,
+            long idleTimeout,
+            long validationInterval) {
+        this.catalog = catalog;
+        this.warmUp = warmUp != null && !warmUp.trim().isEmpty() ? warmUp.trim() : null;
+        this.warmUpThreads = Math.max(1, warmUpThreads);
+        this.idleTimeout = idleTimeout;
+        this.validationInterval = validationInterval;
+    }
+
+    @Override
+    public void initialize(GeoServer geoServer) throws Exception {
+        synchronized (this) {
+            if (scheduler == null && (idleTimeout > 0 || validationInterval > 0)) {
+                CustomizableThreadFactory factory =
+                        new CustomizableThreadFactory("DataStoreLifecycle-");
+                factory.setDaemon(true);
+                scheduler = Executors.newScheduledThreadPool(1, factory);
+                if (idleTimeout > 0) {
+                    long period = Math.max(1000, idleTimeout / 4);
+                    scheduler.scheduleWithFixedDelay(
+                            this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+                }
+                if (validationInterval > 0) {
+                    CustomizableThreadFactory validationFactory =
+                            new CustomizableThreadFactory("DataStoreValidation-");
+                    validationFactory.setDaemon(true);
+                    validationExecutor =
+                            Executors.newFixedThreadPool(VALIDATION_THREADS, validationFactory);
+                    scheduler.scheduleWithFixedDelay(
+                            this::validate,
+                            validationInterval,
+                            validationInterval,
+                            TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        startWarmUp();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+            if (validationExecutor != null) {
+                validationExecutor.shutdownNow();
+                validationExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * Creates the configured stores in background, in parallel.
+     *
+     * @return the executor running the warm up, or null if there is nothing to warm up
+     */
+    ExecutorService startWarmUp() {
+        List<DataStoreInfo> stores = getWarmUpStores();
+        if (stores.isEmpty()) {
+            return null;
+        }
+        LOGGER.info("Warming up " + stores.size() + " data stores");
+        CustomizableThreadFactory factory = new CustomizableThreadFactory("DataStoreWarmUp-");
+        factory.setDaemon(true);
+        ExecutorService executor =
+                Executors.newFixedThreadPool(Math.min(warmUpThreads, stores.size()), factory);
+        warmUps.clear();
+        for (DataStoreInfo store : stores) {
+            WarmUp status = new WarmUp();
+            warmUps.put(store.getId(), status);
+            executor.execute(() -> warmUp(store, status));
+        }
+        executor.shutdown();
+        return executor;
+    }
+
+    List<DataStoreInfo> getWarmUpStores() {
+        if (warmUp == null) {
+            return new ArrayList<>();
+        }
+        List<DataStoreInfo> stores = catalog.getDataStores();
+        if (!"*".equals(warmUp)) {
+            Set<String> names =
+                    Arrays.stream(warmUp.split("\\s*,\\s*"))
+                            .filter(n -> !n.isEmpty())
+                            .collect(Collectors.toSet());
+            stores =
+                    stores.stream()
+                            .filter(
+                                    s ->
+                                            names.contains(s.getName())
+                                                    || names.contains(getPrefixedName(s)))
+                            .collect(Collectors.toList());
+        }
+        return stores.stream().filter(StoreInfo::isEnabled).collect(Collectors.toList());
+    }
+
+    void warmUp(DataStoreInfo store, WarmUp status) {
+        long start = System.currentTimeMillis();
+        status.state = WarmUpState.RUNNING;
+        try {
+            catalog.getResourcePool().getDataStore(store);
+            status.state = WarmUpState.COMPLETED;
+        } catch (Exception e) {
+            status.state = WarmUpState.FAILED;
+            status.error = e.getMessage();
+            LOGGER.log(Level.WARNING, "Failed to warm up store " + getPrefixedName(store), e);
+        } finally {
+            status.time = System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * Disposes the stores that have not been used for longer than the idle timeout, skipping the
+     * JDBC stores that still have connections in use
+     */
+    void evictIdle() {
+        try {
+            long threshold = currentTime() - idleTimeout;
+            ResourcePool pool = catalog.getResourcePool();
+            for (String id : new ArrayList<>(pool.getDataStoreCache().keySet())) {
+                boolean disposed =
+                        pool.clearIf(
+                                id,
+                                store -> {
+                                    long lastAccess = pool.getDataStoreLastAccess(id);
+                                    return lastAccess >= 0
+                                            && lastAccess < threshold
+                                            && !hasActiveConnections(store);
+                                });
+                if (disposed) {
+                    LOGGER.fine("Disposed idle data store " + id);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to evict idle data stores", e);
+        }
+    }
+
+    /** Queues the validation of each cached JDBC store, unless already queued or running */
+    void validate() {
+        ExecutorService executor = validationExecutor;
+        ResourcePool pool = catalog.getResourcePool();
+        for (Map.Entry<String, DataAccess> entry :
+                new ArrayList<>(pool.getDataStoreCache().entrySet())) {
+            String id = entry.getKey();
+            if (!(entry.getValue() instanceof JDBCDataStore) || !validating.add(id)) {
+                continue;
+            }
+            Runnable task =
+                    () -> {
+                        try {
+                            validate(id);
+                        } catch (Exception e) {
+                            LOGGER.log(Level.WARNING, "Failed to validate data store " + id, e);
+                        } finally {
+                            validating.remove(id);
+                        }
+                    };
+            try {
+                if (executor != null) {
+                    executor.execute(task);
+                } else {
+                    task.run();
+                }
+            } catch (RejectedExecutionException e) {
+                validating.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Checks a connection of the cached JDBC store, disposing it if the connection is not valid or
+     * cannot be established. The check runs under the same lock used by the {@link ResourcePool} to
+     * create the store. A pool whose connections are all in use is not checked, and a timeout
+     * waiting for a connection is not considered a failure.
+     *
+     * @return true if the store has been disposed
+     */
+    boolean validate(String id) {
+        Validation validation = new Validation();
+        validation.time = new Date(currentTime());
+        boolean disposed =
+                catalog.getResourcePool()
+                        .clearIf(
+                                id,
+                                store ->
+                                        store instanceof JDBCDataStore
+                                                && isBroken(
+                                                        ((JDBCDataStore) store).getDataSource(),
+                                                        validation));
+        validations.put(id, validation);
+        if (disposed || validation.error != null) {
+            DataStoreInfo info = catalog.getDataStore(id);
+            String name = info != null ? getPrefixedName(info) : id;
+            if (disposed) {
+                LOGGER.warning(
+                        "Connection validation failed for store "
+                                + name
+                                + ", disposed it: "
+                                + validation.error);
+            } else {
+                LOGGER.info(
+                        "Could not validate the connections of store "
+                                + name
+                                + ": "
+                                + validation.error);
+            }
+        }
+        return disposed;
+    }
+
+    /**
+     * Checks a connection of the pool, returning true only if the pool is broken, that is, the
+     * connection is not valid or could not be established
+     */
+    static boolean isBroken(DataSource dataSource, Validation validation) {
+        BasicDataSource pool = getBasicDataSource(dataSource);
+        if (pool != null && pool.getMaxActive() > 0 && pool.getNumActive() >= pool.getMaxActive()) {
+            // all connections are in use, so they are working, don't wait for one
+            return false;
+        }
+        try (Connection cx = dataSource.getConnection()) {
+            if (!cx.isValid(VALIDATION_TIMEOUT)) {
+                validation.error = "Connection is not valid";
+                return true;
+            }
+            return false;
+        } catch (Exception e) {
+            validation.error = e.getMessage() != null ? e.getMessage() : e.toString();
+            return isConnectionError(e);
+        }
+    }
+
+    /**
+     * Returns true if the exception reports a failure to connect to the database, false if it's a
+     * timeout waiting for a connection from an exhausted pool, or an unrelated error
+     */
+    static boolean isConnectionError(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause() != t ? t.getCause() : null) {
+            // commons-pool and HikariCP timeouts waiting for an idle connection
+            if (t instanceof NoSuchElementException
+                    || t instanceof SQLTransientConnectionException) {
+                return false;
+            }
+        }
+        for (Throwable t = error; t != null; t = t.getCause() != t ? t.getCause() : null) {
+            if (t instanceof SQLNonTransientConnectionException
+                    || t instanceof SQLRecoverableException
+                    || t instanceof ConnectException
+                    || t instanceof UnknownHostException) {
+                return true;
+            }
+            // SQL state class 08 is "connection exception"
+            if (t instanceof SQLException) {
+                String state = ((SQLException) t).getSQLState();
+                if (state != null && state.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns true if the store is a JDBC one with connections currently in use */
+    static boolean hasActiveConnections(DataAccess store) {
+        if (store instanceof JDBCDataStore) {
+            BasicDataSource pool = getBasicDataSource(((JDBCDataStore) store).getDataSource());
+            return pool != null && pool.getNumActive() > 0;
+        }
+        return false;
+    }
+
+    /** Returns the DBCP pool behind the data source, or null if it's not a DBCP pool */
+    static BasicDataSource getBasicDataSource(DataSource dataSource) {
+        if (dataSource instanceof BasicDataSource) {
+            return (BasicDataSource) dataSource;
+        }
+        try {
+            if (dataSource != null && dataSource.isWrapperFor(BasicDataSource.class)) {
+                return dataSource.unwrap(BasicDataSource.class);
+            }
+        } catch (SQLException e) {
+            // not wrapping a DBCP pool
+        }
+        return null;
+    }
+
+    long currentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /** Returns the lifecycle status of all the data stores in the catalog */
+    public List<DataStoreStatus> getStatus() {
+        ResourcePool pool = catalog.getResourcePool();
+        List<DataStoreStatus> result = new ArrayList<>();
+        for (DataStoreInfo store : catalog.getDataStores()) {
+            DataStoreStatus status = new DataStoreStatus();
+            status.workspace = store.getWorkspace().getName();
+            status.name = store.getName();
+            long lastAccess = pool.getDataStoreLastAccess(store.getId());
+            status.cached = lastAccess >= 0;
+            if (lastAccess >= 0) {
+                status.lastAccess = new Date(lastAccess);
+            }
+            WarmUp warmUp = warmUps.get(store.getId());
+            if (warmUp != null) {
+                status.warmUp = warmUp.state;
+                status.warmUpTime = warmUp.time;
+                status.warmUpError = warmUp.error;
+            }
+            Validation validation = validations.get(store.getId());
+            if (validation != null) {
+                status.lastValidation = validation.time;
+                status.validationError = validation.error;
+            }
+            result.add(status);
+        }
+        return result;
+    }
+
+    private static String getPrefixedName(StoreInfo store) {
+        return store.getWorkspace().getName() + ":" + store.getName();
+    }
+
+    static int getIntegerProperty(String key, int defaultValue) {
+        String value = GeoServerExtensions.getProperty(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid " + key + " value: " + value);
+            }
+        }
+        return defaultValue;
+    }
+
+    static class WarmUp {
+        volatile WarmUpState state = WarmUpState.PENDING;
+        volatile long time;
+        volatile String error;
+    }
+
+    static class Validation {
+        Date time;
+        String error;
+    }
+
+    /** Lifecycle status of a data store */
+    public static class DataStoreStatus {
+        String workspace;
+        String name;
+        boolean cached;
+        Date lastAccess;
+        WarmUpState warmUp;
+        Long warmUpTime;
+        String warmUpError;
+        Date lastValidation;
+        String validationError;
+
+        public String getWorkspace() {
+            return workspace;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Whether the store is currently cached by the resource pool */
+        public boolean isCached() {
+            return cached;
+        }
+
+        /** The last time the store was used, or null if not cached */
+        public Date getLastAccess() {
+            return lastAccess;
+        }
+
+        /** The warm up state, or null if the store is not part of the warm up */
+        public WarmUpState getWarmUp() {
+            return warmUp;
+        }
+
+        /** The warm up time in milliseconds */
+        public Long getWarmUpTime() {
+            return warmUpTime;
+        }
+
+        public String getWarmUpError() {
+            return warmUpError;
+        }
+
+        /** The last time the store connections were validated */
+        public Date getLastValidation() {
+            return lastValidation;
+        }
+
+        public String getValidationError() {
+            return validationError;
+        }
+    }
+}
@@ -0,0 +1,600 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.platform.resource.Resource;
+import org.geotools.feature.AttributeTypeBuilder;
+import org.geotools.feature.FeatureTypes;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.filter.LengthFunction;
+import org.geotools.filter.text.cql2.CQLException;
+import org.geotools.filter.text.ecql.ECQL;
+import org.geotools.jdbc.VirtualTable;
+import org.geotools.jdbc.VirtualTableParameter;
+import org.geotools.referencing.CRS;
+import org.geotools.util.factory.Hints;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.Filter;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Keeps a copy of the native feature types on disk, so that they can be used after a restart
+ * instead of querying the store again, which can take a long time for remote stores (databases,
+ * cascaded WFS).
+ *
+ * <p>Entries are organized in a directory per store, and keyed by a hash of a canonical form of the
+ * native name, the feature type metadata (which might contain virtual table definitions) and the
+ * store connection parameters, so that changes in the configuration do not pick up stale schemas.
+ * Entries older than the time to live are ignored, and read again from the store, to pick up schema
+ * changes made in the store itself.
+ *
+ * <p>Only simple feature types that can be stored without losing information are cached: the user
+ * data keys must be strings or {@link Hints} keys, the values simple ones, and the attribute
+ * restrictions must be encodable in ECQL.
+ */
+public class PersistentFeatureTypeCache {
+
+    static final Logger LOGGER = Logging.getLogger(PersistentFeatureTypeCache.class);
+
+    static final int VERSION = 2;
+
+    /** Default time to live of the entries, one day */
+    static final long DEFAULT_TIME_TO_LIVE = 24 * 60 * 60 * 1000L;
+
+    static final String EXTENSION = ".ftc";
+
+    static final byte CRS_NONE = 0;
+    static final byte CRS_CODE = 1;
+    static final byte CRS_WKT = 2;
+
+    static final byte VALUE_STRING = 0;
+    static final byte VALUE_INTEGER = 1;
+    static final byte VALUE_LONG = 2;
+    static final byte VALUE_DOUBLE = 3;
+    static final byte VALUE_BOOLEAN = 4;
+
+    static final byte KEY_STRING = 0;
+    static final byte KEY_HINT = 1;
+
+    /** The {@link Hints} keys, by field name */
+    static final Map<String, Hints.Key> HINTS = new HashMap<>();
+
+    /** The {@link Hints} field names, by key */
+    static final Map<Object, String> HINT_NAMES = new IdentityHashMap<>();
+
+    static {
+        for (Field field : Hints.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers())
+                    && Hints.Key.class.isAssignableFrom(field.getType())) {
+                try {
+                    Hints.Key key = (Hints.Key) field.get(null);
+                    HINTS.put(field.getName(), key);
+                    HINT_NAMES.put(key, field.getName());
+                } catch (IllegalAccessException e) {
+                    LOGGER.log(Level.FINE, "Could not access hint " + field.getName(), e);
+                }
+            }
+        }
+    }
+
+    final Resource root;
+
+    final long timeToLive;
+
+    /** @param root The directory containing the cache */
+    public PersistentFeatureTypeCache(Resource root) {
+        this(root, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * @param root The directory containing the cache
+     * @param timeToLive The time, in milliseconds, after which an entry is read again from the
+     *     store, a non positive value means the entries never expire
+     */
+    public PersistentFeatureTypeCache(Resource root, long timeToLive) {
+        this.root = root;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Returns the cached native feature type for the given feature type info, or null if not found
+     * or not readable
+     */
+    public SimpleFeatureType get(FeatureTypeInfo info) {
+        Resource resource = getResource(info);
+        if (resource == null || resource.getType() != Resource.Type.RESOURCE) {
+            return null;
+        }
+        if (timeToLive > 0 && System.currentTimeMillis() - resource.lastmodified() > timeToLive) {
+            resource.delete();
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(resource.in()))) {
+            return read(in);
+        } catch (Exception e) {
+            LOGGER.log(
+                    Level.WARNING,
+                    "Could not read the cached feature type for "
+                            + info.getName()
+                            + ", removing it",
+                    e);
+            resource.delete();
+            return null;
+        }
+    }
+
+    /** Stores the native feature type for the given feature type info */
+    public void put(FeatureTypeInfo info, FeatureType featureType) {
+        if (!(featureType instanceof SimpleFeatureType)) {
+            return;
+        }
+        Resource resource = getResource(info);
+        if (resource == null) {
+            return;
+        }
+        // encode fully before writing, so that types that cannot be cached leave nothing behind
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write((SimpleFeatureType) featureType, out);
+        } catch (NotCacheableException e) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(
+                        "Not caching the feature type of "
+                                + info.getName()
+                                + ": "
+                                + e.getMessage());
+            }
+            resource.delete();
+            return;
+        } catch (Exception e) {
+            LOGGER.log(
+                    Level.WARNING,
+                    "Could not cache the feature type for " + info.getName() + " on disk",
+                    e);
+            return;
+        }
+        try (OutputStream out = resource.out()) {
+            bytes.writeTo(out);
+        } catch (Exception e) {
+            LOGGER.log(
+                    Level.WARNING,
+                    "Could not cache the feature type for " + info.getName() + " on disk",
+                    e);
+            resource.delete();
+        }
+    }
+
+    /** Removes the cached feature type for the given feature type info */
+    public void remove(FeatureTypeInfo info) {
+        Resource resource = getResource(info);
+        if (resource != null && resource.getType() == Resource.Type.RESOURCE) {
+            resource.delete();
+        }
+    }
+
+    /** Removes all the cached feature types of a store */
+    public void remove(StoreInfo store) {
+        if (store.getId() != null) {
+            Resource directory = root.get(store.getId());
+            if (directory.getType() == Resource.Type.DIRECTORY) {
+                directory.delete();
+            }
+        }
+    }
+
+    /** Removes all the cached feature types */
+    public void clear() {
+        if (root.getType() == Resource.Type.DIRECTORY) {
+            for (Resource child : root.list()) {
+                child.delete();
+            }
+        }
+    }
+
+    Resource getResource(FeatureTypeInfo info) {
+        StoreInfo store = info.getStore();
+        if (info.getId() == null || store == null || store.getId() == null) {
+            return null;
+        }
+        String key = getKey(info);
+        if (key == null) {
+            return null;
+        }
+        return root.get(store.getId()).get(key + EXTENSION);
+    }
+
+    /**
+     * Builds the cache key out of a canonical form of the native name, the feature type metadata
+     * and the store connection parameters
+     *
+     * @return the key, or null if the configuration contains values without a stable canonical
+     *     form, in which case the feature type is not cached
+     */
+    String getKey(FeatureTypeInfo info) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(info.getNativeName()).append('\n');
+        sb.append(info.getNamespace() != null ? info.getNamespace().getURI() : null).append('\n');
+        if (!appendCanonical(info.getMetadata(), sb)) {
+            return null;
+        }
+        sb.append('\n');
+        if (!appendCanonical(info.getStore().getConnectionParameters(), sb)) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Appends a canonical form of the value, that does not depend on map ordering or object
+     * identities
+     *
+     * @return false if the value has no known canonical form
+     */
+    static boolean appendCanonical(Object value, StringBuilder sb) {
+        if (value == null
+                || value instanceof CharSequence
+                || value instanceof Number
+                || value instanceof Boolean
+                || value instanceof Character
+                || value instanceof Enum) {
+            sb.append(value);
+        } else if (value instanceof Map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            sb.append('{');
+            for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+                sb.append(entry.getKey()).append('=');
+                if (!appendCanonical(entry.getValue(), sb)) {
+                    return false;
+                }
+                sb.append(';');
+            }
+            sb.append('}');
+        } else if (value instanceof Set) {
+            List<String> elements = new ArrayList<>();
+            for (Object element : (Set<?>) value) {
+                StringBuilder esb = new StringBuilder();
+                if (!appendCanonical(element, esb)) {
+                    return false;
+                }
+                elements.add(esb.toString());
+            }
+            Collections.sort(elements);
+            sb.append(elements);
+        } else if (value instanceof Collection || value instanceof Object[]) {
+            Collection<?> elements =
+                    value instanceof Collection
+                            ? (Collection<?>) value
+                            : Arrays.asList((Object[]) value);
+            sb.append('[');
+            for (Object element : elements) {
+                if (!appendCanonical(element, sb)) {
+                    return false;
+                }
+                sb.append(';');
+            }
+            sb.append(']');
+        } else if (value instanceof VirtualTable) {
+            appendCanonical((VirtualTable) value, sb);
+        } else if (overridesToString(value)) {
+            sb.append(value.getClass().getName()).append(':').append(value);
+        } else {
+            // the default toString contains the identity hash code, changing at each restart
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean overridesToString(Object value) {
+        try {
+            return value.getClass().getMethod("toString").getDeclaringClass() != Object.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /** Appends the parts of the virtual table definition affecting its schema */
+    private static void appendCanonical(VirtualTable vt, StringBuilder sb) {
+        sb.append("VirtualTable{").append(vt.getName()).append(';');
+        sb.append(vt.getSql()).append(';');
+        sb.append(vt.isEscapeSql()).append(';');
+        sb.append(vt.getPrimaryKeyColumns()).append(';');
+        if (vt.getGeometries() != null) {
+            for (String geom : new TreeSet<>(vt.getGeometries())) {
+                sb.append(geom).append(':');
+                Class<?> binding = vt.getGeometryType(geom);
+                sb.append(binding != null ? binding.getName() : null).append(':');
+                sb.append(vt.getNativeSrid(geom)).append(';');
+            }
+        }
+        for (String name : new TreeSet<>(vt.getParameterNames())) {
+            VirtualTableParameter param = vt.getParameter(name);
+            sb.append(name).append('=').append(param.getDefaultValue()).append(';');
+        }
+        sb.append('}');
+    }
+
+    void write(SimpleFeatureType type, DataOutputStream out) throws IOException {
+        out.writeInt(VERSION);
+        writeNullableString(type.getName().getNamespaceURI(), out);
+        out.writeUTF(type.getTypeName());
+        out.writeInt(type.getAttributeCount());
+        for (AttributeDescriptor ad : type.getAttributeDescriptors()) {
+            out.writeUTF(ad.getLocalName());
+            out.writeUTF(ad.getType().getBinding().getName());
+            out.writeInt(ad.getMinOccurs());
+            out.writeInt(ad.getMaxOccurs());
+            out.writeBoolean(ad.isNillable());
+            out.writeInt(FeatureTypes.getFieldLength(ad));
+            writeRestrictions(ad, out);
+            if (ad instanceof GeometryDescriptor) {
+                writeCRS(((GeometryDescriptor) ad).getCoordinateReferenceSystem(), out);
+            } else {
+                out.writeByte(CRS_NONE);
+            }
+            writeUserData(ad.getUserData(), out);
+        }
+        GeometryDescriptor geometry = type.getGeometryDescriptor();
+        writeNullableString(geometry != null ? geometry.getLocalName() : null, out);
+        writeUserData(type.getUserData(), out);
+    }
+
+    SimpleFeatureType read(DataInputStream in) throws Exception {
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported cache version " + version);
+        }
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setNamespaceURI(readNullableString(in));
+        tb.setName(in.readUTF());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            AttributeTypeBuilder ab = new AttributeTypeBuilder();
+            ab.setBinding(Class.forName(in.readUTF()));
+            ab.setMinOccurs(in.readInt());
+            ab.setMaxOccurs(in.readInt());
+            ab.setNillable(in.readBoolean());
+            int length = in.readInt();
+            if (length >= 0) {
+                ab.setLength(length);
+            }
+            int restrictions = in.readInt();
+            for (int j = 0; j < restrictions; j++) {
+                ab.addRestriction(ECQL.toFilter(in.readUTF()));
+            }
+            CoordinateReferenceSystem crs = readCRS(in);
+            if (crs != null) {
+                ab.setCRS(crs);
+            }
+            AttributeDescriptor ad = ab.buildDescriptor(name);
+            ad.getUserData().putAll(readUserData(in));
+            tb.add(ad);
+        }
+        String defaultGeometry = readNullableString(in);
+        if (defaultGeometry != null) {
+            tb.setDefaultGeometry(defaultGeometry);
+        }
+        SimpleFeatureType type = tb.buildFeatureType();
+        type.getUserData().putAll(readUserData(in));
+        return type;
+    }
+
+    /**
+     * Writes the attribute restrictions, except the length one, already handled as the field
+     * length, as ECQL
+     */
+    private void writeRestrictions(AttributeDescriptor ad, DataOutputStream out)
+            throws IOException {
+        List<String> restrictions = new ArrayList<>();
+        for (Filter restriction : ad.getType().getRestrictions()) {
+            if (restriction instanceof BinaryComparisonOperator
+                    && ((BinaryComparisonOperator) restriction).getExpression1()
+                            instanceof LengthFunction) {
+                continue;
+            }
+            String ecql = null;
+            try {
+                ecql = ECQL.toCQL(restriction);
+                if (!restriction.equals(ECQL.toFilter(ecql))) {
+                    ecql = null;
+                }
+            } catch (CQLException | RuntimeException e) {
+                ecql = null;
+            }
+            if (ecql == null) {
+                throw new NotCacheableException(
+                        "Restriction " + restriction + " of " + ad.getLocalName());
+            }
+            restrictions.add(ecql);
+        }
+        out.writeInt(restrictions.size());
+        for (String restriction : restrictions) {
+            out.writeUTF(restriction);
+        }
+    }
+
+    private void writeCRS(CoordinateReferenceSystem crs, DataOutputStream out) throws Exception {
+        if (crs == null) {
+            out.writeByte(CRS_NONE);
+            return;
+        }
+        // prefer codes, the decoded CRS carries the authority metadata, but use them only
+        // if they lead back to the same CRS
+        String code = CRS.lookupIdentifier(crs, false);
+        if (code != null) {
+            for (boolean longitudeFirst : new boolean[] {false, true}) {
+                CoordinateReferenceSystem decoded = CRS.decode(code, longitudeFirst);
+                if (CRS.equalsIgnoreMetadata(decoded, crs)) {
+                    out.writeByte(CRS_CODE);
+                    out.writeUTF(code);
+                    out.writeBoolean(longitudeFirst);
+                    return;
+                }
+            }
+        }
+        out.writeByte(CRS_WKT);
+        out.writeUTF(crs.toWKT());
+    }
+
+    private CoordinateReferenceSystem readCRS(DataInputStream in) throws Exception {
+        byte type = in.readByte();
+        switch (type) {
+            case CRS_NONE:
+                return null;
+            case CRS_CODE:
+                String code = in.readUTF();
+                return CRS.decode(code, in.readBoolean());
+            case CRS_WKT:
+                return CRS.parseWKT(in.readUTF());
+            default:
+                throw new IOException("Unexpected CRS type " + type);
+        }
+    }
+
+    private void writeUserData(Map<Object, Object> userData, DataOutputStream out)
+            throws IOException {
+        out.writeInt(userData.size());
+        for (Map.Entry<Object, Object> entry : userData.entrySet()) {
+            Object key = entry.getKey();
+            if (key instanceof String) {
+                out.writeByte(KEY_STRING);
+                out.writeUTF((String) key);
+            } else if (HINT_NAMES.containsKey(key)) {
+                out.writeByte(KEY_HINT);
+                out.writeUTF(HINT_NAMES.get(key));
+            } else {
+                throw new NotCacheableException("User data key " + key);
+            }
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                out.writeByte(VALUE_STRING);
+                out.writeUTF((String) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(VALUE_INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(VALUE_LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                out.writeByte(VALUE_DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(VALUE_BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else {
+                throw new NotCacheableException("User data value " + value + " for " + key);
+            }
+        }
+    }
+
+    private Map<Object, Object> readUserData(DataInputStream in) throws IOException {
+        Map<Object, Object> result = new LinkedHashMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Object key = readUserDataKey(in);
+            byte type = in.readByte();
+            switch (type) {
+                case VALUE_STRING:
+                    result.put(key, in.readUTF());
+                    break;
+                case VALUE_INTEGER:
+                    result.put(key, in.readInt());
+                    break;
+                case VALUE_LONG:
+                    result.put(key, in.readLong());
+                    break;
+                case VALUE_DOUBLE:
+                    result.put(key, in.readDouble());
+                    break;
+                case VALUE_BOOLEAN:
+                    result.put(key, in.readBoolean());
+                    break;
+                default:
+                    throw new IOException("Unexpected user data value type " + type);
+            }
+        }
+        return result;
+    }
+
+    private Object readUserDataKey(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case KEY_STRING:
+                return in.readUTF();
+            case KEY_HINT:
+                String name = in.readUTF();
+                Hints.Key key = HINTS.get(name);
+                if (key == null) {
+                    throw new IOException("Unknown hint " + name);
+                }
+                return key;
+            default:
+                throw new IOException("Unexpected user data key type " + type);
+        }
+    }
+
+    private void writeNullableString(String value, DataOutputStream out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /** Thrown when a feature type cannot be stored without losing information */
+    static class NotCacheableException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        NotCacheableException(String message) {
+            super(message + " cannot be cached");
+        }
+    }
+}
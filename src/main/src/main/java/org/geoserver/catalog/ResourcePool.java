@@ -34,6 +34,7 @@
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.measure.Unit;
@@ -186,6 +187,25 @@ public class ResourcePool {
     /** Default number of hard references */
     static int FEATURETYPE_CACHE_SIZE_DEFAULT = 100;
 
+    /**
+     * Enables the on disk cache of native feature types, speeding up startup with slow remote
+     * stores
+     */
+    static final boolean PERSISTENT_FEATURETYPE_CACHE =
+            Boolean.getBoolean("org.geoserver.catalog.persistentFeatureTypeCache");
+
+    /**
+     * Time to live, in seconds, of the native feature types cached on disk, after which they are
+     * read again from the store, a non positive value disables the expiration
+     */
+    static final long PERSISTENT_FEATURETYPE_CACHE_TTL =
+            Long.getLong(
+                    "org.geoserver.catalog.persistentFeatureTypeCacheTTL",
+                    PersistentFeatureTypeCache.DEFAULT_TIME_TO_LIVE / 1000);
+
+    /** Location of the on disk native feature type cache, relative to the data directory */
+    static final String PERSISTENT_FEATURETYPE_CACHE_PATH = "temp/featureTypeCache";
+
     Catalog catalog;
     Map<String, CoordinateReferenceSystem> crsCache;
     DataStoreCache dataStoreCache;
@@ -207,6 +227,9 @@ public class ResourcePool {
      */
     TransformFeatureTypeCallback transformer = new TransformFeatureTypeCallback();
 
+    /** The on disk cache of native feature types, lazily created if enabled */
+    private volatile PersistentFeatureTypeCache persistentFeatureTypeCache;
+
     /**
      * Holds the keys for all the cache having String keys. By ensuring identity allows to
      * synchronize on id values.
@@ -563,6 +586,7 @@ public DataAccessFactory getDataStoreFactory(DataStoreInfo info) throws IOExcept
                     }
                 }
             }
+            dataStoreCache.touch(key);
 
             return dataStore;
         } catch (Exception e) {
@@ -786,6 +810,38 @@ public void clear(DataStoreInfo info) {
         if (id != null) dataStoreCache.remove(id);
     }
 
+    /**
+     * Returns the last time the cached data store was looked up by {@link
+     * #getDataStore(DataStoreInfo)}, in milliseconds, or -1 if the store is not cached.
+     *
+     * @param id The data store id
+     */
+    public long getDataStoreLastAccess(String id) {
+        Long lastAccess = dataStoreCache.lastAccess.get(id);
+        return lastAccess == null ? -1 : lastAccess;
+    }
+
+    /**
+     * Disposes the cached data store if it matches the specified condition. The condition is
+     * evaluated, and the store removed, under the same lock used by {@link
+     * #getDataStore(DataStoreInfo)} to create the store, so that a store is never tested and
+     * disposed while being created again.
+     *
+     * @param id The data store id
+     * @param condition The condition the cached store must match to be disposed
+     * @return true if the store was disposed
+     */
+    public boolean clearIf(String id, Predicate<DataAccess> condition) {
+        String key = cacheKeys.unique(id);
+        synchronized (key) {
+            DataAccess dataStore = dataStoreCache.get(key);
+            if (dataStore == null || !condition.test(dataStore)) {
+                return false;
+            }
+            return dataStoreCache.remove(key) != null;
+        }
+    }
+
     public List<AttributeTypeInfo> getAttributes(FeatureTypeInfo info) throws IOException {
         // first check the feature type itself
         //      workaround for GEOS-3294, upgrading from 2.0 data directory,
@@ -1005,11 +1061,51 @@ private FeatureType acquireFeatureType(FeatureTypeInfo info, boolean handleProje
             initializer.initialize(info, dataAccess, null);
         }
         // ft = jstore.getSchema(vt.getName());
-        FeatureType ft = dataAccess.getSchema(info.getQualifiedNativeName());
+        PersistentFeatureTypeCache persistentCache = getPersistentFeatureTypeCache();
+        FeatureType ft = persistentCache != null ? persistentCache.get(info) : null;
+        if (ft == null) {
+            ft = dataAccess.getSchema(info.getQualifiedNativeName());
+            if (persistentCache != null) {
+                persistentCache.put(info, ft);
+            }
+        }
         ft = buildFeatureType(info, handleProjectionPolicy, ft);
         return ft;
     }
 
+    /**
+     * Returns the on disk cache of native feature types, or null if not enabled via the
+     * "org.geoserver.catalog.persistentFeatureTypeCache" system variable
+     */
+    PersistentFeatureTypeCache getPersistentFeatureTypeCache() {
+        if (!PERSISTENT_FEATURETYPE_CACHE || catalog == null) {
+            return null;
+        }
+        if (persistentFeatureTypeCache == null) {
+            synchronized (this) {
+                if (persistentFeatureTypeCache == null) {
+                    persistentFeatureTypeCache =
+                            new PersistentFeatureTypeCache(
+                                    catalog.getResourceLoader()
+                                            .get(PERSISTENT_FEATURETYPE_CACHE_PATH),
+                                    PERSISTENT_FEATURETYPE_CACHE_TTL * 1000);
+                }
+            }
+        }
+        return persistentFeatureTypeCache;
+    }
+
+    /**
+     * Removes all the native feature types cached on disk, forcing them to be read again from the
+     * stores
+     */
+    public void clearPersistedFeatureTypes() {
+        PersistentFeatureTypeCache persistentCache = getPersistentFeatureTypeCache();
+        if (persistentCache != null) {
+            persistentCache.clear();
+        }
+    }
+
     private FeatureType getNonCacheableFeatureType(
             FeatureTypeInfo info, boolean handleProjectionPolicy) throws IOException {
         FeatureType ft = null;
@@ -1244,6 +1340,10 @@ public void clear(FeatureTypeInfo info) {
             featureTypeCache.remove(id2);
             featureTypeCache.remove(id3);
             featureTypeAttributeCache.remove(id);
+            PersistentFeatureTypeCache persistentCache = getPersistentFeatureTypeCache();
+            if (persistentCache != null) {
+                persistentCache.remove(info);
+            }
         }
     }
 
@@ -2357,6 +2457,21 @@ protected void dispose(String key, FeatureType featureType) {
      * @see ResourcePool#dataStoreCache
      */
     class DataStoreCache extends CatalogResourceCache<String, DataAccess> {
+
+        /** Last lookup time of the cached stores, by store id */
+        final Map<String, Long> lastAccess = new ConcurrentHashMap<>();
+
+        @Override
+        public DataAccess put(String id, DataAccess dataAccess) {
+            lastAccess.put(id, System.currentTimeMillis());
+            return super.put(id, dataAccess);
+        }
+
+        /** Records an access to the data store, if it's still cached */
+        void touch(String id) {
+            lastAccess.computeIfPresent(id, (k, v) -> System.currentTimeMillis());
+        }
+
         /**
          * Ensure data access entry is removed from catalog, and ensure DataAccess dispose is called
          * to return system resources.
@@ -2369,6 +2484,7 @@ class DataStoreCache extends CatalogResourceCache<String, DataAccess> {
          */
         @Override
         protected void dispose(String id, final DataAccess dataAccess) {
+            if (id != null) lastAccess.remove(id);
             DataStoreInfo info = catalog.getDataStore(id);
             final String name;
             if (info != null) {
@@ -2562,6 +2678,10 @@ public void reloaded() {}
         @Override
         public void visit(DataStoreInfo dataStore) {
             pool.clear(dataStore);
+            PersistentFeatureTypeCache persistentCache = pool.getPersistentFeatureTypeCache();
+            if (persistentCache != null) {
+                persistentCache.remove(dataStore);
+            }
         }
 
         @Override
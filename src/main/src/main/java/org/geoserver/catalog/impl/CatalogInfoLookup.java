@@ -8,6 +8,7 @@
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -29,16 +30,102 @@
  * <p>The lookups by predicate have been tested and optimized for performance, in particular the
  * current for loops turned out to be significantly faster than building and returning streams
  *
+ * <p>Secondary indexes can be registered with {@link #addIndex(String, Function)} to group the
+ * objects by a key extracted from them (e.g., the id of the containing workspace), so that listing
+ * the objects sharing the same key does not require a full scan.
+ *
  * @param <T>
  */
 class CatalogInfoLookup<T extends CatalogInfo> {
     static final Logger LOGGER = Logging.getLogger(CatalogInfoLookup.class);
 
+    /** Key used in secondary indexes for objects whose key is null */
+    static final String NULL_KEY = "";
+
     ConcurrentHashMap<Class<T>, Map<String, T>> idMultiMap = new ConcurrentHashMap<>();
     ConcurrentHashMap<Class<T>, Map<Name, T>> nameMultiMap = new ConcurrentHashMap<>();
+    Map<String, Index> indexes = new LinkedHashMap<>();
     Function<T, Name> nameMapper;
     static final Predicate<?> TRUE = x -> true;
 
+    /**
+     * A secondary index, keeps the objects grouped by the key extracted by the key mapper, and
+     * sorted by name within each group, mirroring the structure of the name map
+     */
+    class Index {
+        Function<T, String> keyMapper;
+        ConcurrentHashMap<Class<T>, ConcurrentHashMap<String, Map<Name, T>>> multiMap =
+                new ConcurrentHashMap<>();
+
+        Index(Function<T, String> keyMapper) {
+            this.keyMapper = keyMapper;
+        }
+
+        ConcurrentHashMap<String, Map<Name, T>> getKeyMap(T value) {
+            return multiMap.computeIfAbsent(getValueClass(value), k -> new ConcurrentHashMap<>());
+        }
+
+        String getKey(T value) {
+            String key = keyMapper.apply(value);
+            return key == null ? NULL_KEY : key;
+        }
+
+        void add(T value, Name name) {
+            getKeyMap(value)
+                    .computeIfAbsent(getKey(value), k -> new ConcurrentSkipListMap<>())
+                    .put(name, value);
+        }
+
+        void remove(T value, Name name) {
+            remove(getKeyMap(value), getKey(value), name);
+        }
+
+        void remove(ConcurrentHashMap<String, Map<Name, T>> keyMap, String key, Name name) {
+            keyMap.computeIfPresent(
+                    key,
+                    (k, values) -> {
+                        values.remove(name);
+                        return values.isEmpty() ? null : values;
+                    });
+        }
+
+        void update(T actualValue, T proxiedValue, Name oldName, Name newName) {
+            String oldKey = getKey(actualValue);
+            String newKey = getKey(proxiedValue);
+            if (!oldKey.equals(newKey) || !oldName.equals(newName)) {
+                ConcurrentHashMap<String, Map<Name, T>> keyMap = getKeyMap(actualValue);
+                remove(keyMap, oldKey, oldName);
+                keyMap.computeIfAbsent(newKey, k -> new ConcurrentSkipListMap<>())
+                        .put(newName, actualValue);
+            }
+        }
+
+        <U extends CatalogInfo> List<U> list(String key, Class<U> clazz, Predicate<U> predicate) {
+            String k = key == null ? NULL_KEY : key;
+            ArrayList<U> result = new ArrayList<>();
+            for (Map.Entry<Class<T>, ConcurrentHashMap<String, Map<Name, T>>> entry :
+                    multiMap.entrySet()) {
+                if (clazz.isAssignableFrom(entry.getKey())) {
+                    Map<Name, T> valueMap = entry.getValue().get(k);
+                    if (valueMap != null) {
+                        for (T v : valueMap.values()) {
+                            @SuppressWarnings("unchecked")
+                            final U u = (U) v;
+                            if (predicate == TRUE || predicate.test(u)) {
+                                result.add(u);
+                            }
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        void clear() {
+            multiMap.clear();
+        }
+    }
+
     /** Returns {@link CatalogInfoLookup#TRUE} in a type-safe way */
     @SuppressWarnings("unchecked")
     public static <T> Predicate<T> ptrue() {
@@ -49,18 +136,29 @@ public CatalogInfoLookup(Function<T, Name> nameMapper) {
         this.nameMapper = nameMapper;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Registers a secondary index with the given name. Indexes should be registered before any
+     * object is added to the lookup.
+     */
+    public CatalogInfoLookup<T> addIndex(String name, Function<T, String> keyMapper) {
+        indexes.put(name, new Index(keyMapper));
+        return this;
+    }
+
     <K> Map<K, T> getMapForValue(ConcurrentHashMap<Class<T>, Map<K, T>> maps, T value) {
-        Class<T> vc;
+        return getMapForValue(maps, getValueClass(value));
+    }
+
+    /** Returns the class of the value, unwrapping it if it's a {@link ModificationProxy} */
+    @SuppressWarnings("unchecked")
+    Class<T> getValueClass(T value) {
         if (Proxy.isProxyClass(value.getClass())) {
             ModificationProxy h = (ModificationProxy) Proxy.getInvocationHandler(value);
             T po = (T) h.getProxyObject();
-            vc = (Class<T>) po.getClass();
+            return (Class<T>) po.getClass();
         } else {
-            vc = (Class<T>) value.getClass();
+            return (Class<T>) value.getClass();
         }
-
-        return getMapForValue(maps, vc);
     }
 
     // cannot get the layer lookup to work otherwise, "vc" cannot be parameterized to "T"
@@ -89,7 +187,14 @@ public T add(T value) {
         Name name = nameMapper.apply(value);
         nameMap.put(name, value);
         Map<String, T> idMap = getMapForValue(idMultiMap, value);
-        return idMap.put(value.getId(), value);
+        T previous = idMap.put(value.getId(), value);
+        for (Index index : indexes.values()) {
+            if (previous != null && previous != value) {
+                index.remove(previous, nameMapper.apply(previous));
+            }
+            index.add(value, name);
+        }
+        return previous;
     }
 
     public Collection<T> values() {
@@ -106,7 +211,13 @@ public T remove(T value) {
         Map<Name, T> nameMap = getMapForValue(nameMultiMap, value);
         nameMap.remove(name);
         Map<String, T> idMap = getMapForValue(idMultiMap, value);
-        return idMap.remove(value.getId());
+        T removed = idMap.remove(value.getId());
+        if (removed != null) {
+            for (Index index : indexes.values()) {
+                index.remove(removed, nameMapper.apply(removed));
+            }
+        }
+        return removed;
     }
 
     /** Updates the value in the name map. The new value must be a ModificationProxy */
@@ -122,11 +233,76 @@ public void update(T proxiedValue) {
             nameMap.remove(oldName);
             nameMap.put(newName, actualValue);
         }
+        for (Index index : indexes.values()) {
+            index.update(actualValue, proxiedValue, oldName, newName);
+        }
     }
 
     public void clear() {
         idMultiMap.clear();
         nameMultiMap.clear();
+        for (Index index : indexes.values()) {
+            index.clear();
+        }
+    }
+
+    /**
+     * Rebuilds the secondary indexes, to be used after the contained objects have been modified in
+     * place (e.g., while resolving their references)
+     */
+    public void reindex() {
+        for (Index index : indexes.values()) {
+            index.clear();
+            for (Map<String, T> idMap : idMultiMap.values()) {
+                for (T v : idMap.values()) {
+                    index.add(v, nameMapper.apply(v));
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up objects by class and matching predicate, among the ones having the specified key in
+     * the given secondary index. Only the objects sharing the same key are visited, the predicate
+     * can be used to further refine the selection.
+     *
+     * @throws IllegalArgumentException if the index has not been registered
+     */
+    <U extends CatalogInfo> List<U> list(
+            String indexName, String key, Class<U> clazz, Predicate<U> predicate) {
+        Index index = indexes.get(indexName);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown index " + indexName);
+        }
+        return index.list(key, clazz, predicate);
+    }
+
+    /**
+     * Counts the objects by class and matching predicate, without accumulating them in a list. When
+     * the predicate is {@link #TRUE} the count is computed from the map sizes alone. Works off the
+     * same name map as {@link #list(Class, Predicate)}, so that the count always matches the size
+     * of the list.
+     */
+    <U extends CatalogInfo> int count(Class<U> clazz, Predicate<U> predicate) {
+        int count = 0;
+        for (Map.Entry<Class<T>, Map<Name, T>> entry : nameMultiMap.entrySet()) {
+            if (clazz.isAssignableFrom(entry.getKey())) {
+                Map<Name, T> valueMap = entry.getValue();
+                if (predicate == TRUE) {
+                    count += valueMap.size();
+                } else {
+                    for (T v : valueMap.values()) {
+                        @SuppressWarnings("unchecked")
+                        final U u = (U) v;
+                        if (predicate.test(u)) {
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+
+        return count;
     }
 
     /**
@@ -14,8 +14,10 @@
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
@@ -91,6 +93,38 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
                             s.getWorkspace() != null ? s.getWorkspace().getId() : null,
                             s.getName());
 
+    /** Secondary index name for objects grouped by workspace id */
+    static final String WORKSPACE_INDEX = "workspace";
+
+    /** Secondary index name for resources grouped by namespace id */
+    static final String NAMESPACE_INDEX = "namespace";
+
+    /** Secondary index name for resources grouped by store id */
+    static final String STORE_INDEX = "store";
+
+    static final Function<CatalogInfo, String> ID_MAPPER = ci -> ci != null ? ci.getId() : null;
+
+    static CatalogInfoLookup<StoreInfo> newStoreLookup() {
+        return new CatalogInfoLookup<>(STORE_NAME_MAPPER)
+                .addIndex(WORKSPACE_INDEX, s -> ID_MAPPER.apply(s.getWorkspace()));
+    }
+
+    static CatalogInfoLookup<ResourceInfo> newResourceLookup() {
+        return new CatalogInfoLookup<>(RESOURCE_NAME_MAPPER)
+                .addIndex(NAMESPACE_INDEX, r -> ID_MAPPER.apply(r.getNamespace()))
+                .addIndex(STORE_INDEX, r -> ID_MAPPER.apply(r.getStore()));
+    }
+
+    static CatalogInfoLookup<LayerGroupInfo> newLayerGroupLookup() {
+        return new CatalogInfoLookup<>(LAYERGROUP_NAME_MAPPER)
+                .addIndex(WORKSPACE_INDEX, lg -> ID_MAPPER.apply(lg.getWorkspace()));
+    }
+
+    static CatalogInfoLookup<StyleInfo> newStyleLookup() {
+        return new CatalogInfoLookup<>(STYLE_NAME_MAPPER)
+                .addIndex(WORKSPACE_INDEX, s -> ID_MAPPER.apply(s.getWorkspace()));
+    }
+
     static final class LayerInfoLookup extends CatalogInfoLookup<LayerInfo> {
 
         public LayerInfoLookup() {
@@ -122,14 +156,13 @@ public LayerInfoLookup setCatalog(Catalog catalog) {
     }
 
     /** Contains the stores keyed by implementation class */
-    protected CatalogInfoLookup<StoreInfo> stores = new CatalogInfoLookup<>(STORE_NAME_MAPPER);
+    protected CatalogInfoLookup<StoreInfo> stores = newStoreLookup();
 
     /** The default store keyed by workspace id */
     protected Map<String, DataStoreInfo> defaultStores = new ConcurrentHashMap<>();
 
     /** resources */
-    protected CatalogInfoLookup<ResourceInfo> resources =
-            new CatalogInfoLookup<>(RESOURCE_NAME_MAPPER);
+    protected CatalogInfoLookup<ResourceInfo> resources = newResourceLookup();
 
     /** The default namespace */
     protected volatile NamespaceInfo defaultNamespace;
@@ -152,11 +185,10 @@ public LayerInfoLookup setCatalog(Catalog catalog) {
     protected List<MapInfo> maps = new CopyOnWriteArrayList<>();
 
     /** layer groups */
-    protected CatalogInfoLookup<LayerGroupInfo> layerGroups =
-            new CatalogInfoLookup<>(LAYERGROUP_NAME_MAPPER);
+    protected CatalogInfoLookup<LayerGroupInfo> layerGroups = newLayerGroupLookup();
 
     /** styles */
-    protected CatalogInfoLookup<StyleInfo> styles = new CatalogInfoLookup<>(STYLE_NAME_MAPPER);
+    protected CatalogInfoLookup<StyleInfo> styles = newStyleLookup();
 
     /** the catalog */
     private CatalogImpl catalog;
@@ -246,7 +278,11 @@ public <T extends StoreInfo> List<T> getStoresByWorkspace(
             ws = workspace;
         }
 
-        List<T> matches = stores.list(clazz, s -> ws.equals(s.getWorkspace()));
+        if (ws == null) {
+            return Collections.emptyList();
+        }
+        List<T> matches =
+                stores.list(WORKSPACE_INDEX, ws.getId(), clazz, s -> ws.equals(s.getWorkspace()));
         return ModificationProxy.createList(matches, clazz);
     }
 
@@ -371,7 +407,21 @@ public <T extends ResourceInfo> List<T> getResourcesByNamespace(
             ns = namespace;
         }
 
-        List<T> matches = resources.list(clazz, r -> ns.equals(r.getNamespace()));
+        if (ns == null) {
+            return Collections.emptyList();
+        }
+        // namespaces are equal when prefix and URI match, while the index is keyed on the id,
+        // resolve the catalog namespaces equal to the one provided
+        Set<String> ids = new LinkedHashSet<>();
+        ids.add(ns.getId());
+        for (NamespaceInfo candidate : namespaces.list(NamespaceInfo.class, n -> ns.equals(n))) {
+            ids.add(candidate.getId());
+        }
+        List<T> matches = new ArrayList<>();
+        for (String id : ids) {
+            matches.addAll(
+                    resources.list(NAMESPACE_INDEX, id, clazz, r -> ns.equals(r.getNamespace())));
+        }
         return ModificationProxy.createList(matches, clazz);
     }
 
@@ -408,7 +458,8 @@ private <T extends CatalogInfo> T wrapInModificationProxy(T ci, Class<T> clazz)
 
     @Override
     public <T extends ResourceInfo> List<T> getResourcesByStore(StoreInfo store, Class<T> clazz) {
-        List<T> matches = resources.list(clazz, r -> store.equals(r.getStore()));
+        List<T> matches =
+                resources.list(STORE_INDEX, store.getId(), clazz, r -> store.equals(r.getStore()));
         return ModificationProxy.createList(matches, clazz);
     }
 
@@ -623,14 +674,25 @@ public List<LayerGroupInfo> getLayerGroupsByWorkspace(WorkspaceInfo workspace) {
         } else {
             ws = workspace;
         }
-        Predicate<LayerGroupInfo> predicate;
+        List<LayerGroupInfo> matches;
         if (workspace == NO_WORKSPACE) {
-            predicate = lg -> lg.getWorkspace() == null;
+            matches =
+                    layerGroups.list(
+                            WORKSPACE_INDEX,
+                            null,
+                            LayerGroupInfo.class,
+                            lg -> lg.getWorkspace() == null);
+        } else if (ws == null) {
+            matches = Collections.emptyList();
         } else {
-            predicate = lg -> ws.equals(lg.getWorkspace());
+            matches =
+                    layerGroups.list(
+                            WORKSPACE_INDEX,
+                            ws.getId(),
+                            LayerGroupInfo.class,
+                            lg -> ws.equals(lg.getWorkspace()));
         }
 
-        List<LayerGroupInfo> matches = layerGroups.list(LayerGroupInfo.class, predicate);
         return ModificationProxy.createList(matches, LayerGroupInfo.class);
     }
 
@@ -931,7 +993,9 @@ public List<StyleInfo> getStylesByWorkspace(WorkspaceInfo workspace) {
         // TODO: support ANY_WORKSPACE?
         List<StyleInfo> matches;
         if (workspace == NO_WORKSPACE) {
-            matches = styles.list(StyleInfo.class, s -> s.getWorkspace() == null);
+            matches =
+                    styles.list(
+                            WORKSPACE_INDEX, null, StyleInfo.class, s -> s.getWorkspace() == null);
         } else {
             WorkspaceInfo ws;
             if (workspace == null) {
@@ -940,7 +1004,15 @@ public List<StyleInfo> getStylesByWorkspace(WorkspaceInfo workspace) {
                 ws = workspace;
             }
 
-            matches = styles.list(StyleInfo.class, s -> ws.equals(s.getWorkspace()));
+            if (ws == null) {
+                return Collections.emptyList();
+            }
+            matches =
+                    styles.list(
+                            WORKSPACE_INDEX,
+                            ws.getId(),
+                            StyleInfo.class,
+                            s -> ws.equals(s.getWorkspace()));
         }
 
         return ModificationProxy.createList(matches, StyleInfo.class);
@@ -982,27 +1054,30 @@ public void resolve() {
 
         // stores
         if (stores == null) {
-            stores = new CatalogInfoLookup<>(STORE_NAME_MAPPER);
+            stores = newStoreLookup();
         }
         for (Object o : stores.values()) {
             resolve((StoreInfoImpl) o);
         }
+        stores.reindex();
 
         // styles
         if (styles == null) {
-            styles = new CatalogInfoLookup<>(STYLE_NAME_MAPPER);
+            styles = newStyleLookup();
         }
         for (StyleInfo s : styles.values()) {
             resolve(s);
         }
+        styles.reindex();
 
         // resources
         if (resources == null) {
-            resources = new CatalogInfoLookup<>(RESOURCE_NAME_MAPPER);
+            resources = newResourceLookup();
         }
         for (Object o : resources.values()) {
             resolve((ResourceInfo) o);
         }
+        resources.reindex();
 
         // layers
         if (layers == null) {
@@ -1014,11 +1089,12 @@ public void resolve() {
 
         // layer groups
         if (layerGroups == null) {
-            layerGroups = new CatalogInfoLookup<>(LAYERGROUP_NAME_MAPPER);
+            layerGroups = newLayerGroupLookup();
         }
         for (LayerGroupInfo lg : layerGroups.values()) {
             resolve(lg);
         }
+        layerGroups.reindex();
 
         // maps
         if (maps == null) {
@@ -1091,6 +1167,25 @@ public void syncTo(CatalogFacade dao) {
 
     @Override
     public <T extends CatalogInfo> int count(final Class<T> of, final Filter filter) {
+        // count straight from the lookups, without building and wrapping a list of matches
+        if (NamespaceInfo.class.isAssignableFrom(of)) {
+            return namespaces.count(of, toPredicate(filter));
+        } else if (WorkspaceInfo.class.isAssignableFrom(of)) {
+            return workspaces.count(of, toPredicate(filter));
+        } else if (StoreInfo.class.isAssignableFrom(of)) {
+            return stores.count(of, toPredicate(filter));
+        } else if (ResourceInfo.class.isAssignableFrom(of)) {
+            return resources.count(of, toPredicate(filter));
+        } else if (LayerInfo.class.isAssignableFrom(of)) {
+            return layers.count(of, toPredicate(filter));
+        } else if (LayerGroupInfo.class.isAssignableFrom(of)) {
+            return layerGroups.count(of, toPredicate(filter));
+        } else if (PublishedInfo.class.isAssignableFrom(of)) {
+            return layers.count(LayerInfo.class, toPredicate(filter))
+                    + layerGroups.count(LayerGroupInfo.class, toPredicate(filter));
+        } else if (StyleInfo.class.isAssignableFrom(of)) {
+            return styles.count(of, toPredicate(filter));
+        }
         return Iterables.size(iterable(of, filter, null));
     }
 
@@ -0,0 +1,234 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import com.thoughtworks.xstream.io.xml.XppDriver;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.Resources;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Binary snapshot of the catalog configuration files, used to speed up the catalog load.
+ *
+ * <p>For each configuration file read while loading the catalog the snapshot stores its last
+ * modification time, and its contents transcoded to the XStream binary format, which is a lot
+ * cheaper to parse than XML, but goes through the same converters. Files whose modification time
+ * does not match the recorded one are read and parsed as XML, new files are not in the snapshot to
+ * start with, and removed ones are never asked for. The snapshot is rewritten after a successful
+ * load whenever it did not match the data directory.
+ */
+final class CatalogSnapshot {
+
+    static final Logger LOGGER = Logging.getLogger(CatalogSnapshot.class);
+
+    /** Name of the snapshot file, in the root of the data directory */
+    static final String SNAPSHOT_FILE = "catalog.snapshot";
+
+    static final int MAGIC = 0x47534353;
+
+    static final int VERSION = 1;
+
+    /** Leading byte of the binary contents, a NUL cannot start a XML document */
+    static final byte BINARY_MARKER = 0;
+
+    /**
+     * Files modified this close to the load are not snapshotted, as a coarse grained file system
+     * timestamp could not tell them apart from a later change
+     */
+    static final long MTIME_RESOLUTION = 2000;
+
+    /** Same driver XStream uses by default, to read the XML the same way the persister does */
+    static final HierarchicalStreamDriver XML_DRIVER = new XppDriver();
+
+    static final class Entry {
+        final long lastModified;
+        final byte[] contents;
+
+        Entry(long lastModified, byte[] contents) {
+            this.lastModified = lastModified;
+            this.contents = contents;
+        }
+    }
+
+    /** The entries read from the snapshot file */
+    final Map<String, Entry> entries;
+
+    /** The entries for the files read during this load, XML ones are transcoded on write */
+    final Map<String, Entry> loaded = new ConcurrentHashMap<>();
+
+    final long started = System.currentTimeMillis();
+
+    final AtomicInteger hits = new AtomicInteger();
+
+    final AtomicInteger misses = new AtomicInteger();
+
+    CatalogSnapshot(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    /** Reads the snapshot, returning an empty one if missing, unreadable or in another format */
+    static CatalogSnapshot read(Resource resource) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (Resources.exists(resource)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(resource.in()))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        String path = in.readUTF();
+                        long lastModified = in.readLong();
+                        byte[] contents = new byte[in.readInt()];
+                        in.readFully(contents);
+                        entries.put(path, new Entry(lastModified, contents));
+                    }
+                } else {
+                    LOGGER.info(
+                            "Ignoring catalog snapshot " + resource.path() + ", unknown format");
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read catalog snapshot, ignoring it", e);
+                entries.clear();
+            }
+        }
+        return new CatalogSnapshot(entries);
+    }
+
+    /**
+     * Returns the contents of the configuration file, in binary format if the snapshot is up to
+     * date for it, as XML otherwise. Use {@link #isBinary(byte[])} to tell them apart.
+     */
+    byte[] contents(Resource resource) throws IOException {
+        String path = resource.path();
+        long lastModified = resource.lastmodified();
+        Entry entry = entries.get(path);
+        if (entry != null && entry.lastModified == lastModified) {
+            hits.incrementAndGet();
+            loaded.put(path, entry);
+            return entry.contents;
+        }
+
+        misses.incrementAndGet();
+        byte[] contents = resource.getContents();
+        if (lastModified > 0 && lastModified < started - MTIME_RESOLUTION) {
+            loaded.put(path, new Entry(lastModified, contents));
+        }
+        return contents;
+    }
+
+    /** Writes the snapshot, if the data directory did not match it */
+    void write(Resource resource) {
+        LOGGER.config(
+                "Loaded "
+                        + hits.get()
+                        + " configuration files from the catalog snapshot, "
+                        + misses.get()
+                        + " from XML");
+        if (misses.get() == 0 && loaded.size() == entries.size()) {
+            return;
+        }
+
+        Map<String, byte[]> binaries = new HashMap<>();
+        for (Map.Entry<String, Entry> e : loaded.entrySet()) {
+            byte[] contents = e.getValue().contents;
+            if (!isBinary(contents)) {
+                contents = transcode(e.getKey(), contents);
+            }
+            if (contents != null) {
+                binaries.put(e.getKey(), contents);
+            }
+        }
+
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(resource.out()))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(binaries.size());
+            for (Map.Entry<String, byte[]> e : binaries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(loaded.get(e.getKey()).lastModified);
+                out.writeInt(e.getValue().length);
+                out.write(e.getValue());
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write catalog snapshot", e);
+        }
+    }
+
+    /** Transcodes XML contents to binary, or returns null if they cannot be parsed */
+    static byte[] transcode(String path, byte[] xml) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(xml.length / 2);
+        bytes.write(BINARY_MARKER);
+        HierarchicalStreamReader reader = XML_DRIVER.createReader(new ByteArrayInputStream(xml));
+        try {
+            BinaryStreamWriter writer = new BinaryStreamWriter(bytes);
+            copy(reader, writer);
+            writer.flush();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "Not adding " + path + " to the catalog snapshot", e);
+            return null;
+        } finally {
+            reader.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Copies the node tree, values are copied only for leaf nodes, the binary reader does not
+     * expect the whitespace the XML one reports in between child nodes
+     */
+    static void copy(HierarchicalStreamReader source, HierarchicalStreamWriter target) {
+        target.startNode(source.getNodeName());
+        for (int i = 0; i < source.getAttributeCount(); i++) {
+            target.addAttribute(source.getAttributeName(i), source.getAttribute(i));
+        }
+        if (source.hasMoreChildren()) {
+            while (source.hasMoreChildren()) {
+                source.moveDown();
+                copy(source, target);
+                source.moveUp();
+            }
+        } else {
+            String value = source.getValue();
+            if (value != null && !value.isEmpty()) {
+                target.setValue(value);
+            }
+        }
+        target.endNode();
+    }
+
+    /** Returns true if the contents are in the snapshot binary format */
+    static boolean isBinary(byte[] contents) {
+        return contents.length > 0 && contents[0] == BINARY_MARKER;
+    }
+
+    /** Unmarshals binary contents, going through the same converters as the XML parsing */
+    static <T> T load(XStreamPersister xp, byte[] contents, Class<T> clazz) {
+        HierarchicalStreamReader reader =
+                new BinaryStreamReader(new ByteArrayInputStream(contents, 1, contents.length - 1));
+        try {
+            return clazz.cast(xp.getXStream().unmarshal(reader));
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -92,13 +92,19 @@ public WorkspaceContents(Resource resource, byte[] contents, byte[] nsContents)
     /** {@link ResourceMapper} for workspaces */
     static final class WorkspaceMapper implements ResourceMapper<WorkspaceContents> {
 
+        CatalogSnapshot snapshot;
+
+        public WorkspaceMapper(CatalogSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
         @Override
         public WorkspaceContents apply(Resource rd) throws IOException {
             Resource wr = rd.get("workspace.xml");
             Resource nr = rd.get("namespace.xml");
             if (Resources.exists(wr) && Resources.exists(nr)) {
-                byte[] contents = wr.getContents();
-                byte[] nrContents = nr.getContents();
+                byte[] contents = contents(wr, snapshot);
+                byte[] nrContents = contents(nr, snapshot);
                 return new WorkspaceContents(rd, contents, nrContents);
             } else {
                 LOGGER.warning("Ignoring workspace directory " + rd.path());
@@ -125,11 +131,31 @@ public SingleResourceContents(Resource resource, byte[] contents) {
     static final ResourceMapper<SingleResourceContents> RESOURCE_MAPPER =
             r -> new SingleResourceContents(r, r.getContents());
 
+    /** Returns a {@link ResourceMapper} for a single {@link Resource}, using the snapshot if any */
+    static ResourceMapper<SingleResourceContents> resourceMapper(CatalogSnapshot snapshot) {
+        if (snapshot == null) {
+            return RESOURCE_MAPPER;
+        }
+        return r -> new SingleResourceContents(r, snapshot.contents(r));
+    }
+
+    /**
+     * Reads the contents of a configuration file, from the snapshot if available and up to date for
+     * it
+     */
+    static byte[] contents(Resource r, CatalogSnapshot snapshot) throws IOException {
+        return snapshot != null ? snapshot.contents(r) : r.getContents();
+    }
+
     /** Layer IO resources */
     static final class LayerContents {
         Resource resource;
         byte[] contents;
         byte[] layerContents;
+        /** The resource parsed out of {@link #contents} in a background thread, if any */
+        ResourceInfo parsed;
+        /** The error that occurred while parsing {@link #contents} in a background thread */
+        Exception parseError;
 
         public LayerContents(Resource resource, byte[] contents, byte[] layerContents) {
             this.resource = resource;
@@ -143,10 +169,22 @@ static final class ResourceLayerMapper implements ResourceMapper<LayerContents>
 
         private String resourceFileName;
         private String resourceType;
+        private CatalogSnapshot snapshot;
 
         public ResourceLayerMapper(String resourceFileName, String resourceType) {
+            this(resourceFileName, resourceType, null);
+        }
+
+        public ResourceLayerMapper(
+                String resourceFileName, String resourceType, CatalogSnapshot snapshot) {
             this.resourceFileName = resourceFileName;
             this.resourceType = resourceType;
+            this.snapshot = snapshot;
+        }
+
+        /** Returns a copy of this mapper reading the configuration files from the snapshot */
+        ResourceLayerMapper withSnapshot(CatalogSnapshot snapshot) {
+            return new ResourceLayerMapper(resourceFileName, resourceType, snapshot);
         }
 
         @Override
@@ -154,8 +192,8 @@ public LayerContents apply(Resource rd) throws IOException {
             Resource r = rd.get(resourceFileName);
             Resource lr = rd.get("layer.xml");
             if (Resources.exists(r) && Resources.exists(lr)) {
-                byte[] contents = r.getContents();
-                byte[] lrContents = lr.getContents();
+                byte[] contents = contents(r, snapshot);
+                byte[] lrContents = contents(lr, snapshot);
                 return new LayerContents(rd, contents, lrContents);
             } else {
                 LOGGER.warning("Ignoring " + resourceType + " directory " + rd.path());
@@ -164,6 +202,39 @@ public LayerContents apply(Resource rd) throws IOException {
         }
     }
 
+    /**
+     * Wraps a {@link ResourceLayerMapper} and parses the resource contents in the IO threads, so
+     * that only catalog population is left to the thread consuming the iterator. The layer contents
+     * are not parsed, as the layer references the resource, which is not yet in the catalog.
+     */
+    static final class ParsingLayerMapper<T extends ResourceInfo>
+            implements ResourceMapper<LayerContents> {
+
+        ResourceLayerMapper delegate;
+        Class<T> clazz;
+        XStreamPersister xp;
+
+        public ParsingLayerMapper(
+                ResourceLayerMapper delegate, Class<T> clazz, XStreamPersister xp) {
+            this.delegate = delegate;
+            this.clazz = clazz;
+            this.xp = xp;
+        }
+
+        @Override
+        public LayerContents apply(Resource rd) throws IOException {
+            LayerContents lc = delegate.apply(rd);
+            if (lc != null) {
+                try {
+                    lc.parsed = depersist(xp, lc.contents, clazz);
+                } catch (Exception e) {
+                    lc.parseError = e;
+                }
+            }
+            return lc;
+        }
+    }
+
     /** Feature Type IO resource mapper */
     static final ResourceLayerMapper FEATURE_LAYER_MAPPER =
             new ResourceLayerMapper("featuretype.xml", "feature type");
@@ -197,7 +268,10 @@ public LayerLoader(Class<T> clazz, XStreamPersister xp, Catalog catalog) {
         public void accept(LayerContents lc) {
             T ft = null;
             try {
-                ft = depersist(xp, lc.contents, clazz);
+                if (lc.parseError != null) {
+                    throw lc.parseError;
+                }
+                ft = lc.parsed != null ? clazz.cast(lc.parsed) : depersist(xp, lc.contents, clazz);
                 catalog.add(ft);
             } catch (Exception e) {
                 LOGGER.log(Level.WARNING, "Failed to load resource", e);
@@ -240,10 +314,32 @@ public void accept(LayerContents lc) {
 
     static final ExtensionFilter XML_FILTER = new Resources.ExtensionFilter("XML");
 
+    /**
+     * When enabled (default) resource configuration files are parsed in the IO threads of the
+     * {@link AsynchResourceIterator}, rather than in the thread populating the catalog
+     */
+    static final boolean PARALLEL_PARSING =
+            !"false"
+                    .equalsIgnoreCase(
+                            GeoServerExtensions.getProperty(
+                                    "org.geoserver.catalog.parallelParsing"));
+
+    /**
+     * When enabled (disabled by default) the catalog configuration files are stored in a binary
+     * {@link CatalogSnapshot} after a successful load, and read back from it on the following
+     * loads, for the files that did not change in the meantime
+     */
+    static final boolean CATALOG_SNAPSHOT =
+            Boolean.parseBoolean(GeoServerExtensions.getProperty("org.geoserver.catalog.snapshot"));
+
     protected GeoServerResourceLoader resourceLoader;
     GeoServer geoserver;
     XStreamPersisterFactory xpf = new XStreamPersisterFactory();
 
+    boolean catalogSnapshot = CATALOG_SNAPSHOT;
+    /** The snapshot used while reading the catalog, if any */
+    CatalogSnapshot snapshot;
+
     // JD: this is a hack for the moment, it is used only to maintain tests since the test setup
     // relies
     // on the old data directory structure, once the tests have been ported to the new structure
@@ -485,6 +581,23 @@ boolean checkStoresOnStartup(XStreamPersister xp) {
 
     /** Reads the catalog from disk. */
     Catalog readCatalog(XStreamPersister xp) throws Exception {
+        if (!catalogSnapshot) {
+            return readCatalogFiles(xp);
+        }
+
+        Resource resource = resourceLoader.get(CatalogSnapshot.SNAPSHOT_FILE);
+        snapshot = CatalogSnapshot.read(resource);
+        try {
+            Catalog catalog = readCatalogFiles(xp);
+            snapshot.write(resource);
+            return catalog;
+        } finally {
+            snapshot = null;
+        }
+    }
+
+    /** Reads the catalog configuration files, using the {@link #snapshot} if available. */
+    Catalog readCatalogFiles(XStreamPersister xp) throws Exception {
         CatalogImpl catalog = new CatalogImpl();
         catalog.setResourceLoader(resourceLoader);
         xp.setCatalog(catalog);
@@ -530,7 +643,7 @@ Catalog readCatalog(XStreamPersister xp) throws Exception {
                     new AsynchResourceIterator<>(
                             workspaces,
                             Resources.DirectoryFilter.INSTANCE,
-                            new WorkspaceMapper())) {
+                            new WorkspaceMapper(snapshot))) {
                 while (it.hasNext()) {
                     WorkspaceContents wc = it.next();
                     WorkspaceInfo ws;
@@ -597,23 +710,24 @@ Catalog readCatalog(XStreamPersister xp) throws Exception {
             }
 
             // maps each store into a SingleResourceContents
+            final CatalogSnapshot snapshot = this.snapshot;
             ResourceMapper<SingleResourceContents> storeMapper =
                     sd -> {
                         Resource f = sd.get("datastore.xml");
                         if (Resources.exists(f)) {
-                            return new SingleResourceContents(f, f.getContents());
+                            return new SingleResourceContents(f, contents(f, snapshot));
                         }
                         f = sd.get("coveragestore.xml");
                         if (Resources.exists(f)) {
-                            return new SingleResourceContents(f, f.getContents());
+                            return new SingleResourceContents(f, contents(f, snapshot));
                         }
                         f = sd.get("wmsstore.xml");
                         if (Resources.exists(f)) {
-                            return new SingleResourceContents(f, f.getContents());
+                            return new SingleResourceContents(f, contents(f, snapshot));
                         }
                         f = sd.get("wmtsstore.xml");
                         if (Resources.exists(f)) {
-                            return new SingleResourceContents(f, f.getContents());
+                            return new SingleResourceContents(f, contents(f, snapshot));
                         }
                         if (!isConfigDirectory(sd)) {
                             LOGGER.warning("Ignoring store directory '" + sd.name() + "'");
@@ -699,7 +813,7 @@ private void loadWmsStore(
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        WMS_LAYER_MAPPER)) {
+                        layerMapper(WMS_LAYER_MAPPER, WMSLayerInfo.class, xp, snapshot))) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 coverageLoader.accept(lc);
@@ -731,7 +845,7 @@ private void loadWmtsStore(
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        WMTS_LAYER_MAPPER)) {
+                        layerMapper(WMTS_LAYER_MAPPER, WMTSLayerInfo.class, xp, snapshot))) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 coverageLoader.accept(lc);
@@ -771,7 +885,7 @@ private void loadCoverageStore(
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        COVERAGE_LAYER_MAPPER)) {
+                        layerMapper(COVERAGE_LAYER_MAPPER, CoverageInfo.class, xp, snapshot))) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 coverageLoader.accept(lc);
@@ -825,7 +939,7 @@ private void loadDataStore(
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        FEATURE_LAYER_MAPPER)) {
+                        layerMapper(FEATURE_LAYER_MAPPER, FeatureTypeInfo.class, xp, snapshot))) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 featureLoader.accept(lc);
@@ -833,6 +947,21 @@ private void loadDataStore(
         }
     }
 
+    /**
+     * Returns the mapper used to read resource and layer configuration files, from the snapshot if
+     * not null, parsing the resource in the IO threads if {@link #PARALLEL_PARSING} is enabled
+     */
+    static <T extends ResourceInfo> ResourceMapper<LayerContents> layerMapper(
+            ResourceLayerMapper mapper,
+            Class<T> clazz,
+            XStreamPersister xp,
+            CatalogSnapshot snapshot) {
+        if (snapshot != null) {
+            mapper = mapper.withSnapshot(snapshot);
+        }
+        return PARALLEL_PARSING ? new ParsingLayerMapper<>(mapper, clazz, xp) : mapper;
+    }
+
     /**
      * Some config directories in GeoServer are used to store workspace specific configurations,
      * identify them so that we don't log complaints about their existence
@@ -1010,7 +1139,7 @@ void loadStyles(Resource styles, Catalog catalog, XStreamPersister xp) throws IO
         Filter<Resource> styleFilter =
                 r -> XML_FILTER.accept(r) && !Resources.exists(styles.get(r.name() + ".xml"));
         try (AsynchResourceIterator<SingleResourceContents> it =
-                new AsynchResourceIterator<>(styles, styleFilter, RESOURCE_MAPPER)) {
+                new AsynchResourceIterator<>(styles, styleFilter, resourceMapper(snapshot))) {
             while (it.hasNext()) {
                 SingleResourceContents r = it.next();
                 try {
@@ -1029,7 +1158,7 @@ void loadStyles(Resource styles, Catalog catalog, XStreamPersister xp) throws IO
 
     void loadLayerGroups(Resource layerGroups, Catalog catalog, XStreamPersister xp) {
         try (AsynchResourceIterator<SingleResourceContents> it =
-                new AsynchResourceIterator<>(layerGroups, XML_FILTER, RESOURCE_MAPPER)) {
+                new AsynchResourceIterator<>(layerGroups, XML_FILTER, resourceMapper(snapshot))) {
             while (it.hasNext()) {
                 SingleResourceContents r = it.next();
                 try {
@@ -1101,9 +1230,15 @@ <T> T depersist(XStreamPersister xp, Resource f, Class<T> clazz) throws IOExcept
         }
     }
 
-    /** Helper method which uses xstream to depersist an object as xml from disk. */
+    /**
+     * Helper method which uses xstream to depersist an object as xml from disk, or from the binary
+     * format of the {@link CatalogSnapshot}.
+     */
     static <T> T depersist(XStreamPersister xp, byte[] contents, Class<T> clazz)
             throws IOException {
+        if (CatalogSnapshot.isBinary(contents)) {
+            return CatalogSnapshot.load(xp, contents, clazz);
+        }
         try (InputStream in = new ByteArrayInputStream(contents)) {
             return xp.load(in, clazz);
         }
@@ -566,6 +566,7 @@ public void reload(Catalog newCatalog) throws Exception {
     public void reset() {
         // drop all the catalog store/feature types/raster caches
         catalog.getResourcePool().dispose();
+        catalog.getResourcePool().clearPersistedFeatureTypes();
 
         // reset the referencing subsystem
         CRS.reset("all");
@@ -71,6 +71,7 @@
 import org.geoserver.security.auth.AuthenticationCache;
 import org.geoserver.security.auth.GeoServerRootAuthenticationProvider;
 import org.geoserver.security.auth.GuavaAuthenticationCacheImpl;
+import org.geoserver.security.auth.RefreshingAuthenticationCacheImpl;
 import org.geoserver.security.auth.UsernamePasswordAuthenticationProvider;
 import org.geoserver.security.concurrent.LockingKeyStoreProvider;
 import org.geoserver.security.concurrent.LockingRoleService;
@@ -695,7 +696,42 @@ public AuthenticationCache getAuthenticationCache() {
 
     AuthenticationCache lookupAuthenticationCache() {
         AuthenticationCache authCache = GeoServerExtensions.bean(AuthenticationCache.class);
-        return authCache != null ? authCache : new GuavaAuthenticationCacheImpl(1000);
+        if (authCache != null) {
+            return authCache;
+        }
+        // serve expired entries while refreshing them, if a grace time has been configured
+        int graceTime = getIntegerProperty(RefreshingAuthenticationCacheImpl.GRACE_TIME_KEY, 0);
+        if (graceTime > 0) {
+            int refreshLimit =
+                    getIntegerProperty(
+                            RefreshingAuthenticationCacheImpl.REFRESH_LIMIT_KEY,
+                            RefreshingAuthenticationCacheImpl.DEFAULT_REFRESH_LIMIT);
+            int refreshTimeout =
+                    getIntegerProperty(
+                            RefreshingAuthenticationCacheImpl.REFRESH_TIMEOUT_KEY,
+                            RefreshingAuthenticationCacheImpl.DEFAULT_REFRESH_TIMEOUT);
+            return new RefreshingAuthenticationCacheImpl(
+                    1000,
+                    AuthenticationCache.DEFAULT_IDLE_TIME,
+                    AuthenticationCache.DEFAULT_LIVE_TIME,
+                    graceTime,
+                    RefreshingAuthenticationCacheImpl.DEFAULT_REFRESH_THREADS,
+                    refreshLimit,
+                    refreshTimeout);
+        }
+        return new GuavaAuthenticationCacheImpl(1000);
+    }
+
+    private static int getIntegerProperty(String key, int defaultValue) {
+        String value = GeoServerExtensions.getProperty(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid " + key + " value: " + value);
+            }
+        }
+        return defaultValue;
     }
 
     public RememberMeServices getRememberMeService() {
@@ -6,6 +6,7 @@
 
 package org.geoserver.security.auth;
 
+import java.util.concurrent.Callable;
 import org.geoserver.security.filter.AuthenticationCachingFilter;
 import org.springframework.security.core.Authentication;
 
@@ -46,4 +47,29 @@ public void put(
 
     /** timeToIdleSeconds and timeToLiveSeconds are derived from the cache global settings */
     public void put(String filterName, String cacheKey, Authentication auth);
+
+    /**
+     * Returns true if the cache refreshes expired entries using the refreshers passed to {@link
+     * #put(String, String, Authentication, Integer, Integer, Callable)}. Callers can skip building
+     * the refreshers otherwise. The default implementation returns false.
+     */
+    public default boolean isRefreshing() {
+        return false;
+    }
+
+    /**
+     * Same as {@link #put(String, String, Authentication, Integer, Integer)}, with a task able to
+     * authenticate again, returning <code>null</code> or throwing an exception if the
+     * authentication is no longer valid. Implementations may use it to refresh expired entries in
+     * the background, the default implementation ignores it.
+     */
+    public default void put(
+            String filterName,
+            String cacheKey,
+            Authentication auth,
+            Integer timeToIdleSeconds,
+            Integer timeToLiveSeconds,
+            Callable<Authentication> refresher) {
+        put(filterName, cacheKey, auth, timeToIdleSeconds, timeToLiveSeconds);
+    }
 }
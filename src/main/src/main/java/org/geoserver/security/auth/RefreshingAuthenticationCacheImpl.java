@@ -0,0 +1,531 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.auth;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.Authentication;
+
+/**
+ * An {@link AuthenticationCache} serving expired entries while they are refreshed in the background
+ * (stale-while-revalidate), so that requests do not block on the user/group services every time an
+ * entry expires.
+ *
+ * <p>Entries cached with a refresher (see {@link #put(String, String, Authentication, Integer,
+ * Integer, Callable)}) are still returned for a grace period after their idle or live time expired,
+ * while the refresher runs on a background thread. A successful refresh replaces the entry, a
+ * failed one removes it, so that the next request authenticates again. Past the grace period,
+ * requests wait for the refresh, if one is running, sharing its result, up to a timeout after which
+ * they get no authentication, and have to authenticate again: an entry this old is never served, as
+ * the user might have been disabled or its password changed meanwhile. Entries without a refresher
+ * expire as usual.
+ *
+ * <p>The number of refreshes running at the same time for a single filter, hence against the same
+ * backend, is bounded. When the limit is reached, stale entries are served until a refresh can be
+ * started.
+ */
+public class RefreshingAuthenticationCacheImpl implements AuthenticationCache, DisposableBean {
+
+    /**
+     * System/environment variable or servlet context parameter enabling this cache, with the grace
+     * period in seconds
+     */
+    public static final String GRACE_TIME_KEY = "GEOSERVER_AUTH_CACHE_GRACE_TIME";
+
+    /**
+     * System/environment variable or servlet context parameter setting the number of refreshes
+     * running at the same time for a single filter
+     */
+    public static final String REFRESH_LIMIT_KEY = "GEOSERVER_AUTH_CACHE_REFRESH_LIMIT";
+
+    /**
+     * System/environment variable or servlet context parameter setting how long, in seconds, a
+     * request waits for the refresh of an entry past its grace period
+     */
+    public static final String REFRESH_TIMEOUT_KEY = "GEOSERVER_AUTH_CACHE_REFRESH_TIMEOUT";
+
+    /** Default number of threads running the refreshes */
+    public static final int DEFAULT_REFRESH_THREADS = 4;
+
+    /** Default number of refreshes running at the same time for a single filter */
+    public static final int DEFAULT_REFRESH_LIMIT = 2;
+
+    /** Default time, in seconds, a request waits for the refresh of an entry */
+    public static final int DEFAULT_REFRESH_TIMEOUT = 5;
+
+    static Logger LOGGER = Logging.getLogger("org.geoserver.security");
+
+    private final int timeToIdleSeconds, timeToLiveSeconds;
+
+    private final long graceMillis;
+
+    private final int refreshLimit;
+
+    private final long refreshTimeoutMillis;
+
+    private final Cache<AuthenticationCacheKey, Entry> cache;
+
+    private final ConcurrentHashMap<String, Semaphore> refreshPermits = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong staleHits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private final AtomicLong refreshFailures = new AtomicLong();
+
+    private final AtomicLong refreshTime = new AtomicLong();
+
+    private final AtomicLong maxRefreshTime = new AtomicLong();
+
+    public RefreshingAuthenticationCacheImpl(int maxEntries, int graceSeconds) {
+        this(
+                maxEntries,
+                DEFAULT_IDLE_TIME,
+                DEFAULT_LIVE_TIME,
+                graceSeconds,
+                DEFAULT_REFRESH_THREADS,
+                DEFAULT_REFRESH_LIMIT);
+    }
+
+    /**
+     * @param maxEntries maximum number of cached entries
+     * @param timeToIdleSeconds default time to evict after last access
+     * @param timeToLiveSeconds default time to evict after creation
+     * @param graceSeconds time an expired entry is still served while being refreshed
+     * @param refreshThreads number of threads running the refreshes
+     * @param refreshLimit maximum number of refreshes running at the same time for a filter
+     */
+    public RefreshingAuthenticationCacheImpl(
+            int maxEntries,
+            int timeToIdleSeconds,
+            int timeToLiveSeconds,
+            int graceSeconds,
+            int refreshThreads,
+            int refreshLimit) {
+        this(
+                maxEntries,
+                timeToIdleSeconds,
+                timeToLiveSeconds,
+                graceSeconds,
+                refreshThreads,
+                refreshLimit,
+                DEFAULT_REFRESH_TIMEOUT);
+    }
+
+    /**
+     * @param maxEntries maximum number of cached entries
+     * @param timeToIdleSeconds default time to evict after last access
+     * @param timeToLiveSeconds default time to evict after creation
+     * @param graceSeconds time an expired entry is still served while being refreshed
+     * @param refreshThreads number of threads running the refreshes
+     * @param refreshLimit maximum number of refreshes running at the same time for a filter
+     * @param refreshTimeoutSeconds maximum time a request waits for a refresh, past the grace
+     *     period, before giving up on the cached entry
+     */
+    public RefreshingAuthenticationCacheImpl(
+            int maxEntries,
+            int timeToIdleSeconds,
+            int timeToLiveSeconds,
+            int graceSeconds,
+            int refreshThreads,
+            int refreshLimit,
+            int refreshTimeoutSeconds) {
+        this.timeToIdleSeconds = timeToIdleSeconds;
+        this.timeToLiveSeconds = timeToLiveSeconds;
+        this.graceMillis = graceSeconds * 1000L;
+        this.refreshLimit = Math.max(1, refreshLimit);
+        this.refreshTimeoutMillis = Math.max(0, refreshTimeoutSeconds) * 1000L;
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+
+        CustomizableThreadFactory refreshFactory =
+                new CustomizableThreadFactory("AuthCacheRefresh-");
+        refreshFactory.setDaemon(true);
+        int threads = Math.max(1, refreshThreads);
+        executor =
+                new ThreadPoolExecutor(
+                        threads,
+                        threads,
+                        60,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(),
+                        refreshFactory);
+        executor.allowCoreThreadTimeOut(true);
+
+        CustomizableThreadFactory cleanupFactory =
+                new CustomizableThreadFactory("AuthCacheCleanup-");
+        cleanupFactory.setDaemon(true);
+        scheduler = Executors.newScheduledThreadPool(1, cleanupFactory);
+        int cleanUpSeconds = timeToIdleSeconds * 2;
+        if (cleanUpSeconds > 0) {
+            scheduler.scheduleAtFixedRate(
+                    this::cleanUp, cleanUpSeconds, cleanUpSeconds, TimeUnit.SECONDS);
+        }
+        if (LOGGER.isLoggable(Level.CONFIG)) {
+            LOGGER.config(
+                    "Refreshing AuthenticationCache initialized with "
+                            + maxEntries
+                            + " Max Entries, "
+                            + timeToIdleSeconds
+                            + " seconds idle time, "
+                            + timeToLiveSeconds
+                            + " seconds time to live, "
+                            + graceSeconds
+                            + " seconds grace time and "
+                            + refreshLimit
+                            + " refreshes per filter, waiting at most "
+                            + refreshTimeoutSeconds
+                            + " seconds for a refresh");
+        }
+    }
+
+    /** Removes the entries that cannot be served anymore, not even while refreshing them */
+    void cleanUp() {
+        long now = System.currentTimeMillis();
+        cache.asMap().entrySet().removeIf(e -> e.getValue().isHardExpired(now, graceMillis));
+    }
+
+    @Override
+    public void removeAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void removeAll(String filterName) {
+        if (filterName == null) return;
+        cache.asMap().keySet().removeIf(k -> filterName.equals(k.getFilterName()));
+    }
+
+    @Override
+    public void remove(String filterName, String cacheKey) {
+        cache.invalidate(new AuthenticationCacheKey(filterName, cacheKey));
+    }
+
+    @Override
+    public Authentication get(String filterName, String cacheKey) {
+        AuthenticationCacheKey key = new AuthenticationCacheKey(filterName, cacheKey);
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        AuthenticationCacheEntry cached = entry.cached;
+        if (!cached.hasExpired(now)) {
+            cached.setLastAccessed(now);
+            hits.incrementAndGet();
+            return cached.getAuthentication();
+        }
+        if (entry.refresher == null) {
+            cache.asMap().remove(key, entry);
+            misses.incrementAndGet();
+            return null;
+        }
+
+        CompletableFuture<Authentication> refresh = startRefresh(key, entry);
+        if (!entry.isHardExpired(now, graceMillis)) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Serving stale entry for " + filterName + ", " + cacheKey);
+            }
+            staleHits.incrementAndGet();
+            return cached.getAuthentication();
+        }
+
+        // too old to be served, share the refresh result with the other requests, if possible
+        if (refresh != null) {
+            try {
+                Authentication auth = refresh.get(refreshTimeoutMillis, TimeUnit.MILLISECONDS);
+                if (auth != null) {
+                    hits.incrementAndGet();
+                    return auth;
+                }
+            } catch (TimeoutException e) {
+                // the backend is slow, but the entry is too old to be trusted, let the filter
+                // authenticate again. The refresh will replace or remove the entry once completed
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Timed out refreshing " + filterName + ", " + cacheKey);
+                }
+                misses.incrementAndGet();
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // the refresh failed, let the filter authenticate again
+            }
+        }
+        cache.asMap().remove(key, entry);
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Starts the refresh of the entry, unless one is already running. Returns the running refresh,
+     * or null if the refresh limit for the filter has been reached.
+     */
+    private CompletableFuture<Authentication> startRefresh(
+            AuthenticationCacheKey key, Entry entry) {
+        synchronized (entry) {
+            if (entry.refresh != null) {
+                return entry.refresh;
+            }
+            Semaphore permits =
+                    refreshPermits.computeIfAbsent(
+                            key.getFilterName(), f -> new Semaphore(refreshLimit));
+            if (!permits.tryAcquire()) {
+                return null;
+            }
+            CompletableFuture<Authentication> future = new CompletableFuture<>();
+            try {
+                executor.execute(() -> refresh(key, entry, future, permits));
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                return null;
+            }
+            entry.refresh = future;
+            return future;
+        }
+    }
+
+    private void refresh(
+            AuthenticationCacheKey key,
+            Entry entry,
+            CompletableFuture<Authentication> future,
+            Semaphore permits) {
+        long start = System.nanoTime();
+        Authentication auth = null;
+        try {
+            auth = entry.refresher.call();
+        } catch (Exception e) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(
+                        Level.FINE,
+                        "Failed to refresh "
+                                + key.getFilterName()
+                                + ", "
+                                + key.getCacheKey()
+                                + " entry",
+                        e);
+            }
+        } finally {
+            permits.release();
+            long elapsed = System.nanoTime() - start;
+            refreshTime.addAndGet(elapsed);
+            maxRefreshTime.accumulateAndGet(elapsed, Math::max);
+        }
+
+        if (auth != null) {
+            refreshes.incrementAndGet();
+            AuthenticationCacheEntry cached =
+                    new AuthenticationCacheEntry(
+                            auth,
+                            entry.cached.getTimeToIdleSeconds(),
+                            entry.cached.getTimeToLiveSeconds());
+            // if the entry has been removed meanwhile, the refresh result is discarded
+            cache.asMap().replace(key, entry, new Entry(cached, entry.refresher));
+        } else {
+            refreshFailures.incrementAndGet();
+            cache.asMap().remove(key, entry);
+        }
+        future.complete(auth);
+    }
+
+    @Override
+    public void put(
+            String filterName,
+            String cacheKey,
+            Authentication auth,
+            Integer timeToIdleSeconds,
+            Integer timeToLiveSeconds) {
+        put(filterName, cacheKey, auth, timeToIdleSeconds, timeToLiveSeconds, null);
+    }
+
+    @Override
+    public boolean isRefreshing() {
+        return true;
+    }
+
+    @Override
+    public void put(String filterName, String cacheKey, Authentication auth) {
+        put(filterName, cacheKey, auth, timeToIdleSeconds, timeToLiveSeconds, null);
+    }
+
+    @Override
+    public void put(
+            String filterName,
+            String cacheKey,
+            Authentication auth,
+            Integer timeToIdleSeconds,
+            Integer timeToLiveSeconds,
+            Callable<Authentication> refresher) {
+        timeToIdleSeconds = timeToIdleSeconds != null ? timeToIdleSeconds : this.timeToIdleSeconds;
+        timeToLiveSeconds = timeToLiveSeconds != null ? timeToLiveSeconds : this.timeToLiveSeconds;
+        cache.put(
+                new AuthenticationCacheKey(filterName, cacheKey),
+                new Entry(
+                        new AuthenticationCacheEntry(auth, timeToIdleSeconds, timeToLiveSeconds),
+                        refresher));
+    }
+
+    /** Returns the number of cached entries */
+    public long size() {
+        return cache.size();
+    }
+
+    /** Returns a snapshot of the cache statistics */
+    public Statistics getStatistics() {
+        return new Statistics(
+                hits.get(),
+                staleHits.get(),
+                misses.get(),
+                refreshes.get(),
+                refreshFailures.get(),
+                refreshTime.get(),
+                maxRefreshTime.get());
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+        executor.shutdown();
+    }
+
+    private static class Entry {
+
+        final AuthenticationCacheEntry cached;
+
+        final Callable<Authentication> refresher;
+
+        /** The running or completed refresh of this entry, guarded by the entry itself */
+        CompletableFuture<Authentication> refresh;
+
+        Entry(AuthenticationCacheEntry cached, Callable<Authentication> refresher) {
+            this.cached = cached;
+            this.refresher = refresher;
+        }
+
+        /** Returns true if the entry cannot be served anymore, not even as a stale one */
+        boolean isHardExpired(long now, long graceMillis) {
+            if (refresher == null) {
+                return cached.hasExpired(now);
+            }
+            return cached.hasExpired(now - graceMillis);
+        }
+    }
+
+    /** Statistics about the cache usage and the refreshes */
+    public static class Statistics {
+
+        private final long hits;
+
+        private final long staleHits;
+
+        private final long misses;
+
+        private final long refreshes;
+
+        private final long refreshFailures;
+
+        private final long refreshTime;
+
+        private final long maxRefreshTime;
+
+        Statistics(
+                long hits,
+                long staleHits,
+                long misses,
+                long refreshes,
+                long refreshFailures,
+                long refreshTime,
+                long maxRefreshTime) {
+            this.hits = hits;
+            this.staleHits = staleHits;
+            this.misses = misses;
+            this.refreshes = refreshes;
+            this.refreshFailures = refreshFailures;
+            this.refreshTime = refreshTime;
+            this.maxRefreshTime = maxRefreshTime;
+        }
+
+        /** Number of lookups served with a valid entry */
+        public long getHits() {
+            return hits;
+        }
+
+        /** Number of lookups served with an expired entry, while refreshing it */
+        public long getStaleHits() {
+            return staleHits;
+        }
+
+        /** Number of lookups that did not find an entry to serve */
+        public long getMisses() {
+            return misses;
+        }
+
+        /** Number of successful refreshes */
+        public long getRefreshes() {
+            return refreshes;
+        }
+
+        /** Number of refreshes that failed, or found the authentication no longer valid */
+        public long getRefreshFailures() {
+            return refreshFailures;
+        }
+
+        /** Average refresh time, in milliseconds */
+        public double getAverageRefreshTime() {
+            long count = refreshes + refreshFailures;
+            return count == 0 ? 0 : refreshTime / 1e6 / count;
+        }
+
+        /** Maximum refresh time, in milliseconds */
+        public double getMaxRefreshTime() {
+            return maxRefreshTime / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics [hits="
+                    + hits
+                    + ", staleHits="
+                    + staleHits
+                    + ", misses="
+                    + misses
+                    + ", refreshes="
+                    + refreshes
+                    + ", refreshFailures="
+                    + refreshFailures
+                    + ", averageRefreshTime="
+                    + getAverageRefreshTime()
+                    + ", maxRefreshTime="
+                    + getMaxRefreshTime()
+                    + "]";
+        }
+    }
+}
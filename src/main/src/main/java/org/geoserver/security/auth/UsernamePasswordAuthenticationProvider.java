@@ -65,6 +65,11 @@ public void initializeFromConfig(SecurityNamedServiceConfig config) throws IOExc
         }
     }
 
+    /** Returns the name of the user/group service the users are authenticated against */
+    public String getUserGroupServiceName() {
+        return userGroupServiceName;
+    }
+
     @Override
     public boolean supports(Class<? extends Object> authentication, HttpServletRequest request) {
         return authProvider.supports(authentication);
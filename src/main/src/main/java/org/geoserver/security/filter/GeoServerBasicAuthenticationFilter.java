@@ -11,15 +11,36 @@
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import org.geoserver.security.GeoServerAuthenticationProvider;
 import org.geoserver.security.GeoServerSecurityManager;
+import org.geoserver.security.GeoServerUserGroupService;
+import org.geoserver.security.auth.UsernamePasswordAuthenticationProvider;
 import org.geoserver.security.config.BasicAuthenticationFilterConfig;
 import org.geoserver.security.config.SecurityNamedServiceConfig;
+import org.geoserver.security.impl.GeoServerRole;
 import org.geoserver.security.impl.GeoServerUser;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.codec.Hex;
 import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.authentication.www.BasicAuthenticationEntryPoint;
@@ -32,6 +53,19 @@
  */
 public class GeoServerBasicAuthenticationFilter extends GeoServerCompositeFilter
         implements AuthenticationCachingFilter, GeoServerAuthenticationFilter {
+
+    /** Runs the user lookups backing the authentication refreshers, off the request threads */
+    static final ThreadPoolExecutor USER_LOOKUPS;
+
+    static {
+        CustomizableThreadFactory factory = new CustomizableThreadFactory("BasicAuthUserLookup-");
+        factory.setDaemon(true);
+        USER_LOOKUPS =
+                new ThreadPoolExecutor(
+                        1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        USER_LOOKUPS.allowCoreThreadTimeOut(true);
+    }
+
     private BasicAuthenticationEntryPoint aep;
     private MessageDigest digest;
 
@@ -88,22 +122,10 @@ public String getCacheKey(HttpServletRequest request) {
         if (request.getSession(false) != null) // no caching if there is an HTTP session
         return null;
 
-        String header = request.getHeader("Authorization");
-        if ((header != null) && header.startsWith("Basic ")) {
-            byte[] base64Token = null;
-            base64Token = header.substring(6).getBytes(StandardCharsets.UTF_8);
-            String token = new String(Base64.getDecoder().decode(base64Token));
-
-            String username = "";
-            String password = "";
-            int delim = token.indexOf(":");
-
-            if (delim != -1) {
-                username = token.substring(0, delim);
-                password = token.substring(delim + 1);
-            } else {
-                return null;
-            }
+        String[] credentials = getCredentials(request);
+        if (credentials != null) {
+            String username = credentials[0];
+            String password = credentials[1];
 
             if (GeoServerUser.ROOT_USERNAME.equals(username)) return null;
 
@@ -128,6 +150,169 @@ public String getCacheKey(HttpServletRequest request) {
         } else return null;
     }
 
+    /** Returns the username and password of the basic authentication header, if any */
+    private String[] getCredentials(HttpServletRequest request) {
+        String header = request.getHeader("Authorization");
+        if ((header != null) && header.startsWith("Basic ")) {
+            byte[] base64Token = header.substring(6).getBytes(StandardCharsets.UTF_8);
+            String token = new String(Base64.getDecoder().decode(base64Token));
+            int delim = token.indexOf(":");
+            if (delim != -1) {
+                return new String[] {token.substring(0, delim), token.substring(delim + 1)};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reloads the user and its roles by username from the user/group service that knows the user,
+     * without keeping the password in memory. The refresh fails if the user has been removed or
+     * disabled, or if its stored password changed.
+     *
+     * <p>Looking up the user/group service and the stored password, to notice later changes, takes
+     * round trips to the backend, they are run on {@link #USER_LOOKUPS} rather than on the request
+     * thread. The refresh waits for them, and fails if they did.
+     */
+    @Override
+    protected Callable<Authentication> getAuthenticationRefresher(
+            HttpServletRequest request, Authentication authentication) {
+        String username = authentication.getName();
+        if (username == null) {
+            return null;
+        }
+        GeoServerSecurityManager manager = getSecurityManager();
+        Object details = authentication.getDetails();
+        CompletableFuture<UserSnapshot> snapshot;
+        try {
+            snapshot =
+                    CompletableFuture.supplyAsync(
+                            () -> takeSnapshot(manager, username, details), USER_LOOKUPS);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+        return () -> {
+            UserSnapshot baseline = snapshot.get();
+            if (baseline == null) {
+                // authenticated by a provider not backed by a user/group service, e.g. LDAP
+                return null;
+            }
+            UserDetails user = loadUser(manager, baseline.serviceName, username);
+            if (user == null
+                    || !user.isEnabled()
+                    || !user.isAccountNonLocked()
+                    || !user.isAccountNonExpired()
+                    || !Objects.equals(baseline.password, getPasswordDigest(user))) {
+                return null;
+            }
+            Object principal = user;
+            if (user instanceof GeoServerUser) {
+                // the service might return its own instance, drop the password from a copy
+                GeoServerUser copy = ((GeoServerUser) user).copy();
+                copy.setEnabled(true);
+                copy.eraseCredentials();
+                principal = copy;
+            }
+            Set<GrantedAuthority> roles = new HashSet<>(user.getAuthorities());
+            roles.add(GeoServerRole.AUTHENTICATED_ROLE);
+            UsernamePasswordAuthenticationToken token =
+                    new UsernamePasswordAuthenticationToken(principal, null, roles);
+            token.setDetails(details);
+            return token;
+        };
+    }
+
+    /**
+     * Looks up the user/group service knowing the user, and the digest of the stored password, or
+     * returns null if the user is not backed by a user/group service
+     */
+    private UserSnapshot takeSnapshot(
+            GeoServerSecurityManager manager, String username, Object details) {
+        try {
+            String serviceName = findUserGroupService(manager, username, details);
+            if (serviceName == null) {
+                return null;
+            }
+            return new UserSnapshot(
+                    serviceName, getPasswordDigest(loadUser(manager, serviceName, username)));
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to look up the user group service of " + username, e);
+            return null;
+        }
+    }
+
+    /** The user/group service of an authenticated user, and its password at the time */
+    private static class UserSnapshot {
+        final String serviceName;
+
+        final String password;
+
+        UserSnapshot(String serviceName, String password) {
+            this.serviceName = serviceName;
+            this.password = password;
+        }
+    }
+
+    /**
+     * Returns the name of the user/group service the user has been authenticated against, taken
+     * from the authentication details if available, or the first service of the username/password
+     * authentication providers knowing the user, in provider order.
+     */
+    private String findUserGroupService(
+            GeoServerSecurityManager manager, String username, Object details) throws IOException {
+        if (details instanceof GeoServerWebAuthenticationDetails) {
+            String name = ((GeoServerWebAuthenticationDetails) details).getUserGroupServiceName();
+            if (name != null && !name.trim().isEmpty()) {
+                return name;
+            }
+        }
+        List<GeoServerAuthenticationProvider> providers = manager.getAuthenticationProviders();
+        if (providers != null) {
+            for (GeoServerAuthenticationProvider provider : providers) {
+                if (provider instanceof UsernamePasswordAuthenticationProvider) {
+                    String name =
+                            ((UsernamePasswordAuthenticationProvider) provider)
+                                    .getUserGroupServiceName();
+                    if (name != null && loadUser(manager, name, username) != null) {
+                        return name;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Loads the user, with its roles, or returns null if not found */
+    private static UserDetails loadUser(
+            GeoServerSecurityManager manager, String serviceName, String username)
+            throws IOException {
+        GeoServerUserGroupService service = manager.loadUserGroupService(serviceName);
+        if (service == null) {
+            return null;
+        }
+        try {
+            return service.loadUserByUsername(username);
+        } catch (UsernameNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a digest of the password stored by the user/group service, already encoded by it, so
+     * that password changes can be noticed without keeping the password around
+     */
+    private static String getPasswordDigest(UserDetails user) {
+        if (user == null || user.getPassword() == null) {
+            return null;
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(user.getPassword().getBytes(StandardCharsets.UTF_8));
+            return new String(Hex.encode(digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No SHA-256 algorithm available!");
+        }
+    }
+
     /** @see org.geoserver.security.filter.GeoServerAuthenticationFilter#applicableForHtml() */
     @Override
     public boolean applicableForHtml() {
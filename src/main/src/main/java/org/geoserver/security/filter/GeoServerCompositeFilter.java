@@ -9,12 +9,14 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import org.geoserver.security.auth.AuthenticationCache;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 
@@ -59,9 +61,15 @@ public void doFilter(final ServletRequest request, final ServletResponse respons
                     Integer idleSecs = (Integer) request.getAttribute(CACHE_KEY_IDLE_SECS);
                     Integer liveSecs = (Integer) request.getAttribute(CACHE_KEY_LIVE_SECS);
 
-                    getSecurityManager()
-                            .getAuthenticationCache()
-                            .put(getName(), cacheKey, postAuthentication, idleSecs, liveSecs);
+                    AuthenticationCache cache = getSecurityManager().getAuthenticationCache();
+                    // only build the refresher if the cache is going to use it
+                    Callable<Authentication> refresher =
+                            cache.isRefreshing()
+                                    ? getAuthenticationRefresher(
+                                            (HttpServletRequest) request, postAuthentication)
+                                    : null;
+                    cache.put(
+                            getName(), cacheKey, postAuthentication, idleSecs, liveSecs, refresher);
                 }
                 // clean up request attributes in any case,
                 request.setAttribute(CACHE_KEY_ATTRIBUTE, null);
@@ -92,6 +100,17 @@ public void doFilter(ServletRequest request, ServletResponse response, FilterCha
         nestedChain.doFilter(request, response);
     }
 
+    /**
+     * Returns a task able to authenticate again the request, used by the authentication cache to
+     * refresh expired entries, or <code>null</code> if not supported. The task must not use the
+     * request, as it might run after the request has been completed. Called on the request thread,
+     * and only if the cache supports refreshing, implementations should avoid any lookup here.
+     */
+    protected Callable<Authentication> getAuthenticationRefresher(
+            HttpServletRequest request, Authentication authentication) {
+        return null;
+    }
+
     public List<Filter> getNestedFilters() {
         return nestedFilters;
     }
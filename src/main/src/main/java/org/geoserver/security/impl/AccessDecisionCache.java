@@ -0,0 +1,239 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import org.geoserver.security.AccessMode;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Caches the access decisions taken by {@link DefaultResourceAccessManager}. The decisions only
+ * depend on the roles of the user, not on its identity, so they are keyed on the set of roles,
+ * which is interned, the target of the decision (e.g., a resource or a workspace) and a few flags
+ * about the request context. The cached value is a bit mask of the allowed {@link AccessMode}, see
+ * {@link #bit(AccessMode)}.
+ *
+ * <p>The cache must be cleared whenever the access rules or the catalog change. Decisions also
+ * depend on the {@link LayerGroupContainmentCache}, which is updated by its own catalog listener,
+ * possibly after the one clearing this cache: {@link #validate(long)} drops the decisions taken
+ * against an older version of the containment information.
+ */
+class AccessDecisionCache {
+
+    /** Maximum number of decisions cached before the cache is cleared, zero disables caching */
+    static final int DEFAULT_MAX_SIZE =
+            Integer.getInteger("org.geoserver.security.accessDecisionCacheSize", 100000);
+
+    /** The interned role sets */
+    private final ConcurrentHashMap<RoleSet, RoleSet> roleSets = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Key, Integer> decisions = new ConcurrentHashMap<>();
+
+    /** Incremented on each clear, used to avoid caching decisions computed against stale rules */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** The layer group containment version the cached decisions have been computed against */
+    private final AtomicLong containmentVersion = new AtomicLong(-1);
+
+    /**
+     * The role set of the last user seen by each thread, avoids rebuilding the role set over and
+     * over while filtering a large catalog for the same user
+     */
+    private final ThreadLocal<LastUser> lastUser = new ThreadLocal<>();
+
+    private final int maxSize;
+
+    AccessDecisionCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    AccessDecisionCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /** Returns true if caching is enabled */
+    boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /** Returns the bit associated to the access mode in the cached access masks */
+    static int bit(AccessMode mode) {
+        return 1 << mode.ordinal();
+    }
+
+    /**
+     * Returns the access mask for the given user, target and flags, computing and caching it with
+     * the provided supplier if missing
+     */
+    int getAccess(
+            Authentication user,
+            char type,
+            String workspace,
+            String name,
+            int flags,
+            IntSupplier supplier) {
+        if (!isEnabled()) {
+            return supplier.getAsInt();
+        }
+        Key key = new Key(getRoleSet(user), type, workspace, name, flags);
+        Integer access = decisions.get(key);
+        if (access == null) {
+            long start = generation.get();
+            access = supplier.getAsInt();
+            if (decisions.size() >= maxSize) {
+                decisions.clear();
+            }
+            decisions.put(key, access);
+            // the rules or the catalog changed while computing, the decision might be stale
+            if (generation.get() != start) {
+                decisions.remove(key);
+            }
+        }
+        return access;
+    }
+
+    /**
+     * Clears the cache if the layer group containment version differs from the one the cached
+     * decisions have been computed against
+     */
+    void validate(long version) {
+        long current = containmentVersion.get();
+        if (current != version && containmentVersion.compareAndSet(current, version)) {
+            clear();
+        }
+    }
+
+    /** Drops all the cached decisions */
+    void clear() {
+        generation.incrementAndGet();
+        decisions.clear();
+        roleSets.clear();
+    }
+
+    /** Returns the number of cached decisions */
+    int size() {
+        return decisions.size();
+    }
+
+    /** Returns the interned role set for the given user */
+    RoleSet getRoleSet(Authentication user) {
+        LastUser last = lastUser.get();
+        if (last != null && last.user.get() == user && last.roles != null) {
+            return last.roles;
+        }
+        RoleSet roles = new RoleSet(user == null ? null : user.getAuthorities());
+        RoleSet interned = roleSets.putIfAbsent(roles, roles);
+        if (interned != null) {
+            roles = interned;
+        } else if (roleSets.size() > maxSize) {
+            roleSets.clear();
+        }
+        lastUser.set(new LastUser(user, roles));
+        return roles;
+    }
+
+    private static class LastUser {
+
+        final WeakReference<Authentication> user;
+
+        final RoleSet roles;
+
+        LastUser(Authentication user, RoleSet roles) {
+            this.user = new WeakReference<>(user);
+            this.roles = roles;
+        }
+    }
+
+    /** An immutable, sorted set of role names, with a precomputed hash code */
+    static final class RoleSet {
+
+        final String[] roles;
+
+        final int hash;
+
+        RoleSet(Collection<? extends GrantedAuthority> authorities) {
+            if (authorities == null) {
+                this.roles = new String[0];
+            } else {
+                this.roles =
+                        authorities.stream()
+                                .map(GrantedAuthority::getAuthority)
+                                .filter(Objects::nonNull)
+                                .distinct()
+                                .sorted()
+                                .toArray(String[]::new);
+            }
+            this.hash = Arrays.hashCode(roles);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RoleSet)) return false;
+            RoleSet other = (RoleSet) o;
+            return hash == other.hash && Arrays.equals(roles, other.roles);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(roles);
+        }
+    }
+
+    /** Key of a cached decision */
+    static final class Key {
+
+        final RoleSet roles;
+
+        final char type;
+
+        final String workspace;
+
+        final String name;
+
+        final int flags;
+
+        final int hash;
+
+        Key(RoleSet roles, char type, String workspace, String name, int flags) {
+            this.roles = roles;
+            this.type = type;
+            this.workspace = workspace;
+            this.name = name;
+            this.flags = flags;
+            this.hash = Objects.hash(roles, type, workspace, name, flags);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash
+                    && roles.equals(other.roles)
+                    && type == other.type
+                    && flags == other.flags
+                    && Objects.equals(workspace, other.workspace)
+                    && Objects.equals(name, other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -30,6 +30,11 @@
 import org.geoserver.catalog.WMSLayerInfo;
 import org.geoserver.catalog.WMTSLayerInfo;
 import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
 import org.geoserver.ows.Dispatcher;
 import org.geoserver.ows.Request;
 import org.geoserver.platform.GeoServerExtensions;
@@ -38,6 +43,7 @@
 import org.geoserver.security.CatalogMode;
 import org.geoserver.security.CoverageAccessLimits;
 import org.geoserver.security.DataAccessLimits;
+import org.geoserver.security.GeoServerSecurityFilterChainProxy;
 import org.geoserver.security.InMemorySecurityFilter;
 import org.geoserver.security.LayerGroupAccessLimits;
 import org.geoserver.security.ResourceAccessManager;
@@ -49,6 +55,7 @@
 import org.geoserver.security.impl.LayerGroupContainmentCache.LayerGroupSummary;
 import org.geotools.util.logging.Logging;
 import org.opengis.filter.Filter;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.security.core.Authentication;
 
 /**
@@ -80,7 +87,7 @@
  *
  * @author Andrea Aime - TOPP
  */
-public class DefaultResourceAccessManager implements ResourceAccessManager {
+public class DefaultResourceAccessManager implements ResourceAccessManager, DisposableBean {
     static final Logger LOGGER = Logging.getLogger(DefaultResourceAccessManager.class);
 
     /** A {@link LayerGroupSummary} extended with the associated secure tree node */
@@ -112,6 +119,12 @@ public SecureTreeNode getNode() {
 
     LayerGroupContainmentCache groupsCache;
 
+    /** Caches the decisions taken by the access limits methods, by user roles */
+    AccessDecisionCache decisionCache = new AccessDecisionCache();
+
+    /** Clears the decision cache on catalog changes */
+    CatalogListener decisionCacheCleaner;
+
     /**
      * Pass a reference to the raw, unsecured catalog. The reference is used to evaluate the
      * relationship between layers and the groups containing them
@@ -120,6 +133,19 @@ public DefaultResourceAccessManager(DataAccessRuleDAO dao, Catalog rawCatalog) {
         this.dao = dao;
         this.rawCatalog = rawCatalog;
         this.root = buildAuthorizationTree(dao);
+        if (rawCatalog != null) {
+            decisionCacheCleaner = new DecisionCacheCleaner();
+            rawCatalog.addListener(decisionCacheCleaner);
+        }
+    }
+
+    /** Unregisters the catalog listener clearing the decision cache */
+    @Override
+    public void destroy() {
+        if (rawCatalog != null && decisionCacheCleaner != null) {
+            rawCatalog.removeListener(decisionCacheCleaner);
+            decisionCacheCleaner = null;
+        }
     }
 
     /**
@@ -332,6 +358,7 @@ private void rebuildAuthorizationTree(boolean force) {
         if (lastLoaded < daoLastModified || force) {
             root = buildAuthorizationTree(dao);
             lastLoaded = daoLastModified;
+            decisionCache.clear();
         }
     }
 
@@ -390,8 +417,9 @@ SecureTreeNode buildAuthorizationTree(DataAccessRuleDAO dao) {
     public DataAccessLimits getAccessLimits(
             Authentication user, LayerInfo layer, List<LayerGroupInfo> context) {
         final boolean directAccess = context == null || context.isEmpty();
-        boolean read = canAccess(user, layer, AccessMode.READ, directAccess);
-        boolean write = canAccess(user, layer, AccessMode.WRITE, directAccess);
+        int access = getAccess(user, layer.getResource(), directAccess);
+        boolean read = (access & AccessDecisionCache.bit(AccessMode.READ)) != 0;
+        boolean write = (access & AccessDecisionCache.bit(AccessMode.WRITE)) != 0;
         Filter readFilter = read ? Filter.INCLUDE : Filter.EXCLUDE;
         Filter writeFilter = write ? Filter.INCLUDE : Filter.EXCLUDE;
         return buildLimits(layer.getResource().getClass(), readFilter, writeFilter);
@@ -399,13 +427,67 @@ public DataAccessLimits getAccessLimits(
 
     @Override
     public DataAccessLimits getAccessLimits(Authentication user, ResourceInfo resource) {
-        boolean read = canAccess(user, resource, AccessMode.READ, true);
-        boolean write = canAccess(user, resource, AccessMode.WRITE, true);
+        int access = getAccess(user, resource, true);
+        boolean read = (access & AccessDecisionCache.bit(AccessMode.READ)) != 0;
+        boolean write = (access & AccessDecisionCache.bit(AccessMode.WRITE)) != 0;
         Filter readFilter = read ? Filter.INCLUDE : Filter.EXCLUDE;
         Filter writeFilter = write ? Filter.INCLUDE : Filter.EXCLUDE;
         return buildLimits(resource.getClass(), readFilter, writeFilter);
     }
 
+    /**
+     * Returns the read and write access bits for the given resource, using the decision cache
+     * whenever possible
+     */
+    private int getAccess(Authentication user, ResourceInfo resource, boolean directAccess) {
+        checkPropertyFile();
+        int readWrite =
+                AccessDecisionCache.bit(AccessMode.READ)
+                        | AccessDecisionCache.bit(AccessMode.WRITE);
+        if (resource == null) {
+            // a layer whose resource we don't know about, see canAccess(user, LayerInfo, ...)
+            return readWrite;
+        }
+        String workspace;
+        try {
+            workspace = resource.getStore().getWorkspace().getName();
+        } catch (Exception e) {
+            // canAccess will log and allow access
+            return readWrite;
+        }
+        int flags = getContextFlags(directAccess);
+        if (layerGroupContainmentCheckRequired()) {
+            flags |= 4;
+        }
+        validateDecisionCache();
+        return decisionCache.getAccess(
+                user,
+                'r',
+                workspace,
+                resource.getName(),
+                flags,
+                () ->
+                        toBits(
+                                canAccess(user, resource, AccessMode.READ, directAccess),
+                                canAccess(user, resource, AccessMode.WRITE, directAccess),
+                                false));
+    }
+
+    /** The bits describing the request context, used as part of the decision cache keys */
+    private int getContextFlags(boolean directAccess) {
+        int flags = directAccess ? 1 : 0;
+        if (GeoServerSecurityFilterChainProxy.isSecurityEnabledForCurrentRequest()) {
+            flags |= 2;
+        }
+        return flags;
+    }
+
+    private static int toBits(boolean read, boolean write, boolean admin) {
+        return (read ? AccessDecisionCache.bit(AccessMode.READ) : 0)
+                | (write ? AccessDecisionCache.bit(AccessMode.WRITE) : 0)
+                | (admin ? AccessDecisionCache.bit(AccessMode.ADMIN) : 0);
+    }
+
     DataAccessLimits buildLimits(
             Class<? extends ResourceInfo> resourceClass, Filter readFilter, Filter writeFilter) {
         CatalogMode mode = getMode();
@@ -440,9 +522,23 @@ DataAccessLimits buildLimits(
 
     @Override
     public WorkspaceAccessLimits getAccessLimits(Authentication user, WorkspaceInfo workspace) {
-        boolean readable = canAccess(user, workspace, AccessMode.READ);
-        boolean writable = canAccess(user, workspace, AccessMode.WRITE);
-        boolean adminable = canAccess(user, workspace, AccessMode.ADMIN);
+        checkPropertyFile();
+        validateDecisionCache();
+        int access =
+                decisionCache.getAccess(
+                        user,
+                        'w',
+                        workspace.getName(),
+                        null,
+                        getContextFlags(true),
+                        () ->
+                                toBits(
+                                        canAccess(user, workspace, AccessMode.READ),
+                                        canAccess(user, workspace, AccessMode.WRITE),
+                                        canAccess(user, workspace, AccessMode.ADMIN)));
+        boolean readable = (access & AccessDecisionCache.bit(AccessMode.READ)) != 0;
+        boolean writable = (access & AccessDecisionCache.bit(AccessMode.WRITE)) != 0;
+        boolean adminable = (access & AccessDecisionCache.bit(AccessMode.ADMIN)) != 0;
 
         CatalogMode mode = getMode();
 
@@ -463,8 +559,20 @@ public StyleAccessLimits getAccessLimits(Authentication user, StyleInfo style) {
     @Override
     public LayerGroupAccessLimits getAccessLimits(
             Authentication user, LayerGroupInfo layerGroup, List<LayerGroupInfo> containers) {
-        boolean allowAccess =
-                canAccess(user, layerGroup, containers == null || containers.isEmpty());
+        checkPropertyFile();
+        boolean directAccess = containers == null || containers.isEmpty();
+        String workspace =
+                layerGroup.getWorkspace() == null ? null : layerGroup.getWorkspace().getName();
+        validateDecisionCache();
+        int access =
+                decisionCache.getAccess(
+                        user,
+                        'g',
+                        workspace,
+                        layerGroup.getName(),
+                        getContextFlags(directAccess),
+                        () -> toBits(canAccess(user, layerGroup, directAccess), false, false));
+        boolean allowAccess = (access & AccessDecisionCache.bit(AccessMode.READ)) != 0;
         return allowAccess ? null : new LayerGroupAccessLimits(getMode());
     }
 
@@ -696,4 +804,44 @@ protected LayerGroupContainmentCache getLayerGroupsCache() {
         }
         return groupsCache;
     }
+
+    /**
+     * Drops the cached decisions if they have been taken against an outdated layer group
+     * containment cache
+     */
+    private void validateDecisionCache() {
+        LayerGroupContainmentCache groups = getLayerGroupsCache();
+        if (groups != null) {
+            decisionCache.validate(groups.getVersion());
+        }
+    }
+
+    /** Clears the decision cache on any catalog change, as it might affect the decisions */
+    private class DecisionCacheCleaner implements CatalogListener {
+
+        @Override
+        public void handleAddEvent(CatalogAddEvent event) {
+            decisionCache.clear();
+        }
+
+        @Override
+        public void handleRemoveEvent(CatalogRemoveEvent event) {
+            decisionCache.clear();
+        }
+
+        @Override
+        public void handleModifyEvent(CatalogModifyEvent event) {
+            decisionCache.clear();
+        }
+
+        @Override
+        public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+            decisionCache.clear();
+        }
+
+        @Override
+        public void reloaded() {
+            decisionCache.clear();
+        }
+    }
 }
@@ -12,6 +12,7 @@
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import org.geoserver.catalog.Catalog;
@@ -65,6 +66,9 @@ public class LayerGroupContainmentCache implements ApplicationListener {
      */
     Map<String, Set<LayerGroupSummary>> resourceContainmentCache = new ConcurrentHashMap<>();
 
+    /** Incremented after each update of the containment structure */
+    private final AtomicLong version = new AtomicLong();
+
     private Catalog catalog;
 
     public LayerGroupContainmentCache(Catalog catalog) {
@@ -88,6 +92,15 @@ private void buildLayerGroupCaches() {
         for (LayerGroupInfo lg : groups) {
             registerContainedGroups(lg);
         }
+        version.incrementAndGet();
+    }
+
+    /**
+     * Returns a counter that changes after every update of the containment structure, allowing
+     * dependent caches to tell whether the information they computed is still current
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     private void registerContainedGroups(LayerGroupInfo lg) {
@@ -310,6 +323,7 @@ public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
                 LayerGroupInfo lg = (LayerGroupInfo) event.getSource();
                 addGroupInfo(lg);
                 registerContainedGroups(lg);
+                version.incrementAndGet();
             }
         }
 
@@ -318,6 +332,7 @@ public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException
             if (event.getSource() instanceof LayerGroupInfo) {
                 LayerGroupInfo lg = (LayerGroupInfo) event.getSource();
                 clearGroupInfo(lg);
+                version.incrementAndGet();
             }
             // no need to listen to workspace or layer removal, these will cascade to
             // layer groups
@@ -354,12 +369,14 @@ public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException
                     Mode newMode = (Mode) event.getNewValues().get(modeIdx);
                     updateGroupMode(lg.getId(), newMode);
                 }
+                version.incrementAndGet();
             } else if (source instanceof WorkspaceInfo) {
                 int nameIdx = event.getPropertyNames().indexOf("name");
                 if (nameIdx != -1) {
                     String oldName = (String) event.getOldValues().get(nameIdx);
                     String newName = (String) event.getNewValues().get(nameIdx);
                     updateWorkspaceNames(oldName, newName);
+                    version.incrementAndGet();
                 }
             }
         }
@@ -0,0 +1,150 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ConnectException;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.geoserver.catalog.DataStoreLifecycleManager.DataStoreStatus;
+import org.geoserver.catalog.DataStoreLifecycleManager.WarmUpState;
+import org.geoserver.data.test.MockData;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.geotools.data.DataAccess;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DataStoreLifecycleManagerTest extends GeoServerSystemTestSupport {
+
+    DataStoreInfo cite;
+
+    DataStoreInfo sf;
+
+    @Before
+    public void clearPool() {
+        cite = getCatalog().getDataStoreByName(MockData.CITE_PREFIX, MockData.CITE_PREFIX);
+        sf = getCatalog().getDataStoreByName(MockData.SF_PREFIX, MockData.SF_PREFIX);
+        getCatalog().getResourcePool().clear(cite);
+        getCatalog().getResourcePool().clear(sf);
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        DataStoreLifecycleManager manager =
+                new DataStoreLifecycleManager(getCatalog(), "cite:cite, missing", 2, 0, 0);
+        ExecutorService executor = manager.startWarmUp();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        ResourcePool pool = getCatalog().getResourcePool();
+        assertTrue(pool.getDataStoreLastAccess(cite.getId()) >= 0);
+        DataStoreStatus status = getStatus(manager, cite);
+        assertTrue(status.isCached());
+        assertEquals(WarmUpState.COMPLETED, status.getWarmUp());
+        assertNotNull(status.getWarmUpTime());
+
+        // stores not in the hot set are not created
+        DataStoreStatus sfStatus = getStatus(manager, sf);
+        assertFalse(sfStatus.isCached());
+        assertNull(sfStatus.getWarmUp());
+    }
+
+    @Test
+    public void testNoWarmUp() throws Exception {
+        DataStoreLifecycleManager manager =
+                new DataStoreLifecycleManager(getCatalog(), null, 2, 0, 0);
+        assertNull(manager.startWarmUp());
+    }
+
+    @Test
+    public void testEvictIdle() throws Exception {
+        AtomicLong time = new AtomicLong(System.currentTimeMillis());
+        DataStoreLifecycleManager manager =
+                new DataStoreLifecycleManager(getCatalog(), null, 1, 60000, 0) {
+                    @Override
+                    long currentTime() {
+                        return time.get();
+                    }
+                };
+        ResourcePool pool = getCatalog().getResourcePool();
+        DataAccess store = pool.getDataStore(cite);
+
+        // recently used, not evicted
+        manager.evictIdle();
+        assertSame(store, pool.getDataStore(cite));
+
+        // idle past the timeout
+        time.addAndGet(120000);
+        manager.evictIdle();
+        assertEquals(-1, pool.getDataStoreLastAccess(cite.getId()));
+        assertFalse(getStatus(manager, cite).isCached());
+
+        // transparently recreated on next use
+        DataAccess recreated = pool.getDataStore(cite);
+        assertNotNull(recreated);
+        assertFalse(store == recreated);
+        assertTrue(getStatus(manager, cite).isCached());
+    }
+
+    @Test
+    public void testValidateSkipsNonJDBCStores() throws Exception {
+        DataStoreLifecycleManager manager =
+                new DataStoreLifecycleManager(getCatalog(), null, 1, 0, 60000);
+        ResourcePool pool = getCatalog().getResourcePool();
+        DataAccess store = pool.getDataStore(cite);
+
+        assertFalse(manager.validate(cite.getId()));
+        manager.validate();
+        assertSame(store, pool.getDataStore(cite));
+        assertNull(getStatus(manager, cite).getValidationError());
+    }
+
+    @Test
+    public void testConnectionErrors() throws Exception {
+        // pool exhausted, the connections are busy, not broken
+        SQLException poolTimeout =
+                new SQLException(
+                        "Cannot get a connection, pool error Timeout waiting for idle object",
+                        new NoSuchElementException("Timeout waiting for idle object"));
+        assertFalse(DataStoreLifecycleManager.isConnectionError(poolTimeout));
+        assertFalse(
+                DataStoreLifecycleManager.isConnectionError(
+                        new SQLTransientConnectionException("Connection is not available")));
+
+        // the database cannot be reached
+        assertTrue(
+                DataStoreLifecycleManager.isConnectionError(
+                        new SQLException("Connection refused", "08001")));
+        assertTrue(
+                DataStoreLifecycleManager.isConnectionError(
+                        new SQLException(
+                                "Cannot create PoolableConnectionFactory",
+                                new ConnectException("Connection refused"))));
+
+        // other errors do not dispose the store
+        assertFalse(
+                DataStoreLifecycleManager.isConnectionError(
+                        new SQLException("Permission denied", "42501")));
+    }
+
+    private DataStoreStatus getStatus(DataStoreLifecycleManager manager, DataStoreInfo store) {
+        List<DataStoreStatus> statuses = manager.getStatus();
+        return statuses.stream()
+                .filter(s -> s.getName().equals(store.getName()))
+                .filter(s -> s.getWorkspace().equals(store.getWorkspace().getName()))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No status for " + store.getName()));
+    }
+}
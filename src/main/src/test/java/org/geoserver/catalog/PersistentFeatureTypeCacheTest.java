@@ -0,0 +1,235 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.DataStoreInfoImpl;
+import org.geoserver.catalog.impl.FeatureTypeInfoImpl;
+import org.geoserver.catalog.impl.NamespaceInfoImpl;
+import org.geoserver.platform.resource.Files;
+import org.geoserver.platform.resource.Resource;
+import org.geotools.data.DataUtilities;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.AttributeTypeBuilder;
+import org.geotools.feature.FeatureTypes;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.jdbc.VirtualTable;
+import org.geotools.jdbc.VirtualTableParameter;
+import org.geotools.referencing.CRS;
+import org.geotools.util.factory.Hints;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.LineString;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.FilterFactory2;
+
+public class PersistentFeatureTypeCacheTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    PersistentFeatureTypeCache cache;
+
+    DataStoreInfoImpl store;
+
+    FeatureTypeInfoImpl featureType;
+
+    @Before
+    public void setup() throws Exception {
+        cache = new PersistentFeatureTypeCache(Files.asResource(folder.newFolder("cache")));
+
+        CatalogImpl catalog = new CatalogImpl();
+        NamespaceInfoImpl ns = new NamespaceInfoImpl();
+        ns.setPrefix("test");
+        ns.setURI("http://www.geoserver.org/test");
+        store = new DataStoreInfoImpl(catalog, "store-1");
+        store.setName("store");
+        store.getConnectionParameters().put("dbtype", "postgis");
+        featureType = new FeatureTypeInfoImpl(catalog, "ft-1");
+        featureType.setName("roads");
+        featureType.setNativeName("roads");
+        featureType.setNamespace(ns);
+        featureType.setStore(store);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        SimpleFeatureType original =
+                DataUtilities.createType(
+                        "http://www.geoserver.org/test",
+                        "roads",
+                        "id:Integer,name:String,geom:LineString:srid=4326,*point:Point:srid=3857");
+        original.getDescriptor("name").getUserData().put("label", "Road name");
+        original.getDescriptor("geom").getUserData().put(Hints.COORDINATE_DIMENSION, 3);
+        original.getUserData().put("count", 10L);
+        assertNull(cache.get(featureType));
+
+        cache.put(featureType, original);
+        SimpleFeatureType cached = cache.get(featureType);
+
+        assertNotNull(cached);
+        assertEquals(original.getName(), cached.getName());
+        assertEquals(original.getAttributeCount(), cached.getAttributeCount());
+        for (AttributeDescriptor ad : original.getAttributeDescriptors()) {
+            AttributeDescriptor cd = cached.getDescriptor(ad.getLocalName());
+            assertEquals(ad.getType().getBinding(), cd.getType().getBinding());
+            assertEquals(ad.getMinOccurs(), cd.getMinOccurs());
+            assertEquals(ad.getMaxOccurs(), cd.getMaxOccurs());
+            assertEquals(ad.isNillable(), cd.isNillable());
+        }
+        assertEquals("point", cached.getGeometryDescriptor().getLocalName());
+        assertTrue(
+                CRS.equalsIgnoreMetadata(
+                        original.getGeometryDescriptor().getCoordinateReferenceSystem(),
+                        cached.getGeometryDescriptor().getCoordinateReferenceSystem()));
+        assertTrue(
+                CRS.equalsIgnoreMetadata(
+                        ((GeometryDescriptor) original.getDescriptor("geom"))
+                                .getCoordinateReferenceSystem(),
+                        ((GeometryDescriptor) cached.getDescriptor("geom"))
+                                .getCoordinateReferenceSystem()));
+        assertEquals("Road name", cached.getDescriptor("name").getUserData().get("label"));
+        assertEquals(3, cached.getDescriptor("geom").getUserData().get(Hints.COORDINATE_DIMENSION));
+        assertEquals(10L, cached.getUserData().get("count"));
+    }
+
+    @Test
+    public void testRestrictions() throws Exception {
+        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+        AttributeTypeBuilder ab = new AttributeTypeBuilder();
+        ab.setBinding(String.class);
+        ab.setLength(10);
+        ab.addRestriction(ff.notEqual(ff.property("name"), ff.literal("none")));
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("roads");
+        tb.add(ab.buildDescriptor("name"));
+        SimpleFeatureType original = tb.buildFeatureType();
+
+        cache.put(featureType, original);
+        SimpleFeatureType cached = cache.get(featureType);
+
+        assertNotNull(cached);
+        AttributeDescriptor name = cached.getDescriptor("name");
+        assertEquals(10, FeatureTypes.getFieldLength(name));
+        assertEquals(
+                new HashSet<>(original.getDescriptor("name").getType().getRestrictions()),
+                new HashSet<>(name.getType().getRestrictions()));
+    }
+
+    @Test
+    public void testNotCacheable() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("roads", "id:Integer,name:String");
+        type.getDescriptor("name").getUserData().put("opaque", new Object());
+
+        cache.put(featureType, type);
+        assertNull(cache.get(featureType));
+        assertEquals(Resource.Type.UNDEFINED, cache.getResource(featureType).getType());
+
+        // the previous entry is removed as well
+        type.getDescriptor("name").getUserData().remove("opaque");
+        cache.put(featureType, type);
+        assertNotNull(cache.get(featureType));
+        type.getUserData().put(new Object(), "opaque key");
+        cache.put(featureType, type);
+        assertNull(cache.get(featureType));
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        PersistentFeatureTypeCache expiring =
+                new PersistentFeatureTypeCache(
+                        Files.asResource(folder.newFolder("expiring")), 60000);
+        SimpleFeatureType type = DataUtilities.createType("roads", "id:Integer");
+        expiring.put(featureType, type);
+        assertNotNull(expiring.get(featureType));
+
+        Resource resource = expiring.getResource(featureType);
+        assertTrue(resource.file().setLastModified(System.currentTimeMillis() - 120000));
+        assertNull(expiring.get(featureType));
+        assertEquals(Resource.Type.UNDEFINED, resource.getType());
+    }
+
+    @Test
+    public void testVirtualTableKey() throws Exception {
+        featureType.getMetadata().put(FeatureTypeInfo.JDBC_VIRTUAL_TABLE, virtualTable("a > 1"));
+        String key = cache.getKey(featureType);
+        assertNotNull(key);
+
+        // same definition, different instance, same key
+        featureType.getMetadata().put(FeatureTypeInfo.JDBC_VIRTUAL_TABLE, virtualTable("a > 1"));
+        assertEquals(key, cache.getKey(featureType));
+
+        featureType.getMetadata().put(FeatureTypeInfo.JDBC_VIRTUAL_TABLE, virtualTable("a > 2"));
+        assertNotEquals(key, cache.getKey(featureType));
+
+        // values without a stable representation disable caching
+        featureType.getMetadata().put("opaque", new Object());
+        assertNull(cache.getKey(featureType));
+        assertNull(cache.getResource(featureType));
+    }
+
+    private VirtualTable virtualTable(String condition) {
+        VirtualTable vt = new VirtualTable("roads_vt", "select * from roads where " + condition);
+        vt.addGeometryMetadatata("geom", LineString.class, 4326);
+        vt.setPrimaryKeyColumns(Arrays.asList("id"));
+        vt.addParameter(new VirtualTableParameter("p1", "1"));
+        vt.addParameter(new VirtualTableParameter("p2", "2"));
+        return vt;
+    }
+
+    @Test
+    public void testKeyChanges() throws Exception {
+        String key = cache.getKey(featureType);
+
+        store.getConnectionParameters().put("host", "localhost");
+        String storeKey = cache.getKey(featureType);
+        assertNotEquals(key, storeKey);
+
+        featureType.getMetadata().put("cachingEnabled", true);
+        assertNotEquals(storeKey, cache.getKey(featureType));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("roads", "id:Integer");
+        cache.put(featureType, type);
+        assertNotNull(cache.get(featureType));
+
+        cache.remove(featureType);
+        assertNull(cache.get(featureType));
+
+        cache.put(featureType, type);
+        cache.remove(store);
+        assertNull(cache.get(featureType));
+
+        cache.put(featureType, type);
+        cache.clear();
+        assertNull(cache.get(featureType));
+    }
+
+    @Test
+    public void testCorruptedEntry() throws Exception {
+        Resource resource = cache.getResource(featureType);
+        try (OutputStream os = resource.out()) {
+            os.write("not a feature type".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertNull(cache.get(featureType));
+        assertEquals(Resource.Type.UNDEFINED, resource.getType());
+    }
+}
@@ -1193,6 +1193,23 @@ public void testGetFeatureTypesByStore() {
         assertTrue(r.contains(ft2));
     }
 
+    @Test
+    public void testGetResourcesByEqualNamespace() {
+        addFeatureType();
+
+        // namespaces are equal by prefix and URI, regardless of the id
+        NamespaceInfoImpl copy = new NamespaceInfoImpl();
+        copy.setPrefix(ns.getPrefix());
+        copy.setURI(ns.getURI());
+        List<ResourceInfo> r = catalog.getResourcesByNamespace(copy, ResourceInfo.class);
+        assertEquals(1, r.size());
+        assertEquals(ft, r.get(0));
+
+        copy.setId("anotherId");
+        assertEquals(1, catalog.getResourcesByNamespace(copy, ResourceInfo.class).size());
+        assertEquals(1, catalog.count(ResourceInfo.class, Filter.INCLUDE));
+    }
+
     @Test
     public void testModifyFeatureType() {
         addFeatureType();
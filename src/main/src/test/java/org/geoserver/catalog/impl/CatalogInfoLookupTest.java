@@ -0,0 +1,150 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import static org.geoserver.catalog.impl.DefaultCatalogFacade.WORKSPACE_INDEX;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.geoserver.catalog.CoverageStoreInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CatalogInfoLookupTest {
+
+    CatalogInfoLookup<StoreInfo> lookup;
+
+    WorkspaceInfoImpl ws1;
+
+    WorkspaceInfoImpl ws2;
+
+    @Before
+    public void setUp() {
+        lookup = DefaultCatalogFacade.newStoreLookup();
+        ws1 = workspace("ws1");
+        ws2 = workspace("ws2");
+    }
+
+    private WorkspaceInfoImpl workspace(String name) {
+        WorkspaceInfoImpl ws = new WorkspaceInfoImpl();
+        ws.setId(name + "-id");
+        ws.setName(name);
+        return ws;
+    }
+
+    private <T extends StoreInfoImpl> T store(T store, String name, WorkspaceInfo ws) {
+        store.setId(name + "-id");
+        store.setName(name);
+        store.setWorkspace(ws);
+        lookup.add(store);
+        return store;
+    }
+
+    private List<String> names(List<? extends StoreInfo> stores) {
+        return Arrays.asList(stores.stream().map(StoreInfo::getName).toArray(String[]::new));
+    }
+
+    @Test
+    public void testListByIndex() {
+        store(new DataStoreInfoImpl(null), "b", ws1);
+        store(new DataStoreInfoImpl(null), "a", ws1);
+        store(new DataStoreInfoImpl(null), "c", ws2);
+        store(new CoverageStoreInfoImpl(null), "d", ws1);
+
+        List<DataStoreInfo> ds1 =
+                lookup.list(
+                        WORKSPACE_INDEX,
+                        ws1.getId(),
+                        DataStoreInfo.class,
+                        CatalogInfoLookup.ptrue());
+        assertEquals(Arrays.asList("a", "b"), names(ds1));
+        List<StoreInfo> all1 =
+                lookup.list(
+                        WORKSPACE_INDEX, ws1.getId(), StoreInfo.class, CatalogInfoLookup.ptrue());
+        assertEquals(3, all1.size());
+        List<CoverageStoreInfo> cs2 =
+                lookup.list(
+                        WORKSPACE_INDEX,
+                        ws2.getId(),
+                        CoverageStoreInfo.class,
+                        CatalogInfoLookup.ptrue());
+        assertTrue(cs2.isEmpty());
+        List<StoreInfo> filtered =
+                lookup.list(
+                        WORKSPACE_INDEX,
+                        ws1.getId(),
+                        StoreInfo.class,
+                        s -> s.getName().equals("b"));
+        assertEquals(Arrays.asList("b"), names(filtered));
+    }
+
+    @Test
+    public void testRemove() {
+        DataStoreInfoImpl a = store(new DataStoreInfoImpl(null), "a", ws1);
+        store(new DataStoreInfoImpl(null), "b", ws1);
+
+        lookup.remove(a);
+        List<StoreInfo> stores =
+                lookup.list(
+                        WORKSPACE_INDEX, ws1.getId(), StoreInfo.class, CatalogInfoLookup.ptrue());
+        assertEquals(Arrays.asList("b"), names(stores));
+    }
+
+    @Test
+    public void testUpdate() {
+        DataStoreInfoImpl a = store(new DataStoreInfoImpl(null), "a", ws1);
+
+        DataStoreInfo proxy = ModificationProxy.create(a, DataStoreInfo.class);
+        proxy.setWorkspace(ws2);
+        proxy.setName("renamed");
+        lookup.update(proxy);
+        ModificationProxy.handler(proxy).commit();
+
+        assertTrue(
+                lookup.list(
+                                WORKSPACE_INDEX,
+                                ws1.getId(),
+                                StoreInfo.class,
+                                CatalogInfoLookup.ptrue())
+                        .isEmpty());
+        List<StoreInfo> stores =
+                lookup.list(
+                        WORKSPACE_INDEX, ws2.getId(), StoreInfo.class, CatalogInfoLookup.ptrue());
+        assertEquals(Arrays.asList("renamed"), names(stores));
+    }
+
+    @Test
+    public void testCount() {
+        store(new DataStoreInfoImpl(null), "a", ws1);
+        store(new DataStoreInfoImpl(null), "b", ws2);
+        store(new CoverageStoreInfoImpl(null), "c", ws1);
+
+        assertEquals(3, lookup.count(StoreInfo.class, CatalogInfoLookup.ptrue()));
+        assertEquals(2, lookup.count(DataStoreInfo.class, CatalogInfoLookup.ptrue()));
+        assertEquals(2, lookup.count(StoreInfo.class, s -> ws1.equals(s.getWorkspace())));
+    }
+
+    @Test
+    public void testCountMatchesList() {
+        store(new DataStoreInfoImpl(null), "a", ws1);
+        // same name and workspace, different id, shadows the first one in the name map
+        DataStoreInfoImpl duplicate = new DataStoreInfoImpl(null);
+        duplicate.setName("a");
+        duplicate.setWorkspace(ws1);
+        duplicate.setId("duplicate-id");
+        lookup.add(duplicate);
+
+        int listed = lookup.list(StoreInfo.class, CatalogInfoLookup.ptrue()).size();
+        assertEquals(listed, lookup.count(StoreInfo.class, CatalogInfoLookup.ptrue()));
+        assertEquals(
+                lookup.list(StoreInfo.class, s -> ws1.equals(s.getWorkspace())).size(),
+                lookup.count(StoreInfo.class, s -> ws1.equals(s.getWorkspace())));
+    }
+}
@@ -8,13 +8,18 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import org.apache.commons.io.FileUtils;
 import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.StyleInfo;
@@ -27,10 +32,13 @@
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.GeoServerExtensionsHelper;
 import org.geoserver.platform.GeoServerResourceLoader;
+import org.geoserver.platform.resource.Resource;
 import org.geotools.util.URLs;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class DefaultGeoServerLoaderTest {
     DefaultGeoServerLoader loader;
@@ -40,6 +48,8 @@ public class DefaultGeoServerLoaderTest {
 
     boolean helloServiceSaved = false;
 
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
     static interface HelloServiceInfo extends ServiceInfo {}
 
     static final class HelloServiceInfoImpl extends ServiceInfoImpl implements HelloServiceInfo {}
@@ -143,4 +153,85 @@ public void testLoadWithoutResaving() throws Exception {
 
         assertFalse("hello.xml should not have been saved during load", helloServiceSaved);
     }
+
+    @Test
+    public void testParseResourcesInMapper() throws Exception {
+        loader.readCatalog(catalog, xp);
+        assertNotNull(catalog.getLayerByName("topp:layer1"));
+
+        XStreamPersister xp = new XStreamPersisterFactory().createXMLPersister();
+        xp.setCatalog(catalog);
+        GeoServerResourceLoader resources = GeoServerExtensions.bean(GeoServerResourceLoader.class);
+        Resource layerDir = resources.get("workspaces/topp/datastore/layer1");
+        GeoServerLoader.ParsingLayerMapper<FeatureTypeInfo> mapper =
+                new GeoServerLoader.ParsingLayerMapper<>(
+                        GeoServerLoader.FEATURE_LAYER_MAPPER, FeatureTypeInfo.class, xp);
+        GeoServerLoader.LayerContents lc = mapper.apply(layerDir);
+        assertNull(lc.parseError);
+        assertTrue(lc.parsed instanceof FeatureTypeInfo);
+        assertEquals("layer1", lc.parsed.getName());
+        // the store reference has been resolved against the catalog while parsing
+        assertNotNull(lc.parsed.getStore());
+        assertEquals("toponimi", lc.parsed.getStore().getName());
+
+        // a parse failure in the IO threads results in the layer being skipped
+        Catalog target = new CatalogImpl();
+        lc.parsed = null;
+        lc.parseError = new IOException("Failed to parse");
+        new GeoServerLoader.LayerLoader<>(FeatureTypeInfo.class, xp, target).accept(lc);
+        assertTrue(target.getFeatureTypes().isEmpty());
+        assertTrue(target.getLayers().isEmpty());
+    }
+
+    @Test
+    public void testCatalogSnapshot() throws Exception {
+        URL url = DefaultGeoServerLoaderTest.class.getResource("/data_dir/nested_layer_groups");
+        File dataDir = temp.newFolder("data");
+        FileUtils.copyDirectory(URLs.urlToFile(url), dataDir);
+        // files modified right before the load are not snapshotted
+        long lastModified = (System.currentTimeMillis() - 60000) / 1000 * 1000;
+        Collection<File> files = FileUtils.listFiles(dataDir, null, true);
+        for (File file : files) {
+            file.setLastModified(lastModified);
+        }
+        GeoServerResourceLoader resourceLoader = new GeoServerResourceLoader(dataDir);
+        DefaultGeoServerLoader loader = new DefaultGeoServerLoader(resourceLoader);
+        loader.catalogSnapshot = true;
+
+        // first load parses the XML and writes the snapshot
+        Catalog catalog = new CatalogImpl();
+        catalog.setResourceLoader(resourceLoader);
+        loader.readCatalog(catalog, xp);
+        assertEquals("Layer1", catalog.getFeatureTypeByName("topp:layer1").getTitle());
+        File snapshotFile = new File(dataDir, CatalogSnapshot.SNAPSHOT_FILE);
+        assertTrue(snapshotFile.exists());
+        CatalogSnapshot snapshot =
+                CatalogSnapshot.read(resourceLoader.get(CatalogSnapshot.SNAPSHOT_FILE));
+        String path = "workspaces/topp/datastore/layer1/featuretype.xml";
+        assertTrue(CatalogSnapshot.isBinary(snapshot.entries.get(path).contents));
+
+        // change the file without changing its modification time, the snapshot is used
+        File featureType = new File(dataDir, path);
+        String xml = FileUtils.readFileToString(featureType, StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(
+                featureType,
+                xml.replace("<title>Layer1</title>", "<title>Changed</title>"),
+                StandardCharsets.UTF_8);
+        featureType.setLastModified(lastModified);
+        catalog = new CatalogImpl();
+        catalog.setResourceLoader(resourceLoader);
+        loader.readCatalog(catalog, xp);
+        assertEquals("Layer1", catalog.getFeatureTypeByName("topp:layer1").getTitle());
+        assertNotNull(catalog.getLayerByName("topp:layer1"));
+        assertNotNull(catalog.getLayerGroupByName("topp", "nestedgroup"));
+
+        // once the modification time changes the file is parsed again
+        featureType.setLastModified(lastModified + 1000);
+        catalog = new CatalogImpl();
+        catalog.setResourceLoader(resourceLoader);
+        loader.readCatalog(catalog, xp);
+        assertEquals("Changed", catalog.getFeatureTypeByName("topp:layer1").getTitle());
+        snapshot = CatalogSnapshot.read(resourceLoader.get(CatalogSnapshot.SNAPSHOT_FILE));
+        assertEquals(lastModified + 1000, snapshot.entries.get(path).lastModified);
+    }
 }
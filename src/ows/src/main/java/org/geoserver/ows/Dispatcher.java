@@ -51,6 +51,7 @@
 import org.eclipse.emf.ecore.EObject;
 import org.geoserver.ows.util.CaseInsensitiveMap;
 import org.geoserver.ows.util.KvpMap;
+import org.geoserver.ows.util.KvpParserTable;
 import org.geoserver.ows.util.KvpUtils;
 import org.geoserver.ows.util.OwsUtils;
 import org.geoserver.ows.util.RequestUtils;
@@ -64,6 +65,10 @@
 import org.geotools.xsd.EMFUtils;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ApplicationContextEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.http.HttpHeaders;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.AbstractController;
@@ -116,7 +121,8 @@
  *
  * @author Justin Deoliveira, The Open Planning Project, jdeolive@openplans.org
  */
-public class Dispatcher extends AbstractController {
+public class Dispatcher extends AbstractController
+        implements ApplicationListener<ApplicationContextEvent> {
     /** Logging instance */
     static Logger logger = org.geotools.util.logging.Logging.getLogger("org.geoserver.ows");
 
@@ -180,6 +186,9 @@ public boolean isCiteCompliant() {
 
     @Override
     protected void initApplicationContext(ApplicationContext context) {
+        // the kvp parsers table might have been built out of a different context
+        KvpParserTable.reset();
+
         // load life cycle callbacks
         callbacks = GeoServerExtensions.extensions(DispatcherCallback.class, context);
 
@@ -204,6 +213,23 @@ protected void initApplicationContext(ApplicationContext context) {
         }
     }
 
+    @Override
+    public void onApplicationEvent(ApplicationContextEvent event) {
+        ApplicationContext context = event.getApplicationContext();
+        if (context != getApplicationContext()) {
+            // events from child contexts, the parsers are looked up in this one
+            return;
+        }
+        if (event instanceof ContextRefreshedEvent) {
+            // the set of kvp parsers might have changed, rebuild the lookup table once, instead of
+            // looking up parsers on each request
+            KvpParserTable.reset(context);
+        } else if (event instanceof ContextClosedEvent) {
+            // don't keep using, or retaining, the parsers of a closed context
+            KvpParserTable.release(context);
+        }
+    }
+
     protected void preprocessRequest(HttpServletRequest request) throws Exception {
         // set the charset
 
@@ -0,0 +1,145 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.geoserver.ows.KvpParser;
+import org.geoserver.platform.GeoServerExtensions;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Immutable lookup table of {@link KvpParser}, indexed by key. For each key the candidate parsers
+ * are sorted from the most to the least specific one, so that finding the parser for a
+ * service/version/request combination only requires a scan of the few parsers sharing the key,
+ * without copying or sorting the whole parser list on each request.
+ *
+ * <p>The default table, built out of the {@link KvpParser} registered in the application context,
+ * is created lazily and remembers the context it was built from. It has to be rebuilt with {@link
+ * #reset(ApplicationContext)} when the application context is refreshed, and dropped with {@link
+ * #release(ApplicationContext)} when it is closed, or with {@link #reset()} when a different
+ * context is set up.
+ */
+public class KvpParserTable {
+
+    private static volatile DefaultTable defaultTable;
+
+    private static final KvpParser[] NO_PARSERS = new KvpParser[0];
+
+    private final Map<String, KvpParser[]> parsers;
+
+    public KvpParserTable(Collection<KvpParser> parsers) {
+        Map<String, List<KvpParser>> byKey = new HashMap<>();
+        for (KvpParser parser : parsers) {
+            byKey.computeIfAbsent(normalizeKey(parser.getKey()), k -> new ArrayList<>())
+                    .add(parser);
+        }
+        Map<String, KvpParser[]> table = new HashMap<>();
+        for (Map.Entry<String, List<KvpParser>> entry : byKey.entrySet()) {
+            List<KvpParser> candidates = entry.getValue();
+            candidates.sort(KvpUtils.KVP_PARSER_COMPARATOR);
+            table.put(entry.getKey(), candidates.toArray(new KvpParser[candidates.size()]));
+        }
+        this.parsers = Collections.unmodifiableMap(table);
+    }
+
+    /** Returns the table of the parsers registered in the application context */
+    public static KvpParserTable getDefault() {
+        DefaultTable current = defaultTable;
+        if (current == null) {
+            synchronized (KvpParserTable.class) {
+                current = defaultTable;
+                if (current == null) {
+                    current =
+                            new DefaultTable(
+                                    null,
+                                    new KvpParserTable(
+                                            GeoServerExtensions.extensions(KvpParser.class)));
+                    defaultTable = current;
+                }
+            }
+        }
+        return current.table;
+    }
+
+    /** Drops the default table, it will be rebuilt on the next {@link #getDefault()} call */
+    public static void reset() {
+        synchronized (KvpParserTable.class) {
+            defaultTable = null;
+        }
+    }
+
+    /** Rebuilds the default table out of the parsers registered in the given context */
+    public static void reset(ApplicationContext context) {
+        KvpParserTable table =
+                new KvpParserTable(GeoServerExtensions.extensions(KvpParser.class, context));
+        synchronized (KvpParserTable.class) {
+            defaultTable = new DefaultTable(context, table);
+        }
+    }
+
+    /**
+     * Drops the default table if it might have been built out of the given context, to be called
+     * when the context is closed, so that its parsers are neither used nor retained anymore
+     */
+    public static void release(ApplicationContext context) {
+        synchronized (KvpParserTable.class) {
+            DefaultTable current = defaultTable;
+            if (current != null && (current.context == null || current.context == context)) {
+                defaultTable = null;
+            }
+        }
+    }
+
+    /**
+     * Find the parser for the passed key, matching the service, version and request. Behaves like
+     * {@link KvpUtils#findParser(String, String, String, String, Collection)}.
+     *
+     * @param key the key matching the value to parse
+     * @param service the service parameter from the kvp (can be null)
+     * @param version the version parameter from the kvp (can be null)
+     * @param request the request parameter from the kvp (can be null)
+     * @return the found parser or null (if no parser is found)
+     * @throws IllegalStateException if more than one candidate parser is found
+     */
+    public KvpParser findParser(String key, String service, String version, String request) {
+        KvpParser[] candidates = parsers.getOrDefault(normalizeKey(key), NO_PARSERS);
+        for (int i = 0; i < candidates.length; i++) {
+            KvpParser parser = candidates[i];
+            if (KvpUtils.matches(parser, service, version, request)) {
+                // the candidates are sorted, the next one is either less specific, or ambiguous
+                if (i + 1 < candidates.length
+                        && KvpUtils.KVP_PARSER_COMPARATOR.compare(parser, candidates[i + 1]) == 0) {
+                    throw new IllegalStateException(
+                            "Multiple kvp parsers: " + parser + "," + candidates[i + 1]);
+                }
+                return parser;
+            }
+        }
+        return null;
+    }
+
+    private static String normalizeKey(String key) {
+        return key == null ? null : key.toUpperCase(Locale.ENGLISH);
+    }
+
+    /** The default table, along with the context it has been built from, if known */
+    private static class DefaultTable {
+
+        final ApplicationContext context;
+
+        final KvpParserTable table;
+
+        DefaultTable(ApplicationContext context, KvpParserTable table) {
+            this.context = context;
+            this.table = table;
+        }
+    }
+}
@@ -45,7 +45,7 @@ public class KvpUtils {
      * Comparator used to compare two parsers matching the same service/version/request
      * specification, and returning the most specific one (nulls are high, put at the end of list)
      */
-    private static final Comparator<KvpParser> KVP_PARSER_COMPARATOR =
+    static final Comparator<KvpParser> KVP_PARSER_COMPARATOR =
             Comparator.comparing(KvpParser::getService, new NullComparator<>())
                     .thenComparing(KvpParser::getVersion, new NullComparator<>())
                     .thenComparing(KvpParser::getRequest, new NullComparator<>());
@@ -401,7 +401,8 @@ private static String trim(String value) {
      *
      * <p>Important: This method modifies the map, overriding original values with parsed values.
      *
-     * <p>This routine performs a lookup of {@link KvpParser} to parse the kvp entries.
+     * <p>This routine performs a lookup of {@link KvpParser} to parse the kvp entries, using the
+     * {@link KvpParserTable#getDefault() default parser table}.
      *
      * <p>If an individual parse fails, this method saves the exception, and adds it to the list
      * that is returned.
@@ -410,24 +411,30 @@ private static String trim(String value) {
      * @return A list of errors that occured.
      */
     public static List<Throwable> parse(Map<String, Object> kvp) {
+        return parse(kvp, KvpParserTable.getDefault());
+    }
 
-        // look up parser objects
-        List<KvpParser> parsers = GeoServerExtensions.extensions(KvpParser.class);
-
-        // strip out parsers which do not match current service/request/version
+    /**
+     * Parses a map of key value pairs using the parsers in the given table.
+     *
+     * <p>Important: This method modifies the map, overriding original values with parsed values.
+     *
+     * @param kvp raw or unparsed kvp.
+     * @param parsers the table of parsers to use
+     * @return A list of errors that occured.
+     */
+    public static List<Throwable> parse(Map<String, Object> kvp, KvpParserTable parsers) {
         String service = KvpUtils.getSingleValue(kvp, "service");
         String version = KvpUtils.getSingleValue(kvp, "version");
         String request = KvpUtils.getSingleValue(kvp, "request");
 
-        purgeParsers(parsers, service, version, request);
-
         // parser the kvp's
         ArrayList<Throwable> errors = new ArrayList<>();
         for (Map.Entry<String, Object> entry : kvp.entrySet()) {
             String key = entry.getKey();
 
             // find the parser for this key value pair
-            KvpParser parser = findParser(key, service, request, version, parsers);
+            KvpParser parser = parsers.findParser(key, service, version, request);
 
             // parse the value
             Object parsed = null;
@@ -477,19 +484,24 @@ public static void purgeParsers(
             final String request) {
         for (Iterator<KvpParser> p = parsers.iterator(); p.hasNext(); ) {
             KvpParser parser = p.next();
-
-            if (parser.getService() != null && !parser.getService().equalsIgnoreCase(service)) {
-                p.remove();
-            } else if (parser.getVersion() != null
-                    && !parser.getVersion().toString().equals(version)) {
-                p.remove();
-            } else if (parser.getRequest() != null
-                    && !parser.getRequest().equalsIgnoreCase(request)) {
+            if (!matches(parser, service, version, request)) {
                 p.remove();
             }
         }
     }
 
+    /** Checks if the parser is suitable for the given service/version/request */
+    static boolean matches(KvpParser parser, String service, String version, String request) {
+        if (parser.getService() != null && !parser.getService().equalsIgnoreCase(service)) {
+            return false;
+        } else if (parser.getVersion() != null && !parser.getVersion().toString().equals(version)) {
+            return false;
+        } else if (parser.getRequest() != null && !parser.getRequest().equalsIgnoreCase(request)) {
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Find a parser for the passed key into registered parsers ({@link KvpParser})
      *
@@ -507,17 +519,15 @@ public static KvpParser findParser(
             final String request,
             final String version,
             Collection<KvpParser> parsers) {
-        // doing a purge eliminating the parsers not matching to service/version/request
+        // skipping the parsers not matching to service/version/request, doing a purge
         // used to be an indication in the javadoc but not everyone followed it and the
         // method ended up doing some re-matching of its own (see previous code in git)
-        List<KvpParser> purgedParsers = new ArrayList<>(parsers);
-        purgeParsers(purgedParsers, service, version, request);
         KvpParser parser = null;
 
-        for (KvpParser candidate : purgedParsers) {
-            if (key.equalsIgnoreCase(candidate.getKey())) {
-                // if key matches, keep the most specific one, under the assumption that
-                // they are already matching service/version/request due to purgeParsers above
+        for (KvpParser candidate : parsers) {
+            if (key.equalsIgnoreCase(candidate.getKey())
+                    && matches(candidate, service, version, request)) {
+                // if key matches, keep the most specific one
                 if (parser == null) {
                     parser = candidate;
                 } else {
@@ -0,0 +1,127 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.geoserver.ows.KvpParser;
+import org.geoserver.ows.kvp.BooleanKvpParser;
+import org.geoserver.ows.kvp.IntegerKvpParser;
+import org.geotools.util.Version;
+import org.junit.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+public class KvpParserTableTest {
+
+    KvpParser generic = new IntegerKvpParser("count");
+
+    KvpParser wfs = parser("count", "WFS", null, null);
+
+    KvpParser wfs20 = parser("count", "WFS", "2.0.0", null);
+
+    KvpParser wfs20GetFeature = parser("count", "WFS", "2.0.0", "GetFeature");
+
+    KvpParser flag = new BooleanKvpParser("flag");
+
+    List<KvpParser> parsers = Arrays.asList(wfs20GetFeature, flag, generic, wfs20, wfs);
+
+    KvpParserTable table = new KvpParserTable(parsers);
+
+    @Test
+    public void testMostSpecific() {
+        assertSame(generic, table.findParser("count", null, null, null));
+        assertSame(generic, table.findParser("count", "WMS", "1.3.0", "GetMap"));
+        assertSame(wfs, table.findParser("count", "wfs", "1.1.0", "GetFeature"));
+        assertSame(wfs20, table.findParser("COUNT", "WFS", "2.0.0", "DescribeFeatureType"));
+        assertSame(wfs20GetFeature, table.findParser("Count", "WFS", "2.0.0", "getFeature"));
+        assertSame(flag, table.findParser("FLAG", "WFS", "2.0.0", "GetFeature"));
+        assertNull(table.findParser("unknown", "WFS", "2.0.0", "GetFeature"));
+    }
+
+    @Test
+    public void testSameAsFindParser() {
+        String[][] requests = {
+            {null, null, null},
+            {"WMS", "1.3.0", "GetMap"},
+            {"WFS", "1.0.0", "GetFeature"},
+            {"WFS", "2.0.0", null},
+            {"WFS", "2.0.0", "GetFeature"}
+        };
+        for (String key : new String[] {"count", "flag", "other"}) {
+            for (String[] r : requests) {
+                assertSame(
+                        KvpUtils.findParser(key, r[0], r[2], r[1], parsers),
+                        table.findParser(key, r[0], r[1], r[2]));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAmbiguous() {
+        KvpParser other = parser("count", "WFS", null, null);
+        new KvpParserTable(Arrays.asList(wfs, other, generic))
+                .findParser("count", "WFS", "1.1.0", "GetFeature");
+    }
+
+    @Test
+    public void testParse() {
+        Map<String, Object> kvp = new HashMap<>();
+        kvp.put("service", "WMS");
+        kvp.put("count", "10");
+        kvp.put("flag", "true");
+        kvp.put("other", "value");
+
+        List<Throwable> errors = KvpUtils.parse(kvp, table);
+
+        assertTrue(errors.isEmpty());
+        assertEquals(10, kvp.get("count"));
+        assertEquals(Boolean.TRUE, kvp.get("flag"));
+        assertEquals("value", kvp.get("other"));
+    }
+
+    @Test
+    public void testDefaultFollowsContext() {
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.getBeanFactory().registerSingleton("flagParser", flag);
+        context.refresh();
+        StaticApplicationContext other = new StaticApplicationContext();
+        other.refresh();
+        try {
+            KvpParserTable.reset(context);
+            KvpParserTable contextTable = KvpParserTable.getDefault();
+            assertSame(flag, contextTable.findParser("flag", null, null, null));
+
+            // closing another context does not affect the table
+            KvpParserTable.release(other);
+            assertSame(contextTable, KvpParserTable.getDefault());
+
+            // closing the context the table was built from drops it
+            KvpParserTable.release(context);
+            assertNotSame(contextTable, KvpParserTable.getDefault());
+        } finally {
+            KvpParserTable.reset();
+            context.close();
+            other.close();
+        }
+    }
+
+    private KvpParser parser(String key, String service, String version, String request) {
+        KvpParser parser = new IntegerKvpParser(key);
+        parser.setService(service);
+        if (version != null) {
+            parser.setVersion(new Version(version));
+        }
+        parser.setRequest(request);
+        return parser;
+    }
+}
@@ -22,6 +22,7 @@
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.geotools.util.logging.Logging;
@@ -39,6 +40,12 @@ public class FileSystemResourceStore implements ResourceStore {
     protected static final Boolean TRACE_ENABLED =
             "true".equalsIgnoreCase(System.getProperty(GS_LOCK_TRACE));
 
+    /**
+     * Selects the file system watcher, "native" uses the operating system notifications (see {@link
+     * NativeFileSystemWatcher}), otherwise the file system is polled for changes
+     */
+    public static final String GS_RESOURCE_WATCHER = "gs.resource.watcher";
+
     /** LockProvider used to secure resources for exclusive access */
     protected LockProvider lockProvider = new NullLockProvider();
 
@@ -549,10 +556,17 @@ public ResourceNotificationDispatcher getResourceNotificationDispatcher() {
                     watcher.updateAndGet(
                             v ->
                                     v == null
-                                            ? new FileSystemWatcher(
+                                            ? createWatcher(
                                                     path -> Paths.toFile(baseDirectory, path))
                                             : v);
         }
         return instance;
     }
+
+    private FileSystemWatcher createWatcher(Function<String, File> fileExtractor) {
+        if ("native".equalsIgnoreCase(System.getProperty(GS_RESOURCE_WATCHER))) {
+            return new NativeFileSystemWatcher(fileExtractor);
+        }
+        return new FileSystemWatcher(fileExtractor);
+    }
 }
@@ -0,0 +1,548 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform.resource;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import org.geoserver.platform.resource.ResourceNotification.Event;
+import org.geoserver.platform.resource.ResourceNotification.Kind;
+import org.geotools.util.logging.Logging;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * File system watcher based on the native {@link WatchService}, getting notified by the operating
+ * system instead of periodically listing the watched directories, so that the cost of a
+ * notification depends on what changed, rather than on the number of watched files.
+ *
+ * <p>Events are collected for a short while (see {@link #setCoalesceDelay(long, TimeUnit)}) before
+ * being sent, so that a burst of changes to the same resource results in a single notification.
+ * Listeners are indexed by the watched path, each event is dispatched with a couple of hash
+ * lookups.
+ *
+ * <p>Resources whose parent directory does not exist, or that live on a network file system where
+ * native notifications are not reliable (see {@link #POLLED_FILE_SYSTEMS}), are polled by the
+ * superclass instead. The same happens if a watched directory gets removed.
+ */
+public class NativeFileSystemWatcher extends FileSystemWatcher {
+
+    private static final Logger LOGGER = Logging.getLogger(NativeFileSystemWatcher.class);
+
+    /**
+     * System property with a comma separated list of file system types to be polled, overriding the
+     * default ones
+     */
+    public static final String POLLED_FILE_SYSTEMS = "gs.resource.watcher.polled";
+
+    static final String DEFAULT_POLLED_FILE_SYSTEMS =
+            "nfs,nfs4,cifs,smb,smbfs,smb2,smb3,afpfs,9p,fuse.sshfs,fuse.s3fs,glusterfs";
+
+    /** Default time events are collected before sending notifications, in milliseconds */
+    static final long DEFAULT_COALESCE_DELAY = 100;
+
+    private static CustomizableThreadFactory tFactory;
+
+    private static CustomizableThreadFactory notifierFactory;
+
+    static {
+        tFactory = new CustomizableThreadFactory("NativeFileSystemWatcher-");
+        tFactory.setDaemon(true);
+        notifierFactory = new CustomizableThreadFactory("NativeFileSystemWatcherNotifier-");
+        notifierFactory.setDaemon(true);
+    }
+
+    /** Listeners for a watched path */
+    static class Registration {
+        final String path;
+
+        final Path file;
+
+        final List<ResourceListener> listeners = new CopyOnWriteArrayList<>();
+
+        /** The directories that need to be watched for this registration */
+        final Set<Path> directories = new HashSet<>();
+
+        Registration(String path, Path file) {
+            this.path = path;
+            this.file = file;
+        }
+
+        @Override
+        public String toString() {
+            return "Registration [path=" + path + ", listeners=" + listeners.size() + "]";
+        }
+    }
+
+    /** A watched directory, and the registrations depending on it */
+    static class WatchedDirectory {
+        final WatchKey key;
+
+        final Set<Registration> registrations = new HashSet<>();
+
+        WatchedDirectory(WatchKey key) {
+            this.key = key;
+        }
+    }
+
+    /** Changes collected for a registration, not yet notified */
+    static class PendingChange {
+        /** Change to the watched file itself, null if none */
+        Kind self;
+
+        /** Changes to the children of the watched directory */
+        final Map<String, Kind> children = new LinkedHashMap<>();
+
+        void self(Kind kind) {
+            self = merge(self, kind);
+        }
+
+        void child(String name, Kind kind) {
+            Kind merged = merge(children.get(name), kind);
+            if (merged == null) {
+                children.remove(name);
+            } else {
+                children.put(name, merged);
+            }
+        }
+
+        /** Merges two subsequent changes, returns null if they cancel each other */
+        static Kind merge(Kind previous, Kind current) {
+            if (previous == null) {
+                return current;
+            } else if (previous == Kind.ENTRY_CREATE) {
+                return current == Kind.ENTRY_DELETE ? null : Kind.ENTRY_CREATE;
+            } else if (previous == Kind.ENTRY_DELETE) {
+                return current == Kind.ENTRY_CREATE ? Kind.ENTRY_MODIFY : Kind.ENTRY_DELETE;
+            } else {
+                return current;
+            }
+        }
+
+        List<String> children(Kind kind) {
+            return children.entrySet().stream()
+                    .filter(e -> e.getValue() == kind)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private final Function<String, File> fileExtractor;
+
+    private final Set<String> polledFileSystems;
+
+    private final WatchService watchService;
+
+    /** Registrations indexed by watched file, guarded by this */
+    final Map<Path, Registration> registrations = new ConcurrentHashMap<>();
+
+    /** Directories registered with the watch service, guarded by this */
+    final Map<Path, WatchedDirectory> directories = new HashMap<>();
+
+    /** Changes not yet notified, only accessed by the watch thread */
+    private final Map<Registration, PendingChange> pending = new LinkedHashMap<>();
+
+    private volatile long coalesceDelay = DEFAULT_COALESCE_DELAY;
+
+    /**
+     * Calls the listeners off the watch thread, a single thread keeps the notifications in the
+     * order the changes were detected
+     */
+    private final ExecutorService notifier = Executors.newSingleThreadExecutor(notifierFactory);
+
+    NativeFileSystemWatcher(Function<String, File> fileExtractor) {
+        super(fileExtractor);
+        this.fileExtractor = fileExtractor;
+        String polled = System.getProperty(POLLED_FILE_SYSTEMS, DEFAULT_POLLED_FILE_SYSTEMS);
+        this.polledFileSystems =
+                Arrays.stream(polled.split("\\s*,\\s*"))
+                        .map(s -> s.toLowerCase(Locale.ENGLISH))
+                        .collect(Collectors.toSet());
+        WatchService service = null;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.log(
+                    Level.WARNING,
+                    "Native file system notifications not available, will poll for changes",
+                    e);
+        }
+        this.watchService = service;
+        if (watchService != null) {
+            tFactory.newThread(this::watch).start();
+        }
+    }
+
+    NativeFileSystemWatcher() {
+        this(path -> new File(path.replace('/', File.separatorChar)));
+    }
+
+    /** Sets the time events are collected before sending notifications */
+    public void setCoalesceDelay(long delay, TimeUnit unit) {
+        this.coalesceDelay = unit.toMillis(delay);
+    }
+
+    @Override
+    public synchronized void addListener(String path, ResourceListener listener) {
+        Objects.requireNonNull(path, "Path for notification is required");
+        File file = fileExtractor.apply(path);
+        Objects.requireNonNull(file, "File to watch is required");
+        Path watched = file.toPath().toAbsolutePath().normalize();
+
+        Registration registration = registrations.get(watched);
+        if (registration == null) {
+            registration = register(path, watched);
+        }
+        if (registration == null || !registration.path.equals(path)) {
+            super.addListener(path, listener);
+        } else {
+            registration.listeners.add(listener);
+        }
+    }
+
+    /** Sets up the native watch for the given file, returns null if it has to be polled */
+    private Registration register(String path, Path watched) {
+        Path parent = watched.getParent();
+        if (watchService == null
+                || parent == null
+                || !java.nio.file.Files.isDirectory(parent)
+                || isPolled(parent)) {
+            return null;
+        }
+        Registration registration = new Registration(path, watched);
+        try {
+            watchDirectory(parent, registration);
+            if (java.nio.file.Files.isDirectory(watched)) {
+                watchDirectory(watched, registration);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not watch " + watched + ", will poll it instead", e);
+            release(registration);
+            return null;
+        }
+        registrations.put(watched, registration);
+        return registration;
+    }
+
+    private boolean isPolled(Path directory) {
+        try {
+            String type = java.nio.file.Files.getFileStore(directory).type();
+            return type != null && polledFileSystems.contains(type.toLowerCase(Locale.ENGLISH));
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private void watchDirectory(Path directory, Registration registration) throws IOException {
+        WatchedDirectory watched = directories.get(directory);
+        if (watched == null || !watched.key.isValid()) {
+            WatchKey key =
+                    directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            WatchedDirectory previous = watched;
+            watched = new WatchedDirectory(key);
+            if (previous != null) {
+                watched.registrations.addAll(previous.registrations);
+            }
+            directories.put(directory, watched);
+        }
+        watched.registrations.add(registration);
+        registration.directories.add(directory);
+    }
+
+    /** Stops watching the directories no longer used by any registration */
+    private void release(Registration registration) {
+        for (Path directory : registration.directories) {
+            WatchedDirectory watched = directories.get(directory);
+            if (watched != null) {
+                watched.registrations.remove(registration);
+                if (watched.registrations.isEmpty()) {
+                    watched.key.cancel();
+                    directories.remove(directory);
+                }
+            }
+        }
+        registration.directories.clear();
+    }
+
+    @Override
+    public synchronized boolean removeListener(String path, ResourceListener listener) {
+        Objects.requireNonNull(path, "Path for notification is required");
+        File file = fileExtractor.apply(path);
+        Objects.requireNonNull(file, "File to watch is required");
+        Path watched = file.toPath().toAbsolutePath().normalize();
+
+        Registration registration = registrations.get(watched);
+        if (registration != null && registration.path.equals(path)) {
+            registration.listeners.remove(listener);
+            if (registration.listeners.isEmpty()) {
+                registrations.remove(watched);
+                release(registration);
+                return true;
+            }
+            return false;
+        }
+        return super.removeListener(path, listener);
+    }
+
+    /** Returns true if the given path is watched natively, false if it's polled or not watched */
+    boolean isWatchedNatively(String path) {
+        File file = fileExtractor.apply(path);
+        Registration registration = registrations.get(file.toPath().toAbsolutePath().normalize());
+        return registration != null && registration.path.equals(path);
+    }
+
+    /** The watch thread loop, collects events and sends the notifications */
+    private void watch() {
+        long firstPending = 0;
+        try {
+            while (true) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                    firstPending = System.currentTimeMillis();
+                } else {
+                    long wait = firstPending + coalesceDelay - System.currentTimeMillis();
+                    key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : null;
+                }
+                if (key != null) {
+                    try {
+                        process(key);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Error processing file system events", e);
+                    }
+                }
+                if (!pending.isEmpty()
+                        && System.currentTimeMillis() - firstPending >= coalesceDelay) {
+                    flush();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            LOGGER.log(Level.FINE, "File system watcher stopped");
+        }
+    }
+
+    private void process(WatchKey key) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow(directory);
+                continue;
+            }
+            Path child = directory.resolve((Path) event.context());
+            Kind kind = toKind(event.kind());
+
+            // the child itself is watched
+            Registration self = registrations.get(child);
+            if (self != null) {
+                if (kind == Kind.ENTRY_CREATE && java.nio.file.Files.isDirectory(child)) {
+                    directoryCreated(self);
+                }
+                pending(self).self(kind);
+            }
+
+            // the directory contents are watched
+            Registration contents = registrations.get(directory);
+            if (contents != null) {
+                pending(contents).child(child.getFileName().toString(), kind);
+            }
+        }
+        if (!key.reset()) {
+            directoryRemoved(directory, key);
+        }
+    }
+
+    /** A watched directory got created, watch its contents too, reporting the current ones */
+    private void directoryCreated(Registration registration) {
+        synchronized (this) {
+            if (registrations.get(registration.file) != registration) {
+                return;
+            }
+            try {
+                watchDirectory(registration.file, registration);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Could not watch " + registration.file, e);
+                return;
+            }
+        }
+        // files might have been created before the directory got watched
+        try (DirectoryStream<Path> stream =
+                java.nio.file.Files.newDirectoryStream(registration.file)) {
+            PendingChange change = pending(registration);
+            for (Path child : stream) {
+                change.child(child.getFileName().toString(), Kind.ENTRY_CREATE);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not list " + registration.file, e);
+        }
+    }
+
+    /**
+     * A watched directory is gone. Registrations watching its contents will be notified by its
+     * parent, those watching a child of it are moved to polling, as it's not possible to tell when
+     * it's going to be created again
+     */
+    private synchronized void directoryRemoved(Path directory, WatchKey key) {
+        WatchedDirectory watched = directories.get(directory);
+        if (watched == null || watched.key != key) {
+            return;
+        }
+        directories.remove(directory);
+        for (Registration registration : new ArrayList<>(watched.registrations)) {
+            if (registration.file.equals(directory)) {
+                registration.directories.remove(directory);
+            } else if (registrations.remove(registration.file, registration)) {
+                release(registration);
+                for (ResourceListener listener : registration.listeners) {
+                    super.addListener(registration.path, listener);
+                }
+            }
+        }
+    }
+
+    /** Events got lost, notify all the registrations depending on the directory */
+    private void overflow(Path directory) {
+        LOGGER.fine("Native file system events lost for " + directory);
+        for (Registration registration : registrations.values()) {
+            if (registration.file.equals(directory)
+                    || directory.equals(registration.file.getParent())) {
+                pending(registration).self(Kind.ENTRY_MODIFY);
+            }
+        }
+    }
+
+    private PendingChange pending(Registration registration) {
+        return pending.computeIfAbsent(registration, r -> new PendingChange());
+    }
+
+    private Kind toKind(WatchEvent.Kind<?> kind) {
+        if (kind == ENTRY_CREATE) {
+            return Kind.ENTRY_CREATE;
+        } else if (kind == ENTRY_DELETE) {
+            return Kind.ENTRY_DELETE;
+        } else {
+            return Kind.ENTRY_MODIFY;
+        }
+    }
+
+    /** Sends the notifications for the collected changes */
+    private void flush() {
+        for (Iterator<Map.Entry<Registration, PendingChange>> it = pending.entrySet().iterator();
+                it.hasNext(); ) {
+            Map.Entry<Registration, PendingChange> entry = it.next();
+            it.remove();
+            ResourceNotification notification = toNotification(entry.getKey(), entry.getValue());
+            if (notification != null) {
+                notify(entry.getKey(), notification);
+            }
+        }
+    }
+
+    /**
+     * Turns the collected changes into a notification, following the same rules as the polling
+     * watcher: directories are watched for their contents, so their own creation is not notified
+     * unless they have contents, and changes to their timestamp are ignored
+     */
+    private ResourceNotification toNotification(Registration registration, PendingChange change) {
+        boolean directory =
+                java.nio.file.Files.isDirectory(registration.file) || !change.children.isEmpty();
+        Kind kind = change.self;
+        if (directory) {
+            if (change.children.isEmpty() && kind != Kind.ENTRY_DELETE) {
+                return null;
+            }
+            if (kind == null) {
+                kind = Kind.ENTRY_MODIFY;
+            }
+        } else if (kind == null) {
+            return null;
+        }
+        File file = registration.file.toFile();
+        long timestamp = file.exists() ? file.lastModified() : System.currentTimeMillis();
+        List<Event> events =
+                directory
+                        ? ResourceNotification.delta(
+                                file,
+                                change.children(Kind.ENTRY_CREATE),
+                                change.children(Kind.ENTRY_DELETE),
+                                change.children(Kind.ENTRY_MODIFY))
+                        : Collections.emptyList();
+        return new ResourceNotification(registration.path, kind, timestamp, events);
+    }
+
+    private void notify(Registration registration, ResourceNotification notification) {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(
+                    String.format(
+                            "Notifying %s change on %s with %,d events",
+                            notification.getKind(),
+                            registration.path,
+                            notification.events().size()));
+        }
+        // do not call listeners on the watch thread, they may take a
+        // considerable amount of time to process the events
+        try {
+            notifier.execute(
+                    () -> {
+                        for (ResourceListener listener : registration.listeners) {
+                            try {
+                                listener.changed(notification);
+                            } catch (Throwable t) {
+                                Logger logger =
+                                        Logger.getLogger(
+                                                listener.getClass().getPackage().getName());
+                                logger.log(
+                                        Level.FINE,
+                                        "Unable to notify " + registration + ":" + t.getMessage(),
+                                        t);
+                            }
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            // the watcher is being destroyed, nobody is listening anymore
+            LOGGER.log(Level.FINE, "Dropping notification for " + registration.path, e);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (watchService != null) {
+            watchService.close();
+        }
+        notifier.shutdown();
+        super.destroy();
+    }
+}
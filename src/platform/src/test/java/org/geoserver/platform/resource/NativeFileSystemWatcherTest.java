@@ -0,0 +1,214 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform.resource;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.geoserver.platform.resource.ResourceNotification.Event;
+import org.geoserver.platform.resource.ResourceNotification.Kind;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NativeFileSystemWatcherTest {
+
+    /** Github action VMs are slow and erratic, give notifications some time to show up */
+    private static final int MAX_WAIT_SEC = 20;
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    File root;
+
+    NativeFileSystemWatcher watcher;
+
+    BlockingQueue<ResourceNotification> notifications = new LinkedBlockingQueue<>();
+
+    ResourceListener listener = notifications::add;
+
+    @Before
+    public void setup() throws IOException {
+        root = folder.newFolder("data");
+        watcher = new NativeFileSystemWatcher(path -> Paths.toFile(root, path));
+        watcher.setCoalesceDelay(200, MILLISECONDS);
+        watcher.schedule(100, MILLISECONDS);
+    }
+
+    @After
+    public void dispose() throws Exception {
+        watcher.destroy();
+    }
+
+    @Test
+    public void testFileEvents() throws Exception {
+        File file = new File(root, "test.properties");
+        watcher.addListener("test.properties", listener);
+        assertTrue(watcher.isWatchedNatively("test.properties"));
+
+        write(file, "a=1");
+        ResourceNotification n = notifications.poll(MAX_WAIT_SEC, SECONDS);
+        assertNotNull(n);
+        assertEquals("test.properties", n.getPath());
+        assertEquals(Kind.ENTRY_CREATE, n.getKind());
+        assertTrue(n.events().isEmpty());
+
+        write(file, "a=2");
+        n = notifications.poll(MAX_WAIT_SEC, SECONDS);
+        assertNotNull(n);
+        assertEquals(Kind.ENTRY_MODIFY, n.getKind());
+
+        assertTrue(file.delete());
+        n = notifications.poll(MAX_WAIT_SEC, SECONDS);
+        assertNotNull(n);
+        assertEquals(Kind.ENTRY_DELETE, n.getKind());
+    }
+
+    @Test
+    public void testDirectoryEvents() throws Exception {
+        File directory = new File(root, "styles");
+        assertTrue(directory.mkdir());
+        watcher.addListener("styles", listener);
+
+        write(new File(directory, "a.sld"), "a");
+        ResourceNotification n = notifications.poll(MAX_WAIT_SEC, SECONDS);
+        assertNotNull(n);
+        assertEquals("styles", n.getPath());
+        assertEquals(Kind.ENTRY_MODIFY, n.getKind());
+        assertEquals(1, n.events().size());
+        Event event = n.events().get(0);
+        assertEquals("a.sld", event.getPath());
+        assertEquals(Kind.ENTRY_CREATE, event.getKind());
+
+        assertTrue(new File(directory, "a.sld").delete());
+        n = notifications.poll(MAX_WAIT_SEC, SECONDS);
+        assertNotNull(n);
+        assertEquals(1, n.events().size());
+        assertEquals(Kind.ENTRY_DELETE, n.events().get(0).getKind());
+    }
+
+    @Test
+    public void testDirectoryCreated() throws Exception {
+        File directory = new File(root, "workspaces");
+        watcher.addListener("workspaces", listener);
+
+        // empty directories are not notified, as the watch is on the contents
+        assertTrue(directory.mkdir());
+        assertNull(notifications.poll(500, MILLISECONDS));
+
+        write(new File(directory, "default.xml"), "<workspace/>");
+        ResourceNotification n = notifications.poll(MAX_WAIT_SEC, SECONDS);
+        assertNotNull(n);
+        assertEquals(1, n.events().size());
+        assertEquals("default.xml", n.events().get(0).getPath());
+        assertEquals(Kind.ENTRY_CREATE, n.events().get(0).getKind());
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        File directory = new File(root, "layers");
+        assertTrue(directory.mkdir());
+        watcher.setCoalesceDelay(1, SECONDS);
+        watcher.addListener("layers", listener);
+
+        File file = new File(directory, "layer.xml");
+        for (int i = 0; i < 10; i++) {
+            write(file, "<layer>" + i + "</layer>");
+        }
+        write(new File(directory, "temp.xml"), "temp");
+        assertTrue(new File(directory, "temp.xml").delete());
+
+        ResourceNotification n = notifications.poll(MAX_WAIT_SEC, SECONDS);
+        assertNotNull(n);
+        // a single event for the file, the temporary one cancels out
+        assertEquals(1, n.events().size());
+        assertEquals("layer.xml", n.events().get(0).getPath());
+        assertEquals(Kind.ENTRY_CREATE, n.events().get(0).getKind());
+        assertNull(notifications.poll(1500, MILLISECONDS));
+    }
+
+    @Test
+    public void testMissingParentPolled() throws Exception {
+        watcher.addListener("missing/test.properties", listener);
+        assertFalse(watcher.isWatchedNatively("missing/test.properties"));
+
+        // the poller picks it up
+        File file = new File(root, "missing/test.properties");
+        assertTrue(file.getParentFile().mkdir());
+        write(file, "a=1");
+        ResourceNotification n = notifications.poll(MAX_WAIT_SEC, SECONDS);
+        assertNotNull(n);
+        assertEquals("missing/test.properties", n.getPath());
+
+        assertTrue(watcher.removeListener("missing/test.properties", listener));
+    }
+
+    @Test
+    public void testNotificationOrder() throws Exception {
+        File file = new File(root, "test.properties");
+        CountDownLatch created = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        watcher.addListener(
+                "test.properties",
+                n -> {
+                    // hold the first notification until the next change has been detected
+                    if (n.getKind() == Kind.ENTRY_CREATE) {
+                        created.countDown();
+                        try {
+                            release.await(MAX_WAIT_SEC, SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    notifications.add(n);
+                });
+
+        write(file, "a=1");
+        assertTrue(created.await(MAX_WAIT_SEC, SECONDS));
+        assertTrue(file.delete());
+        // give the watcher time to pick up the deletion while the listener is busy
+        Thread.sleep(1000);
+        release.countDown();
+
+        ResourceNotification n = notifications.poll(MAX_WAIT_SEC, SECONDS);
+        assertNotNull(n);
+        assertEquals(Kind.ENTRY_CREATE, n.getKind());
+        n = notifications.poll(MAX_WAIT_SEC, SECONDS);
+        assertNotNull(n);
+        assertEquals(Kind.ENTRY_DELETE, n.getKind());
+    }
+
+    @Test
+    public void testRemoveListener() throws Exception {
+        File directory = new File(root, "styles");
+        assertTrue(directory.mkdir());
+        watcher.addListener("styles", listener);
+        // the directory and its parent
+        assertEquals(2, watcher.directories.size());
+        assertTrue(watcher.removeListener("styles", listener));
+        assertFalse(watcher.isWatchedNatively("styles"));
+        assertTrue(watcher.directories.isEmpty());
+
+        write(new File(directory, "a.sld"), "a");
+        assertNull(notifications.poll(1, SECONDS));
+    }
+
+    private void write(File file, String contents) throws IOException {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
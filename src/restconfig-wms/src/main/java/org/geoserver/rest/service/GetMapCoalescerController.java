@@ -0,0 +1,46 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.geoserver.rest.RestBaseController;
+import org.geoserver.wms.GetMapCoalescer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/** Reports the statistics of the coalescing of identical concurrent GetMap requests */
+@RestController
+@RequestMapping(
+        path = RestBaseController.ROOT_PATH + "/services/wms/getmapcoalescer",
+        produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+public class GetMapCoalescerController extends RestBaseController {
+
+    private final GetMapCoalescer coalescer;
+
+    @Autowired
+    public GetMapCoalescerController(@Qualifier("wmsGetMapCoalescer") GetMapCoalescer coalescer) {
+        this.coalescer = coalescer;
+    }
+
+    @GetMapping
+    public Map<String, Map<String, Object>> getMapCoalescerGet() {
+        GetMapCoalescer.Statistics statistics = coalescer.getStatistics();
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("rendered", statistics.getRendered());
+        values.put("coalesced", statistics.getCoalesced());
+        values.put("unshareable", statistics.getUnshareable());
+        values.put("inFlight", statistics.getInFlight());
+
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        result.put("getMapCoalescer", values);
+        return result;
+    }
+}
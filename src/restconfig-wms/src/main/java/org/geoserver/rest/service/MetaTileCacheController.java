@@ -0,0 +1,57 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.geoserver.rest.RestBaseController;
+import org.geoserver.wms.map.QuickTileCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/** Reports the usage statistics of the WMS meta-tile cache, and allows to empty it */
+@RestController
+@RequestMapping(
+        path = RestBaseController.ROOT_PATH + "/services/wms/metatilecache",
+        produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+public class MetaTileCacheController extends RestBaseController {
+
+    private final QuickTileCache cache;
+
+    @Autowired
+    public MetaTileCacheController(@Qualifier("metaTileCache") QuickTileCache cache) {
+        this.cache = cache;
+    }
+
+    @GetMapping
+    public Map<String, Map<String, Object>> metaTileCacheGet() {
+        QuickTileCache.Statistics statistics = cache.getStatistics();
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("hits", statistics.getHits());
+        values.put("misses", statistics.getMisses());
+        values.put("hitRate", statistics.getHitRate());
+        values.put("evictions", statistics.getEvictions());
+        values.put("coalesced", statistics.getCoalesced());
+        values.put("size", statistics.getSize());
+        values.put("memoryUsage", statistics.getMemoryUsage());
+        values.put("maxMemory", statistics.getMaxMemory());
+        values.put("building", statistics.getBuilding());
+
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        result.put("metaTileCache", values);
+        return result;
+    }
+
+    @DeleteMapping
+    public void metaTileCacheDelete() {
+        cache.clear();
+    }
+}
@@ -0,0 +1,28 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.sf.json.JSON;
+import net.sf.json.JSONObject;
+import org.geoserver.rest.RestBaseController;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.junit.Test;
+
+public class GetMapCoalescerControllerTest extends GeoServerSystemTestSupport {
+
+    @Test
+    public void testGetAsJSON() throws Exception {
+        JSON json = getAsJSON(RestBaseController.ROOT_PATH + "/services/wms/getmapcoalescer.json");
+        assertTrue(json instanceof JSONObject);
+        JSONObject stats = ((JSONObject) json).getJSONObject("getMapCoalescer");
+        assertTrue(stats.containsKey("rendered"));
+        assertTrue(stats.containsKey("coalesced"));
+        assertTrue(stats.containsKey("unshareable"));
+        assertEquals(0, stats.getInt("inFlight"));
+    }
+}
@@ -0,0 +1,41 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.sf.json.JSON;
+import net.sf.json.JSONObject;
+import org.geoserver.rest.RestBaseController;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.geoserver.wms.WMS;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class MetaTileCacheControllerTest extends GeoServerSystemTestSupport {
+
+    @Test
+    public void testGetAsJSON() throws Exception {
+        JSON json = getAsJSON(RestBaseController.ROOT_PATH + "/services/wms/metatilecache.json");
+        assertTrue(json instanceof JSONObject);
+        JSONObject stats = ((JSONObject) json).getJSONObject("metaTileCache");
+        assertTrue(stats.containsKey("hits"));
+        assertTrue(stats.containsKey("misses"));
+        assertTrue(stats.containsKey("evictions"));
+        assertTrue(stats.containsKey("coalesced"));
+        assertEquals(WMS.META_TILE_CACHE_MAX_MEMORY_DEFAULT * 1024L, stats.getLong("maxMemory"));
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        MockHttpServletResponse response =
+                deleteAsServletResponse(
+                        RestBaseController.ROOT_PATH + "/services/wms/metatilecache");
+        assertEquals(200, response.getStatus());
+        JSON json = getAsJSON(RestBaseController.ROOT_PATH + "/services/wms/metatilecache.json");
+        assertEquals(0, ((JSONObject) json).getJSONObject("metaTileCache").getLong("size"));
+    }
+}
@@ -0,0 +1,59 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest.catalog;
+
+import com.thoughtworks.xstream.XStream;
+import java.lang.reflect.Type;
+import java.util.List;
+import org.geoserver.catalog.DataStoreLifecycleManager;
+import org.geoserver.catalog.DataStoreLifecycleManager.DataStoreStatus;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.rest.RestBaseController;
+import org.geoserver.rest.RestException;
+import org.geoserver.rest.converters.XStreamMessageConverter;
+import org.geoserver.rest.wrapper.RestWrapper;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/** Reports the warm up, usage and validation status of the data stores */
+@RestController
+@RequestMapping(
+        path = RestBaseController.ROOT_PATH + "/about/datastores",
+        produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+public class DataStoreLifecycleController extends RestBaseController {
+
+    @GetMapping
+    protected RestWrapper<DataStoreStatus> statusGet() throws Exception {
+        DataStoreLifecycleManager manager =
+                GeoServerExtensions.bean(DataStoreLifecycleManager.class);
+        if (manager == null) {
+            throw new RestException(
+                    "Data store lifecycle manager not available", HttpStatus.NOT_FOUND);
+        }
+        return wrapList(manager.getStatus(), DataStoreStatus.class);
+    }
+
+    @Override
+    public void configurePersister(XStreamPersister persister, XStreamMessageConverter converter) {
+        XStream xs = persister.getXStream();
+        xs.allowTypes(new Class[] {DataStoreStatus.class});
+        xs.alias("dataStores", List.class);
+        xs.alias("dataStore", DataStoreStatus.class);
+    }
+
+    @Override
+    public boolean supports(
+            MethodParameter methodParameter,
+            Type targetType,
+            Class<? extends HttpMessageConverter<?>> converterType) {
+        return DataStoreStatus.class.isAssignableFrom(methodParameter.getParameterType());
+    }
+}
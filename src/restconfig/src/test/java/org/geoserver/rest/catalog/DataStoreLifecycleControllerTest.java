@@ -0,0 +1,41 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest.catalog;
+
+import static org.custommonkey.xmlunit.XMLAssert.assertXpathEvaluatesTo;
+import static org.junit.Assert.assertTrue;
+
+import net.sf.json.JSON;
+import net.sf.json.JSONObject;
+import org.geoserver.data.test.MockData;
+import org.geoserver.rest.RestBaseController;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class DataStoreLifecycleControllerTest extends GeoServerSystemTestSupport {
+
+    private static final String BASEPATH = RestBaseController.ROOT_PATH + "/about/datastores";
+
+    @Test
+    public void testGetXML() throws Exception {
+        getCatalog()
+                .getResourcePool()
+                .getDataStore(
+                        getCatalog()
+                                .getDataStoreByName(MockData.CITE_PREFIX, MockData.CITE_PREFIX));
+
+        Document dom = getAsDOM(BASEPATH + ".xml");
+        String cite = "/dataStores/dataStore[workspace='cite' and name='cite']";
+        assertXpathEvaluatesTo("1", "count(" + cite + ")", dom);
+        assertXpathEvaluatesTo("true", cite + "/cached", dom);
+    }
+
+    @Test
+    public void testGetJSON() throws Exception {
+        JSON json = getAsJSON(BASEPATH + ".json");
+        assertTrue(((JSONObject) json).getJSONObject("dataStores").has("dataStore"));
+    }
+}
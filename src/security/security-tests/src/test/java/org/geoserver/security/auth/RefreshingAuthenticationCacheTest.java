@@ -0,0 +1,179 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.auth;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+/** Unit tests for the stale-while-revalidate AuthenticationCache implementation. */
+public class RefreshingAuthenticationCacheTest extends BaseAuthenticationCacheTest {
+
+    private static final int TIME_GRACE = 10;
+
+    private static final int REFRESH_LIMIT = 1;
+
+    @Override
+    protected AuthenticationCache createAuthenticationCache() {
+        return new RefreshingAuthenticationCacheImpl(
+                MAX_ENTRIES, TIME_IDLE, TIME_LIVE, TIME_GRACE, 2, REFRESH_LIMIT);
+    }
+
+    @After
+    public void destroyCache() {
+        ((RefreshingAuthenticationCacheImpl) cache).destroy();
+    }
+
+    @Test
+    public void testServeStaleWhileRefreshing() throws Exception {
+        Authentication auth = new UsernamePasswordAuthenticationToken("user", "password");
+        Authentication refreshed = new UsernamePasswordAuthenticationToken("user", "password");
+        AtomicInteger calls = new AtomicInteger();
+        cache.put(
+                SAMPLE_FILTER,
+                SAMPLE_CACHE_KEY,
+                auth,
+                null,
+                null,
+                () -> {
+                    calls.incrementAndGet();
+                    return refreshed;
+                });
+
+        // past the idle time the stale entry is still served, and refreshed in background
+        Thread.sleep((TIME_IDLE + 1) * 1000);
+        assertSame(auth, cache.get(SAMPLE_FILTER, SAMPLE_CACHE_KEY));
+        await().atMost(5, SECONDS)
+                .until(() -> cache.get(SAMPLE_FILTER, SAMPLE_CACHE_KEY) == refreshed);
+        assertEquals(1, calls.get());
+
+        RefreshingAuthenticationCacheImpl.Statistics stats = getStatistics();
+        assertTrue(stats.getStaleHits() >= 1);
+        assertEquals(1, stats.getRefreshes());
+        assertEquals(0, stats.getRefreshFailures());
+    }
+
+    @Test
+    public void testFailedRefreshRemovesEntry() throws Exception {
+        Authentication auth = new UsernamePasswordAuthenticationToken("user", "password");
+        cache.put(
+                SAMPLE_FILTER,
+                SAMPLE_CACHE_KEY,
+                auth,
+                null,
+                null,
+                () -> {
+                    throw new BadCredentialsException("Password changed");
+                });
+
+        Thread.sleep((TIME_IDLE + 1) * 1000);
+        assertSame(auth, cache.get(SAMPLE_FILTER, SAMPLE_CACHE_KEY));
+        await().atMost(5, SECONDS).until(() -> getStatistics().getRefreshFailures() == 1);
+        assertNull(cache.get(SAMPLE_FILTER, SAMPLE_CACHE_KEY));
+    }
+
+    @Test
+    public void testSingleRefreshPerEntry() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Authentication auth = new UsernamePasswordAuthenticationToken("user", "password");
+        Callable<Authentication> refresher =
+                () -> {
+                    calls.incrementAndGet();
+                    latch.await();
+                    return new UsernamePasswordAuthenticationToken("user", "password");
+                };
+        cache.put(SAMPLE_FILTER, SAMPLE_CACHE_KEY, auth, null, null, refresher);
+        cache.put(SAMPLE_FILTER, OTHER_CACHE_KEY, auth, null, null, refresher);
+
+        Thread.sleep((TIME_IDLE + 1) * 1000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Authentication>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> cache.get(SAMPLE_FILTER, SAMPLE_CACHE_KEY)));
+            }
+            for (Future<Authentication> future : futures) {
+                assertSame(auth, future.get());
+            }
+            // the other entry cannot be refreshed, the refresh limit of the filter is reached
+            assertSame(auth, cache.get(SAMPLE_FILTER, OTHER_CACHE_KEY));
+            await().atMost(5, SECONDS).until(() -> calls.get() == 1);
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+        }
+        await().atMost(5, SECONDS).until(() -> getStatistics().getRefreshes() == 1);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testRefreshTimeout() throws Exception {
+        // no grace time, waits for the refresh as soon as the entry expires
+        RefreshingAuthenticationCacheImpl noGrace =
+                new RefreshingAuthenticationCacheImpl(
+                        MAX_ENTRIES, TIME_IDLE, TIME_LIVE, 0, 2, REFRESH_LIMIT, 1);
+        CountDownLatch latch = new CountDownLatch(1);
+        try {
+            Authentication auth = new UsernamePasswordAuthenticationToken("user", "password");
+            noGrace.put(
+                    SAMPLE_FILTER,
+                    SAMPLE_CACHE_KEY,
+                    auth,
+                    null,
+                    null,
+                    () -> {
+                        latch.await();
+                        return null;
+                    });
+
+            Thread.sleep((TIME_IDLE + 1) * 1000);
+            // the refresh hangs, the expired entry is not served after the timeout
+            long start = System.currentTimeMillis();
+            assertNull(noGrace.get(SAMPLE_FILTER, SAMPLE_CACHE_KEY));
+            assertTrue(System.currentTimeMillis() - start >= 1000);
+            assertEquals(0, noGrace.getStatistics().getStaleHits());
+            assertEquals(1, noGrace.getStatistics().getMisses());
+
+            // once the refresh fails the entry is gone
+            latch.countDown();
+            await().atMost(5, SECONDS)
+                    .until(() -> noGrace.getStatistics().getRefreshFailures() == 1);
+            assertNull(noGrace.get(SAMPLE_FILTER, SAMPLE_CACHE_KEY));
+        } finally {
+            latch.countDown();
+            noGrace.destroy();
+        }
+    }
+
+    @Test
+    public void testNoRefresherExpires() throws Exception {
+        putAuthenticationInCache();
+        Thread.sleep((TIME_IDLE + 1) * 1000);
+        assertNull(cache.get(SAMPLE_FILTER, SAMPLE_CACHE_KEY));
+        assertEquals(1, getStatistics().getMisses());
+    }
+
+    private RefreshingAuthenticationCacheImpl.Statistics getStatistics() {
+        return ((RefreshingAuthenticationCacheImpl) cache).getStatistics();
+    }
+}
@@ -9,6 +9,9 @@
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.ResourceInfo;
@@ -23,7 +26,9 @@
 import org.junit.Before;
 import org.junit.Test;
 import org.opengis.filter.Filter;
+import org.springframework.security.authentication.TestingAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 
 public class DefaultResourceAccessManagerAuthTest extends AbstractAuthorizationTest {
 
@@ -175,6 +180,68 @@ public void testOverride() throws Exception {
         assertFalse(canAccess(manager, milUser, toppWs, AccessMode.READ));
     }
 
+    @Test
+    public void testDecisionCacheSharedByRoles() throws Exception {
+        DefaultResourceAccessManager manager = buildAccessManager("override-ws.properties");
+        assertTrue(canAccess(manager, roUser, statesLayer, AccessMode.READ));
+        assertEquals(1, manager.decisionCache.size());
+
+        // a different user with the same roles reuses the decision
+        Authentication otherReader =
+                new TestingAuthenticationToken(
+                        "ro2",
+                        "secret",
+                        Arrays.asList(new GrantedAuthority[] {new GeoServerRole("READER")}));
+        assertTrue(canAccess(manager, otherReader, statesLayer, AccessMode.READ));
+        assertEquals(1, manager.decisionCache.size());
+
+        // different roles, different decision
+        assertFalse(canAccess(manager, milUser, statesLayer, AccessMode.READ));
+        assertEquals(2, manager.decisionCache.size());
+    }
+
+    @Test
+    public void testDecisionCacheRulesChange() throws Exception {
+        Properties props = new Properties();
+        props.load(getClass().getResourceAsStream("wideOpen.properties"));
+        DataAccessRuleDAO dao =
+                new MemoryDataAccessRuleDAO(catalog, props) {
+                    @Override
+                    protected void checkPropertyFile(boolean force) {
+                        // keep the modification time set by addRule
+                    }
+                };
+        DefaultResourceAccessManager manager = new DefaultResourceAccessManager(dao, catalog);
+        manager.setGroupsCache(new LayerGroupContainmentCache(catalog));
+        assertTrue(canAccess(manager, roUser, statesLayer, AccessMode.READ));
+        assertEquals(1, manager.decisionCache.size());
+
+        dao.addRule(new DataAccessRule("topp", "states", AccessMode.READ, "MILITARY"));
+        assertFalse(canAccess(manager, roUser, statesLayer, AccessMode.READ));
+        assertTrue(canAccess(manager, milUser, statesLayer, AccessMode.READ));
+    }
+
+    @Test
+    public void testDecisionCacheContainmentChange() throws Exception {
+        AtomicLong version = new AtomicLong();
+        DefaultResourceAccessManager manager = buildAccessManager("override-ws.properties");
+        manager.setGroupsCache(
+                new LayerGroupContainmentCache(catalog) {
+                    @Override
+                    public long getVersion() {
+                        return version.get();
+                    }
+                });
+        assertTrue(canAccess(manager, roUser, statesLayer, AccessMode.READ));
+        assertFalse(canAccess(manager, milUser, statesLayer, AccessMode.READ));
+        assertEquals(2, manager.decisionCache.size());
+
+        // the containment cache got updated after the catalog listeners cleared the decisions
+        version.incrementAndGet();
+        assertTrue(canAccess(manager, roUser, statesLayer, AccessMode.READ));
+        assertEquals(1, manager.decisionCache.size());
+    }
+
     @Test
     public void testWmsNamedTreeAMilitaryOnly() throws Exception {
         setupRequestThreadLocal("WMS");
@@ -0,0 +1,225 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
+import org.geotools.util.logging.Logging;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Runs the data access operations of multi-query GetFeature requests, such as the feature counts,
+ * concurrently, on a bounded pool of threads shared by all requests. The number of operations
+ * running at the same time against a single store is limited as well, to avoid overloading it. The
+ * tasks exceeding the per store limit wait in a queue, without holding a pool thread.
+ *
+ * <p>The pool size is controlled by the {@link #THREADS_KEY} system/environment variable or servlet
+ * context parameter (defaults to the number of available processors, a value lower than 2 disables
+ * concurrent execution), while the per store limit is controlled by {@link #STORE_THREADS_KEY}
+ * (defaults to 4).
+ */
+class ConcurrentQueryExecutor {
+
+    static final Logger LOGGER = Logging.getLogger(ConcurrentQueryExecutor.class);
+
+    /** Number of threads running the queries */
+    static final String THREADS_KEY = "GEOSERVER_WFS_QUERY_THREADS";
+
+    /** Maximum number of queries running concurrently against the same store */
+    static final String STORE_THREADS_KEY = "GEOSERVER_WFS_QUERY_STORE_THREADS";
+
+    static final int DEFAULT_STORE_THREADS = 4;
+
+    /** The shared executor, package visible for testing purposes */
+    static volatile ConcurrentQueryExecutor INSTANCE;
+
+    private final ExecutorService executor;
+
+    private final int storeThreads;
+
+    private final ConcurrentHashMap<String, StoreQueue> storeQueues = new ConcurrentHashMap<>();
+
+    /**
+     * @param threads number of threads in the pool, lower than 2 to run the tasks in the calling
+     *     thread
+     * @param storeThreads maximum number of tasks running at the same time against the same store
+     */
+    ConcurrentQueryExecutor(int threads, int storeThreads) {
+        this.storeThreads = Math.max(1, storeThreads);
+        if (threads > 1) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("WFSQuery-");
+            threadFactory.setDaemon(true);
+            ThreadPoolExecutor pool =
+                    new ThreadPoolExecutor(
+                            threads,
+                            threads,
+                            60,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(),
+                            threadFactory);
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /** Returns the shared executor, configured from the environment */
+    static ConcurrentQueryExecutor get() {
+        if (INSTANCE == null) {
+            synchronized (ConcurrentQueryExecutor.class) {
+                if (INSTANCE == null) {
+                    int threads =
+                            getConfiguredValue(
+                                    THREADS_KEY, Runtime.getRuntime().availableProcessors());
+                    int storeThreads = getConfiguredValue(STORE_THREADS_KEY, DEFAULT_STORE_THREADS);
+                    INSTANCE = new ConcurrentQueryExecutor(threads, storeThreads);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private static int getConfiguredValue(String key, int defaultValue) {
+        String value = GeoServerExtensions.getProperty(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid " + key + " value: " + value);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns true if the tasks are run concurrently, false if they are run in the caller thread
+     */
+    boolean isConcurrent() {
+        return executor != null;
+    }
+
+    /**
+     * Submits a task accessing the given store. If concurrent execution is disabled the task is run
+     * right away, in the calling thread.
+     *
+     * @param storeId the identifier of the store accessed by the task, used to limit the number of
+     *     concurrent tasks against it
+     */
+    <T> Future<T> submit(String storeId, Callable<T> task) {
+        if (executor == null) {
+            FutureTask<T> future = new FutureTask<>(task);
+            future.run();
+            return future;
+        }
+        ThreadLocalsTransfer threadLocalTransfer = new ThreadLocalsTransfer();
+        FutureTask<T> future =
+                new FutureTask<>(
+                        () -> {
+                            threadLocalTransfer.apply();
+                            try {
+                                return task.call();
+                            } finally {
+                                threadLocalTransfer.cleanup();
+                            }
+                        });
+        if (storeId == null) {
+            executor.execute(future);
+        } else {
+            storeQueues.computeIfAbsent(storeId, id -> new StoreQueue()).submit(future);
+        }
+        return future;
+    }
+
+    /**
+     * Hands the tasks of a store over to the pool, keeping at most {@link #storeThreads} of them in
+     * the pool at any time, while the others wait in the queue. This way the pool threads are never
+     * blocked waiting for a busy store, and can run the tasks of the other stores meanwhile.
+     */
+    private class StoreQueue {
+
+        /** The tasks waiting for a slot, guarded by this */
+        private final Queue<Runnable> pending = new ArrayDeque<>();
+
+        /** The number of tasks handed over to the pool, guarded by this */
+        private int running;
+
+        void submit(Runnable task) {
+            synchronized (this) {
+                if (running >= storeThreads) {
+                    pending.add(task);
+                    return;
+                }
+                running++;
+            }
+            dispatch(task);
+        }
+
+        private void dispatch(Runnable task) {
+            try {
+                executor.execute(
+                        () -> {
+                            try {
+                                task.run();
+                            } finally {
+                                next();
+                            }
+                        });
+            } catch (RuntimeException e) {
+                next();
+                throw e;
+            }
+        }
+
+        /** Called when a task is done, hands over the next one, if any */
+        private void next() {
+            Runnable task;
+            synchronized (this) {
+                task = pending.poll();
+                if (task == null) {
+                    running--;
+                    return;
+                }
+            }
+            dispatch(task);
+        }
+    }
+
+    /**
+     * Waits for the result of a task submitted to this executor, rethrowing its exceptions as IO or
+     * runtime exceptions
+     */
+    static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the query results", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
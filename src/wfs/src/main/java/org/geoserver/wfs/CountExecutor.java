@@ -6,6 +6,7 @@
 package org.geoserver.wfs;
 
 import java.io.IOException;
+import org.geoserver.catalog.FeatureTypeInfo;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
 
@@ -26,11 +27,24 @@ class CountExecutor {
 
     int providedCount = COUNT_UNSET;
 
+    /** The feature type being queried, if known */
+    FeatureTypeInfo typeInfo;
+
+    /** The cache holding the counts computed by previous requests, if any */
+    FeatureCountCache cache;
+
     public CountExecutor(FeatureSource source, Query query) {
         this.source = source;
         this.query = query;
     }
 
+    public CountExecutor(
+            FeatureSource source, Query query, FeatureTypeInfo typeInfo, FeatureCountCache cache) {
+        this(source, query);
+        this.typeInfo = typeInfo;
+        this.cache = cache;
+    }
+
     public CountExecutor(int providedCount) {
         this.providedCount = providedCount;
     }
@@ -41,6 +55,9 @@ public int getCount() throws IOException {
         } else {
             // make sure we get a count by getting a feature colleciton
             // FeatureSource.getCount(...) can return -1
+            if (cache != null) {
+                return cache.getCount(typeInfo, query, () -> source.getFeatures(query).size());
+            }
             return source.getFeatures(query).size();
         }
     }
@@ -48,4 +65,9 @@ public int getCount() throws IOException {
     public boolean isCountSet() {
         return providedCount != COUNT_UNSET;
     }
+
+    /** Returns the identifier of the store being queried, or null if unknown */
+    public String getStoreId() {
+        return typeInfo == null || typeInfo.getStore() == null ? null : typeInfo.getStore().getId();
+    }
 }
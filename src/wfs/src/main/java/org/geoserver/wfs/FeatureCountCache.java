@@ -0,0 +1,428 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.namespace.QName;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.security.DataAccessLimits;
+import org.geoserver.security.SecureCatalogImpl;
+import org.geoserver.wfs.request.TransactionRequest;
+import org.geoserver.wfs.request.TransactionResponse;
+import org.geotools.data.Query;
+import org.geotools.feature.NameImpl;
+import org.geotools.filter.expression.InternalVolatileFunction;
+import org.geotools.filter.function.EnvFunction;
+import org.geotools.filter.visitor.DefaultFilterVisitor;
+import org.geotools.filter.visitor.SimplifyingFilterVisitor;
+import org.geotools.util.factory.Hints;
+import org.geotools.util.logging.Logging;
+import org.opengis.filter.Filter;
+import org.opengis.filter.expression.Function;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Caches the feature counts used to compute the numberMatched attribute of WFS 2.0 responses and
+ * the hits of resultType=hits requests, so that clients paging over the same filter do not run the
+ * same, possibly expensive, count over and over.
+ *
+ * <p>Counts are keyed on the feature type, the normalized query, and the data access limits of the
+ * current user. They are invalidated for the whole store when a WFS transaction modifies one of its
+ * feature types, or when the store or one of its feature types is modified or removed from the
+ * catalog. Changes made to the data outside of GeoServer cannot be tracked, so counts also expire
+ * after a configurable time to live.
+ *
+ * <p>The time to live, in seconds, is controlled by the {@link #TTL_KEY} system/environment
+ * variable or servlet context parameter, and defaults to zero, which disables the cache. The
+ * maximum number of cached counts is controlled by {@link #SIZE_KEY}.
+ */
+public class FeatureCountCache
+        implements TransactionCallback, CatalogListener, GeoServerLifecycleHandler {
+
+    static final Logger LOGGER = Logging.getLogger(FeatureCountCache.class);
+
+    /** Time to live of the cached counts, in seconds */
+    static final String TTL_KEY = "GEOSERVER_WFS_COUNT_CACHE_TTL";
+
+    /** Maximum number of cached counts */
+    static final String SIZE_KEY = "GEOSERVER_WFS_COUNT_CACHE_SIZE";
+
+    static final int DEFAULT_MAX_SIZE = 10000;
+
+    /** Computes a count, in case it's not found in the cache */
+    @FunctionalInterface
+    interface Counter {
+        int count() throws IOException;
+    }
+
+    private final ConcurrentHashMap<Key, Entry> counts = new ConcurrentHashMap<>();
+
+    /** Incremented on each invalidation, used to avoid caching counts computed on stale data */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** The stores modified by the transaction running in the current thread */
+    private final ThreadLocal<Set<String>> transactionStores = new ThreadLocal<>();
+
+    private final Catalog catalog;
+
+    private final SecureCatalogImpl secureCatalog;
+
+    private volatile long timeToLive;
+
+    private final int maxSize;
+
+    public FeatureCountCache(Catalog catalog, SecureCatalogImpl secureCatalog) {
+        this(
+                catalog,
+                secureCatalog,
+                getConfiguredValue(TTL_KEY, 0) * 1000L,
+                getConfiguredValue(SIZE_KEY, DEFAULT_MAX_SIZE));
+    }
+
+    /**
+     * @param catalog the catalog to listen to, used to look up the feature types modified by
+     *     transactions, can be null
+     * @param secureCatalog the secure catalog, providing the data access limits of the users, can
+     *     be null if security is not in use
+     * @param timeToLive time to live of the counts, in milliseconds, zero disables the cache
+     * @param maxSize maximum number of cached counts
+     */
+    FeatureCountCache(
+            Catalog catalog, SecureCatalogImpl secureCatalog, long timeToLive, int maxSize) {
+        this.catalog = catalog;
+        this.secureCatalog = secureCatalog;
+        this.timeToLive = timeToLive;
+        this.maxSize = maxSize;
+        if (catalog != null) {
+            catalog.addListener(this);
+        }
+    }
+
+    private static int getConfiguredValue(String key, int defaultValue) {
+        String value = GeoServerExtensions.getProperty(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid " + key + " value: " + value);
+            }
+        }
+        return defaultValue;
+    }
+
+    /** Returns true if counts are cached */
+    boolean isEnabled() {
+        return timeToLive > 0 && maxSize > 0;
+    }
+
+    /** Sets the time to live of the cached counts, in milliseconds, zero disables the cache */
+    void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+        clear();
+    }
+
+    /**
+     * Returns the count of features matched by the query against the given feature type, using the
+     * counter to compute it if not cached, or if the query cannot be cached
+     */
+    int getCount(FeatureTypeInfo info, Query query, Counter counter) throws IOException {
+        if (!isEnabled() || info == null || info.getStore() == null || !isCacheable(query)) {
+            return counter.count();
+        }
+        Key key = new Key(info.getStore().getId(), info.getId(), query, getAccessLimits(info));
+        long now = currentTime();
+        Entry entry = counts.get(key);
+        if (entry != null && entry.expires > now) {
+            return entry.count;
+        }
+        long start = generation.get();
+        int count = counter.count();
+        // negative counts are not meaningful, don't cache them
+        if (count >= 0) {
+            if (counts.size() >= maxSize) {
+                counts.clear();
+            }
+            counts.put(key, new Entry(count, now + timeToLive));
+            // the data changed while counting, the count might be stale
+            if (generation.get() != start) {
+                counts.remove(key);
+            }
+        }
+        return count;
+    }
+
+    /** Returns the current time in milliseconds, package visible for testing purposes */
+    long currentTime() {
+        return System.currentTimeMillis();
+    }
+
+    private DataAccessLimits getAccessLimits(FeatureTypeInfo info) {
+        if (secureCatalog == null) {
+            return null;
+        }
+        return secureCatalog
+                .getResourceAccessManager()
+                .getAccessLimits(SecurityContextHolder.getContext().getAuthentication(), info);
+    }
+
+    /**
+     * Joins are not cached, as they are not comparable, nor are queries whose results can change
+     * from one request to the next, like the ones using environment variables
+     */
+    private boolean isCacheable(Query query) {
+        if (query.getJoins() != null && !query.getJoins().isEmpty()) {
+            return false;
+        }
+        if (query.getFilter() == null) {
+            return true;
+        }
+        VolatileFunctionFinder finder = new VolatileFunctionFinder();
+        query.getFilter().accept(finder, null);
+        return !finder.found;
+    }
+
+    /** Drops the counts of all the feature types in the given store */
+    void invalidateStore(String storeId) {
+        generation.incrementAndGet();
+        counts.keySet().removeIf(k -> Objects.equals(k.storeId, storeId));
+    }
+
+    /** Drops all the cached counts */
+    void clear() {
+        generation.incrementAndGet();
+        counts.clear();
+    }
+
+    /** Returns the number of cached counts */
+    int size() {
+        return counts.size();
+    }
+
+    @Override
+    public TransactionRequest beforeTransaction(TransactionRequest request) throws WFSException {
+        transactionStores.remove();
+        return request;
+    }
+
+    @Override
+    public void beforeCommit(TransactionRequest request) throws WFSException {
+        // nothing to do
+    }
+
+    @Override
+    public void afterTransaction(
+            TransactionRequest request, TransactionResponse result, boolean committed) {
+        // counts computed between the change notifications and the commit would see the old
+        // data, invalidate again now that the changes are visible
+        Set<String> stores = transactionStores.get();
+        transactionStores.remove();
+        if (stores != null) {
+            stores.forEach(this::invalidateStore);
+        }
+    }
+
+    @Override
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        if (!isEnabled()) {
+            return;
+        }
+        QName name = event.getLayerName();
+        FeatureTypeInfo info =
+                name == null || catalog == null
+                        ? null
+                        : catalog.getFeatureTypeByName(
+                                new NameImpl(name.getNamespaceURI(), name.getLocalPart()));
+        if (info == null || info.getStore() == null) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Could not find the store of " + name + ", clearing all counts");
+            }
+            clear();
+            return;
+        }
+        String storeId = info.getStore().getId();
+        invalidateStore(storeId);
+        Set<String> stores = transactionStores.get();
+        if (stores == null) {
+            stores = new HashSet<>();
+            transactionStores.set(stores);
+        }
+        stores.add(storeId);
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) {
+        // a new resource has no cached counts
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) {
+        invalidate(event.getSource());
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) {
+        // wait for the post modify event
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+        invalidate(event.getSource());
+    }
+
+    private void invalidate(CatalogInfo info) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        if (info instanceof StoreInfo) {
+            invalidateStore(info.getId());
+        } else if (info instanceof ResourceInfo && ((ResourceInfo) info).getStore() != null) {
+            invalidateStore(((ResourceInfo) info).getStore().getId());
+        }
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
+    }
+
+    @Override
+    public void onReset() {
+        clear();
+    }
+
+    @Override
+    public void onDispose() {
+        clear();
+    }
+
+    @Override
+    public void beforeReload() {
+        // nothing to do
+    }
+
+    @Override
+    public void onReload() {
+        clear();
+    }
+
+    /** Looks for functions whose value is not determined by the feature alone */
+    private static class VolatileFunctionFinder extends DefaultFilterVisitor {
+
+        boolean found;
+
+        @Override
+        public Object visit(Function function, Object data) {
+            if (function instanceof EnvFunction || function instanceof InternalVolatileFunction) {
+                found = true;
+                return data;
+            }
+            return super.visit(function, data);
+        }
+    }
+
+    private static class Entry {
+
+        final int count;
+
+        final long expires;
+
+        Entry(int count, long expires) {
+            this.count = count;
+            this.expires = expires;
+        }
+    }
+
+    /** Key of a cached count */
+    static final class Key {
+
+        final String storeId;
+
+        final String typeId;
+
+        final String typeName;
+
+        final Filter filter;
+
+        final int startIndex;
+
+        final int maxFeatures;
+
+        final String version;
+
+        final Object viewParams;
+
+        final DataAccessLimits limits;
+
+        final int hash;
+
+        Key(String storeId, String typeId, Query query, DataAccessLimits limits) {
+            this.storeId = storeId;
+            this.typeId = typeId;
+            this.typeName = query.getTypeName();
+            this.filter =
+                    query.getFilter() == null
+                            ? Filter.INCLUDE
+                            : SimplifyingFilterVisitor.simplify(query.getFilter());
+            this.startIndex = query.getStartIndex() == null ? 0 : query.getStartIndex();
+            this.maxFeatures = query.getMaxFeatures();
+            this.version = query.getVersion();
+            Map<?, ?> hints = query.getHints();
+            this.viewParams = hints == null ? null : hints.get(Hints.VIRTUAL_TABLE_PARAMETERS);
+            this.limits = limits;
+            this.hash =
+                    Objects.hash(
+                            storeId,
+                            typeId,
+                            typeName,
+                            filter,
+                            startIndex,
+                            maxFeatures,
+                            version,
+                            viewParams,
+                            limits);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash
+                    && startIndex == other.startIndex
+                    && maxFeatures == other.maxFeatures
+                    && Objects.equals(storeId, other.storeId)
+                    && Objects.equals(typeId, other.typeId)
+                    && Objects.equals(typeName, other.typeName)
+                    && Objects.equals(filter, other.filter)
+                    && Objects.equals(version, other.version)
+                    && Objects.equals(viewParams, other.viewParams)
+                    && Objects.equals(limits, other.limits);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
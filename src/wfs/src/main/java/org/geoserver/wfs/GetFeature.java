@@ -17,6 +17,8 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -199,6 +201,12 @@ public class GetFeature {
     /** filter factory */
     protected FilterFactory2 filterFactory;
 
+    /** Runs the queries and counts of multi-query requests concurrently */
+    private ConcurrentQueryExecutor queryExecutor = ConcurrentQueryExecutor.get();
+
+    /** Caches the feature counts across requests, looked up lazily */
+    private FeatureCountCache countCache;
+
     /** stored query provider */
     StoredQueryProvider storedQueryProvider;
 
@@ -228,6 +236,25 @@ public void setFilterFactory(FilterFactory2 filterFactory) {
         this.filterFactory = filterFactory;
     }
 
+    /** Sets the executor used to run the queries and counts of multi-query requests */
+    void setQueryExecutor(ConcurrentQueryExecutor queryExecutor) {
+        this.queryExecutor = queryExecutor;
+    }
+
+    /** Sets the cache used to store the feature counts across requests */
+    void setCountCache(FeatureCountCache countCache) {
+        this.countCache = countCache;
+    }
+
+    private FeatureCountCache getCountCache() {
+        if (countCache == null) {
+            FeatureCountCache cache = GeoServerExtensions.bean(FeatureCountCache.class);
+            // no application context, caching disabled
+            countCache = cache != null ? cache : new FeatureCountCache(null, null, 0, 0);
+        }
+        return countCache;
+    }
+
     /** Sets the stored query provider */
     public void setStoredQueryProvider(StoredQueryProvider storedQueryProvider) {
         this.storedQueryProvider = storedQueryProvider;
@@ -334,141 +361,101 @@ public FeatureCollectionResponse run(GetFeatureRequest request) throws WFSExcept
         List<FeatureCollection<? extends FeatureType, ? extends Feature>> results =
                 new ArrayList<>();
         final List<CountExecutor> totalCountExecutors = new ArrayList<>();
+        // when there is no offset to carry over, the size of each query can be computed upfront
+        // and concurrently, using the largest limit the query could be given. The callbacks are
+        // expected to see the queries one at a time, in order, so they disable the optimization
+        List<QueryPlan> plans = null;
+        List<Future<Integer>> sizes = null;
+        Exception planFailure = null;
+        if (queryExecutor.isConcurrent()
+                && queries.size() > 1
+                && calculateSize
+                && offset <= 0
+                && GeoServerExtensions.extensions(GetFeatureCallback.class).isEmpty()) {
+            plans = new ArrayList<>();
+            sizes = new ArrayList<>();
+            // index of the first query filling max features by itself, the following ones are
+            // never reached by the loop below, so there is no need to size them
+            final AtomicInteger filled = new AtomicInteger(Integer.MAX_VALUE);
+            final int requestMaxFeatures = maxFeatures;
+            for (int i = 0; i < queries.size() && i <= filled.get(); i++) {
+                final int index = i;
+                try {
+                    QueryPlan plan = planQuery(request, queries.get(i));
+                    int queryMaxFeatures = maxFeatures;
+                    int metaMaxFeatures = maxFeatures(plan.metas);
+                    if (metaMaxFeatures > 0 && metaMaxFeatures < queryMaxFeatures) {
+                        queryMaxFeatures = metaMaxFeatures;
+                    }
+                    Map<String, String> viewParam = viewParams != null ? viewParams.get(i) : null;
+                    org.geotools.data.Query gtQuery =
+                            toDataQuery(
+                                    plan.query,
+                                    plan.filter,
+                                    offset,
+                                    queryMaxFeatures,
+                                    plan.source,
+                                    request,
+                                    plan.allPropNames.get(0),
+                                    viewParam,
+                                    plan.joins,
+                                    plan.primaryTypeName,
+                                    plan.primaryAlias);
+                    FeatureCollection<? extends FeatureType, ? extends Feature> features =
+                            getFeatures(request, plan.source, gtQuery);
+                    sizes.add(
+                            queryExecutor.submit(
+                                    plan.getStoreId(),
+                                    () -> {
+                                        if (index > filled.get()) {
+                                            return 0;
+                                        }
+                                        int size =
+                                                countFeatures(
+                                                        request,
+                                                        plan.primaryMeta,
+                                                        gtQuery,
+                                                        features);
+                                        if (size >= requestMaxFeatures) {
+                                            filled.accumulateAndGet(index, Math::min);
+                                        }
+                                        return size;
+                                    }));
+                    plans.add(plan);
+                } catch (IOException | RuntimeException e) {
+                    // reported if and when the query is reached in the loop below
+                    planFailure = e;
+                    break;
+                }
+            }
+        }
         try {
             for (int i = 0; (i < queries.size()) && (count < maxFeatures); i++) {
 
                 Query query = queries.get(i);
                 try {
-                    // alias sanity check
-                    validateQueryAliases(request, query);
-
-                    List<FeatureTypeInfo> metas = new ArrayList<>();
-                    for (QName typeName : query.getTypeNames()) {
-                        metas.add(featureTypeInfo(typeName, request));
+                    QueryPlan plan;
+                    if (plans == null || (i >= plans.size() && planFailure == null)) {
+                        plan = planQuery(request, query);
+                    } else if (i < plans.size()) {
+                        plan = plans.get(i);
+                    } else if (planFailure instanceof IOException) {
+                        // the query could not be planned upfront, report as a serial run would
+                        throw (IOException) planFailure;
+                    } else {
+                        throw (RuntimeException) planFailure;
                     }
-
-                    // first is the primary feature type
-                    FeatureTypeInfo meta = metas.get(0);
-
-                    // parse the requested property names and distribute among requested types
-                    List<List<String>> reqPropertyNames = parsePropertyNames(query, metas);
-
-                    NamespaceSupport ns = getNamespaceSupport();
-
-                    // set up joins (if specified)
-                    List<Join> joins = null;
-                    String primaryAlias = null;
-                    QName primaryTypeName = query.getTypeNames().get(0);
-                    FeatureTypeInfo primaryMeta = metas.get(0);
-
-                    // make sure filters are sane
-                    //
-                    // Validation of filters on non-simple feature types is not yet supported.
-                    // FIXME: Support validation of filters on non-simple feature types:
-                    // need to consider xpath properties and how to configure namespace prefixes in
-                    // GeoTools app-schema FeaturePropertyAccessorFactory.
-                    Filter filter = query.getFilter();
-
-                    if (filter == null && metas.size() > 1) {
-                        throw new WFSException(request, "Join query must specify a filter");
-                    }
-
-                    if (filter != null) {
-                        if (meta.getFeatureType() instanceof SimpleFeatureType) {
-                            if (metas.size() > 1) {
-                                // sanitize aliases, they must not conflict with feature type names
-                                // nor with their attributes
-                                query = AliasedQuery.fixAliases(metas, query);
-                                // the filter might have been rewritten
-                                filter = query.getFilter();
-
-                                // the join extracting visitor cannot handle negated filters,
-                                // the simplifier handles most common case removing the negation,
-                                // e.g., not(a < 10) -> a >= 10
-                                filter = SimplifyingFilterVisitor.simplify(filter);
-
-                                // join, need to separate the joining filter from other filters
-                                JoinExtractingVisitor extractor =
-                                        new JoinExtractingVisitor(metas, query.getAliases());
-                                extractor.setQueriedTypes(query.getTypeNames());
-                                filter.accept(extractor, null);
-
-                                primaryAlias = extractor.getPrimaryAlias();
-                                primaryMeta = extractor.getPrimaryFeatureType();
-                                metas = extractor.getFeatureTypes();
-                                primaryTypeName =
-                                        new QName(
-                                                primaryMeta.getNamespace().getURI(),
-                                                primaryMeta.getName());
-                                joins = extractor.getJoins();
-                                if (joins.size() != metas.size() - 1) {
-                                    throw new WFSException(
-                                            request,
-                                            String.format(
-                                                    "Query specified %d types but %d "
-                                                            + "join filters were found",
-                                                    metas.size(), extractor.getJoins().size()));
-                                }
-
-                                // validate the filter for each join, as well as the join filter
-                                for (int j = 1; j < metas.size(); j++) {
-                                    Join join = joins.get(j - 1);
-                                    validateJoin(request, query, filter, join, metas.get(j));
-                                }
-
-                                filter = extractor.getPrimaryFilter();
-                                if (filter != null) {
-                                    validateFilter(filter, query, primaryMeta, request);
-                                }
-                            } else {
-                                validateFilter(filter, query, meta, request);
-                            }
-                        } else {
-                            BBOXNamespaceSettingVisitor filterVisitor =
-                                    new BBOXNamespaceSettingVisitor(ns);
-                            filter.accept(filterVisitor, null);
-                        }
-                    }
-
-                    List<List<PropertyName>> propNames = new ArrayList<>();
-                    List<List<PropertyName>> allPropNames = new ArrayList<>();
-                    collectPropertyNames(
-                            request, metas, meta, reqPropertyNames, ns, propNames, allPropNames);
-
-                    // validate sortby if present
-                    List<SortBy> sortBy = query.getSortBy();
-                    if (sortBy != null
-                            && !sortBy.isEmpty()
-                            && meta.getFeatureType() instanceof SimpleFeatureType) {
-                        validateSortBy(sortBy, meta, request);
-                    }
-
-                    // load primary feature source
-                    Hints hints = null;
-                    if (joins != null) {
-                        hints = new Hints(ResourcePool.JOINS, joins);
-                    }
-
-                    // for remote reprojection in case of WFS-NG datastore ONLY
-                    if (meta.getStore()
-                                            .getConnectionParameters()
-                                            .get(WFSDataStoreFactory.USEDEFAULTSRS.key)
-                                    != null
-                            && meta.getMetadata().get(FeatureTypeInfo.OTHER_SRS) != null) {
-                        // if wfs-ng datastore is NOT set to use default srs
-                        // then find request SRS in OTHER_SRS list
-                        if (!Boolean.valueOf(
-                                        meta.getStore()
-                                                .getConnectionParameters()
-                                                .get(WFSDataStoreFactory.USEDEFAULTSRS.key)
-                                                .toString())
-                                && query.getSrsName() != null) {
-                            hints = setWFSCascadingReprojection(query, meta, hints);
-                        }
-                    }
-
-                    FeatureSource<? extends FeatureType, ? extends Feature> source =
-                            primaryMeta.getFeatureSource(null, hints);
+                    query = plan.query;
+                    Filter filter = plan.filter;
+                    List<FeatureTypeInfo> metas = plan.metas;
+                    FeatureTypeInfo meta = plan.meta;
+                    FeatureTypeInfo primaryMeta = plan.primaryMeta;
+                    QName primaryTypeName = plan.primaryTypeName;
+                    String primaryAlias = plan.primaryAlias;
+                    List<Join> joins = plan.joins;
+                    List<List<PropertyName>> propNames = plan.propNames;
+                    List<List<PropertyName>> allPropNames = plan.allPropNames;
+                    FeatureSource<? extends FeatureType, ? extends Feature> source = plan.source;
 
                     // handle local maximum
                     int queryMaxFeatures = maxFeatures - count;
@@ -537,12 +524,22 @@ public FeatureCollectionResponse run(GetFeatureRequest request) throws WFSExcept
                     }
 
                     int size = 0;
-                    if (calculateSize) {
-                        size = features.size();
+                    if (calculateSize && sizes != null && i < sizes.size()) {
+                        // computed upfront, with a limit that can only be larger than this one
+                        size =
+                                Math.min(
+                                        ConcurrentQueryExecutor.getResult(sizes.get(i)),
+                                        queryMaxFeatures);
+                    } else if (calculateSize) {
+                        size = countFeatures(request, primaryMeta, gtQuery, features);
                     }
 
                     // update the count
                     count += size;
+                    if (count >= maxFeatures && sizes != null) {
+                        // the following queries are not run, stop sizing them
+                        sizes.forEach(f -> f.cancel(false));
+                    }
 
                     // collect queries required to return numberMatched/totalSize
                     // check maxFeatures and offset, if they are unset we can use the size we
@@ -569,7 +566,9 @@ public FeatureCollectionResponse run(GetFeatureRequest request) throws WFSExcept
                                             joins,
                                             primaryTypeName,
                                             primaryAlias);
-                            totalCountExecutors.add(new CountExecutor(source, qTotal));
+                            totalCountExecutors.add(
+                                    new CountExecutor(
+                                            source, qTotal, primaryMeta, getCountCache()));
                         }
                     }
 
@@ -644,6 +643,11 @@ public FeatureCollectionResponse run(GetFeatureRequest request) throws WFSExcept
         } catch (IOException | SchemaException e) {
             throw new WFSException(
                     request, "Error occurred getting features", e, request.getHandle());
+        } finally {
+            // the queries past max features are not run, no need to count them
+            if (sizes != null) {
+                sizes.forEach(size -> size.cancel(false));
+            }
         }
 
         return buildResults(
@@ -657,6 +661,224 @@ public FeatureCollectionResponse run(GetFeatureRequest request) throws WFSExcept
                 getFeatureById);
     }
 
+    /**
+     * Validates a query and prepares what is needed to run it, that is, everything that does not
+     * depend on the position of the query in the request (e.g., the offset and max features left by
+     * the previous queries)
+     */
+    private QueryPlan planQuery(GetFeatureRequest request, Query query) throws IOException {
+        // alias sanity check
+        validateQueryAliases(request, query);
+
+        List<FeatureTypeInfo> metas = new ArrayList<>();
+        for (QName typeName : query.getTypeNames()) {
+            metas.add(featureTypeInfo(typeName, request));
+        }
+
+        // first is the primary feature type
+        FeatureTypeInfo meta = metas.get(0);
+
+        // parse the requested property names and distribute among requested types
+        List<List<String>> reqPropertyNames = parsePropertyNames(query, metas);
+
+        NamespaceSupport ns = getNamespaceSupport();
+
+        // set up joins (if specified)
+        List<Join> joins = null;
+        String primaryAlias = null;
+        QName primaryTypeName = query.getTypeNames().get(0);
+        FeatureTypeInfo primaryMeta = metas.get(0);
+
+        // make sure filters are sane
+        //
+        // Validation of filters on non-simple feature types is not yet supported.
+        // FIXME: Support validation of filters on non-simple feature types:
+        // need to consider xpath properties and how to configure namespace prefixes in
+        // GeoTools app-schema FeaturePropertyAccessorFactory.
+        Filter filter = query.getFilter();
+
+        if (filter == null && metas.size() > 1) {
+            throw new WFSException(request, "Join query must specify a filter");
+        }
+
+        if (filter != null) {
+            if (meta.getFeatureType() instanceof SimpleFeatureType) {
+                if (metas.size() > 1) {
+                    // sanitize aliases, they must not conflict with feature type names
+                    // nor with their attributes
+                    query = AliasedQuery.fixAliases(metas, query);
+                    // the filter might have been rewritten
+                    filter = query.getFilter();
+
+                    // the join extracting visitor cannot handle negated filters,
+                    // the simplifier handles most common case removing the negation,
+                    // e.g., not(a < 10) -> a >= 10
+                    filter = SimplifyingFilterVisitor.simplify(filter);
+
+                    // join, need to separate the joining filter from other filters
+                    JoinExtractingVisitor extractor =
+                            new JoinExtractingVisitor(metas, query.getAliases());
+                    extractor.setQueriedTypes(query.getTypeNames());
+                    filter.accept(extractor, null);
+
+                    primaryAlias = extractor.getPrimaryAlias();
+                    primaryMeta = extractor.getPrimaryFeatureType();
+                    metas = extractor.getFeatureTypes();
+                    primaryTypeName =
+                            new QName(primaryMeta.getNamespace().getURI(), primaryMeta.getName());
+                    joins = extractor.getJoins();
+                    if (joins.size() != metas.size() - 1) {
+                        throw new WFSException(
+                                request,
+                                String.format(
+                                        "Query specified %d types but %d "
+                                                + "join filters were found",
+                                        metas.size(), extractor.getJoins().size()));
+                    }
+
+                    // validate the filter for each join, as well as the join filter
+                    for (int j = 1; j < metas.size(); j++) {
+                        Join join = joins.get(j - 1);
+                        validateJoin(request, query, filter, join, metas.get(j));
+                    }
+
+                    filter = extractor.getPrimaryFilter();
+                    if (filter != null) {
+                        validateFilter(filter, query, primaryMeta, request);
+                    }
+                } else {
+                    validateFilter(filter, query, meta, request);
+                }
+            } else {
+                BBOXNamespaceSettingVisitor filterVisitor = new BBOXNamespaceSettingVisitor(ns);
+                filter.accept(filterVisitor, null);
+            }
+        }
+
+        List<List<PropertyName>> propNames = new ArrayList<>();
+        List<List<PropertyName>> allPropNames = new ArrayList<>();
+        collectPropertyNames(request, metas, meta, reqPropertyNames, ns, propNames, allPropNames);
+
+        // validate sortby if present
+        List<SortBy> sortBy = query.getSortBy();
+        if (sortBy != null
+                && !sortBy.isEmpty()
+                && meta.getFeatureType() instanceof SimpleFeatureType) {
+            validateSortBy(sortBy, meta, request);
+        }
+
+        // load primary feature source
+        Hints hints = null;
+        if (joins != null) {
+            hints = new Hints(ResourcePool.JOINS, joins);
+        }
+
+        // for remote reprojection in case of WFS-NG datastore ONLY
+        if (meta.getStore().getConnectionParameters().get(WFSDataStoreFactory.USEDEFAULTSRS.key)
+                        != null
+                && meta.getMetadata().get(FeatureTypeInfo.OTHER_SRS) != null) {
+            // if wfs-ng datastore is NOT set to use default srs
+            // then find request SRS in OTHER_SRS list
+            if (!Boolean.valueOf(
+                            meta.getStore()
+                                    .getConnectionParameters()
+                                    .get(WFSDataStoreFactory.USEDEFAULTSRS.key)
+                                    .toString())
+                    && query.getSrsName() != null) {
+                hints = setWFSCascadingReprojection(query, meta, hints);
+            }
+        }
+
+        FeatureSource<? extends FeatureType, ? extends Feature> source =
+                primaryMeta.getFeatureSource(null, hints);
+
+        return new QueryPlan(
+                query,
+                filter,
+                metas,
+                meta,
+                primaryMeta,
+                primaryTypeName,
+                primaryAlias,
+                joins,
+                propNames,
+                allPropNames,
+                source);
+    }
+
+    /** A query ready to be run, see {@link #planQuery(GetFeatureRequest, Query)} */
+    private static class QueryPlan {
+
+        final Query query;
+
+        final Filter filter;
+
+        final List<FeatureTypeInfo> metas;
+
+        /** The first feature type in the query */
+        final FeatureTypeInfo meta;
+
+        final FeatureTypeInfo primaryMeta;
+
+        final QName primaryTypeName;
+
+        final String primaryAlias;
+
+        final List<Join> joins;
+
+        final List<List<PropertyName>> propNames;
+
+        final List<List<PropertyName>> allPropNames;
+
+        final FeatureSource<? extends FeatureType, ? extends Feature> source;
+
+        QueryPlan(
+                Query query,
+                Filter filter,
+                List<FeatureTypeInfo> metas,
+                FeatureTypeInfo meta,
+                FeatureTypeInfo primaryMeta,
+                QName primaryTypeName,
+                String primaryAlias,
+                List<Join> joins,
+                List<List<PropertyName>> propNames,
+                List<List<PropertyName>> allPropNames,
+                FeatureSource<? extends FeatureType, ? extends Feature> source) {
+            this.query = query;
+            this.filter = filter;
+            this.metas = metas;
+            this.meta = meta;
+            this.primaryMeta = primaryMeta;
+            this.primaryTypeName = primaryTypeName;
+            this.primaryAlias = primaryAlias;
+            this.joins = joins;
+            this.propNames = propNames;
+            this.allPropNames = allPropNames;
+            this.source = source;
+        }
+
+        String getStoreId() {
+            return primaryMeta.getStore().getId();
+        }
+    }
+
+    /**
+     * Returns the size of the feature collection. The hits are looked up in the count cache, while
+     * the size of collections that are going to be encoded is always computed, to match their
+     * contents.
+     */
+    private int countFeatures(
+            GetFeatureRequest request,
+            FeatureTypeInfo meta,
+            org.geotools.data.Query query,
+            FeatureCollection<? extends FeatureType, ? extends Feature> features)
+            throws IOException {
+        if (request.isResultTypeHits()) {
+            return getCountCache().getCount(meta, query, features::size);
+        }
+        return features.size();
+    }
+
     private void validateJoin(
             GetFeatureRequest request, Query query, Filter filter, Join join, FeatureTypeInfo meta)
             throws IOException {
@@ -907,16 +1129,37 @@ private boolean isPreComputed(List<CountExecutor> totalCountExecutors) {
     }
 
     private long getTotalCount(List<CountExecutor> totalCountExecutors) throws IOException {
-        long totalCount = 0;
+        // run the counts concurrently, if possible, but sum them up in order
+        List<Future<Integer>> counts = new ArrayList<>(totalCountExecutors.size());
         for (CountExecutor q : totalCountExecutors) {
-            int result = q.getCount();
-            // if the count is unknown for one, we don't know the total,
-            // period
-            if (result == -1) {
-                totalCount = -1;
-                break;
+            if (queryExecutor.isConcurrent() && !q.isCountSet()) {
+                counts.add(queryExecutor.submit(q.getStoreId(), q::getCount));
             } else {
-                totalCount += result;
+                counts.add(null);
+            }
+        }
+        long totalCount = 0;
+        try {
+            for (int i = 0; i < totalCountExecutors.size(); i++) {
+                Future<Integer> count = counts.get(i);
+                int result =
+                        count != null
+                                ? ConcurrentQueryExecutor.getResult(count)
+                                : totalCountExecutors.get(i).getCount();
+                // if the count is unknown for one, we don't know the total,
+                // period
+                if (result == -1) {
+                    totalCount = -1;
+                    break;
+                } else {
+                    totalCount += result;
+                }
+            }
+        } finally {
+            for (Future<Integer> count : counts) {
+                if (count != null) {
+                    count.cancel(false);
+                }
             }
         }
         return totalCount;
@@ -5,12 +5,14 @@
  */
 package org.geoserver.wfs.json;
 
+import java.io.IOException;
 import java.io.Writer;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
 import net.sf.json.JSONException;
 import net.sf.json.util.JSONBuilder;
+import net.sf.json.util.JSONUtils;
 import org.geotools.referencing.CRS;
 import org.geotools.util.Converters;
 import org.locationtech.jts.geom.CoordinateSequence;
@@ -28,6 +30,10 @@
  * This class extends the JSONBuilder to be able to write out geometric types. It is coded against
  * the draft 5 version of the spec on http://geojson.org
  *
+ * <p>Geometry coordinates are streamed straight to the underlying writer, formatting the ordinates
+ * in a reusable buffer, instead of going through the generic value encoding of {@link JSONBuilder}
+ * that would box and convert to string every single ordinate. The output is the same.
+ *
  * @author Chris Holmes, The Open Planning Project
  * @version $Id$
  */
@@ -39,6 +45,9 @@ public class GeoJSONBuilder extends JSONBuilder {
 
     private boolean encodeMeasures = false;
 
+    /** Reusable buffer used to format ordinates without creating intermediate strings */
+    private final char[] ordinateBuffer = new char[32];
+
     public GeoJSONBuilder(Writer w) {
         super(w);
     }
@@ -60,50 +69,13 @@ public JSONBuilder writeGeom(Geometry geometry) throws JSONException {
 
         if (geometryType != MULTIGEOMETRY) {
             this.key("coordinates");
-
-            switch (geometryType) {
-                case POINT:
-                    Point point = (Point) geometry;
-                    writeCoordinate(point);
-                    break;
-                case LINESTRING:
-                    writeCoordinates(((LineString) geometry).getCoordinateSequence());
-                    break;
-                case MULTIPOINT:
-                    this.array();
-                    for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
-                        writeCoordinate((Point) geometry.getGeometryN(i));
-                    }
-                    this.endArray();
-                    break;
-                case POLYGON:
-                    writePolygon((Polygon) geometry);
-
-                    break;
-
-                case MULTILINESTRING:
-                    this.array();
-
-                    for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
-                        writeCoordinates(
-                                ((LineString) geometry.getGeometryN(i)).getCoordinateSequence());
-                    }
-
-                    this.endArray();
-
-                    break;
-
-                case MULTIPOLYGON:
-                    this.array();
-
-                    for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
-                        writePolygon((Polygon) geometry.getGeometryN(i));
-                    }
-
-                    this.endArray();
-
-                    break;
+            try {
+                writeCoordinates(geometry, geometryType);
+            } catch (IOException e) {
+                throw new JSONException(e);
             }
+            // the coordinates have been written directly, move on as if a value was written
+            this.mode = 'k';
         } else {
             writeGeomCollection((GeometryCollection) geometry);
         }
@@ -123,18 +95,46 @@ private JSONBuilder writeGeomCollection(GeometryCollection collection) {
     }
 
     /**
-     * Helper method that encodes a {@see Point} coordinate to the JSON output. This method will
-     * respect the configured axis order. If activated, coordinates measures (M) will be encoded,
-     * otherwise measures will be ignored.
-     *
-     * @param point the point whose coordinate will be encoded
-     * @return the JSON builder instance, this allow chained calls
+     * Writes the coordinates of a non collection geometry directly to the output, as a JSON array,
+     * bypassing the JSON builder state machine
      */
-    private JSONBuilder writeCoordinate(Point point) throws JSONException {
-        CoordinateSequence coordinates = point.getCoordinateSequence();
-        // let's see if we need to encode measures, NaN values will not be encoded
-        double m = encodeMeasures ? coordinates.getM(0) : Double.NaN;
-        return writeCoordinate(coordinates.getX(0), coordinates.getY(0), coordinates.getZ(0), m);
+    private void writeCoordinates(Geometry geometry, int geometryType) throws IOException {
+        switch (geometryType) {
+            case POINT:
+                writeCoordinate(((Point) geometry).getCoordinateSequence(), 0);
+                break;
+            case LINESTRING:
+                writeCoordinates(((LineString) geometry).getCoordinateSequence());
+                break;
+            case MULTIPOINT:
+                writer.write('[');
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    if (i > 0) writer.write(',');
+                    writeCoordinate(((Point) geometry.getGeometryN(i)).getCoordinateSequence(), 0);
+                }
+                writer.write(']');
+                break;
+            case POLYGON:
+                writePolygon((Polygon) geometry);
+                break;
+            case MULTILINESTRING:
+                writer.write('[');
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    if (i > 0) writer.write(',');
+                    writeCoordinates(
+                            ((LineString) geometry.getGeometryN(i)).getCoordinateSequence());
+                }
+                writer.write(']');
+                break;
+            case MULTIPOLYGON:
+                writer.write('[');
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    if (i > 0) writer.write(',');
+                    writePolygon((Polygon) geometry.getGeometryN(i));
+                }
+                writer.write(']');
+                break;
+        }
     }
 
     /**
@@ -143,20 +143,28 @@ private JSONBuilder writeCoordinate(Point point) throws JSONException {
      * encoded, otherwise measures will be ignored.
      *
      * @param coordinates the coordinates sequence that will be encoded
-     * @return the JSON builder instance, this allow chained calls
      */
-    private JSONBuilder writeCoordinates(CoordinateSequence coordinates) throws JSONException {
+    private void writeCoordinates(CoordinateSequence coordinates) throws IOException {
         // start encoding the JSON array of coordinates
-        this.array();
+        writer.write('[');
         // each coordinate will be encoded has an array of ordinates
-        for (int i = 0; i < coordinates.size(); i++) {
-            // let's see if we need to encode measures, NaN values will not be encoded
-            double m = encodeMeasures ? coordinates.getM(i) : Double.NaN;
-            // encode the coordinate ordinates to the JSON output
-            writeCoordinate(coordinates.getX(i), coordinates.getY(i), coordinates.getZ(i), m);
+        for (int i = 0, n = coordinates.size(); i < n; i++) {
+            if (i > 0) writer.write(',');
+            writeCoordinate(coordinates, i);
         }
         // we are done with the array
-        return this.endArray();
+        writer.write(']');
+    }
+
+    /**
+     * Helper method that encodes the i-th coordinate of the sequence. If activated, coordinates
+     * measures (M) will be encoded, otherwise measures will be ignored.
+     */
+    private void writeCoordinate(CoordinateSequence coordinates, int i) throws IOException {
+        // let's see if we need to encode measures, NaN values will not be encoded
+        double m = encodeMeasures ? coordinates.getM(i) : Double.NaN;
+        // encode the coordinate ordinates to the JSON output
+        writeCoordinate(coordinates.getX(i), coordinates.getY(i), coordinates.getZ(i), m);
     }
 
     /**
@@ -171,37 +179,89 @@ private JSONBuilder writeCoordinates(CoordinateSequence coordinates) throws JSON
      * @param y X ordinate
      * @param z Z ordinate, can be {@code NaN}
      * @param m M ordinate, can be {@code NaN}
-     * @return the JSON builder instance, this allow chained calls
      */
-    private JSONBuilder writeCoordinate(double x, double y, double z, double m) {
+    private void writeCoordinate(double x, double y, double z, double m) throws IOException {
         // start encoding JSON array
-        this.array();
+        writer.write('[');
         // adjust the order of X and Y ordinates if needed
         if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
             // encode latitude first and then longitude
             if (!Double.isNaN(y)) { // for 1d linear referencing cases
-                roundedValue(y);
+                writeOrdinate(y);
+                writer.write(',');
             }
-            roundedValue(x);
+            writeOrdinate(x);
         } else {
             // encode longitude first and then latitude
-            roundedValue(x);
+            writeOrdinate(x);
             if (!Double.isNaN(y)) { // for 1d linear referencing cases
-                roundedValue(y);
+                writer.write(',');
+                writeOrdinate(y);
             }
         }
         // if Z value is not available but we have a measure, we set Z value to zero
         z = Double.isNaN(z) && !Double.isNaN(m) ? 0 : z;
         // encode Z value if available
         if (!Double.isNaN(z)) {
-            roundedValue(z);
+            writer.write(',');
+            writeOrdinate(z);
         }
         // encode M value if available
         if (!Double.isNaN(m)) {
-            roundedValue(m);
+            writer.write(',');
+            writeOrdinate(m);
         }
         // we are done with the array
-        return this.endArray();
+        writer.write(']');
+    }
+
+    /**
+     * Writes a rounded ordinate. Values in the range where {@link Double#toString(double)} uses
+     * plain notation are formatted directly from their scaled integer representation, everything
+     * else falls back on the same conversion used by {@link JSONBuilder#value(double)}
+     */
+    private void writeOrdinate(double value) throws IOException {
+        double rounded = RoundingUtil.round(value, numDecimals);
+        double abs = Math.abs(rounded);
+        if (numDecimals >= 0 && numDecimals <= 8 && abs >= 1e-3 && abs < 1e7) {
+            double scale = RoundingUtil.getScale(numDecimals);
+            long scaled = Math.round(rounded * scale);
+            if (scaled / scale == rounded) {
+                writeScaled(scaled, numDecimals);
+                return;
+            }
+        }
+        writer.write(JSONUtils.valueToString(Double.valueOf(rounded)));
+    }
+
+    /**
+     * Writes a number given its integer representation scaled by 10^decimals, dropping trailing
+     * zeroes in the fractional part (and the fractional part itself, if empty)
+     */
+    private void writeScaled(long scaled, int decimals) throws IOException {
+        char[] buffer = ordinateBuffer;
+        boolean negative = scaled < 0;
+        long value = negative ? -scaled : scaled;
+        while (decimals > 0 && value % 10 == 0) {
+            value /= 10;
+            decimals--;
+        }
+        int pos = buffer.length;
+        if (decimals > 0) {
+            for (int i = 0; i < decimals; i++) {
+                buffer[--pos] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+            buffer[--pos] = '.';
+        }
+        do {
+            buffer[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        if (negative) {
+            buffer[--pos] = '-';
+        }
+        writer.write(buffer, pos, buffer.length - pos);
     }
 
     private void roundedValue(double value) {
@@ -236,16 +296,16 @@ protected JSONBuilder writeBoundingBox(Envelope env) {
      *
      * @param geometry The polygon to write
      */
-    private void writePolygon(Polygon geometry) throws JSONException {
-        this.array();
+    private void writePolygon(Polygon geometry) throws IOException {
+        writer.write('[');
         writeCoordinates(geometry.getExteriorRing().getCoordinateSequence());
 
         for (int i = 0, ii = geometry.getNumInteriorRing(); i < ii; i++) {
+            writer.write(',');
             writeCoordinates(geometry.getInteriorRingN(i).getCoordinateSequence());
         }
 
-        this.endArray(); // end the linear ring
-        // this.endObject(); //end the
+        writer.write(']'); // end the linear ring
     }
 
     /** Internal representation of OGC SF Point */
@@ -15,6 +15,11 @@ public class RoundingUtil {
         1d, 10d, 100d, 1000d, 10000d, 100000d, 1000000d, 10000000d, 100000000d
     };
 
+    /** Returns the scale factor used to round to the specified number of decimals */
+    static double getScale(int numDecimals) {
+        return (numDecimals <= 8) ? SCALE[numDecimals] : Math.pow(10, numDecimals);
+    }
+
     /**
      * Round a value to the specified number of decimal places using the "Round Half Up" strategy.
      *
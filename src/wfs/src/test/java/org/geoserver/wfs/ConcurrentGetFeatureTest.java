@@ -0,0 +1,162 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class ConcurrentGetFeatureTest extends WFSTestSupport {
+
+    static final String FIFTEEN_SEVEN =
+            "wfs?version=2.0.0&service=wfs&request=GetFeature&typename=cdf:Fifteen,cdf:Seven";
+
+    ConcurrentQueryExecutor previous;
+
+    AtomicInteger submitted = new AtomicInteger();
+
+    @Before
+    public void setupExecutor() {
+        previous = ConcurrentQueryExecutor.INSTANCE;
+        ConcurrentQueryExecutor.INSTANCE =
+                new ConcurrentQueryExecutor(4, 2) {
+                    @Override
+                    <T> Future<T> submit(String storeId, Callable<T> task) {
+                        submitted.incrementAndGet();
+                        return super.submit(storeId, task);
+                    }
+                };
+    }
+
+    @After
+    public void resetExecutor() {
+        ConcurrentQueryExecutor.INSTANCE = previous;
+    }
+
+    @Test
+    public void testAllFeatures() throws Exception {
+        Document dom = getAsDOM(FIFTEEN_SEVEN);
+        assertEquals("22", dom.getDocumentElement().getAttribute("numberReturned"));
+        assertEquals("22", dom.getDocumentElement().getAttribute("numberMatched"));
+        assertEquals(15, dom.getElementsByTagName("cdf:Fifteen").getLength());
+        assertEquals(7, dom.getElementsByTagName("cdf:Seven").getLength());
+        assertTrue(submitted.get() >= 2);
+    }
+
+    @Test
+    public void testCountInFirstQuery() throws Exception {
+        // the limit is reached by the first query, the second is not returned, but still matched
+        Document dom = getAsDOM(FIFTEEN_SEVEN + "&count=10");
+        assertEquals("10", dom.getDocumentElement().getAttribute("numberReturned"));
+        assertEquals("22", dom.getDocumentElement().getAttribute("numberMatched"));
+        assertEquals(10, dom.getElementsByTagName("cdf:Fifteen").getLength());
+        assertEquals(0, dom.getElementsByTagName("cdf:Seven").getLength());
+    }
+
+    @Test
+    public void testCountInSecondQuery() throws Exception {
+        // the second query only gets what is left after the first one
+        Document dom = getAsDOM(FIFTEEN_SEVEN + "&count=20");
+        assertEquals("20", dom.getDocumentElement().getAttribute("numberReturned"));
+        assertEquals("22", dom.getDocumentElement().getAttribute("numberMatched"));
+        assertEquals(15, dom.getElementsByTagName("cdf:Fifteen").getLength());
+        assertEquals(5, dom.getElementsByTagName("cdf:Seven").getLength());
+    }
+
+    @Test
+    public void testPaging() throws Exception {
+        // with an offset the queries run one after the other, results must not change
+        Document dom = getAsDOM(FIFTEEN_SEVEN + "&count=5&startIndex=12");
+        assertEquals("5", dom.getDocumentElement().getAttribute("numberReturned"));
+        assertEquals("22", dom.getDocumentElement().getAttribute("numberMatched"));
+        assertEquals(3, dom.getElementsByTagName("cdf:Fifteen").getLength());
+        assertEquals(2, dom.getElementsByTagName("cdf:Seven").getLength());
+    }
+
+    @Test
+    public void testStoreLimit() throws Exception {
+        ConcurrentQueryExecutor executor = new ConcurrentQueryExecutor(4, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(
+                    executor.submit(
+                            "store",
+                            () -> {
+                                int current = running.incrementAndGet();
+                                maxRunning.accumulateAndGet(current, Math::max);
+                                latch.await(100, TimeUnit.MILLISECONDS);
+                                running.decrementAndGet();
+                                return current;
+                            }));
+        }
+        latch.countDown();
+        for (Future<Integer> future : futures) {
+            ConcurrentQueryExecutor.getResult(future);
+        }
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testBusyStoreDoesNotBlockOthers() throws Exception {
+        ConcurrentQueryExecutor executor = new ConcurrentQueryExecutor(2, 1);
+        CountDownLatch latch = new CountDownLatch(1);
+        List<Future<Boolean>> busy = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            busy.add(executor.submit("busy", () -> latch.await(10, TimeUnit.SECONDS)));
+        }
+        try {
+            // the tasks waiting for the busy store do not hold the second pool thread
+            Future<String> other = executor.submit("other", () -> "done");
+            assertEquals("done", other.get(5, TimeUnit.SECONDS));
+        } finally {
+            latch.countDown();
+        }
+        for (Future<Boolean> future : busy) {
+            assertTrue(ConcurrentQueryExecutor.getResult(future));
+        }
+    }
+
+    @Test
+    public void testSerialExecutor() throws Exception {
+        ConcurrentQueryExecutor executor = new ConcurrentQueryExecutor(1, 1);
+        Thread caller = Thread.currentThread();
+        Future<Thread> future = executor.submit("store", Thread::currentThread);
+        assertTrue(future.isDone());
+        assertEquals(caller, ConcurrentQueryExecutor.getResult(future));
+    }
+
+    @Test
+    public void testExceptionUnwrapping() throws Exception {
+        ConcurrentQueryExecutor executor = new ConcurrentQueryExecutor(2, 1);
+        Future<Object> future =
+                executor.submit(
+                        "store",
+                        () -> {
+                            throw new IOException("test");
+                        });
+        try {
+            ConcurrentQueryExecutor.getResult(future);
+            fail("Should have thrown an IOException");
+        } catch (IOException e) {
+            assertEquals("test", e.getMessage());
+        }
+    }
+}
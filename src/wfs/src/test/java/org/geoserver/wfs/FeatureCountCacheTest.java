@@ -0,0 +1,172 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.data.test.CiteTestData;
+import org.geotools.data.Query;
+import org.geotools.factory.CommonFactoryFinder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.w3c.dom.Document;
+
+public class FeatureCountCacheTest extends WFSTestSupport {
+
+    static final String FIFTEEN =
+            "wfs?version=2.0.0&service=wfs&request=GetFeature&typename=cdf:Fifteen";
+
+    static final String POINTS_HITS =
+            "wfs?version=2.0.0&service=wfs&request=GetFeature&typename=cgf:Points"
+                    + "&resultType=hits";
+
+    FeatureCountCache cache;
+
+    @Before
+    public void enableCache() {
+        cache = applicationContext.getBean(FeatureCountCache.class);
+        cache.setTimeToLive(60000);
+    }
+
+    @After
+    public void disableCache() {
+        cache.setTimeToLive(0);
+    }
+
+    @Test
+    public void testHitsCached() throws Exception {
+        Document dom = getAsDOM(FIFTEEN + "&resultType=hits");
+        assertEquals("15", dom.getDocumentElement().getAttribute("numberMatched"));
+        assertEquals(1, cache.size());
+
+        dom = getAsDOM(FIFTEEN + "&resultType=hits");
+        assertEquals("15", dom.getDocumentElement().getAttribute("numberMatched"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testNumberMatchedCachedWhilePaging() throws Exception {
+        Document dom = getAsDOM(FIFTEEN + "&count=5&startIndex=5");
+        assertEquals("5", dom.getDocumentElement().getAttribute("numberReturned"));
+        assertEquals("15", dom.getDocumentElement().getAttribute("numberMatched"));
+        assertEquals(1, cache.size());
+
+        // same total count, only the page changes
+        dom = getAsDOM(FIFTEEN + "&count=5&startIndex=10");
+        assertEquals("5", dom.getDocumentElement().getAttribute("numberReturned"));
+        assertEquals("15", dom.getDocumentElement().getAttribute("numberMatched"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testTransactionInvalidates() throws Exception {
+        Document dom = getAsDOM(POINTS_HITS);
+        assertEquals("1", dom.getDocumentElement().getAttribute("numberMatched"));
+        assertEquals(1, cache.size());
+
+        String delete =
+                "<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
+                        + "xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                        + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                        + "xmlns:wfs=\"http://www.opengis.net/wfs\"> "
+                        + "<wfs:Delete typeName=\"cgf:Points\"> "
+                        + "<ogc:Filter> "
+                        + "<ogc:PropertyIsEqualTo> "
+                        + "<ogc:PropertyName>cgf:id</ogc:PropertyName> "
+                        + "<ogc:Literal>t0000</ogc:Literal> "
+                        + "</ogc:PropertyIsEqualTo> "
+                        + "</ogc:Filter> "
+                        + "</wfs:Delete> "
+                        + "</wfs:Transaction>";
+        try {
+            postAsDOM("wfs", delete);
+            assertEquals(0, cache.size());
+
+            dom = getAsDOM(POINTS_HITS);
+            assertEquals("0", dom.getDocumentElement().getAttribute("numberMatched"));
+        } finally {
+            revertLayer(CiteTestData.POINTS);
+        }
+    }
+
+    @Test
+    public void testCatalogChangeInvalidates() throws Exception {
+        getAsDOM(FIFTEEN + "&resultType=hits");
+        assertEquals(1, cache.size());
+
+        FeatureTypeInfo info = getCatalog().getFeatureTypeByName("cdf:Fifteen");
+        String description = info.getAbstract();
+        info.setAbstract("Modified");
+        getCatalog().save(info);
+        try {
+            assertEquals(0, cache.size());
+        } finally {
+            info = getCatalog().getFeatureTypeByName("cdf:Fifteen");
+            info.setAbstract(description);
+            getCatalog().save(info);
+        }
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        AtomicLong time = new AtomicLong();
+        FeatureCountCache cache =
+                new FeatureCountCache(null, null, 1000, 10) {
+                    @Override
+                    long currentTime() {
+                        return time.get();
+                    }
+                };
+        FeatureTypeInfo info = mockFeatureType();
+        Query query = new Query("test", Filter.INCLUDE);
+        AtomicInteger counts = new AtomicInteger();
+
+        assertEquals(10, cache.getCount(info, query, () -> counts.incrementAndGet() + 9));
+        assertEquals(10, cache.getCount(info, query, () -> counts.incrementAndGet() + 9));
+        assertEquals(1, counts.get());
+
+        // expired
+        time.set(1001);
+        assertEquals(11, cache.getCount(info, query, () -> counts.incrementAndGet() + 9));
+        assertEquals(2, counts.get());
+
+        // invalidated
+        cache.invalidateStore("store");
+        assertEquals(12, cache.getCount(info, query, () -> counts.incrementAndGet() + 9));
+        assertEquals(3, counts.get());
+    }
+
+    @Test
+    public void testVolatileFilterNotCached() throws Exception {
+        FeatureCountCache cache = new FeatureCountCache(null, null, 1000, 10);
+        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+        Filter filter = ff.equals(ff.property("a"), ff.function("env", ff.literal("value")));
+        Query query = new Query("test", filter);
+        AtomicInteger counts = new AtomicInteger();
+
+        cache.getCount(mockFeatureType(), query, counts::incrementAndGet);
+        cache.getCount(mockFeatureType(), query, counts::incrementAndGet);
+        assertEquals(2, counts.get());
+        assertEquals(0, cache.size());
+    }
+
+    private FeatureTypeInfo mockFeatureType() {
+        DataStoreInfo store = mock(DataStoreInfo.class);
+        when(store.getId()).thenReturn("store");
+        FeatureTypeInfo info = mock(FeatureTypeInfo.class);
+        when(info.getId()).thenReturn("type");
+        when(info.getStore()).thenReturn(store);
+        return info;
+    }
+}
@@ -17,6 +17,7 @@
 import java.util.UUID;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
+import net.sf.json.util.JSONUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
@@ -50,6 +51,63 @@ public void testWriteNormal() throws Exception {
                 writer.toString());
     }
 
+    @Test
+    public void testWriteGeometriesBetweenKeys() throws Exception {
+        builder.object().key("id").value("f1");
+        builder.key("geometry");
+        builder.writeGeom(new WKTReader().read("POLYGON((0 0, 1 0, 1 1, 0 0))"));
+        builder.key("other");
+        builder.writeGeom(new WKTReader().read("MULTIPOINT((1 2), (3 4))"));
+        builder.key("collection");
+        builder.writeGeom(new WKTReader().read("GEOMETRYCOLLECTION(POINT(1 2), POINT(3 4))"));
+        builder.key("name").value("test").endObject();
+
+        assertEquals(
+                "{\"id\":\"f1\","
+                        + "\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[[0,0],[1,0],[1,1],[0,0]]]},"
+                        + "\"other\":{\"type\":\"MultiPoint\",\"coordinates\":[[1,2],[3,4]]},"
+                        + "\"collection\":{\"type\":\"GeometryCollection\",\"geometries\":["
+                        + "{\"type\":\"Point\",\"coordinates\":[1,2]},"
+                        + "{\"type\":\"Point\",\"coordinates\":[3,4]}]},"
+                        + "\"name\":\"test\"}",
+                writer.toString());
+    }
+
+    @Test
+    public void testOrdinatesFormatting() throws Exception {
+        double[] values = {
+            0,
+            1,
+            -1,
+            0.5,
+            0.001,
+            -0.0009,
+            1e-9,
+            12.3456789,
+            -179.99999999,
+            1234567.891,
+            9999999.99,
+            1e7,
+            123456789.123,
+            1e21,
+            0.1 + 0.2
+        };
+        for (int decimals = 0; decimals <= 10; decimals++) {
+            for (double value : values) {
+                StringWriter writer = new StringWriter();
+                GeoJSONBuilder builder = new GeoJSONBuilder(writer);
+                builder.setNumberOfDecimals(decimals);
+                builder.writeGeom(new GeometryFactory().createPoint(new Coordinate(value, 0)));
+
+                // same as what the generic JSONBuilder value encoding would produce
+                String expected = JSONUtils.valueToString(RoundingUtil.round(value, decimals));
+                assertEquals(
+                        "{\"type\":\"Point\",\"coordinates\":[" + expected + ",0]}",
+                        writer.toString());
+            }
+        }
+    }
+
     @Test
     public void testWriteGeometrySubclass() throws Exception {
         builder.writeGeom(new MyPoint(1, 2));
@@ -73,6 +73,8 @@ public class GetMap {
 
     private List<GetMapCallback> callbacks;
 
+    private GetMapCoalescer coalescer;
+
     public GetMap(final WMS wms) {
         this.wms = wms;
         this.ff = CommonFactoryFinder.getFilterFactory(GeoTools.getDefaultHints());
@@ -88,6 +90,14 @@ public void setGetMapCallbacks(List<GetMapCallback> callbacks) {
         this.callbacks.addAll(callbacks);
     }
 
+    /**
+     * Sets the coalescer sharing the output of identical concurrent requests, if not set each
+     * request renders its own map
+     */
+    public void setCoalescer(GetMapCoalescer coalescer) {
+        this.coalescer = coalescer;
+    }
+
     /**
      * Implements the map production logic for a WMS GetMap request, delegating the encoding to the
      * appropriate output format to a {@link GetMapOutputFormat} appropriate for the required
@@ -105,6 +115,14 @@ public void setGetMapCallbacks(List<GetMapCallback> callbacks) {
      */
     public WebMap run(GetMapRequest request) throws ServiceException {
         request = fireInitRequest(request);
+        if (coalescer != null) {
+            return coalescer.run(request, this::produceMap);
+        }
+        return produceMap(request);
+    }
+
+    /** Renders the map for the request, after the callbacks initialized it */
+    private WebMap produceMap(GetMapRequest request) throws ServiceException {
         // JD/GR:hold a reference in order to release resources later. mapcontext can leak memory --
         // we make sure we done (see finally block)
         WMSMapContent mapContent = new WMSMapContent(request);
@@ -689,7 +707,7 @@ public static void setupRenderingBuffer(WMSMapContent map, List<MapLayerInfo> la
     }
 
     /** Computes the rendering buffer for this layer */
-    static int computeLayerBuffer(Style style, double scaleDenominator) {
+    public static int computeLayerBuffer(Style style, double scaleDenominator) {
         final double TOLERANCE = 1e-6;
         MetaBufferEstimator estimator = new MetaBufferEstimator();
         for (FeatureTypeStyle fts : style.featureTypeStyles()) {
@@ -0,0 +1,342 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.LocalPublished;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.Response;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wms.map.RawMap;
+import org.geoserver.wms.map.RenderedImageMap;
+import org.geoserver.wms.map.RenderedImageTimeDecorator;
+import org.geotools.util.Converters;
+import org.geotools.util.logging.Logging;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Coalesces identical GetMap requests running at the same time: the first request renders the map,
+ * concurrent requests with the same parameters (and same user and virtual service) wait for it and
+ * share the rendered map instead of rendering the same map again. Each request then encodes the
+ * shared map with its own response, streaming it to its client.
+ *
+ * <p>Coalescing is opt-in, it's enabled either for all layers by setting the {@link
+ * WMS#GETMAP_COALESCING} key in the WMS service metadata, or for specific layers by setting the
+ * same key in the layer metadata. A request is coalesced only if all its layers have it enabled.
+ * Only maps that can be safely encoded more than once are shared, that is, {@link RenderedImageMap}
+ * backed by a {@link BufferedImage} and {@link RawMap} not backed by a stream, in the other cases
+ * each request renders its own map.
+ */
+public class GetMapCoalescer {
+
+    static final Logger LOGGER = Logging.getLogger(GetMapCoalescer.class);
+
+    /** Produces the map, when the request is not coalesced with another one */
+    @FunctionalInterface
+    public interface MapProducer {
+        WebMap produce(GetMapRequest request) throws ServiceException;
+    }
+
+    /** A rendered map, shared among the coalesced requests */
+    abstract static class SharedMap {
+        final String mimeType;
+        final String[][] headers;
+        final String disposition;
+        final String extension;
+
+        SharedMap(WebMap map) {
+            this.mimeType = map.getMimeType();
+            this.headers = map.getResponseHeaders();
+            this.disposition = map.getDisposition();
+            this.extension = map.getExtension();
+        }
+
+        /** Returns a new map for the given request, sharing the rendered contents */
+        WebMap toWebMap(GetMapRequest request) {
+            WebMap map = createMap(request);
+            map.setMimeType(mimeType);
+            if (headers != null) {
+                for (String[] header : headers) {
+                    map.setResponseHeader(header[0], header[1]);
+                }
+            }
+            if (disposition != null) {
+                map.setContentDispositionHeader(
+                        map.getMapContent(),
+                        extension,
+                        Response.DISPOSITION_ATTACH.equals(disposition));
+            }
+            return map;
+        }
+
+        abstract WebMap createMap(GetMapRequest request);
+    }
+
+    /** Shares the image of a {@link RenderedImageMap} */
+    static class SharedImageMap extends SharedMap {
+        final BufferedImage image;
+
+        /** A copy of the map content without layers, the original is disposed once written */
+        final WMSMapContent content;
+
+        SharedImageMap(RenderedImageMap map, BufferedImage image) {
+            super(map);
+            this.image = image;
+            this.content = new WMSMapContent(map.getMapContext(), false);
+        }
+
+        @Override
+        WebMap createMap(GetMapRequest request) {
+            WMSMapContent mapContent = new WMSMapContent(content, false);
+            mapContent.setRequest(request);
+            return new RenderedImageMap(mapContent, image, mimeType);
+        }
+    }
+
+    /** Shares the contents of a {@link RawMap} */
+    static class SharedRawMap extends SharedMap {
+        final RawMap map;
+
+        SharedRawMap(RawMap map) {
+            super(map);
+            this.map = map.copy();
+        }
+
+        @Override
+        WebMap createMap(GetMapRequest request) {
+            return map.copy();
+        }
+    }
+
+    private final WMS wms;
+
+    final Map<String, CompletableFuture<SharedMap>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder rendered = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    private final LongAdder unshareable = new LongAdder();
+
+    public GetMapCoalescer(WMS wms) {
+        this.wms = wms;
+    }
+
+    /**
+     * Returns true if coalescing is enabled for the request, that is, if it's enabled globally, or
+     * for all the layers in the request
+     */
+    public boolean isEnabled(GetMapRequest request) {
+        if (request.getRawKvp() == null
+                || request.getLayers().isEmpty()
+                || !isDispatched(request)) {
+            return false;
+        }
+        if (wms.isGetMapCoalescingEnabled()) {
+            return true;
+        }
+        for (MapLayerInfo layer : request.getLayers()) {
+            LayerInfo info = layer.getLayerInfo();
+            if (info == null) {
+                return false;
+            }
+            Boolean enabled =
+                    Converters.convert(
+                            info.getMetadata().get(WMS.GETMAP_COALESCING), Boolean.class);
+            if (!Boolean.TRUE.equals(enabled)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the request is the one being dispatched. Internal GetMap requests (e.g., the ones
+     * building tiles for a GeoPackage) are derived from the dispatched one and share its raw KVP
+     * parameters, so they cannot be told apart by those alone.
+     */
+    boolean isDispatched(GetMapRequest request) {
+        Request dispatched = Dispatcher.REQUEST.get();
+        if (dispatched == null
+                || dispatched.getOperation() == null
+                || dispatched.getOperation().getParameters() == null) {
+            return false;
+        }
+        for (Object parameter : dispatched.getOperation().getParameters()) {
+            if (parameter == request) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the key identifying identical requests, made of the sorted request parameters, the
+     * current user, as the output might depend on the data the user can access, and the virtual
+     * service the request has been sent to, as the same layer names can resolve to different layers
+     * in different workspaces
+     */
+    String getKey(GetMapRequest request) {
+        Map<String, String> kvp = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        kvp.putAll(request.getRawKvp());
+
+        StringBuilder sb = new StringBuilder();
+        Request dispatched = Dispatcher.REQUEST.get();
+        if (dispatched != null) {
+            sb.append(dispatched.getContext()).append('|').append(dispatched.getPath());
+        }
+        WorkspaceInfo workspace = LocalWorkspace.get();
+        sb.append('|').append(workspace != null ? workspace.getName() : null);
+        PublishedInfo published = LocalPublished.get();
+        sb.append('|').append(published != null ? published.prefixedName() : null);
+        sb.append('|');
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null) {
+            sb.append(auth.getName());
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                sb.append(',').append(authority.getAuthority());
+            }
+        }
+        for (Map.Entry<String, String> entry : kvp.entrySet()) {
+            sb.append('&').append(entry.getKey().toUpperCase()).append('=');
+            sb.append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs the request, coalescing it with an identical one already in progress if possible
+     *
+     * @param request The GetMap request
+     * @param producer The map producer, invoked if the request cannot be coalesced
+     */
+    public WebMap run(GetMapRequest request, MapProducer producer) throws ServiceException {
+        if (!isEnabled(request)) {
+            return producer.produce(request);
+        }
+
+        String key = getKey(request);
+        CompletableFuture<SharedMap> future = new CompletableFuture<>();
+        CompletableFuture<SharedMap> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            SharedMap shared;
+            try {
+                shared = existing.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new ServiceException("Failed to produce the map", cause);
+            }
+            if (shared != null) {
+                coalesced.increment();
+                return shared.toWebMap(request);
+            }
+            // the map could not be shared, render it independently
+            return producer.produce(request);
+        }
+
+        try {
+            rendered.increment();
+            WebMap map = producer.produce(request);
+            SharedMap shared = share(map);
+            future.complete(shared);
+            if (shared == null) {
+                unshareable.increment();
+            }
+            // the leader writes its own map, the response will dispose it
+            return map;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Returns a shareable version of the map, or null if the map cannot be written more than once
+     * (e.g., its image is a lazy chain disposed after the first write, or its contents a stream)
+     */
+    SharedMap share(WebMap map) {
+        if (map instanceof RawMap && ((RawMap) map).isRepeatable()) {
+            return new SharedRawMap((RawMap) map);
+        } else if (map instanceof RenderedImageMap
+                && ((RenderedImageMap) map).getMapContext() != null) {
+            RenderedImage image = ((RenderedImageMap) map).getImage();
+            if (image instanceof RenderedImageTimeDecorator) {
+                image = ((RenderedImageTimeDecorator) image).getDelegate();
+            }
+            // buffered images are fully rendered, and survive the cleanup of the first request
+            if (image instanceof BufferedImage) {
+                return new SharedImageMap((RenderedImageMap) map, (BufferedImage) image);
+            }
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Cannot share maps of type " + map.getClass().getName() + ", skipping");
+        }
+        return null;
+    }
+
+    /** Returns the coalescing statistics */
+    public Statistics getStatistics() {
+        return new Statistics(rendered.sum(), coalesced.sum(), unshareable.sum(), inFlight.size());
+    }
+
+    /** Coalescing statistics */
+    public static class Statistics {
+        long rendered;
+
+        long coalesced;
+
+        long unshareable;
+
+        int inFlight;
+
+        Statistics(long rendered, long coalesced, long unshareable, int inFlight) {
+            this.rendered = rendered;
+            this.coalesced = coalesced;
+            this.unshareable = unshareable;
+            this.inFlight = inFlight;
+        }
+
+        /** Number of coalescing enabled requests that actually rendered the map */
+        public long getRendered() {
+            return rendered;
+        }
+
+        /** Number of requests that got their map from an identical request in progress */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /** Number of rendered maps that could not be shared, due to their type */
+        public long getUnshareable() {
+            return unshareable;
+        }
+
+        /** Number of maps being rendered at the time the statistics were collected */
+        public int getInFlight() {
+            return inFlight;
+        }
+    }
+}
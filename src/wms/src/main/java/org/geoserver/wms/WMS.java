@@ -130,6 +130,17 @@ public class WMS implements ApplicationContextAware {
 
     public static final String FEATURES_REPROJECTION_DISABLED = "featuresReprojectionDisabled";
 
+    /** Maximum memory used by the meta-tile cache of TILED=true requests, in KB */
+    public static final String META_TILE_CACHE_MAX_MEMORY = "metaTileCacheMaxMemory";
+
+    public static final int META_TILE_CACHE_MAX_MEMORY_DEFAULT = 64 * 1024;
+
+    /**
+     * Enables coalescing of identical concurrent GetMap requests, used both in the service and in
+     * the layer metadata
+     */
+    public static final String GETMAP_COALESCING = "getMapCoalescing";
+
     static final Logger LOGGER = Logging.getLogger(WMS.class);
 
     public static final String WEB_CONTAINER_KEY = "WMS";
@@ -523,6 +534,11 @@ public int getJpegCompression() {
                 serviceInfo.getMetadata(), JPEG_COMPRESSION, JPEG_COMPRESSION_DEFAULT);
     }
 
+    /** Checks if coalescing of identical GetMap requests is enabled for all layers */
+    public boolean isGetMapCoalescingEnabled() {
+        return getMetadataValue(GETMAP_COALESCING, Boolean.FALSE, Boolean.class);
+    }
+
     /** Checks if continuous map wrapping is enabled or not */
     public boolean isContinuousMapWrappingEnabled() {
         // for backwards compatibility we set the config value to the sys variable one if set, but
@@ -629,6 +645,14 @@ public int getMaxRequestedDimensionValues() {
         return getServiceInfo().getMaxRequestedDimensionValues();
     }
 
+    /**
+     * Returns the number of pixels above which GetMap requests are painted in parallel, zero or
+     * negative if parallel rendering is disabled
+     */
+    public int getParallelRenderingThreshold() {
+        return getServiceInfo().getParallelRenderingThreshold();
+    }
+
     public String getKmlReflectorMode() {
         String value = (String) getServiceInfo().getMetadata().get(KML_REFLECTOR_MODE);
         return value != null ? value : KML_REFLECTOR_MODE_DEFAULT;
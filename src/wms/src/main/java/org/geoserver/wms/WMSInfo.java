@@ -186,6 +186,22 @@ default void setMaxRequestedDimensionValues(int maxRequestedDimensionValues) {
         // if not implemented nothing is done
     }
 
+    /**
+     * Returns the number of pixels above which GetMap requests are painted in parallel, splitting
+     * the map in horizontal strips. Zero or negative (the default) disables parallel rendering.
+     */
+    default int getParallelRenderingThreshold() {
+        return 0;
+    }
+
+    /**
+     * Sets the number of pixels above which GetMap requests are painted in parallel. Zero or
+     * negative will disable parallel rendering.
+     */
+    default void setParallelRenderingThreshold(int parallelRenderingThreshold) {
+        // if not implemented nothing is done
+    }
+
     /** Returns WMS cache configuration for remote resources. */
     CacheConfiguration getCacheConfiguration();
 
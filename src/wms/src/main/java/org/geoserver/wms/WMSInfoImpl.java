@@ -77,6 +77,8 @@ public class WMSInfoImpl extends ServiceInfoImpl implements WMSInfo {
 
     private Integer maxRequestedDimensionValues;
 
+    private Integer parallelRenderingThreshold;
+
     private CacheConfiguration cacheConfiguration = new CacheConfiguration();
 
     private Integer remoteStyleMaxRequestTime;
@@ -286,6 +288,16 @@ public void setMaxRequestedDimensionValues(int maxRequestedDimensionValues) {
         this.maxRequestedDimensionValues = maxRequestedDimensionValues;
     }
 
+    @Override
+    public int getParallelRenderingThreshold() {
+        return parallelRenderingThreshold == null ? 0 : parallelRenderingThreshold;
+    }
+
+    @Override
+    public void setParallelRenderingThreshold(int parallelRenderingThreshold) {
+        this.parallelRenderingThreshold = parallelRenderingThreshold;
+    }
+
     @Override
     public CacheConfiguration getCacheConfiguration() {
         if (cacheConfiguration == null) {
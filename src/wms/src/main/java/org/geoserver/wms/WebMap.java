@@ -110,6 +110,11 @@ public void setContentDispositionHeader(
         this.disposition = attachment ? Response.DISPOSITION_ATTACH : Response.DISPOSITION_INLINE;
     }
 
+    /** Returns the extension used to build the attachment file name */
+    String getExtension() {
+        return extension;
+    }
+
     public String getDisposition() {
         return disposition;
     }
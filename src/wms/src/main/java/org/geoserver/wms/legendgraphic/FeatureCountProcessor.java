@@ -9,10 +9,13 @@
 import java.awt.RenderingHints.Key;
 import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -20,14 +23,21 @@
 import org.apache.commons.lang3.StringUtils;
 import org.geoserver.catalog.NamespaceInfo;
 import org.geoserver.ows.util.CaseInsensitiveMap;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.DefaultWebMapService;
 import org.geoserver.wms.GetLegendGraphicRequest;
 import org.geoserver.wms.GetLegendGraphicRequest.LegendRequest;
 import org.geoserver.wms.GetMap;
+import org.geoserver.wms.GetMapOutputFormat;
 import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.MapLayerInfo;
+import org.geoserver.wms.MapProducerCapabilities;
 import org.geoserver.wms.WMS;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.WebMap;
 import org.geoserver.wms.map.GetMapKvpRequestReader;
+import org.geoserver.wms.map.RawMap;
 import org.geoserver.wms.map.RenderedImageMapOutputFormat;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.renderer.RenderListener;
@@ -39,6 +49,7 @@
 import org.geotools.styling.Rule;
 import org.geotools.styling.Style;
 import org.geotools.styling.StyleFactory2;
+import org.geotools.styling.Symbolizer;
 import org.geotools.styling.TextSymbolizer;
 import org.geotools.styling.visitor.DuplicatingStyleVisitor;
 import org.geotools.util.Converters;
@@ -59,6 +70,12 @@ class FeatureCountProcessor {
     public static final String WIDTH = "WIDTH";
     public static final String HEIGHT = "HEIGHT";
 
+    /**
+     * System/environment variable forcing the legend counts to be computed rendering the map, as
+     * opposed to reading and counting the features directly
+     */
+    public static final String RENDER_COUNT = "GEOSERVER_LEGEND_COUNT_RENDER";
+
     /**
      * Updates a rule setting its description's title as the provided targetLabel description)
      *
@@ -134,6 +151,42 @@ public void errorOccurred(Exception e) {
         }
     }
 
+    /**
+     * Hands the map content built by {@link GetMap} to a {@link RuleMatchCounter}, the features are
+     * read, but not rendered
+     */
+    private static final class FeatureCountFormat implements GetMapOutputFormat {
+
+        static final String MIME_TYPE = "application/octet-stream";
+
+        private RuleMatchCounter counter;
+
+        private FeatureCountFormat(RuleMatchCounter counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public WebMap produceMap(WMSMapContent mapContent) throws ServiceException, IOException {
+            counter.count(mapContent);
+            return new RawMap(mapContent, new byte[0], MIME_TYPE);
+        }
+
+        @Override
+        public Set<String> getOutputFormatNames() {
+            return Collections.singleton(MIME_TYPE);
+        }
+
+        @Override
+        public String getMimeType() {
+            return MIME_TYPE;
+        }
+
+        @Override
+        public MapProducerCapabilities getCapabilities(String format) {
+            return null;
+        }
+    }
+
     /**
      * Checks if there are rules in match first mode
      *
@@ -215,7 +268,9 @@ public Rule[] preProcessRules(LegendRequest legend, Rule[] rules) {
         try {
             GetMapRequest getMapRequest = parseAssociatedGetMap(legend, rules);
             Map<Rule, AtomicInteger> counters =
-                    renderAndCountFeatures(rules, getMapRequest, matchFirst);
+                    isCountable(legend, rules, getMapRequest)
+                            ? countFeatures(rules, getMapRequest, matchFirst)
+                            : renderAndCountFeatures(rules, getMapRequest, matchFirst);
             Rule[] result = updateRuleTitles(rules, counters);
 
             return result;
@@ -250,6 +305,58 @@ private Rule[] updateRuleTitles(Rule[] rules, Map<Rule, AtomicInteger> counters)
         return result.toArray(new Rule[result.size()]);
     }
 
+    /**
+     * Checks if the rules can be counted without rendering the layer: the layers must be vector
+     * ones, the style cannot contain rendering transformations (the features rendered would not be
+     * the ones read), and symbolizers cannot use their own geometries (the area read would depend
+     * on them)
+     */
+    private boolean isCountable(LegendRequest legend, Rule[] rules, GetMapRequest getMapRequest) {
+        if (Boolean.parseBoolean(GeoServerExtensions.getProperty(RENDER_COUNT))) {
+            return false;
+        }
+        for (MapLayerInfo layer : getMapRequest.getLayers()) {
+            if (layer.getType() != MapLayerInfo.TYPE_VECTOR
+                    && layer.getType() != MapLayerInfo.TYPE_REMOTE_VECTOR) {
+                return false;
+            }
+        }
+        Style style = legend.getStyle();
+        if (style != null) {
+            for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+                if (fts.getTransformation() != null) {
+                    return false;
+                }
+            }
+        }
+        for (Rule rule : rules) {
+            for (Symbolizer symbolizer : rule.symbolizers()) {
+                if (symbolizer.getGeometry() != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Counts the features matched by each rule reading the data, without rendering it */
+    private Map<Rule, AtomicInteger> countFeatures(
+            Rule[] rules, GetMapRequest getMapRequest, boolean matchFirst) {
+        final WMS wms = request.getWms();
+        RuleMatchCounter counter = new RuleMatchCounter(wms, rules, matchFirst);
+        GetMap getMap =
+                new GetMap(wms) {
+                    @Override
+                    protected org.geoserver.wms.GetMapOutputFormat getDelegate(String outputFormat)
+                            throws ServiceException {
+                        return new FeatureCountFormat(counter);
+                    };
+                };
+        getMap.run(getMapRequest);
+
+        return counter.getCounters();
+    }
+
     private Map<Rule, AtomicInteger> renderAndCountFeatures(
             Rule[] rules, GetMapRequest getMapRequest, boolean matchFirst) {
         final WMS wms = request.getWms();
@@ -0,0 +1,403 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.legendgraphic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.wms.GetMap;
+import org.geoserver.wms.MapLayerInfo;
+import org.geoserver.wms.WMS;
+import org.geoserver.wms.WMSMapContent;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.feature.visitor.Aggregate;
+import org.geotools.feature.visitor.GroupByVisitor;
+import org.geotools.feature.visitor.GroupByVisitorBuilder;
+import org.geotools.filter.FilterAttributeExtractor;
+import org.geotools.filter.visitor.DefaultFilterVisitor;
+import org.geotools.filter.visitor.SimplifyingFilterVisitor;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.Layer;
+import org.geotools.referencing.CRS;
+import org.geotools.renderer.crs.ProjectionHandler;
+import org.geotools.renderer.crs.ProjectionHandlerFinder;
+import org.geotools.styling.Rule;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.Id;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Counts the features matched by each rule of a legend, reading the map layers with the same
+ * filters as the equivalent GetMap, but without rendering them.
+ *
+ * <p>A feature is counted if at least one of the rules active at the map scale applies to it, the
+ * same as the features the renderer would paint. Depending on the rule filters, the count is
+ * computed:
+ *
+ * <ul>
+ *   <li>with a single count query, if the filters do not depend on the feature attributes
+ *   <li>grouping by the attributes used in the filters, and evaluating the filters once per group,
+ *       if the store can compute the aggregation in the database
+ *   <li>evaluating the filters on each feature, while streaming them out of the store, otherwise
+ * </ul>
+ */
+class RuleMatchCounter {
+
+    static final Logger LOGGER = Logging.getLogger(RuleMatchCounter.class);
+
+    static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+
+    /** Same tolerance used by the renderer when checking the rules scale ranges */
+    static final double TOLERANCE = 1e-6;
+
+    private final WMS wms;
+
+    private final Rule[] rules;
+
+    private final boolean matchFirst;
+
+    private final Map<Rule, AtomicInteger> counters;
+
+    /** The rules active at the current scale, or null if all the rules are active */
+    private Rule[] activeRules;
+
+    public RuleMatchCounter(WMS wms, Rule[] rules, boolean matchFirst) {
+        this.wms = wms;
+        this.rules = rules;
+        this.matchFirst = matchFirst;
+        this.counters =
+                Arrays.stream(rules)
+                        .collect(Collectors.toMap(Function.identity(), r -> new AtomicInteger(0)));
+    }
+
+    /** Returns the counters for each rule */
+    public Map<Rule, AtomicInteger> getCounters() {
+        return counters;
+    }
+
+    /** Counts the features of the vector layers in the map content */
+    public void count(WMSMapContent mapContent) throws IOException {
+        double scaleDenominator = mapContent.getScaleDenominator(true);
+        Rule[] active =
+                Arrays.stream(rules)
+                        .filter(r -> isWithInScale(r, scaleDenominator))
+                        .toArray(n -> new Rule[n]);
+        if (active.length == 0) {
+            return;
+        }
+        this.activeRules = active.length == rules.length ? null : active;
+
+        List<MapLayerInfo> mapLayers = mapContent.getRequest().getLayers();
+        for (int i = 0; i < mapContent.layers().size(); i++) {
+            Layer layer = mapContent.layers().get(i);
+            if (layer instanceof FeatureLayer) {
+                MapLayerInfo mapLayer = i < mapLayers.size() ? mapLayers.get(i) : null;
+                count((FeatureLayer) layer, mapLayer, mapContent);
+            }
+        }
+    }
+
+    private void count(FeatureLayer layer, MapLayerInfo mapLayer, WMSMapContent mapContent)
+            throws IOException {
+        FeatureSource<?, ?> source = layer.getFeatureSource();
+        FeatureType schema = source.getSchema();
+
+        Query query = new Query(layer.getQuery());
+        query.setSortBy(null);
+        Filter bboxFilter = getBBoxFilter(schema, layer, mapContent);
+        query.setFilter(SimplifyingFilterVisitor.simplify(FF.and(bboxFilter, query.getFilter())));
+        if (query.getFilter() == Filter.EXCLUDE) {
+            return;
+        }
+
+        RuleAttributes attributes = new RuleAttributes(schema);
+        if (attributes.isSimple() && attributes.names.isEmpty()) {
+            // the filters do not depend on the feature contents, just count
+            LOGGER.fine("Counting legend rule matches with a count query");
+            query.setPropertyNames(Query.NO_NAMES);
+            int count = source.getFeatures(query).size();
+            if (count > 0) {
+                count(attributes.buildFeature(null), count);
+            }
+        } else if (attributes.isSimple()
+                && isAggregationSupported(mapLayer)
+                && query.getMaxFeatures() == Query.DEFAULT_MAX
+                && query.getStartIndex() == null) {
+            LOGGER.fine(
+                    "Counting legend rule matches grouping by "
+                            + attributes.names
+                            + " in the store");
+            countGroups(source, query, attributes);
+        } else {
+            LOGGER.fine("Counting legend rule matches streaming the features");
+            if (attributes.isKnown()) {
+                query.setPropertyNames(new ArrayList<>(attributes.names));
+            }
+            source.getFeatures(query).accepts(f -> count(f, 1), null);
+        }
+    }
+
+    /**
+     * Groups the features by the attributes used in the rule filters, and evaluates the rules once
+     * per group
+     */
+    private void countGroups(FeatureSource<?, ?> source, Query query, RuleAttributes attributes)
+            throws IOException {
+        List<String> names = new ArrayList<>(attributes.names);
+        query.setPropertyNames(names);
+        GroupByVisitorBuilder builder = new GroupByVisitorBuilder();
+        builder.withAggregateVisitor(Aggregate.COUNT);
+        builder.withAggregateAttribute(FF.property(names.get(0)));
+        for (String name : names) {
+            builder.withGroupByAttribute(FF.property(name));
+        }
+        GroupByVisitor visitor = builder.build();
+        FeatureCollection<?, ?> features = source.getFeatures(query);
+        features.accepts(visitor, null);
+
+        @SuppressWarnings("unchecked")
+        Map<List<Object>, Object> groups = visitor.getResult().toMap();
+        for (Map.Entry<List<Object>, Object> entry : groups.entrySet()) {
+            List<Object> key = entry.getKey();
+            Object value = entry.getValue();
+            int count = value instanceof Number ? ((Number) value).intValue() : 0;
+            if (key.get(0) == null) {
+                // a database count over the aggregate attribute skips nulls, count them apart
+                count = countGroup(source, query, names, key);
+            }
+            if (count > 0) {
+                count(attributes.buildFeature(key), count);
+            }
+        }
+    }
+
+    private int countGroup(
+            FeatureSource<?, ?> source, Query query, List<String> names, List<Object> key)
+            throws IOException {
+        List<Filter> filters = new ArrayList<>();
+        filters.add(query.getFilter());
+        for (int i = 0; i < names.size(); i++) {
+            PropertyName property = FF.property(names.get(i));
+            Object value = key.get(i);
+            filters.add(
+                    value == null ? FF.isNull(property) : FF.equals(property, FF.literal(value)));
+        }
+        Query groupQuery = new Query(query);
+        groupQuery.setFilter(FF.and(filters));
+        groupQuery.setPropertyNames(Query.NO_NAMES);
+        return source.getFeatures(groupQuery).size();
+    }
+
+    /**
+     * Updates the rule counters for a feature, or a group of features sharing the values used by
+     * the rule filters
+     */
+    void count(Object feature, int weight) {
+        if (!isRendered(feature)) {
+            return;
+        }
+        boolean matched = false;
+        for (Rule rule : rules) {
+            if (rule.isElseFilter()) {
+                if (!matched) {
+                    counters.get(rule).addAndGet(weight);
+                }
+            } else if (rule.getFilter() == null || rule.getFilter().evaluate(feature)) {
+                counters.get(rule).addAndGet(weight);
+                matched = true;
+                if (matchFirst) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if a feature would be painted by the renderer. If all rules are active, the check is
+     * not needed, a feature not matched by any rule is not going to update the counters anyways
+     */
+    private boolean isRendered(Object feature) {
+        if (activeRules == null) {
+            return true;
+        }
+        boolean elseRule = false;
+        for (Rule rule : activeRules) {
+            if (rule.isElseFilter()) {
+                elseRule = true;
+            } else if (rule.getFilter() == null || rule.getFilter().evaluate(feature)) {
+                return true;
+            }
+        }
+        return elseRule;
+    }
+
+    static boolean isWithInScale(Rule rule, double scaleDenominator) {
+        return ((rule.getMinScaleDenominator() - TOLERANCE) <= scaleDenominator)
+                && ((rule.getMaxScaleDenominator() + TOLERANCE) > scaleDenominator);
+    }
+
+    /** Only JDBC stores can run the grouping in the database, for the others it's done in memory */
+    private boolean isAggregationSupported(MapLayerInfo mapLayer) {
+        if (mapLayer == null || mapLayer.getType() != MapLayerInfo.TYPE_VECTOR) {
+            return false;
+        }
+        try {
+            FeatureTypeInfo featureType = mapLayer.getFeature();
+            StoreInfo store = featureType.getStore();
+            return store instanceof DataStoreInfo
+                    && ((DataStoreInfo) store).getDataStore(null) instanceof JDBCDataStore;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not get the store of " + mapLayer.getName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Builds the same bounding box filter the renderer would use, one box per area the map requires
+     * to be read (e.g., in case of dateline crossing)
+     */
+    private Filter getBBoxFilter(FeatureType schema, Layer layer, WMSMapContent mapContent)
+            throws IOException {
+        GeometryDescriptor geometry = schema.getGeometryDescriptor();
+        if (geometry == null) {
+            return Filter.INCLUDE;
+        }
+        ReferencedEnvelope area = new ReferencedEnvelope(mapContent.getRenderingArea());
+        // same as the renderer, without an explicit buffer estimate it from the layer style
+        int buffer = mapContent.getBuffer();
+        if (buffer <= 0 && layer.getStyle() != null) {
+            buffer =
+                    GetMap.computeLayerBuffer(
+                            layer.getStyle(), mapContent.getScaleDenominator(true));
+        }
+        if (buffer > 0) {
+            double pixelSize = area.getWidth() / mapContent.getMapWidth();
+            area.expandBy(buffer * pixelSize);
+        }
+
+        try {
+            List<ReferencedEnvelope> envelopes = new ArrayList<>();
+            CoordinateReferenceSystem crs = geometry.getCoordinateReferenceSystem();
+            if (crs == null
+                    || area.getCoordinateReferenceSystem() == null
+                    || CRS.equalsIgnoreMetadata(crs, area.getCoordinateReferenceSystem())) {
+                envelopes.add(area);
+            } else {
+                ProjectionHandler handler = null;
+                if (wms.isAdvancedProjectionHandlingEnabled()) {
+                    handler =
+                            ProjectionHandlerFinder.getHandler(
+                                    area, crs, wms.isContinuousMapWrappingEnabled());
+                }
+                if (handler != null) {
+                    envelopes.addAll(handler.getQueryEnvelopes());
+                } else {
+                    envelopes.add(area.transform(crs, true));
+                }
+            }
+            if (envelopes.isEmpty()) {
+                return Filter.EXCLUDE;
+            }
+
+            PropertyName property = FF.property(geometry.getLocalName());
+            List<Filter> filters =
+                    envelopes.stream().map(e -> FF.bbox(property, e)).collect(Collectors.toList());
+            return filters.size() == 1 ? filters.get(0) : FF.or(filters);
+        } catch (Exception e) {
+            throw new IOException("Failed to compute the area to read for legend counts", e);
+        }
+    }
+
+    /** The attributes used by the rule filters */
+    private class RuleAttributes extends DefaultFilterVisitor {
+
+        final FeatureType schema;
+
+        final Set<String> names = new LinkedHashSet<>();
+
+        boolean idFilter;
+
+        boolean known = true;
+
+        boolean geometry;
+
+        SimpleFeatureType groupType;
+
+        RuleAttributes(FeatureType schema) {
+            this.schema = schema;
+            FilterAttributeExtractor extractor = new FilterAttributeExtractor();
+            for (Rule rule : rules) {
+                Filter filter = rule.getFilter();
+                if (!rule.isElseFilter() && filter != null) {
+                    filter.accept(extractor, null);
+                    filter.accept(this, null);
+                }
+            }
+            for (String name : extractor.getAttributeNameSet()) {
+                AttributeDescriptor descriptor = schema.getDescriptor(name);
+                if (descriptor == null) {
+                    known = false;
+                } else if (descriptor instanceof GeometryDescriptor) {
+                    geometry = true;
+                }
+                names.add(name);
+            }
+        }
+
+        @Override
+        public Object visit(Id filter, Object data) {
+            idFilter = true;
+            return data;
+        }
+
+        /** True if the rule filters only depend on the given plain attributes values */
+        boolean isSimple() {
+            return schema instanceof SimpleFeatureType && known && !geometry && !idFilter;
+        }
+
+        /** True if all the attributes used by the rule filters are part of the schema */
+        boolean isKnown() {
+            return known && !names.isEmpty();
+        }
+
+        /** Builds a feature with the given values for the filter attributes */
+        Feature buildFeature(List<Object> values) {
+            if (groupType == null) {
+                groupType =
+                        SimpleFeatureTypeBuilder.retype(
+                                (SimpleFeatureType) schema, names.toArray(new String[0]));
+            }
+            Object[] attributes = values == null ? new Object[0] : values.toArray();
+            return SimpleFeatureBuilder.build(groupType, attributes, null);
+        }
+    }
+}
@@ -119,68 +119,68 @@ public MetatileMapOutputFormat(GetMapRequest request, RenderedImageMapOutputForm
     @Override
     public WebMap produceMap(WMSMapContent mapContent) throws ServiceException, IOException {
         // get the key that identifies the meta tile. The cache will make sure
-        // two threads asking
-        // for the same tile will get the same key, and thus will synchronize
-        // with each other
-        // (the first eventually builds the meta-tile, the second finds it ready
-        // to be used)
+        // two threads asking for the same tile will be coalesced (the first
+        // eventually builds the meta-tile, the second waits for it to be ready)
         QuickTileCache.MetaTileKey key = tileCache.getMetaTileKey(request);
 
-        synchronized (key) {
-            RenderedImage tile = tileCache.getTile(key, request);
-            List<GridCoverage2D> renderedCoverages = null;
-
-            if (LOGGER.isLoggable(Level.FINER)) {
-                LOGGER.finer(
-                        "Looked for meta tile "
-                                + key.metaTileCoords.x
-                                + ", "
-                                + key.metaTileCoords.y
-                                + "in cache: "
-                                + ((tile != null) ? "hit!" : "miss"));
-            }
-
-            if (tile == null) {
-                // compute the meta-tile
-                if (LOGGER.isLoggable(Level.FINER)) {
-                    LOGGER.finer(
-                            "Building meta tile "
-                                    + key.metaTileCoords.x
-                                    + ", "
-                                    + key.metaTileCoords.y
-                                    + " of size w="
-                                    + key.getTileSize() * key.getMetaFactor()
-                                    + ", h="
-                                    + key.getTileSize() * key.getMetaFactor()
-                                    + " with metatilign factor "
-                                    + key.getMetaFactor());
-                }
+        @SuppressWarnings("unchecked")
+        List<GridCoverage2D>[] renderedCoverages = new List[1];
+        boolean[] built = {false};
+        RenderedImage[] tiles =
+                tileCache.getTiles(
+                        key,
+                        k -> {
+                            RenderedImageMap metaTileMap = buildMetaTile(k, mapContent);
+                            built[0] = true;
+                            renderedCoverages[0] = metaTileMap.getRenderedCoverages();
+                            return split(k, metaTileMap.getImage());
+                        });
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer(
+                    "Looked for meta tile "
+                            + key.metaTileCoords.x
+                            + ", "
+                            + key.metaTileCoords.y
+                            + "in cache: "
+                            + (built[0] ? "miss" : "hit!"));
+        }
+        RenderedImage tile = tileCache.getTile(key, request, tiles);
+        RenderedImageMap tileMap = new RenderedImageMap(mapContent, tile, getMimeType());
+        tileMap.setRenderedCoverages(renderedCoverages[0]);
+        return tileMap;
+    }
 
-                // alter the map definition so that we build a meta-tile instead
-                // of just the tile
-                mapContent.getViewport().setBounds(key.getMetaTileEnvelope());
-                mapContent.setMapWidth(key.getTileSize() * key.getMetaFactor());
-                mapContent.setMapHeight(key.getTileSize() * key.getMetaFactor());
-                mapContent.setTileSize(key.getTileSize());
+    private RenderedImageMap buildMetaTile(QuickTileCache.MetaTileKey key, WMSMapContent mapContent)
+            throws IOException {
+        // compute the meta-tile
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer(
+                    "Building meta tile "
+                            + key.metaTileCoords.x
+                            + ", "
+                            + key.metaTileCoords.y
+                            + " of size w="
+                            + key.getTileSize() * key.getMetaFactor()
+                            + ", h="
+                            + key.getTileSize() * key.getMetaFactor()
+                            + " with metatilign factor "
+                            + key.getMetaFactor());
+        }
 
-                // adjust the bbox/width/height env vars that GetMap setup, since we
-                // are changing them under its feet
-                EnvFunction.setLocalValue("wms_bbox", mapContent.getViewport().getBounds());
-                EnvFunction.setLocalValue("wms_width", mapContent.getMapWidth());
-                EnvFunction.setLocalValue("wms_height", mapContent.getMapHeight());
+        // alter the map definition so that we build a meta-tile instead
+        // of just the tile
+        mapContent.getViewport().setBounds(key.getMetaTileEnvelope());
+        mapContent.setMapWidth(key.getTileSize() * key.getMetaFactor());
+        mapContent.setMapHeight(key.getTileSize() * key.getMetaFactor());
+        mapContent.setTileSize(key.getTileSize());
 
-                RenderedImageMap metaTileMap = delegate.produceMap(mapContent);
+        // adjust the bbox/width/height env vars that GetMap setup, since we
+        // are changing them under its feet
+        EnvFunction.setLocalValue("wms_bbox", mapContent.getViewport().getBounds());
+        EnvFunction.setLocalValue("wms_width", mapContent.getMapWidth());
+        EnvFunction.setLocalValue("wms_height", mapContent.getMapHeight());
 
-                RenderedImage metaTile = metaTileMap.getImage();
-                RenderedImage[] tiles = split(key, metaTile);
-                tileCache.storeTiles(key, tiles);
-                tile = tileCache.getTile(key, request, tiles);
-                renderedCoverages = metaTileMap.getRenderedCoverages();
-            }
-            RenderedImageMap tileMap = new RenderedImageMap(mapContent, tile, getMimeType());
-            tileMap.setRenderedCoverages(renderedCoverages);
-            return tileMap;
-        }
+        return delegate.produceMap(mapContent);
     }
 
     /** @see org.geoserver.wms.GetMapOutputFormat#getOutputFormatNames() */
@@ -12,6 +12,7 @@
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.geoserver.config.JAIInfo;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.GetMapRequest;
@@ -40,6 +41,18 @@ public class PNGMapResponse extends RenderedImageMapResponse {
 
     private static final String[] OUTPUT_FORMATS = {MIME_TYPE, MIME_TYPE_8BIT, "image/png8"};
 
+    /**
+     * Number of pixels above which the PNGJ encoder compresses the image data in parallel, can be
+     * set as a system/environment variable or servlet context parameter, a negative value disables
+     * parallel encoding
+     */
+    public static final String PARALLEL_PNG_THRESHOLD = "PARALLEL_PNG_THRESHOLD";
+
+    /** Default parallel encoding threshold, images larger than 2048x2048 */
+    static final long DEFAULT_PARALLEL_PNG_THRESHOLD = 2048 * 2048;
+
+    static long parallelThreshold = getParallelThreshold();
+
     /** The two quantizers available for PNG images */
     public enum QuantizeMethod {
         Octree,
@@ -98,7 +111,14 @@ public void formatImageOutputStream(
         float quality = (100 - wms.getPngCompression()) / 100.0f;
         JAIInfo.PngEncoderType encoder = wms.getPNGEncoderType();
         if (encoder == JAIInfo.PngEncoderType.PNGJ) {
-            image = new PNGJWriter().writePNG(image, outStream, quality, mapContent);
+            image =
+                    new PNGJWriter()
+                            .writePNG(
+                                    image,
+                                    outStream,
+                                    quality,
+                                    mapContent,
+                                    isParallelEncoding(image));
             RasterCleaner.addImage(image);
         } else {
             Boolean PNGNativeAcc = (encoder == JAIInfo.PngEncoderType.NATIVE);
@@ -117,6 +137,24 @@ public void formatImageOutputStream(
         }
     }
 
+    /** Returns true if the image is large enough to be worth compressing in parallel */
+    static boolean isParallelEncoding(RenderedImage image) {
+        return parallelThreshold >= 0
+                && (long) image.getWidth() * image.getHeight() > parallelThreshold;
+    }
+
+    private static long getParallelThreshold() {
+        String value = GeoServerExtensions.getProperty(PARALLEL_PNG_THRESHOLD);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid " + PARALLEL_PNG_THRESHOLD + " value: " + value);
+            }
+        }
+        return DEFAULT_PARALLEL_PNG_THRESHOLD;
+    }
+
     @Override
     public MapProducerCapabilities getCapabilities(String outputFormat) {
         return CAPABILITIES;
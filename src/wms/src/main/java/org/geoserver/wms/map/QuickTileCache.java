@@ -5,16 +5,27 @@
  */
 package org.geoserver.wms.map;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.geoserver.config.ConfigurationListenerAdapter;
@@ -27,13 +38,28 @@
 import org.geoserver.wfs.TransactionListener;
 import org.geoserver.wfs.WFSException;
 import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMS;
+import org.geoserver.wms.WMSInfo;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.CRS.AxisOrder;
-import org.geotools.util.CanonicalSet;
+import org.geotools.util.Converters;
+import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Envelope;
 
+/**
+ * Memory bounded cache of the meta-tiles built for TILED=true WMS requests.
+ *
+ * <p>The cache is backed by a concurrent, lock striped map, whose maximum memory usage is
+ * configured in the {@link WMSInfo} metadata map using the {@link WMS#META_TILE_CACHE_MAX_MEMORY}
+ * key (in KB), with least recently used meta-tiles being evicted first. Concurrent requests for the
+ * same meta-tile are coalesced, the first one builds it while the others wait for the result. Hit,
+ * miss, eviction and coalescing counters are available via {@link #getStatistics()}.
+ */
 public class QuickTileCache implements TransactionListener, GeoServerLifecycleHandler {
+
+    static final Logger LOGGER = Logging.getLogger(QuickTileCache.class);
+
     /**
      * Set of parameters that we can ignore, since they do not define a map, are either unrelated,
      * or define the tiling instead
@@ -52,12 +78,43 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         ignoredParameters.add("EXCEPTIONS");
     }
 
-    /** Canonicalizer used to return the same object when two threads ask for the same meta-tile */
-    private CanonicalSet<MetaTileKey> metaTileKeys = CanonicalSet.newInstance(MetaTileKey.class);
+    /** Builds the tiles of a meta-tile, used when the meta-tile is not found in the cache */
+    @FunctionalInterface
+    public interface MetaTileBuilder {
+        RenderedImage[] build(MetaTileKey key) throws IOException;
+    }
+
+    /** Meta-tiles being built at the moment, used to coalesce requests for the same meta-tile */
+    private final Map<MetaTileKey, CompletableFuture<RenderedImage[]>> inFlight =
+            new ConcurrentHashMap<>();
+
+    /** Number of requests that waited for a meta-tile being built by another request */
+    private final LongAdder coalesced = new LongAdder();
+
+    /** Estimated memory used by the tiles in the cache, in bytes */
+    private final AtomicLong memoryUsage = new AtomicLong();
+
+    private volatile long maxMemory = WMS.META_TILE_CACHE_MAX_MEMORY_DEFAULT * 1024L;
+
+    /**
+     * Maximum number of independently locked segments the cache is split into. The maximum memory
+     * is split evenly among the segments, and a segment cannot hold an entry larger than its share,
+     * so the number of segments is kept small regardless of the number of processors
+     */
+    static final int MAX_CONCURRENCY_LEVEL = 4;
+
+    /** Memory used by a 3x3 meta-tile of 256x256 RGBA tiles, used to size the segments */
+    static final long META_TILE_SIZE = 9 * 256 * 256 * 4;
+
+    /** Number of meta-tiles each segment should be able to hold, at least */
+    static final int META_TILES_PER_SEGMENT = 4;
+
+    private int concurrencyLevel = MAX_CONCURRENCY_LEVEL;
 
-    private WeakHashMap<MetaTileKey, CacheElement> tileCache = new WeakHashMap<>();
+    private volatile Cache<MetaTileKey, CacheElement> tileCache = buildCache(maxMemory);
 
     public QuickTileCache(GeoServer geoServer) {
+        configure(geoServer.getService(WMSInfo.class));
         geoServer.addListener(
                 new ConfigurationListenerAdapter() {
                     @Override
@@ -66,7 +123,7 @@ public void handleGlobalChange(
                             List<String> propertyNames,
                             List<Object> oldValues,
                             List<Object> newValues) {
-                        tileCache.clear();
+                        clear();
                     }
 
                     @Override
@@ -75,12 +132,20 @@ public void handleServiceChange(
                             List<String> propertyNames,
                             List<Object> oldValues,
                             List<Object> newValues) {
-                        tileCache.clear();
+                        clear();
+                    }
+
+                    @Override
+                    public void handlePostServiceChange(ServiceInfo service) {
+                        if (service instanceof WMSInfo) {
+                            configure((WMSInfo) service);
+                        }
                     }
 
                     @Override
                     public void reloaded() {
-                        tileCache.clear();
+                        clear();
+                        configure(geoServer.getService(WMSInfo.class));
                     }
                 });
     }
@@ -88,6 +153,57 @@ public void reloaded() {
     /** For testing only */
     QuickTileCache() {}
 
+    /** For testing only, uses a single segment so that evictions are predictable */
+    QuickTileCache(long maxMemory) {
+        this.maxMemory = maxMemory;
+        this.concurrencyLevel = 1;
+        this.tileCache = buildCache(maxMemory);
+    }
+
+    /**
+     * Sets up the cache size based on the WMS configuration, the cache is rebuilt (and thus
+     * emptied) only if the size actually changed
+     */
+    void configure(WMSInfo wms) {
+        long maxMemory = WMS.META_TILE_CACHE_MAX_MEMORY_DEFAULT * 1024L;
+        if (wms != null) {
+            Integer kb =
+                    Converters.convert(
+                            wms.getMetadata().get(WMS.META_TILE_CACHE_MAX_MEMORY), Integer.class);
+            if (kb != null && kb >= 0) {
+                maxMemory = kb * 1024L;
+            }
+        }
+        if (maxMemory != this.maxMemory) {
+            if (LOGGER.isLoggable(Level.CONFIG)) {
+                LOGGER.config("Setting meta-tile cache maximum memory to " + maxMemory + " bytes");
+            }
+            Cache<MetaTileKey, CacheElement> oldCache = this.tileCache;
+            this.maxMemory = maxMemory;
+            this.tileCache = buildCache(maxMemory);
+            oldCache.invalidateAll();
+        }
+    }
+
+    private Cache<MetaTileKey, CacheElement> buildCache(long maxMemory) {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maxMemory)
+                .<MetaTileKey, CacheElement>weigher((k, v) -> v.weight)
+                .concurrencyLevel(getConcurrencyLevel(maxMemory))
+                .removalListener(n -> memoryUsage.addAndGet(-n.getValue().weight))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the number of segments for the given maximum memory, using less segments than {@link
+     * #concurrencyLevel} if needed for each one to hold {@link #META_TILES_PER_SEGMENT} meta-tiles
+     */
+    int getConcurrencyLevel(long maxMemory) {
+        long segments = maxMemory / (META_TILES_PER_SEGMENT * META_TILE_SIZE);
+        return (int) Math.max(1, Math.min(concurrencyLevel, segments));
+    }
+
     /**
      * Given a tiled request, builds a key that can be used to access the cache looking for a
      * specific meta-tile, and also as a synchronization tool to avoid multiple requests to trigger
@@ -116,12 +232,7 @@ public MetaTileKey getMetaTileKey(GetMapRequest request) {
         Point tileCoords = getTileCoordinates(bbox, origin);
         Point metaTileCoords = getMetaTileCoordinates(tileCoords);
         ReferencedEnvelope metaTileEnvelope = getMetaTileEnvelope(bbox, tileCoords, metaTileCoords);
-        MetaTileKey key = new MetaTileKey(mapKey, metaTileCoords, metaTileEnvelope);
-
-        // since this will be used for thread synchronization, we have to make
-        // sure two thread asking for the same meta tile will get the same key
-        // object
-        return metaTileKeys.unique(key);
+        return new MetaTileKey(mapKey, metaTileCoords, metaTileEnvelope);
     }
 
     private ReferencedEnvelope getMetaTileEnvelope(
@@ -328,8 +439,8 @@ public String toString() {
     }
 
     /** Gathers a tile from the cache, if available */
-    public synchronized RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
-        CacheElement ce = tileCache.get(key);
+    public RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
+        CacheElement ce = tileCache.getIfPresent(key);
 
         if (ce == null) {
             return null;
@@ -338,6 +449,52 @@ public synchronized RenderedImage getTile(MetaTileKey key, GetMapRequest request
         return getTile(key, request, ce.tiles);
     }
 
+    /**
+     * Returns the tiles of the specified meta-tile, either grabbing them from the cache, waiting
+     * for another request that is building the same meta-tile, or building them with the provided
+     * builder and storing them in the cache.
+     */
+    public RenderedImage[] getTiles(MetaTileKey key, MetaTileBuilder builder) throws IOException {
+        CacheElement ce = tileCache.getIfPresent(key);
+        if (ce != null) {
+            return ce.tiles;
+        }
+
+        CompletableFuture<RenderedImage[]> future = new CompletableFuture<>();
+        CompletableFuture<RenderedImage[]> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new ServiceException("Failed to build meta tile", cause);
+            }
+        }
+
+        try {
+            // double check, the meta-tile might have been stored while we were registering
+            // (not using getIfPresent to avoid counting the same lookup twice in the stats)
+            ce = tileCache.asMap().get(key);
+            RenderedImage[] tiles = ce != null ? ce.tiles : builder.build(key);
+            if (ce == null && tiles != null) {
+                storeTiles(key, tiles);
+            }
+            future.complete(tiles);
+            return tiles;
+        } catch (IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
     /** */
     public RenderedImage getTile(MetaTileKey key, GetMapRequest request, RenderedImage[] tiles) {
         Envelope bbox = request.getBbox();
@@ -353,15 +510,150 @@ public RenderedImage getTile(MetaTileKey key, GetMapRequest request, RenderedIma
     /**
      * Puts the specified tile array in the cache, and returns the tile the request was looking for
      */
-    public synchronized void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
-        tileCache.put(key, new CacheElement(tiles));
+    public void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
+        CacheElement ce = new CacheElement(tiles);
+        memoryUsage.addAndGet(ce.weight);
+        tileCache.put(key, ce);
+    }
+
+    /** Returns a snapshot of the cache statistics */
+    public Statistics getStatistics() {
+        Cache<MetaTileKey, CacheElement> cache = this.tileCache;
+        return new Statistics(
+                cache.stats(),
+                coalesced.sum(),
+                cache.size(),
+                memoryUsage.get(),
+                maxMemory,
+                inFlight.size());
+    }
+
+    /** Empties the cache, the statistics are preserved */
+    public void clear() {
+        tileCache.invalidateAll();
     }
 
-    class CacheElement {
+    /** Estimates the memory used by a tile, in bytes */
+    static long getMemoryUsage(RenderedImage image) {
+        if (image == null) {
+            return 0;
+        }
+        SampleModel sm = image.getSampleModel();
+        long bitsPerPixel = 0;
+        for (int size : sm.getSampleSize()) {
+            bitsPerPixel += size;
+        }
+        return (long) image.getWidth() * image.getHeight() * bitsPerPixel / 8;
+    }
+
+    static class CacheElement {
         RenderedImage[] tiles;
 
+        int weight;
+
         public CacheElement(RenderedImage[] tiles) {
             this.tiles = tiles;
+            long total = 0;
+            for (RenderedImage tile : tiles) {
+                total += getMemoryUsage(tile);
+            }
+            this.weight = (int) Math.min(Integer.MAX_VALUE, total);
+        }
+    }
+
+    /** Snapshot of the meta-tile cache usage statistics */
+    public static class Statistics {
+        CacheStats stats;
+
+        long coalesced;
+
+        long size;
+
+        long memoryUsage;
+
+        long maxMemory;
+
+        int building;
+
+        Statistics(
+                CacheStats stats,
+                long coalesced,
+                long size,
+                long memoryUsage,
+                long maxMemory,
+                int building) {
+            this.stats = stats;
+            this.coalesced = coalesced;
+            this.size = size;
+            this.memoryUsage = memoryUsage;
+            this.maxMemory = maxMemory;
+            this.building = building;
+        }
+
+        /** Number of requests whose meta-tile was found in the cache */
+        public long getHits() {
+            return stats.hitCount();
+        }
+
+        /** Number of requests whose meta-tile was not found in the cache */
+        public long getMisses() {
+            return stats.missCount();
+        }
+
+        /** Ratio of hits over the total number of lookups */
+        public double getHitRate() {
+            return stats.hitRate();
+        }
+
+        /** Number of meta-tiles evicted to respect the memory bounds */
+        public long getEvictions() {
+            return stats.evictionCount();
+        }
+
+        /** Number of requests that waited for another request building the same meta-tile */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /** Number of meta-tiles currently in the cache */
+        public long getSize() {
+            return size;
+        }
+
+        /** Estimated memory used by the cached tiles, in bytes */
+        public long getMemoryUsage() {
+            return memoryUsage;
+        }
+
+        /** Maximum memory the cache can use, in bytes */
+        public long getMaxMemory() {
+            return maxMemory;
+        }
+
+        /** Number of meta-tiles being built at the moment */
+        public int getBuilding() {
+            return building;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics [hits="
+                    + getHits()
+                    + ", misses="
+                    + getMisses()
+                    + ", evictions="
+                    + getEvictions()
+                    + ", coalesced="
+                    + coalesced
+                    + ", size="
+                    + size
+                    + ", memoryUsage="
+                    + memoryUsage
+                    + ", maxMemory="
+                    + maxMemory
+                    + ", building="
+                    + building
+                    + "]";
         }
     }
 
@@ -371,18 +663,18 @@ public void dataStoreChange(TransactionEvent event) throws WFSException {
         // contains a string with part of the map request where the layer
         // name is included, but we would have to parse it and consider
         // also that the namespace may be missing in the getmap request
-        tileCache.clear();
+        clear();
     }
 
     @Override
     public void onReset() {
         // data might have changed in the meantime
-        tileCache.clear();
+        clear();
     }
 
     @Override
     public void onDispose() {
-        tileCache.clear();
+        clear();
     }
 
     @Override
@@ -392,6 +684,6 @@ public void beforeReload() {
 
     @Override
     public void onReload() {
-        tileCache.clear();
+        clear();
     }
 }
@@ -60,6 +60,28 @@ public void writeTo(OutputStream out) throws IOException {
         }
     }
 
+    /**
+     * Returns true if the contents can be written more than once, that is, they are not a stream
+     */
+    public boolean isRepeatable() {
+        return mapContents != null || buffer != null;
+    }
+
+    /**
+     * Returns a new map sharing the same contents, without map content and response headers. Only
+     * supported for repeatable maps.
+     *
+     * @see #isRepeatable()
+     */
+    public RawMap copy() {
+        if (mapContents != null) {
+            return new RawMap(null, mapContents, getMimeType());
+        } else if (buffer != null) {
+            return new RawMap(null, buffer, getMimeType());
+        }
+        throw new IllegalStateException("Stream backed maps cannot be copied");
+    }
+
     @Override
     public void disposeInternal() {
         buffer = null;
@@ -19,6 +19,8 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
@@ -43,12 +45,16 @@
 import org.geoserver.wms.WMSPartialMapException;
 import org.geoserver.wms.WMSServiceExceptionHandler;
 import org.geoserver.wms.decoration.MapDecorationLayout;
+import org.geotools.data.FeatureSource;
 import org.geotools.image.ImageWorker;
 import org.geotools.map.Layer;
 import org.geotools.map.StyleLayer;
 import org.geotools.renderer.lite.LabelCache;
+import org.geotools.renderer.lite.LabelCacheImpl;
 import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.FeatureTypeStyle;
 import org.geotools.styling.Style;
+import org.geotools.styling.TextSymbolizer;
 
 /**
  * A {@link GetMapOutputFormat} that produces {@link RenderedImageMap} instances to be encoded in
@@ -274,6 +280,17 @@ public RenderedImageMap produceMap(final WMSMapContent mapContent, final boolean
                             + "KB");
         }
 
+        // large maps can be painted in parallel strips, as long as the strips fit in memory too
+        boolean paintInStrips = !emptyMap && isStripRenderingEnabled(mapContent, paintArea);
+        if (paintInStrips && maxMemory > 0) {
+            int stripHeight = StripedMapRenderer.getStripImageHeight(paintArea.height);
+            long stripMemory =
+                    getDrawingSurfaceMemoryUse(paintArea.width, stripHeight, palette, transparent)
+                            + testRenderer.getMaxBackBufferMemory(paintArea.width, stripHeight);
+            int strips = StripedMapRenderer.getMaxStripsInFlight(paintArea.height);
+            paintInStrips = memory + strips * stripMemory <= maxMemory;
+        }
+
         final MapDecorationLayout layout = findDecorationLayout(request, tiled);
 
         // TODO: allow rendering to continue with vector layers
@@ -538,10 +555,39 @@ public void saveMap() {
                         this.map = optimizeAndBuildMap(palette, preparedImage, mapContent);
                     }
                 };
+        StripRendererFactory stripFactory = null;
+        StripedMapRenderer stripRenderer = null;
+        if (paintInStrips && preparedImage instanceof BufferedImage) {
+            stripFactory =
+                    new StripRendererFactory(
+                            mapContent,
+                            palette,
+                            useAlpha,
+                            bgColor,
+                            hintsMap,
+                            rendererParams,
+                            maxErrors,
+                            statistics);
+            String textRendering =
+                    (String) rendererParams.get(StreamingRenderer.TEXT_RENDERING_KEY);
+            stripRenderer =
+                    new StripedMapRenderer(
+                            stripFactory,
+                            timeout,
+                            LabelCacheImpl.LabelRenderingMode.valueOf(textRendering.toUpperCase()));
+            stripRenderer.setLabellingListener(statistics);
+        }
         timeout.start();
         try {
             // finally render the image;
-            if (!emptyMap) {
+            if (!emptyMap && stripRenderer != null) {
+                stripRenderer.paint(
+                        (BufferedImage) preparedImage,
+                        graphic,
+                        paintArea,
+                        mapContent.getRenderingTransform(),
+                        mapContent.getCoordinateReferenceSystem());
+            } else if (!emptyMap) {
                 renderer.paint(
                         graphic,
                         paintArea,
@@ -564,15 +610,27 @@ public void saveMap() {
 
             // Determine what (if any) exception should be thrown
 
+            boolean tooManyErrors = errorChecker.exceedsMaxErrors();
+            Exception lastError = errorChecker.getLastException();
+            Exception renderError =
+                    nonIgnorableExceptionListener.exceptionOccurred()
+                            ? nonIgnorableExceptionListener.getException()
+                            : null;
+            if (stripFactory != null) {
+                tooManyErrors = stripFactory.exceedsMaxErrors();
+                lastError = stripFactory.getLastException();
+                renderError = stripFactory.getRenderException();
+            }
+
             // check if too many errors occurred
-            if (errorChecker.exceedsMaxErrors()) {
+            if (tooManyErrors) {
                 serviceException =
                         new ServiceException(
                                 "More than "
                                         + maxErrors
                                         + " rendering errors occurred, bailing out. Layers: "
                                         + buildMapLayerNameList(mapContent),
-                                errorChecker.getLastException(),
+                                lastError,
                                 "internalError");
             }
             // check if the request did timeout
@@ -586,8 +644,7 @@ public void saveMap() {
                                         + buildMapLayerNameList(mapContent));
             }
             // check if a non ignorable error occurred
-            if (nonIgnorableExceptionListener.exceptionOccurred()) {
-                Exception renderError = nonIgnorableExceptionListener.getException();
+            if (renderError != null) {
                 serviceException =
                         new ServiceException(
                                 "Rendering process failed. Layers: "
@@ -621,6 +678,166 @@ public void saveMap() {
         throw serviceException;
     }
 
+    /**
+     * Returns true if the map is large enough to be painted in parallel strips, and does not use
+     * any feature that would make the strips differ from a map painted in one go
+     */
+    boolean isStripRenderingEnabled(WMSMapContent mapContent, Rectangle paintArea) {
+        int threshold = wms.getParallelRenderingThreshold();
+        return threshold > 0
+                && (long) paintArea.width * paintArea.height > threshold
+                && StripedMapRenderer.getStripCount(paintArea.height) > 1
+                // custom label caches might not support deferred labelling
+                && labelCache == null
+                && mapContent.getAngle() == 0
+                // the accurate scale is computed at the center of the rendering area
+                && StreamingRenderer.SCALE_OGC.equals(mapContent.getRendererScaleMethod())
+                && mapContent.layers().stream().allMatch(l -> isStripSafe(l));
+    }
+
+    /**
+     * Checks the layer can be painted in strips. Rendering transformations are run on the data read
+     * by each strip, so their output would differ from the one computed on the full map (e.g., a
+     * heatmap or a contour). Labels are placed over the full map, merging the ones of the same
+     * feature found in different strips, which requires stable feature identifiers. Layers painting
+     * themselves are not strip safe, there is no telling what they paint.
+     */
+    private boolean isStripSafe(Layer layer) {
+        if (!(layer instanceof StyleLayer)) {
+            return false;
+        }
+        Style style = ((StyleLayer) layer).getStyle();
+        if (style == null) {
+            return true;
+        }
+        boolean labels = false;
+        for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+            if (fts.getTransformation() != null) {
+                return false;
+            }
+            labels |=
+                    fts.rules().stream()
+                            .flatMap(r -> r.symbolizers().stream())
+                            .anyMatch(s -> s instanceof TextSymbolizer);
+        }
+        if (!labels) {
+            return true;
+        }
+        FeatureSource<?, ?> source = layer.getFeatureSource();
+        return source != null && source.getQueryCapabilities().isReliableFIDSupported();
+    }
+
+    /**
+     * Builds the images and renderers used to paint a map in strips, configured like the ones used
+     * to paint the full map, and keeps track of the rendering errors of each strip
+     */
+    private class StripRendererFactory implements StripedMapRenderer.StripFactory {
+
+        final WMSMapContent mapContent;
+
+        final IndexColorModel palette;
+
+        final boolean useAlpha;
+
+        final Color bgColor;
+
+        final Map<RenderingHints.Key, Object> hintsMap;
+
+        final Map<Object, Object> rendererParams;
+
+        final int maxErrors;
+
+        final RenderTimeStatistics statistics;
+
+        final AtomicBoolean statisticsAttached = new AtomicBoolean();
+
+        final List<MaxErrorEnforcer> errorCheckers = new CopyOnWriteArrayList<>();
+
+        final List<RenderExceptionStrategy> exceptionListeners = new CopyOnWriteArrayList<>();
+
+        StripRendererFactory(
+                WMSMapContent mapContent,
+                IndexColorModel palette,
+                boolean useAlpha,
+                Color bgColor,
+                Map<RenderingHints.Key, Object> hintsMap,
+                Map<Object, Object> rendererParams,
+                int maxErrors,
+                RenderTimeStatistics statistics) {
+            this.mapContent = mapContent;
+            this.palette = palette;
+            this.useAlpha = useAlpha;
+            this.bgColor = bgColor;
+            this.hintsMap = new HashMap<>(hintsMap);
+            this.rendererParams = rendererParams;
+            this.maxErrors = maxErrors;
+            this.statistics = statistics;
+        }
+
+        @Override
+        public RenderedImage createImage(int width, int height) {
+            return prepareImage(width, height, palette, useAlpha);
+        }
+
+        @Override
+        public Graphics2D createGraphics(RenderedImage image) {
+            Map<RenderingHints.Key, Object> hints = new HashMap<>(hintsMap);
+            boolean transparent = mapContent.isTransparent() && isTransparencySupported();
+            Graphics2D graphics = getGraphics(transparent, bgColor, image, hints);
+            graphics.setRenderingHints(hints);
+            return graphics;
+        }
+
+        @Override
+        public StreamingRenderer createRenderer(LabelCache labelCache) {
+            StreamingRenderer renderer = buildRenderer();
+            renderer.setThreadPool(DefaultWebMapService.getRenderingPool());
+            renderer.setMapContent(mapContent);
+            RenderingHints hints = new RenderingHints(hintsMap);
+            markFactoryHintsInjector.addMarkFactoryHints(hints);
+            renderer.setJava2DHints(hints);
+            Map<Object, Object> params = new HashMap<>(rendererParams);
+            params.put(StreamingRenderer.LABEL_CACHE_KEY, labelCache);
+            renderer.setRendererHints(params);
+
+            errorCheckers.add(new MaxErrorEnforcer(renderer, maxErrors));
+            RenderExceptionStrategy exceptionListener = new RenderExceptionStrategy(renderer);
+            renderer.addRenderListener(exceptionListener);
+            exceptionListeners.add(exceptionListener);
+            // layer timings are taken from a single strip
+            if (statistics != null && statisticsAttached.compareAndSet(false, true)) {
+                renderer.addRenderListener(statistics);
+            }
+            onBeforeRender(renderer);
+            return renderer;
+        }
+
+        /** True if the errors of all strips, summed, exceed the max errors threshold */
+        boolean exceedsMaxErrors() {
+            return maxErrors > 0
+                    && errorCheckers.stream().mapToInt(checker -> checker.errors).sum() > maxErrors;
+        }
+
+        Exception getLastException() {
+            Exception last = null;
+            for (MaxErrorEnforcer checker : errorCheckers) {
+                if (checker.getLastException() != null) {
+                    last = checker.getLastException();
+                }
+            }
+            return last;
+        }
+
+        Exception getRenderException() {
+            for (RenderExceptionStrategy listener : exceptionListeners) {
+                if (listener.exceptionOccurred()) {
+                    return listener.getException();
+                }
+            }
+            return null;
+        }
+    }
+
     /** Helper method to build a comma separated list of layer names in the map. * */
     private String buildMapLayerNameList(WMSMapContent mapContent) {
         List<MapLayerInfo> layers = mapContent.getRequest().getLayers();
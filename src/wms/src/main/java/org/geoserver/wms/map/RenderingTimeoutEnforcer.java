@@ -6,8 +6,10 @@
 package org.geoserver.wms.map;
 
 import java.awt.Graphics;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.geoserver.wms.WebMap;
 import org.geotools.renderer.GTRenderer;
 
@@ -24,10 +26,13 @@ public class RenderingTimeoutEnforcer {
     GTRenderer renderer;
     Graphics graphics;
     Timer timer;
-    boolean timedOut = false;
+    volatile boolean timedOut = false;
     boolean saveMap;
     WebMap map = null;
 
+    /** Additional renderers working on the same request, e.g., when painting a map in strips */
+    List<RendererGraphics> additionalRenderers = new CopyOnWriteArrayList<>();
+
     public RenderingTimeoutEnforcer(long timeout, GTRenderer renderer, Graphics graphics) {
         this(timeout, renderer, graphics, false);
     }
@@ -46,6 +51,19 @@ public WebMap getMap() {
         return map;
     }
 
+    /**
+     * Registers an additional renderer to be stopped when the timeout occurs, along with the
+     * graphics it is painting on. If the timeout already occurred, the renderer is stopped right
+     * away.
+     */
+    public void addRenderer(GTRenderer renderer, Graphics graphics) {
+        additionalRenderers.add(new RendererGraphics(renderer, graphics));
+        if (timedOut) {
+            renderer.stopRendering();
+            graphics.dispose();
+        }
+    }
+
     /** Starts checking the rendering timeout (if timeout is positive, does nothing otherwise) */
     public void start() {
         if (timer != null)
@@ -88,6 +106,20 @@ public void run() {
             // an atomic call to the graphics, it cannot be stopped
             // by the above)
             graphics.dispose();
+            for (RendererGraphics additional : additionalRenderers) {
+                additional.renderer.stopRendering();
+                additional.graphics.dispose();
+            }
+        }
+    }
+
+    static class RendererGraphics {
+        final GTRenderer renderer;
+        final Graphics graphics;
+
+        RendererGraphics(GTRenderer renderer, Graphics graphics) {
+            this.renderer = renderer;
+            this.graphics = graphics;
         }
     }
 }
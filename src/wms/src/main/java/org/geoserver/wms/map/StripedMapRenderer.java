@@ -0,0 +1,535 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
+import org.geotools.geometry.jts.LiteShape2;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.renderer.RenderListener;
+import org.geotools.renderer.lite.LabelCache;
+import org.geotools.renderer.lite.LabelCacheImpl;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.util.NumberRange;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.Feature;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Renders a map in horizontal strips, painted in parallel on a bounded fork join pool and then
+ * composited into the target image.
+ *
+ * <p>Each strip is painted on its own image, a few rows taller than the strip itself, using the
+ * same world to screen transformation as the full map, so that geometries, fills and graphic
+ * patterns line up across the strip borders. Labels are not painted by the strip renderers, they
+ * are collected and placed in a single pass over the full map once all strips are done, so that
+ * conflict resolution works as in a normal rendering, and labels crossing the strip borders are
+ * neither cut nor duplicated.
+ *
+ * <p>At most {@link #getParallelism()} strips are in flight at any time, which bounds the extra
+ * memory used on top of the target image.
+ */
+class StripedMapRenderer {
+
+    static final Logger LOGGER = Logging.getLogger(StripedMapRenderer.class);
+
+    /** Strips are not made smaller than this, to limit the overhead of querying the data again */
+    static final int MIN_STRIP_HEIGHT = 256;
+
+    /** Extra rows painted above and below each strip, to avoid artifacts along the borders */
+    static final int STRIP_BUFFER = 8;
+
+    private static volatile ForkJoinPool STRIPS_POOL;
+
+    /** Builds the images and renderers used to paint the strips */
+    interface StripFactory {
+
+        /** Creates the image a strip of the given size is painted on */
+        RenderedImage createImage(int width, int height);
+
+        /** Returns a graphics for the strip image, with the background already painted */
+        Graphics2D createGraphics(RenderedImage image);
+
+        /** Creates a renderer configured like the one used for the full map */
+        StreamingRenderer createRenderer(LabelCache labelCache);
+    }
+
+    private final StripFactory factory;
+
+    private final RenderingTimeoutEnforcer timeout;
+
+    private final LabelCacheImpl.LabelRenderingMode labelRenderingMode;
+
+    private RenderListener labellingListener;
+
+    /**
+     * @param factory builds the strip images and renderers
+     * @param timeout the timeout enforcer for the request, the strip renderers will be registered
+     *     with it
+     * @param labelRenderingMode the text rendering mode used to paint the labels
+     */
+    StripedMapRenderer(
+            StripFactory factory,
+            RenderingTimeoutEnforcer timeout,
+            LabelCacheImpl.LabelRenderingMode labelRenderingMode) {
+        this.factory = factory;
+        this.timeout = timeout;
+        this.labelRenderingMode = labelRenderingMode;
+    }
+
+    /** Sets a listener that will be notified of the start and end of the labelling pass */
+    void setLabellingListener(RenderListener labellingListener) {
+        this.labellingListener = labellingListener;
+    }
+
+    /** Returns the maximum number of strips painted at the same time */
+    static int getParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Returns the number of strips a map of the given height is split into, a value lower than 2
+     * means the map is too small to be split
+     */
+    static int getStripCount(int height) {
+        return Math.min(getParallelism() * 2, height / MIN_STRIP_HEIGHT);
+    }
+
+    /** Returns the height of the images used to paint the strips of a map of the given height */
+    static int getStripImageHeight(int height) {
+        int count = Math.max(1, getStripCount(height));
+        return Math.min(height, (height + count - 1) / count + 2 * STRIP_BUFFER);
+    }
+
+    /** Returns the number of strip images that can be in memory at the same time */
+    static int getMaxStripsInFlight(int height) {
+        return Math.max(1, Math.min(getParallelism(), getStripCount(height)));
+    }
+
+    static ForkJoinPool getStripsPool() {
+        if (STRIPS_POOL == null) {
+            synchronized (StripedMapRenderer.class) {
+                if (STRIPS_POOL == null) {
+                    STRIPS_POOL =
+                            new ForkJoinPool(
+                                    getParallelism(),
+                                    pool -> {
+                                        ForkJoinWorkerThread thread =
+                                                ForkJoinPool.defaultForkJoinWorkerThreadFactory
+                                                        .newThread(pool);
+                                        thread.setName("StripRenderer-" + thread.getPoolIndex());
+                                        thread.setDaemon(true);
+                                        return thread;
+                                    },
+                                    null,
+                                    false);
+                }
+            }
+        }
+        return STRIPS_POOL;
+    }
+
+    /**
+     * Paints the map on the target image
+     *
+     * @param target the image to paint on, must be a {@link BufferedImage}
+     * @param graphic the graphics of the target image, used to paint the labels
+     * @param paintArea the area of the target image to paint
+     * @param worldToScreen the transformation from world to screen coordinates
+     * @param crs the map coordinate reference system
+     */
+    void paint(
+            BufferedImage target,
+            Graphics2D graphic,
+            Rectangle paintArea,
+            AffineTransform worldToScreen,
+            CoordinateReferenceSystem crs) {
+        AffineTransform screenToWorld;
+        try {
+            screenToWorld = worldToScreen.createInverse();
+        } catch (NoninvertibleTransformException e) {
+            throw new ServiceException("Invalid world to screen transformation", e);
+        }
+
+        int count = Math.max(1, getStripCount(paintArea.height));
+        int stripHeight = (paintArea.height + count - 1) / count;
+        int maxInFlight = getMaxStripsInFlight(paintArea.height);
+        ForkJoinPool pool = getStripsPool();
+
+        List<StripLabelCache> labels = new ArrayList<>(count);
+        Deque<Future<Strip>> inFlight = new ArrayDeque<>(maxInFlight);
+        int next = 0;
+        try {
+            while (next < count || !inFlight.isEmpty()) {
+                // keep the pool busy, without holding more than maxInFlight strip images
+                while (next < count && inFlight.size() < maxInFlight) {
+                    int y = paintArea.y + next * stripHeight;
+                    int height = Math.min(stripHeight, paintArea.y + paintArea.height - y);
+                    Strip strip =
+                            new Strip(paintArea, y, height, worldToScreen, screenToWorld, crs);
+                    ThreadLocalsTransfer threadLocalTransfer = new ThreadLocalsTransfer();
+                    inFlight.add(
+                            pool.submit(
+                                    () -> {
+                                        threadLocalTransfer.apply();
+                                        try {
+                                            return paintStrip(strip);
+                                        } finally {
+                                            threadLocalTransfer.cleanup();
+                                        }
+                                    }));
+                    next++;
+                }
+
+                Strip strip = inFlight.removeFirst().get();
+                copy(strip, target);
+                labels.add(strip.labels);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while rendering the map", e);
+        } catch (ExecutionException e) {
+            throw new ServiceException("Rendering process failed", e.getCause());
+        } finally {
+            for (Future<Strip> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+
+        if (!timeout.isTimedOut()) {
+            paintLabels(labels, graphic, paintArea);
+        }
+    }
+
+    private Strip paintStrip(Strip strip) {
+        Rectangle area = strip.imageArea;
+        strip.image = factory.createImage(area.width, area.height);
+        Graphics2D graphics = factory.createGraphics(strip.image);
+        try {
+            // paint in the same coordinate system as the full map
+            graphics.translate(-area.x, -area.y);
+            StreamingRenderer renderer = factory.createRenderer(strip.labels);
+            timeout.addRenderer(renderer, graphics);
+            renderer.paint(graphics, area, strip.mapArea, strip.worldToScreen);
+        } finally {
+            graphics.dispose();
+        }
+        return strip;
+    }
+
+    /** Copies the rows of the strip, without the buffer, into the target image */
+    private void copy(Strip strip, BufferedImage target) {
+        if (!(strip.image instanceof BufferedImage)) {
+            throw new ServiceException(
+                    "Strip images should be buffered images, got " + strip.image.getClass());
+        }
+        Raster raster = ((BufferedImage) strip.image).getRaster();
+        Raster rows =
+                raster.createChild(
+                        0,
+                        strip.y - strip.imageArea.y,
+                        strip.imageArea.width,
+                        strip.height,
+                        strip.imageArea.x,
+                        strip.y,
+                        null);
+        target.getRaster().setDataElements(0, 0, rows);
+        // release the strip image memory as soon as possible
+        strip.image = null;
+    }
+
+    /** Places the labels collected by the strips on the full map */
+    void paintLabels(List<StripLabelCache> strips, Graphics2D graphic, Rectangle paintArea) {
+        if (labellingListener != null) {
+            labellingListener.labellingStart();
+        }
+        try {
+            LabelCacheImpl labelCache = new LabelCacheImpl();
+            if (labelRenderingMode != null) {
+                labelCache.setLabelRenderingMode(labelRenderingMode);
+            }
+            labelCache.start();
+            Set<String> layers = new LinkedHashSet<>();
+            Set<String> disabled = new LinkedHashSet<>();
+            for (StripLabelCache strip : strips) {
+                layers.addAll(strip.getLayers());
+                disabled.addAll(strip.disabledLayers);
+                for (Rectangle2D area : strip.reservedAreas) {
+                    labelCache.put(area);
+                }
+            }
+            for (String layerId : layers) {
+                labelCache.startLayer(layerId);
+                Map<LabelKey, LabelRecord> merged = new LinkedHashMap<>();
+                List<LabelRecord> anonymous = new ArrayList<>();
+                for (StripLabelCache strip : strips) {
+                    for (LabelRecord label : strip.getLabels(layerId)) {
+                        LabelKey key = label.getKey();
+                        if (key == null) {
+                            anonymous.add(label);
+                        } else {
+                            merged.merge(key, label, LabelRecord::merge);
+                        }
+                    }
+                }
+                for (LabelRecord label : merged.values()) {
+                    label.put(labelCache);
+                }
+                for (LabelRecord label : anonymous) {
+                    label.put(labelCache);
+                }
+                labelCache.endLayer(layerId, graphic, paintArea);
+                if (disabled.contains(layerId)) {
+                    labelCache.disableLayer(layerId);
+                }
+            }
+            labelCache.end(graphic, paintArea);
+        } finally {
+            if (labellingListener != null) {
+                labellingListener.labellingEnd();
+            }
+        }
+    }
+
+    /** A horizontal strip of the map */
+    static class Strip {
+
+        /** First row of the strip */
+        final int y;
+
+        /** Number of rows in the strip */
+        final int height;
+
+        /** The area painted for this strip, including the buffer, in map screen coordinates */
+        final Rectangle imageArea;
+
+        final ReferencedEnvelope mapArea;
+
+        final AffineTransform worldToScreen;
+
+        final StripLabelCache labels = new StripLabelCache();
+
+        RenderedImage image;
+
+        Strip(
+                Rectangle paintArea,
+                int y,
+                int height,
+                AffineTransform worldToScreen,
+                AffineTransform screenToWorld,
+                CoordinateReferenceSystem crs) {
+            this.y = y;
+            this.height = height;
+            int minY = Math.max(paintArea.y, y - STRIP_BUFFER);
+            int maxY = Math.min(paintArea.y + paintArea.height, y + height + STRIP_BUFFER);
+            this.imageArea = new Rectangle(paintArea.x, minY, paintArea.width, maxY - minY);
+            this.worldToScreen = worldToScreen;
+            Rectangle2D world = screenToWorld.createTransformedShape(imageArea).getBounds2D();
+            this.mapArea = new ReferencedEnvelope(world, crs);
+        }
+    }
+
+    /**
+     * A label cache that only records the labels put by a strip renderer, so that they can be
+     * placed later over the full map. The strip renderers paint in the map coordinate system, so
+     * the recorded shapes can be used as is.
+     */
+    static class StripLabelCache implements LabelCache {
+
+        /** The labels by layer id, guarded by this */
+        final Map<String, List<LabelRecord>> labels = new LinkedHashMap<>();
+
+        final List<Rectangle2D> reservedAreas = Collections.synchronizedList(new ArrayList<>());
+
+        final Set<String> disabledLayers = Collections.synchronizedSet(new LinkedHashSet<>());
+
+        synchronized List<String> getLayers() {
+            return new ArrayList<>(labels.keySet());
+        }
+
+        synchronized List<LabelRecord> getLabels(String layerId) {
+            List<LabelRecord> result = labels.get(layerId);
+            return result == null ? Collections.emptyList() : result;
+        }
+
+        @Override
+        public void start() {}
+
+        @Override
+        public synchronized void startLayer(String layerId) {
+            labels.computeIfAbsent(layerId, id -> new ArrayList<>());
+        }
+
+        @Override
+        public synchronized void put(
+                String layerId,
+                TextSymbolizer symbolizer,
+                Feature feature,
+                LiteShape2 shape,
+                NumberRange<Double> scaleRange) {
+            labels.computeIfAbsent(layerId, id -> new ArrayList<>())
+                    .add(new LabelRecord(layerId, symbolizer, feature, shape, scaleRange));
+        }
+
+        @Override
+        public void put(Rectangle2D area) {
+            reservedAreas.add(area);
+        }
+
+        @Override
+        public void endLayer(String layerId, Graphics2D graphics, Rectangle displayArea) {}
+
+        @Override
+        public void end(Graphics2D graphics, Rectangle displayArea) {}
+
+        @Override
+        public void stop() {}
+
+        /** The recorded labels are consumed by the striped renderer, they are not cleared here */
+        @Override
+        public void clear() {}
+
+        @Override
+        public void clear(String layerId) {}
+
+        @Override
+        public void disableLayer(String layerId) {
+            disabledLayers.add(layerId);
+        }
+
+        @Override
+        public void enableLayer(String layerId) {
+            disabledLayers.remove(layerId);
+        }
+
+        @Override
+        public List orderedLabels() {
+            return Collections.emptyList();
+        }
+    }
+
+    /** Identifies the labels of the same feature, painted by different strips */
+    static final class LabelKey {
+
+        final TextSymbolizer symbolizer;
+
+        final String featureId;
+
+        final int hash;
+
+        LabelKey(TextSymbolizer symbolizer, String featureId) {
+            this.symbolizer = symbolizer;
+            this.featureId = featureId;
+            this.hash = Objects.hash(symbolizer, featureId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof LabelKey)) return false;
+            LabelKey other = (LabelKey) o;
+            return hash == other.hash
+                    && featureId.equals(other.featureId)
+                    && Objects.equals(symbolizer, other.symbolizer);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /** A label recorded by a strip renderer */
+    static class LabelRecord {
+
+        final String layerId;
+
+        final TextSymbolizer symbolizer;
+
+        final Feature feature;
+
+        final LiteShape2 shape;
+
+        final NumberRange<Double> scaleRange;
+
+        LabelRecord(
+                String layerId,
+                TextSymbolizer symbolizer,
+                Feature feature,
+                LiteShape2 shape,
+                NumberRange<Double> scaleRange) {
+            this.layerId = layerId;
+            this.symbolizer = symbolizer;
+            this.feature = feature;
+            this.shape = shape;
+            this.scaleRange = scaleRange;
+        }
+
+        /** Returns the key used to merge the labels of the same feature, or null if unknown */
+        LabelKey getKey() {
+            if (feature == null || feature.getIdentifier() == null) {
+                return null;
+            }
+            String id = feature.getIdentifier().getID();
+            return id == null ? null : new LabelKey(symbolizer, id);
+        }
+
+        /**
+         * Merges the labels of the same feature coming from two strips. Each strip only sees the
+         * portion of the geometry close to it, their union rebuilds the geometry the labels would
+         * have been placed on by a single renderer.
+         */
+        LabelRecord merge(LabelRecord other) {
+            Geometry g1 = shape.getGeometry();
+            Geometry g2 = other.shape.getGeometry();
+            try {
+                Geometry union = g1.union(g2);
+                return new LabelRecord(
+                        layerId,
+                        symbolizer,
+                        feature,
+                        new LiteShape2(union, null, null, false),
+                        scaleRange);
+            } catch (Exception e) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, "Failed to merge label geometries, using the larger", e);
+                }
+                return g1.getEnvelopeInternal().getArea() >= g2.getEnvelopeInternal().getArea()
+                        ? this
+                        : other;
+            }
+        }
+
+        void put(LabelCache labelCache) {
+            labelCache.put(layerId, symbolizer, feature, shape, scaleRange);
+        }
+    }
+}
@@ -26,8 +26,32 @@ public class PNGJWriter {
 
     public RenderedImage writePNG(
             RenderedImage image, OutputStream outStream, float quality, WMSMapContent mapContent) {
+        return writePNG(image, outStream, quality, mapContent, false);
+    }
+
+    /**
+     * Encodes the image, eventually compressing it in parallel using {@link ParallelPNGEncoder}.
+     *
+     * @param parallel if true, and the image is supported by {@link ParallelPNGEncoder}, the image
+     *     data is compressed in parallel
+     */
+    public RenderedImage writePNG(
+            RenderedImage image,
+            OutputStream outStream,
+            float quality,
+            WMSMapContent mapContent,
+            boolean parallel) {
         // what kind of scaline filtering are we going to use?
         FilterType filterType = getFilterType(mapContent);
+        if (parallel && ParallelPNGEncoder.isSupported(image)) {
+            try {
+                int compressionLevel = Math.round(9 * (1f - quality));
+                new ParallelPNGEncoder().encode(image, outStream, compressionLevel, filterType);
+            } catch (Exception e) {
+                throw new ServiceException("Failed to encode the PNG", e);
+            }
+            return image;
+        }
         // Creation of a new PNGWriter object
         PNGWriter writer = new PNGWriter();
         // Check if a Scanline is supported by the writer
@@ -0,0 +1,491 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import ar.com.hjg.pngj.FilterType;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Encodes images in PNG compressing groups of rows in parallel, following the same approach as
+ * pigz: the filtered image data is split in bands, each band is deflated on its own, using the last
+ * 32KB of the previous band as the dictionary, and the results are concatenated into a single zlib
+ * stream, so the output is a standard PNG file that any decoder can read.
+ *
+ * <p>Only the images whose rows can be read without conversions are supported (see {@link
+ * #isSupported(RenderedImage)}), that is, palette images and 8 bits gray, gray/alpha, RGB and RGBA
+ * images. The others should be handled by {@link PNGJWriter}.
+ */
+public class ParallelPNGEncoder {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+    private static final int COLOR_GRAY = 0;
+
+    private static final int COLOR_RGB = 2;
+
+    private static final int COLOR_PALETTE = 3;
+
+    private static final int COLOR_GRAY_ALPHA = 4;
+
+    private static final int COLOR_RGBA = 6;
+
+    /** The size of the deflate window, the amount of data used to prime each band dictionary */
+    static final int DICTIONARY_SIZE = 32768;
+
+    /** Target size for the uncompressed data of a single band */
+    static final int BAND_SIZE = 256 * 1024;
+
+    static volatile ExecutorService ENCODING_POOL;
+
+    private final ExecutorService executor;
+
+    private final int bandSize;
+
+    /** Builds an encoder using the shared encoding thread pool */
+    public ParallelPNGEncoder() {
+        this(getEncodingPool(), BAND_SIZE);
+    }
+
+    /**
+     * @param executor the executor compressing the bands
+     * @param bandSize the target size of the uncompressed data of a single band, in bytes
+     */
+    public ParallelPNGEncoder(ExecutorService executor, int bandSize) {
+        this.executor = executor;
+        this.bandSize = bandSize;
+    }
+
+    private static ExecutorService getEncodingPool() {
+        if (ENCODING_POOL == null) {
+            synchronized (ParallelPNGEncoder.class) {
+                if (ENCODING_POOL == null) {
+                    CustomizableThreadFactory threadFactory =
+                            new CustomizableThreadFactory("ParallelPNGEncoder-");
+                    threadFactory.setDaemon(true);
+                    ENCODING_POOL =
+                            Executors.newFixedThreadPool(
+                                    Runtime.getRuntime().availableProcessors(), threadFactory);
+                }
+            }
+        }
+        return ENCODING_POOL;
+    }
+
+    /** Returns true if the image can be encoded by this class */
+    public static boolean isSupported(RenderedImage image) {
+        ColorModel cm = image.getColorModel();
+        SampleModel sm = image.getSampleModel();
+        if (cm instanceof IndexColorModel) {
+            int bits = sm.getSampleSize(0);
+            return sm.getNumBands() == 1 && (bits == 1 || bits == 2 || bits == 4 || bits == 8);
+        } else if (cm instanceof ComponentColorModel) {
+            if (sm.getTransferType() != DataBuffer.TYPE_BYTE
+                    || cm.isAlphaPremultiplied()
+                    || sm.getNumBands() != cm.getNumComponents()) {
+                return false;
+            }
+            for (int size : sm.getSampleSize()) {
+                if (size != 8) {
+                    return false;
+                }
+            }
+            int colorComponents = cm.getNumColorComponents();
+            ColorSpace cs = cm.getColorSpace();
+            return (colorComponents == 1 && cs.getType() == ColorSpace.TYPE_GRAY)
+                    || (colorComponents == 3 && cs.isCS_sRGB());
+        }
+        return false;
+    }
+
+    /**
+     * Encodes the image as PNG
+     *
+     * @param image the image to encode, must be supported according to {@link
+     *     #isSupported(RenderedImage)}
+     * @param out the destination stream
+     * @param compressionLevel the deflate compression level, between 0 and 9
+     * @param filterType the scanline filter, {@link FilterType#FILTER_SUB} is honored, every other
+     *     type is handled as {@link FilterType#FILTER_NONE}
+     */
+    public void encode(
+            RenderedImage image, OutputStream out, int compressionLevel, FilterType filterType)
+            throws IOException {
+        if (!isSupported(image)) {
+            throw new IllegalArgumentException("Unsupported image layout " + image);
+        }
+        Layout layout = new Layout(image, filterType == FilterType.FILTER_SUB);
+
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.write(PNG_SIGNATURE);
+        writeHeader(dos, image, layout);
+        if (image.getColorModel() instanceof IndexColorModel) {
+            writePalette(dos, (IndexColorModel) image.getColorModel(), layout.bitDepth);
+        }
+        writeData(dos, image, layout, compressionLevel);
+        writeChunk(dos, "IEND");
+        dos.flush();
+    }
+
+    private void writeHeader(DataOutputStream out, RenderedImage image, Layout layout)
+            throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(13);
+        DataOutputStream header = new DataOutputStream(bos);
+        header.writeInt(image.getWidth());
+        header.writeInt(image.getHeight());
+        header.writeByte(layout.bitDepth);
+        header.writeByte(layout.colorType);
+        // deflate compression, adaptive filtering, no interlacing
+        header.writeByte(0);
+        header.writeByte(0);
+        header.writeByte(0);
+        writeChunk(out, "IHDR", bos.toByteArray());
+    }
+
+    private void writePalette(DataOutputStream out, IndexColorModel icm, int bitDepth)
+            throws IOException {
+        int size = Math.min(icm.getMapSize(), 1 << bitDepth);
+        byte[] palette = new byte[size * 3];
+        byte[] alpha = new byte[size];
+        int lastTranslucent = -1;
+        for (int i = 0; i < size; i++) {
+            palette[i * 3] = (byte) icm.getRed(i);
+            palette[i * 3 + 1] = (byte) icm.getGreen(i);
+            palette[i * 3 + 2] = (byte) icm.getBlue(i);
+            alpha[i] = (byte) icm.getAlpha(i);
+            if (icm.getAlpha(i) != 255) {
+                lastTranslucent = i;
+            }
+        }
+        writeChunk(out, "PLTE", palette);
+        if (icm.getTransparency() != Transparency.OPAQUE && lastTranslucent >= 0) {
+            byte[] trns = new byte[lastTranslucent + 1];
+            System.arraycopy(alpha, 0, trns, 0, trns.length);
+            writeChunk(out, "tRNS", trns);
+        }
+    }
+
+    /**
+     * Writes the IDAT chunks. The bands are read from the image in the calling thread, and
+     * compressed in the executor, while the bands already compressed are written out in order. The
+     * number of bands in flight is limited to keep the memory usage under control.
+     */
+    private void writeData(
+            DataOutputStream out, RenderedImage image, Layout layout, int compressionLevel)
+            throws IOException {
+        int rowsPerBand = Math.max(1, bandSize / layout.filteredRowSize);
+        int maxInFlight = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+        int minY = image.getMinY();
+        int maxY = minY + image.getHeight();
+
+        Deque<Future<CompressedBand>> inFlight = new ArrayDeque<>();
+        Adler32Accumulator checksum = new Adler32Accumulator();
+        boolean first = true;
+        try {
+            Raster previous = null;
+            for (int y = minY; y < maxY; y += rowsPerBand) {
+                int rows = Math.min(rowsPerBand, maxY - y);
+                Raster raster =
+                        image.getData(new Rectangle(image.getMinX(), y, image.getWidth(), rows));
+                boolean last = y + rows >= maxY;
+                BandCompressor compressor =
+                        new BandCompressor(layout, raster, previous, compressionLevel, last);
+                inFlight.add(executor.submit(compressor::compress));
+                previous = raster;
+
+                while (inFlight.size() >= maxInFlight || (last && !inFlight.isEmpty())) {
+                    CompressedBand band = inFlight.removeFirst().get();
+                    checksum.add(band.adler, band.length);
+                    byte[] header = first ? zlibHeader(compressionLevel) : new byte[0];
+                    byte[] trailer = inFlight.isEmpty() && last ? checksum.toBytes() : new byte[0];
+                    writeChunk(out, "IDAT", header, band.data, trailer);
+                    first = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding the PNG", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to compress the PNG data", cause);
+        } finally {
+            for (Future<CompressedBand> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /** The zlib stream header, no preset dictionary, level hint matching the compression level */
+    private static byte[] zlibHeader(int level) {
+        int flags;
+        if (level < 2) {
+            flags = 0x01;
+        } else if (level < 6) {
+            flags = 0x5E;
+        } else if (level == 6 || level == Deflater.DEFAULT_COMPRESSION) {
+            flags = 0x9C;
+        } else {
+            flags = 0xDA;
+        }
+        return new byte[] {0x78, (byte) flags};
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[]... parts)
+            throws IOException {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        out.writeInt(length);
+        out.write(typeBytes);
+        for (byte[] part : parts) {
+            crc.update(part);
+            out.write(part);
+        }
+        out.writeInt((int) crc.getValue());
+    }
+
+    /** The PNG layout of the image rows */
+    static class Layout {
+
+        final int colorType;
+
+        final int bitDepth;
+
+        /** Number of bytes per complete pixel, rounded up to one, used by the SUB filter */
+        final int filterOffset;
+
+        /** Number of bytes in a row, excluding the filter type byte */
+        final int rowSize;
+
+        /** Number of bytes in a filtered row, including the filter type byte */
+        final int filteredRowSize;
+
+        final boolean palette;
+
+        final boolean subFilter;
+
+        final int width;
+
+        Layout(RenderedImage image, boolean subFilter) {
+            ColorModel cm = image.getColorModel();
+            SampleModel sm = image.getSampleModel();
+            this.width = image.getWidth();
+            this.subFilter = subFilter;
+            if (cm instanceof IndexColorModel) {
+                this.palette = true;
+                this.colorType = COLOR_PALETTE;
+                this.bitDepth = sm.getSampleSize(0);
+                this.filterOffset = 1;
+                this.rowSize = (width * bitDepth + 7) / 8;
+            } else {
+                this.palette = false;
+                int bands = sm.getNumBands();
+                if (cm.getNumColorComponents() == 1) {
+                    this.colorType = cm.hasAlpha() ? COLOR_GRAY_ALPHA : COLOR_GRAY;
+                } else {
+                    this.colorType = cm.hasAlpha() ? COLOR_RGBA : COLOR_RGB;
+                }
+                this.bitDepth = 8;
+                this.filterOffset = bands;
+                this.rowSize = width * bands;
+            }
+            this.filteredRowSize = rowSize + 1;
+        }
+    }
+
+    /** A deflated band, along with the checksum and length of the data it was compressed from */
+    static class CompressedBand {
+
+        final byte[] data;
+
+        final long adler;
+
+        final long length;
+
+        CompressedBand(byte[] data, long adler, long length) {
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+        }
+    }
+
+    /** Filters and deflates a single band of rows */
+    static class BandCompressor {
+
+        final Layout layout;
+
+        final Raster raster;
+
+        final Raster previous;
+
+        final int level;
+
+        final boolean last;
+
+        BandCompressor(Layout layout, Raster raster, Raster previous, int level, boolean last) {
+            this.layout = layout;
+            this.raster = raster;
+            this.previous = previous;
+            this.level = level;
+            this.last = last;
+        }
+
+        CompressedBand compress() {
+            byte[] data = filter(raster, 0, raster.getHeight());
+            Deflater deflater = new Deflater(level, true);
+            try {
+                if (previous != null) {
+                    deflater.setDictionary(getDictionary());
+                }
+                deflater.setInput(data);
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 4 + 64);
+                byte[] buffer = new byte[64 * 1024];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int count = deflater.deflate(buffer);
+                        bos.write(buffer, 0, count);
+                    }
+                } else {
+                    // sync flush ends the band on a byte boundary, so that the next one can
+                    // be appended right after it
+                    int count;
+                    do {
+                        count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        bos.write(buffer, 0, count);
+                    } while (count == buffer.length);
+                }
+                Adler32 adler = new Adler32();
+                adler.update(data);
+                return new CompressedBand(bos.toByteArray(), adler.getValue(), data.length);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        /** Returns the last filtered bytes of the previous band, up to the deflate window size */
+        private byte[] getDictionary() {
+            int rows = Math.min(previous.getHeight(), DICTIONARY_SIZE / layout.filteredRowSize + 1);
+            byte[] tail = filter(previous, previous.getHeight() - rows, rows);
+            if (tail.length <= DICTIONARY_SIZE) {
+                return tail;
+            }
+            byte[] dictionary = new byte[DICTIONARY_SIZE];
+            System.arraycopy(tail, tail.length - DICTIONARY_SIZE, dictionary, 0, DICTIONARY_SIZE);
+            return dictionary;
+        }
+
+        /** Returns the filtered data of the given rows, relative to the raster top */
+        private byte[] filter(Raster raster, int firstRow, int rows) {
+            byte[] result = new byte[rows * layout.filteredRowSize];
+            byte[] row = new byte[layout.rowSize];
+            int[] samples = layout.palette ? new int[layout.width] : null;
+            int minX = raster.getMinX();
+            for (int r = 0; r < rows; r++) {
+                int y = raster.getMinY() + firstRow + r;
+                if (layout.palette) {
+                    raster.getSamples(minX, y, layout.width, 1, 0, samples);
+                    pack(samples, row, layout.bitDepth);
+                } else {
+                    raster.getDataElements(minX, y, layout.width, 1, row);
+                }
+                int offset = r * layout.filteredRowSize;
+                if (layout.subFilter) {
+                    result[offset] = 1;
+                    int bpp = layout.filterOffset;
+                    System.arraycopy(row, 0, result, offset + 1, Math.min(bpp, row.length));
+                    for (int i = bpp; i < row.length; i++) {
+                        result[offset + 1 + i] = (byte) (row[i] - row[i - bpp]);
+                    }
+                } else {
+                    result[offset] = 0;
+                    System.arraycopy(row, 0, result, offset + 1, row.length);
+                }
+            }
+            return result;
+        }
+
+        /** Packs the palette indexes in bytes, most significant bits first */
+        private static void pack(int[] samples, byte[] row, int bitDepth) {
+            if (bitDepth == 8) {
+                for (int i = 0; i < samples.length; i++) {
+                    row[i] = (byte) samples[i];
+                }
+                return;
+            }
+            int perByte = 8 / bitDepth;
+            int mask = (1 << bitDepth) - 1;
+            for (int i = 0; i < row.length; i++) {
+                int value = 0;
+                for (int j = 0; j < perByte; j++) {
+                    int idx = i * perByte + j;
+                    int sample = idx < samples.length ? samples[idx] & mask : 0;
+                    value = (value << bitDepth) | sample;
+                }
+                row[i] = (byte) value;
+            }
+        }
+    }
+
+    /** Combines the Adler-32 checksums of consecutive blocks, as zlib adler32_combine does */
+    static class Adler32Accumulator {
+
+        private static final long BASE = 65521;
+
+        private long adler = 1;
+
+        void add(long blockAdler, long blockLength) {
+            long rem = blockLength % BASE;
+            long sum1 = adler & 0xffff;
+            long sum2 = (rem * sum1) % BASE;
+            sum1 += (blockAdler & 0xffff) + BASE - 1;
+            sum2 += ((adler >> 16) & 0xffff) + ((blockAdler >> 16) & 0xffff) + BASE - rem;
+            if (sum1 >= BASE) sum1 -= BASE;
+            if (sum1 >= BASE) sum1 -= BASE;
+            if (sum2 >= (BASE << 1)) sum2 -= (BASE << 1);
+            if (sum2 >= BASE) sum2 -= BASE;
+            adler = sum1 | (sum2 << 16);
+        }
+
+        long getValue() {
+            return adler;
+        }
+
+        byte[] toBytes() {
+            return new byte[] {
+                (byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler
+            };
+        }
+    }
+}
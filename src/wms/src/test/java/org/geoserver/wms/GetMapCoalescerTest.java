@@ -0,0 +1,255 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.media.jai.PlanarImage;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.data.test.MockData;
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.LocalPublished;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.ows.Request;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.Service;
+import org.geoserver.wms.map.RawMap;
+import org.geoserver.wms.map.RenderedImageMap;
+import org.junit.After;
+import org.junit.Test;
+
+public class GetMapCoalescerTest extends WMSTestSupport {
+
+    @After
+    public void cleanup() {
+        Dispatcher.REQUEST.remove();
+        setCoalescing(false);
+        LayerInfo layer = getCatalog().getLayerByName(getLayerId(MockData.BASIC_POLYGONS));
+        layer.getMetadata().remove(WMS.GETMAP_COALESCING);
+        getCatalog().save(layer);
+    }
+
+    private void setCoalescing(boolean enabled) {
+        WMSInfo wms = getGeoServer().getService(WMSInfo.class);
+        wms.getMetadata().put(WMS.GETMAP_COALESCING, enabled);
+        getGeoServer().save(wms);
+    }
+
+    private GetMapRequest createDispatchedRequest() {
+        GetMapRequest request = createGetMapRequest(MockData.BASIC_POLYGONS);
+        request.setFormat("image/png");
+        Map<String, String> kvp = new HashMap<>();
+        kvp.put("LAYERS", getLayerId(MockData.BASIC_POLYGONS));
+        kvp.put("FORMAT", "image/png");
+        request.setRawKvp(kvp);
+
+        Request dispatched = new Request();
+        Service service = new Service("wms", null, null, null);
+        dispatched.setOperation(new Operation("GetMap", service, null, new Object[] {request}));
+        Dispatcher.REQUEST.set(dispatched);
+        return request;
+    }
+
+    @Test
+    public void testEnablement() throws Exception {
+        GetMapCoalescer coalescer = new GetMapCoalescer(getWMS());
+        GetMapRequest request = createDispatchedRequest();
+        assertFalse(coalescer.isEnabled(request));
+
+        // per layer enablement
+        LayerInfo layer = getCatalog().getLayerByName(getLayerId(MockData.BASIC_POLYGONS));
+        layer.getMetadata().put(WMS.GETMAP_COALESCING, true);
+        getCatalog().save(layer);
+        request = createDispatchedRequest();
+        assertTrue(coalescer.isEnabled(request));
+
+        // internal requests are never coalesced
+        Dispatcher.REQUEST.remove();
+        assertFalse(coalescer.isEnabled(request));
+
+        // global enablement
+        layer.getMetadata().remove(WMS.GETMAP_COALESCING);
+        getCatalog().save(layer);
+        setCoalescing(true);
+        assertTrue(coalescer.isEnabled(createDispatchedRequest()));
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        GetMapCoalescer coalescer = new GetMapCoalescer(getWMS());
+        GetMapRequest r1 = createDispatchedRequest();
+        GetMapRequest r2 = createDispatchedRequest();
+        Map<String, String> kvp = new HashMap<>();
+        kvp.put("format", "image/png");
+        kvp.put("layers", getLayerId(MockData.BASIC_POLYGONS));
+        r2.setRawKvp(kvp);
+        assertEquals(coalescer.getKey(r1), coalescer.getKey(r2));
+
+        kvp.put("format", "image/jpeg");
+        assertNotEquals(coalescer.getKey(r1), coalescer.getKey(r2));
+    }
+
+    @Test
+    public void testKeyVirtualService() throws Exception {
+        GetMapCoalescer coalescer = new GetMapCoalescer(getWMS());
+        GetMapRequest request = createDispatchedRequest();
+        String global = coalescer.getKey(request);
+        try {
+            LocalWorkspace.set(getCatalog().getWorkspaceByName(MockData.CITE_PREFIX));
+            String cite = coalescer.getKey(request);
+            LocalWorkspace.set(getCatalog().getWorkspaceByName(MockData.CDF_PREFIX));
+            String cdf = coalescer.getKey(request);
+            assertNotEquals(global, cite);
+            assertNotEquals(cite, cdf);
+
+            LocalPublished.set(getCatalog().getLayerByName(getLayerId(MockData.BASIC_POLYGONS)));
+            assertNotEquals(cdf, coalescer.getKey(request));
+        } finally {
+            LocalWorkspace.remove();
+            LocalPublished.remove();
+        }
+
+        // same parameters sent to a different path
+        Dispatcher.REQUEST.get().setContext("cite");
+        assertNotEquals(global, coalescer.getKey(request));
+    }
+
+    @Test
+    public void testShareImageMap() throws Exception {
+        GetMapCoalescer coalescer = new GetMapCoalescer(getWMS());
+        GetMapRequest request = createDispatchedRequest();
+        WMSMapContent content = new WMSMapContent(request);
+        content.setMapWidth(10);
+        content.setMapHeight(10);
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        RenderedImageMap map = new RenderedImageMap(content, image, "image/png");
+        map.setResponseHeader("X-Test", "test");
+
+        GetMapCoalescer.SharedMap shared = coalescer.share(map);
+        // the original map gets disposed by its own response
+        map.dispose();
+        GetMapRequest other = createDispatchedRequest();
+        RenderedImageMap copy = (RenderedImageMap) shared.toWebMap(other);
+        assertSame(image, copy.getImage());
+        assertSame(other, copy.getMapContext().getRequest());
+        assertEquals(10, copy.getMapContext().getMapWidth());
+        assertEquals("test", copy.getResponseHeaders()[0][1]);
+        copy.dispose();
+
+        // lazy image chains are not shared
+        RenderedImageMap lazy =
+                new RenderedImageMap(
+                        new WMSMapContent(request),
+                        PlanarImage.wrapRenderedImage(image),
+                        "image/png");
+        assertNull(coalescer.share(lazy));
+        lazy.dispose();
+    }
+
+    @Test
+    public void testCoalesceConcurrentRequests() throws Exception {
+        setCoalescing(true);
+        GetMapCoalescer coalescer = new GetMapCoalescer(getWMS());
+        GetMapRequest request = createDispatchedRequest();
+
+        byte[] contents = {1, 2, 3, 4};
+        AtomicInteger produced = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GetMapCoalescer.MapProducer producer =
+                r -> {
+                    produced.incrementAndGet();
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return new RawMap(null, contents, "image/png");
+                };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<WebMap> leader = executor.submit(() -> coalescer.run(request, producer));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<WebMap> follower = executor.submit(() -> coalescer.run(request, producer));
+            // release the leader once the follower is waiting on it
+            CompletableFuture<?> inFlight = coalescer.inFlight.values().iterator().next();
+            while (inFlight.getNumberOfDependents() == 0) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            assertArrayEquals(contents, encode(leader.get(10, TimeUnit.SECONDS)));
+            assertArrayEquals(contents, encode(follower.get(10, TimeUnit.SECONDS)));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, produced.get());
+        GetMapCoalescer.Statistics statistics = coalescer.getStatistics();
+        assertEquals(1, statistics.getRendered());
+        assertEquals(1, statistics.getCoalesced());
+        assertEquals(0, statistics.getInFlight());
+    }
+
+    @Test
+    public void testSequentialRequestsNotCoalesced() throws Exception {
+        setCoalescing(true);
+        GetMapCoalescer coalescer = new GetMapCoalescer(getWMS());
+        GetMapRequest request = createDispatchedRequest();
+        AtomicInteger produced = new AtomicInteger();
+        GetMapCoalescer.MapProducer producer =
+                r -> {
+                    produced.incrementAndGet();
+                    return new RawMap(null, new byte[] {1}, "image/png");
+                };
+
+        coalescer.run(request, producer);
+        coalescer.run(request, producer);
+        assertEquals(2, produced.get());
+        assertEquals(0, coalescer.getStatistics().getCoalesced());
+    }
+
+    @Test
+    public void testGetMap() throws Exception {
+        setCoalescing(true);
+        GetMapCoalescer coalescer = applicationContext.getBean(GetMapCoalescer.class);
+        long rendered = coalescer.getStatistics().getRendered();
+
+        BufferedImage image =
+                getAsImage(
+                        "wms?service=WMS&version=1.1.1&request=GetMap&layers="
+                                + getLayerId(MockData.BASIC_POLYGONS)
+                                + "&styles=&bbox=-2,-1,2,6&width=200&height=200"
+                                + "&srs=EPSG:4326&format=image/png",
+                        "image/png");
+        assertNotBlank("coalesced", image);
+        assertEquals(rendered + 1, coalescer.getStatistics().getRendered());
+    }
+
+    private byte[] encode(WebMap map) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ((RawMap) map).writeTo(bos);
+        return bos.toByteArray();
+    }
+}
@@ -7,7 +7,10 @@
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -15,6 +18,9 @@
 import java.util.logging.Level;
 import javax.xml.namespace.QName;
 import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogBuilder;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.data.test.MockData;
 import org.geoserver.data.test.SystemTestData;
 import org.geoserver.ows.util.KvpUtils;
@@ -23,17 +29,30 @@
 import org.geoserver.wms.WMSTestSupport;
 import org.geoserver.wms.wms_1_1_1.GetLegendGraphicTest;
 import org.geoserver.wms.wms_1_1_1.GetMapIntegrationTest;
+import org.geotools.data.DataStore;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.jdbc.JDBCDataStore;
 import org.geotools.styling.FeatureTypeStyle;
 import org.geotools.styling.Rule;
 import org.geotools.styling.Style;
 import org.geotools.styling.visitor.DuplicatingStyleVisitor;
 import org.junit.Before;
 import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 
 public class FeatureCountLegendGraphicTest extends WMSTestSupport {
 
     private static final QName SF_STATES = new QName(MockData.SF_URI, "states", MockData.SF_PREFIX);
 
+    /** The states, plus two with no population, in a H2 store */
+    private static final String SF_STATES_H2 = "sf:states_h2";
+
     private LegendGraphicBuilder legendProducer;
 
     private List<Rule[]> ruleSets = new ArrayList<>();
@@ -52,12 +71,58 @@ protected void onSetUp(SystemTestData testData) throws Exception {
                 catalog);
         testData.addStyle(
                 "scaleDependent", "scaleDependent.sld", GetLegendGraphicTest.class, catalog);
+        testData.addStyle(
+                "largeCircle", "largeCircle.sld", FeatureCountLegendGraphicTest.class, catalog);
         testData.addVectorLayer(
                 SF_STATES,
                 Collections.emptyMap(),
                 "states.properties",
                 GetMapIntegrationTest.class,
                 catalog);
+        setupH2States(catalog);
+    }
+
+    private void setupH2States(Catalog catalog) throws Exception {
+        DataStoreInfo ds = catalog.getFactory().createDataStore();
+        ds.setName("legendh2");
+        ds.setWorkspace(catalog.getWorkspaceByName(MockData.SF_PREFIX));
+        ds.setEnabled(true);
+        Map<String, Serializable> params = ds.getConnectionParameters();
+        params.put("dbtype", "h2");
+        File dbFile =
+                new File(getTestData().getDataDirectoryRoot().getAbsolutePath(), "data/legendh2");
+        params.put("database", dbFile.getAbsolutePath());
+        catalog.add(ds);
+
+        DataStore store = (DataStore) ds.getDataStore(null);
+        SimpleFeatureType schema =
+                DataUtilities.createType(
+                        "states_h2",
+                        "the_geom:MultiPolygon:srid=4326,STATE_ABBR:String,PERSONS:Double");
+        store.createSchema(schema);
+        List<SimpleFeature> features = new ArrayList<>();
+        SimpleFeatureSource states = getFeatureSource(SF_STATES);
+        int nulls = 0;
+        try (SimpleFeatureIterator it = states.getFeatures().features()) {
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                features.add(SimpleFeatureBuilder.build(schema, f.getAttributes(), f.getID()));
+                if (nulls++ < 2) {
+                    // a copy with no population, matched by the else rule
+                    Object[] values = {f.getDefaultGeometry(), "NA", null};
+                    features.add(SimpleFeatureBuilder.build(schema, values, null));
+                }
+            }
+        }
+        SimpleFeatureStore fs = (SimpleFeatureStore) store.getFeatureSource("states_h2");
+        fs.addFeatures(new ListFeatureCollection(schema, features));
+
+        CatalogBuilder cb = new CatalogBuilder(catalog);
+        cb.setStore(ds);
+        FeatureTypeInfo ft = cb.buildFeatureType(fs);
+        cb.setupBounds(ft);
+        catalog.add(ft);
+        catalog.add(cb.buildLayer(ft));
     }
 
     @Before
@@ -224,6 +289,71 @@ public void testStatesElse() throws Exception {
         assertLabel("Others (23)", rules[2]);
     }
 
+    @Test
+    public void testStatesElseRendering() throws Exception {
+        // the counts computed rendering the map are the same as the ones read from the data
+        System.setProperty(FeatureCountProcessor.RENDER_COUNT, "true");
+        try {
+            testStatesElse();
+        } finally {
+            System.clearProperty(FeatureCountProcessor.RENDER_COUNT);
+        }
+    }
+
+    @Test
+    public void testStatesElseGroupByInDatabase() throws Exception {
+        // a JDBC store, the rule matches are counted grouping by PERSONS in the database
+        FeatureTypeInfo ft = getCatalog().getFeatureTypeByName(SF_STATES_H2);
+        assertTrue(ft.getStore().getDataStore(null) instanceof JDBCDataStore);
+
+        runGetLegendGraphics(
+                "wms?service=WMS&version=1.1.1&request=GetLegendGraphic&format=image/png"
+                        + "&layer="
+                        + SF_STATES_H2
+                        + "&style=PopulationElse&width=550&height=250&srs=EPSG:4326" //
+                        + "&bbox="
+                        + "-130,24,-66,50"
+                        + "&legend_options="
+                        + GetLegendGraphicRequest.COUNT_MATCHED_KEY
+                        + ":true");
+        assertEquals(1, ruleSets.size());
+        Rule[] rules = ruleSets.get(0);
+        logLabels(rules);
+        assertEquals(3, rules.length);
+        assertLabel("2M - 4M (10)", rules[0]);
+        assertLabel("< 2M (16)", rules[1]);
+        // the two states with no population are counted apart, as COUNT skips nulls
+        assertLabel("Others (25)", rules[2]);
+    }
+
+    @Test
+    public void testLargeSymbolOutsideMap() throws Exception {
+        // the point is 20 pixels left of the map, but its 80 pixels symbol overlaps it
+        runGetLegendGraphics(
+                "wms?service=WMS&version=1.1.1&request=GetLegendGraphic&format=image/png"
+                        + "&layer="
+                        + getLayerId(MockData.POINTS)
+                        + "&style=largeCircle&width=100&height=100&srs=EPSG:32615"
+                        + "&bbox=500070,500000,500170,500100"
+                        + "&legend_options="
+                        + GetLegendGraphicRequest.COUNT_MATCHED_KEY
+                        + ":true");
+        assertEquals(1, ruleSets.size());
+        Rule[] rules = ruleSets.get(0);
+        assertEquals(1, rules.length);
+        assertLabel("(1)", rules[0]);
+    }
+
+    @Test
+    public void testLargeSymbolOutsideMapRendering() throws Exception {
+        System.setProperty(FeatureCountProcessor.RENDER_COUNT, "true");
+        try {
+            testLargeSymbolOutsideMap();
+        } finally {
+            System.clearProperty(FeatureCountProcessor.RENDER_COUNT);
+        }
+    }
+
     @Test
     public void testStatesMissingBbox() throws Exception {
         runGetLegendGraphics(
@@ -6,9 +6,25 @@
 package org.geoserver.wms.map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import java.awt.Point;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.geoserver.wms.map.QuickTileCache.MapKey;
+import org.geoserver.wms.map.QuickTileCache.MetaTileKey;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.junit.Test;
 import org.locationtech.jts.geom.Envelope;
 
@@ -68,4 +84,119 @@ public void testInnerTileOffsets() {
         assertEquals(new Point(0, 2), cache.getTileOffsetsInMeta(box1, meta));
         assertEquals(new Point(1, 2), cache.getTileOffsetsInMeta(box2, meta));
     }
+
+    @Test
+    public void testMemoryBound() throws Exception {
+        // a 3x3 meta tile of 256x256 RGBA tiles uses 9 * 256 * 256 * 4 bytes
+        long metaTileSize = 9 * 256 * 256 * 4;
+        QuickTileCache cache = new QuickTileCache(metaTileSize * 2);
+        MetaTileKey k1 = key(0);
+        MetaTileKey k2 = key(3);
+        MetaTileKey k3 = key(6);
+        cache.storeTiles(k1, tiles());
+        cache.storeTiles(k2, tiles());
+        assertNotNull(cache.getTiles(k1, k -> null));
+        assertEquals(2, cache.getStatistics().getSize());
+        assertEquals(metaTileSize * 2, cache.getStatistics().getMemoryUsage());
+
+        // the third one does not fit, the least recently used gets evicted
+        cache.storeTiles(k3, tiles());
+        QuickTileCache.Statistics stats = cache.getStatistics();
+        assertEquals(2, stats.getSize());
+        assertEquals(1, stats.getEvictions());
+        assertEquals(metaTileSize * 2, stats.getMemoryUsage());
+        assertNull(cache.getTiles(k2, k -> null));
+
+        cache.clear();
+        assertEquals(0, cache.getStatistics().getSize());
+        assertEquals(0, cache.getStatistics().getMemoryUsage());
+    }
+
+    @Test
+    public void testDefaultsHoldMetaTiles() throws Exception {
+        // production defaults, the segments must be large enough to hold full meta tiles
+        QuickTileCache cache = new QuickTileCache();
+        MetaTileKey[] keys = new MetaTileKey[QuickTileCache.META_TILES_PER_SEGMENT];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = key(i * 3);
+            cache.storeTiles(keys[i], tiles());
+        }
+        for (MetaTileKey key : keys) {
+            assertNotNull(cache.getTiles(key, k -> null));
+        }
+        QuickTileCache.Statistics stats = cache.getStatistics();
+        assertEquals(keys.length, stats.getSize());
+        assertEquals(0, stats.getEvictions());
+
+        // small caches use less segments, but still hold a meta tile
+        long metaTileSize = QuickTileCache.META_TILE_SIZE;
+        assertEquals(1, cache.getConcurrencyLevel(metaTileSize));
+        assertEquals(
+                QuickTileCache.MAX_CONCURRENCY_LEVEL, cache.getConcurrencyLevel(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        QuickTileCache cache = new QuickTileCache(Long.MAX_VALUE);
+        MetaTileKey key = key(0);
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RenderedImage[] tiles = tiles();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<RenderedImage[]> first =
+                    executor.submit(
+                            () ->
+                                    cache.getTiles(
+                                            key,
+                                            k -> {
+                                                builds.incrementAndGet();
+                                                building.countDown();
+                                                await(release);
+                                                return tiles;
+                                            }));
+            building.await();
+            Future<RenderedImage[]> second =
+                    executor.submit(
+                            () ->
+                                    cache.getTiles(
+                                            key,
+                                            k -> {
+                                                builds.incrementAndGet();
+                                                return tiles();
+                                            }));
+            // wait for the second request to be parked on the in flight meta tile
+            while (cache.getStatistics().getCoalesced() == 0) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            assertSame(tiles, first.get(10, TimeUnit.SECONDS));
+            assertSame(tiles, second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, builds.get());
+            assertEquals(0, cache.getStatistics().getBuilding());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private MetaTileKey key(int x) {
+        MapKey mapKey = new MapKey("layers=test", 1, new Point2D.Double(0, 0));
+        ReferencedEnvelope envelope = new ReferencedEnvelope(x, x + 3, 0, 3, null);
+        return new MetaTileKey(mapKey, new Point(x, 0), envelope);
+    }
+
+    private RenderedImage[] tiles() {
+        RenderedImage[] tiles = new RenderedImage[9];
+        Arrays.setAll(tiles, i -> new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR));
+        return tiles;
+    }
 }
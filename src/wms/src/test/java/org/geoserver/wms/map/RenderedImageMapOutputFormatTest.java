@@ -13,6 +13,7 @@
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -41,6 +42,7 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
@@ -79,6 +81,7 @@
 import org.geotools.coverage.util.FeatureUtilities;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
+import org.geotools.data.QueryCapabilities;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.feature.SchemaException;
@@ -1799,6 +1802,124 @@ public void testFaultyStyleDoesntBreak() throws Exception {
         assertNotNull(image);
         assertBlank("testFaultyStyleDoesntBreak", image);
     }
+
+    @Test
+    public void testStripRendering() throws Exception {
+        Catalog catalog = getCatalog();
+        FeatureSource fs =
+                catalog.getFeatureTypeByName(
+                                MockData.LAKES.getNamespaceURI(), MockData.LAKES.getLocalPart())
+                        .getFeatureSource(null, null);
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createPolygonSymbolizer(Color.BLUE, Color.BLACK, 3));
+        // the lake is in the middle of the map, its label crosses the border between the strips
+        style.featureTypeStyles()
+                .get(0)
+                .rules()
+                .get(0)
+                .symbolizers()
+                .add(sb.createTextSymbolizer(Color.BLACK, sb.createFont("Serif", 24), "NAME"));
+        ReferencedEnvelope bounds = new ReferencedEnvelope(fs.getBounds());
+
+        BufferedImage serial = renderStrips(fs, style, bounds, 0);
+        AtomicInteger renderers = new AtomicInteger();
+        this.rasterMapProducer =
+                new DummyRasterMapProducer(getWMS()) {
+                    @Override
+                    protected void onBeforeRender(StreamingRenderer renderer) {
+                        renderers.incrementAndGet();
+                    }
+                };
+        BufferedImage striped = renderStrips(fs, style, bounds, 1);
+
+        // the main renderer, plus one per strip
+        assertTrue(renderers.get() > 2);
+        assertNotBlank("testStripRendering", striped);
+        ImageAssert.assertEquals(serial, striped, 20);
+    }
+
+    @Test
+    public void testStripRenderingDisabled() throws Exception {
+        Catalog catalog = getCatalog();
+        FeatureSource fs =
+                catalog.getFeatureTypeByName(
+                                MockData.LAKES.getNamespaceURI(), MockData.LAKES.getLocalPart())
+                        .getFeatureSource(null, null);
+        StyleBuilder sb = new StyleBuilder();
+        Rectangle paintArea = new Rectangle(400, 600);
+        WMSInfo info = getWMS().getServiceInfo();
+        info.setParallelRenderingThreshold(1);
+        getGeoServer().save(info);
+        try {
+            Style polygons = sb.createStyle(sb.createPolygonSymbolizer(Color.BLUE));
+            assertTrue(isStripRenderingEnabled(new FeatureLayer(fs, polygons), paintArea));
+
+            // transformations would run on each strip separately
+            Style transformed = sb.createStyle(sb.createPolygonSymbolizer(Color.BLUE));
+            transformed
+                    .featureTypeStyles()
+                    .get(0)
+                    .setTransformation(
+                            sb.getFilterFactory().function("env", sb.literalExpression("a")));
+            assertFalse(isStripRenderingEnabled(new FeatureLayer(fs, transformed), paintArea));
+
+            // labels are merged by feature id, which needs to be reliable
+            Style labels =
+                    sb.createStyle(
+                            sb.createTextSymbolizer(
+                                    Color.BLACK, sb.createFont("Serif", 24), "NAME"));
+            assertTrue(isStripRenderingEnabled(new FeatureLayer(fs, labels), paintArea));
+            QueryCapabilities capabilities = Mockito.mock(QueryCapabilities.class);
+            Mockito.when(capabilities.isReliableFIDSupported()).thenReturn(false);
+            FeatureSource unreliable = Mockito.mock(FeatureSource.class);
+            Mockito.when(unreliable.getSchema()).thenReturn(fs.getSchema());
+            Mockito.when(unreliable.getQueryCapabilities()).thenReturn(capabilities);
+            assertFalse(isStripRenderingEnabled(new FeatureLayer(unreliable, labels), paintArea));
+            assertTrue(isStripRenderingEnabled(new FeatureLayer(unreliable, polygons), paintArea));
+        } finally {
+            info.setParallelRenderingThreshold(0);
+            getGeoServer().save(info);
+        }
+    }
+
+    private boolean isStripRenderingEnabled(Layer layer, Rectangle paintArea) {
+        WMSMapContent map = new WMSMapContent();
+        map.addLayer(layer);
+        try {
+            return rasterMapProducer.isStripRenderingEnabled(map, paintArea);
+        } finally {
+            map.dispose();
+        }
+    }
+
+    private BufferedImage renderStrips(
+            FeatureSource fs, Style style, ReferencedEnvelope bounds, int threshold)
+            throws Exception {
+        WMSInfo info = getWMS().getServiceInfo();
+        info.setParallelRenderingThreshold(threshold);
+        getGeoServer().save(info);
+        try {
+            GetMapRequest request = new GetMapRequest();
+            final WMSMapContent map = new WMSMapContent();
+            map.getViewport().setBounds(new ReferencedEnvelope(bounds, DefaultGeographicCRS.WGS84));
+            map.setMapWidth(400);
+            map.setMapHeight(600);
+            map.setBgColor(Color.WHITE);
+            map.setTransparent(false);
+            map.setRequest(request);
+            map.addLayer(new FeatureLayer(fs, style));
+            request.setFormat(getMapFormat());
+
+            RenderedImageMap imageMap = this.rasterMapProducer.produceMap(map);
+            BufferedImage image = (BufferedImage) imageMap.getImage();
+            imageMap.dispose();
+            return image;
+        } finally {
+            info.setParallelRenderingThreshold(0);
+            getGeoServer().save(info);
+        }
+    }
+
     /**
      * This dummy producer adds no functionality to DefaultRasterMapOutputFormat, just implements a
      * void formatImageOutputStream to have a concrete class over which test that
@@ -0,0 +1,195 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import ar.com.hjg.pngj.FilterType;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Adler32;
+import javax.imageio.ImageIO;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ParallelPNGEncoderTest {
+
+    static ExecutorService executor;
+
+    @BeforeClass
+    public static void setupExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testRGBA() throws Exception {
+        BufferedImage image = paint(new BufferedImage(300, 200, BufferedImage.TYPE_4BYTE_ABGR));
+        assertRoundTrip(image, FilterType.FILTER_NONE, 6);
+        assertRoundTrip(image, FilterType.FILTER_SUB, 9);
+        assertRoundTrip(image, FilterType.FILTER_SUB, 0);
+    }
+
+    @Test
+    public void testRGB() throws Exception {
+        BufferedImage image = paint(new BufferedImage(300, 200, BufferedImage.TYPE_3BYTE_BGR));
+        assertRoundTrip(image, FilterType.FILTER_NONE, 1);
+        assertRoundTrip(image, FilterType.FILTER_SUB, 4);
+    }
+
+    @Test
+    public void testGray() throws Exception {
+        BufferedImage image = paint(new BufferedImage(301, 200, BufferedImage.TYPE_BYTE_GRAY));
+        assertRoundTrip(image, FilterType.FILTER_SUB, 6);
+    }
+
+    @Test
+    public void testPalette() throws Exception {
+        for (int bits : new int[] {1, 2, 4, 8}) {
+            BufferedImage image = paint(paletteImage(301, 200, bits));
+            assertRoundTrip(image, FilterType.FILTER_NONE, 6);
+            assertRoundTrip(image, FilterType.FILTER_SUB, 6);
+        }
+    }
+
+    @Test
+    public void testPaletteTransparency() throws Exception {
+        BufferedImage image = paint(paletteImage(256, 256, 8));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new ParallelPNGEncoder(executor, 4096).encode(image, bos, 6, FilterType.FILTER_NONE);
+
+        BufferedImage read = ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+        IndexColorModel icm = (IndexColorModel) read.getColorModel();
+        assertEquals(Transparency.BITMASK, icm.getTransparency());
+        assertEquals(0, icm.getAlpha(0));
+        assertEquals(255, icm.getAlpha(1));
+    }
+
+    @Test
+    public void testSingleBand() throws Exception {
+        BufferedImage image = paint(new BufferedImage(50, 50, BufferedImage.TYPE_4BYTE_ABGR));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new ParallelPNGEncoder(executor, Integer.MAX_VALUE)
+                .encode(image, bos, 6, FilterType.FILTER_SUB);
+        assertSamePixels(image, ImageIO.read(new ByteArrayInputStream(bos.toByteArray())));
+    }
+
+    @Test
+    public void testSupported() {
+        assertTrue(
+                ParallelPNGEncoder.isSupported(
+                        new BufferedImage(1, 1, BufferedImage.TYPE_4BYTE_ABGR)));
+        assertTrue(
+                ParallelPNGEncoder.isSupported(
+                        new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_BINARY)));
+        assertFalse(
+                ParallelPNGEncoder.isSupported(
+                        new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB)));
+        assertFalse(
+                ParallelPNGEncoder.isSupported(
+                        new BufferedImage(1, 1, BufferedImage.TYPE_USHORT_GRAY)));
+        assertFalse(
+                ParallelPNGEncoder.isSupported(
+                        new BufferedImage(1, 1, BufferedImage.TYPE_4BYTE_ABGR_PRE)));
+    }
+
+    @Test
+    public void testAdlerCombine() {
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        Adler32 full = new Adler32();
+        full.update(data);
+
+        ParallelPNGEncoder.Adler32Accumulator accumulator =
+                new ParallelPNGEncoder.Adler32Accumulator();
+        for (int offset = 0; offset < data.length; offset += 7000) {
+            int length = Math.min(7000, data.length - offset);
+            Adler32 block = new Adler32();
+            block.update(data, offset, length);
+            accumulator.add(block.getValue(), length);
+        }
+        assertEquals(full.getValue(), accumulator.getValue());
+    }
+
+    private void assertRoundTrip(BufferedImage image, FilterType filter, int level)
+            throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        // small bands to exercise dictionary priming and checksum combination
+        new ParallelPNGEncoder(executor, 4096).encode(image, bos, level, filter);
+        BufferedImage read = ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals(image.getColorModel().hasAlpha(), read.getColorModel().hasAlpha());
+        assertEquals(
+                image.getColorModel().getNumColorComponents(),
+                read.getColorModel().getNumColorComponents());
+        assertSamePixels(image, read);
+    }
+
+    private void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("Pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    private BufferedImage paletteImage(int width, int height, int bits) {
+        int size = 1 << bits;
+        byte[] r = new byte[size];
+        byte[] g = new byte[size];
+        byte[] b = new byte[size];
+        for (int i = 0; i < size; i++) {
+            r[i] = (byte) (i * 255 / (size - 1));
+            g[i] = (byte) (255 - i * 255 / (size - 1));
+            b[i] = (byte) (i * 37);
+        }
+        // first entry transparent
+        IndexColorModel icm = new IndexColorModel(bits, size, r, g, b, 0);
+        int type = bits == 8 ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_BYTE_BINARY;
+        return new BufferedImage(width, height, type, icm);
+    }
+
+    private BufferedImage paint(BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(
+                RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        Random random = new Random(0);
+        for (int i = 0; i < 50; i++) {
+            graphics.setColor(
+                    new Color(
+                            random.nextInt(256),
+                            random.nextInt(256),
+                            random.nextInt(256),
+                            random.nextInt(256)));
+            double size = random.nextDouble() * image.getWidth() / 2;
+            graphics.fill(
+                    new Ellipse2D.Double(
+                            random.nextDouble() * image.getWidth(),
+                            random.nextDouble() * image.getHeight(),
+                            size,
+                            size));
+        }
+        graphics.dispose();
+        return image;
+    }
+}